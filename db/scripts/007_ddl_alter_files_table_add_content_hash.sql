@@ -0,0 +1,3 @@
+alter table files add column content_hash varchar;
+
+create index files_content_hash_idx on files (content_hash);
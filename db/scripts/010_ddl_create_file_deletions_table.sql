@@ -0,0 +1,6 @@
+create table file_deletions
+(
+    id            serial primary key,
+    file_id       int       not null,
+    creation_date timestamp not null default now()
+);
@@ -0,0 +1,4 @@
+alter table files add column pack_segment int;
+alter table files add column pack_offset bigint;
+alter table files add column pack_length bigint;
+create index files_pack_segment_index on files (pack_segment);
@@ -0,0 +1,16 @@
+create table upload_sessions
+(
+    id            varchar primary key,
+    name          varchar   not null,
+    size          bigint    not null,
+    chunk_size    int       not null,
+    creation_date timestamp not null default now()
+);
+
+create table upload_chunks
+(
+    session_id varchar not null references upload_sessions (id) on delete cascade,
+    number     int     not null
+);
+
+create index upload_chunks_session_id_index on upload_chunks (session_id);
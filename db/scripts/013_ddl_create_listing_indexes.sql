@@ -0,0 +1,7 @@
+update vacancies set creation_date = now() where creation_date is null;
+alter table vacancies alter column creation_date set not null;
+create index vacancies_creation_date_id_index on vacancies (creation_date desc, id desc);
+
+update candidates set creation_date = now() where creation_date is null;
+alter table candidates alter column creation_date set not null;
+create index candidates_creation_date_id_index on candidates (creation_date desc, id desc);
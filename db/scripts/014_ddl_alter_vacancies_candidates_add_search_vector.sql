@@ -0,0 +1,12 @@
+--liquibase formatted sql
+
+--changeset dreamjob:014_ddl_alter_vacancies_candidates_add_search_vector dbms:postgresql
+alter table vacancies add column search_vector tsvector generated always as (
+    setweight(to_tsvector('russian', title), 'A') || setweight(to_tsvector('russian', description), 'B')
+) stored;
+create index vacancies_search_vector_index on vacancies using gin (search_vector);
+
+alter table candidates add column search_vector tsvector generated always as (
+    setweight(to_tsvector('russian', name), 'A') || setweight(to_tsvector('russian', description), 'B')
+) stored;
+create index candidates_search_vector_index on candidates using gin (search_vector);
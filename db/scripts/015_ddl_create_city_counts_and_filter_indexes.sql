@@ -0,0 +1,31 @@
+create index vacancies_city_id_creation_date_id_index on vacancies (city_id, creation_date desc, id desc);
+create index vacancies_visible_creation_date_id_index on vacancies (visible, creation_date desc, id desc);
+
+create index candidates_city_id_creation_date_id_index on candidates (city_id, creation_date desc, id desc);
+create index candidates_visible_creation_date_id_index on candidates (visible, creation_date desc, id desc);
+
+create table vacancy_city_counts
+(
+    city_id int     not null references cities (id),
+    visible boolean not null,
+    total   int     not null,
+    primary key (city_id, visible)
+);
+
+insert into vacancy_city_counts (city_id, visible, total)
+select id, true, (select count(*) from vacancies where vacancies.city_id = cities.id and vacancies.visible) from cities;
+insert into vacancy_city_counts (city_id, visible, total)
+select id, false, (select count(*) from vacancies where vacancies.city_id = cities.id and not vacancies.visible) from cities;
+
+create table candidate_city_counts
+(
+    city_id int     not null references cities (id),
+    visible boolean not null,
+    total   int     not null,
+    primary key (city_id, visible)
+);
+
+insert into candidate_city_counts (city_id, visible, total)
+select id, true, (select count(*) from candidates where candidates.city_id = cities.id and candidates.visible) from cities;
+insert into candidate_city_counts (city_id, visible, total)
+select id, false, (select count(*) from candidates where candidates.city_id = cities.id and not candidates.visible) from cities;
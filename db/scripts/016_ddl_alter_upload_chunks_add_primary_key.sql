@@ -0,0 +1,7 @@
+create table upload_chunks_distinct as select distinct session_id, number from upload_chunks;
+delete from upload_chunks;
+insert into upload_chunks (session_id, number) select session_id, number from upload_chunks_distinct;
+drop table upload_chunks_distinct;
+
+drop index upload_chunks_session_id_index;
+alter table upload_chunks add primary key (session_id, number);
@@ -0,0 +1,52 @@
+package ru.job4j.dreamjob;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.context.PropertyPlaceholderAutoConfiguration;
+import org.springframework.boot.autoconfigure.http.HttpMessageConvertersAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.ServletWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.context.annotation.Import;
+import ru.job4j.dreamjob.cache.OffHeapFileCache;
+import ru.job4j.dreamjob.configuration.DatasourceConfiguration;
+import ru.job4j.dreamjob.controller.AsyncFileIo;
+import ru.job4j.dreamjob.controller.FileController;
+import ru.job4j.dreamjob.filter.FileNodeAccessFilter;
+import ru.job4j.dreamjob.repository.Sql2oFileRepository;
+import ru.job4j.dreamjob.service.PackFileStore;
+import ru.job4j.dreamjob.service.SimpleCompressionService;
+import ru.job4j.dreamjob.service.SimpleFileService;
+import ru.job4j.dreamjob.service.SimpleThumbnailService;
+
+import java.util.Map;
+
+/**
+ * Отдельный узел, который только отдает файлы по /files/hash/{contentHash}.
+ * Запускается вместо Main на своих серверах, база и каталог file.directory у них общие.
+ * <br>В контексте только FileController и то, от чего он зависит.
+ * Компоненты не ищутся сканированием, а перечислены в Import, поэтому сюда не попадают
+ * фильтры AuthorizationFilter и SessionFilter, Thymeleaf, Actuator и фоновые задачи Main.
+ * Сессия на узле не создается никогда.
+ * <br>Авторизации на узле нет, как у CDN. Ссылки по хешу угадать нельзя, а id идут подряд,
+ * поэтому /files/{id} FileNodeAccessFilter отдает только при file.node.id-access=true.
+ * <br>Узел работает на DispatcherServlet и WebMvc, а не на голом HTTP-сервере:
+ * так FileController, Range, ETag и асинхронная отдача остаются общими с Main.
+ * <br>Узел только читает общее хранилище: PackFileStore работает с file.pack.read-only=true,
+ * открывает существующие сегменты на чтение и не создает новые, права на запись в каталог не нужны.
+ * <br>Класс намеренно не помечен Configuration: иначе его подхватило бы сканирование Main.
+ * Порт задается file.node.port, его можно переопределить через --server.port.
+ */
+@Import({DatasourceConfiguration.class, Sql2oFileRepository.class, SimpleFileService.class,
+        SimpleThumbnailService.class, SimpleCompressionService.class, OffHeapFileCache.class,
+        PackFileStore.class, AsyncFileIo.class, FileController.class, FileNodeAccessFilter.class})
+@ImportAutoConfiguration({PropertyPlaceholderAutoConfiguration.class, ServletWebServerFactoryAutoConfiguration.class,
+        DispatcherServletAutoConfiguration.class, WebMvcAutoConfiguration.class,
+        HttpMessageConvertersAutoConfiguration.class})
+public class FileNode {
+    public static void main(String[] args) {
+        var application = new SpringApplication(FileNode.class);
+        application.setDefaultProperties(Map.of("server.port", "${file.node.port}", "file.pack.read-only", "true"));
+        application.run(args);
+    }
+}
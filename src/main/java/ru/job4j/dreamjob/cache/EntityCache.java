@@ -0,0 +1,253 @@
+package ru.job4j.dreamjob.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Кеш записей по id и списка всех записей перед репозиторием, который читается из базы.
+ * Промах загружает значение из репозитория и кладет его в кеш (read-through).
+ * <br>Размер записи оценивается функцией weigher в байтах. Давно не запрошенные записи (LRU)
+ * вытесняются, пока сумма оценок не уложится в maxBytes. Запись старше ttl считается промахом,
+ * так кеш догоняет изменения, сделанные в базе мимо этого экземпляра приложения.
+ * <br>Изменения идут через write. Пока изменение выполняется, чтение обходит кеш и идет в базу.
+ * После изменения сбрасываются запись этого id и список всех записей.
+ * Загрузка, начатая до конца изменения, в кеш не попадает: при каждом изменении растет version,
+ * и загруженное значение кладется, только если version не изменилась с начала загрузки.
+ * Поэтому чтение, начатое после возврата из write, не получит прежнее значение.
+ * <br>Отсутствующие записи не кешируются: новый id появляется только через save,
+ * которому тогда достаточно сбросить список.
+ * <br>Из кеша возвращаются одни и те же объекты всем запросам, менять их нельзя.
+ *
+ * @param <V> тип записи
+ */
+@ThreadSafe
+public class EntityCache<V> implements MeterBinder {
+
+    private static final Object ALL = new Object();
+
+    private final String name;
+
+    private final long maxBytes;
+
+    private final long ttlNanos;
+
+    private final ToLongFunction<V> weigher;
+
+    private final LongSupplier clock;
+
+    private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long usedBytes;
+
+    private long version;
+
+    private int writes;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    public EntityCache(String name, long maxBytes, long ttlSeconds, ToLongFunction<V> weigher) {
+        this(name, maxBytes, ttlSeconds, weigher, System::nanoTime);
+    }
+
+    EntityCache(String name, long maxBytes, long ttlSeconds, ToLongFunction<V> weigher, LongSupplier clock) {
+        this.name = name;
+        this.maxBytes = maxBytes;
+        this.ttlNanos = ttlSeconds * 1_000_000_000L;
+        this.weigher = weigher;
+        this.clock = clock;
+    }
+
+    /**
+     * Приблизительный размер записи в куче: заголовок объекта с полями и строки.
+     * Символ считается за два байта, как в строке не из Latin-1, например на кириллице.
+     *
+     * @param texts
+     * @return
+     */
+    public static long estimate(String... texts) {
+        var bytes = 96L;
+        for (var text : texts) {
+            bytes += 40 + (text == null ? 0 : 2L * text.length());
+        }
+        return bytes;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Optional<V> get(int id, IntFunction<Optional<V>> loader) {
+        var cached = lookup(id);
+        if (cached != null) {
+            return Optional.of((V) cached.value);
+        }
+        var loadVersion = getVersion();
+        var loaded = loader.apply(id);
+        loaded.ifPresent(value -> store(id, value, weigher.applyAsLong(value), loadVersion));
+        return loaded;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Collection<V> getAll(Supplier<Collection<V>> loader) {
+        var cached = lookup(ALL);
+        if (cached != null) {
+            return (Collection<V>) cached.value;
+        }
+        var loadVersion = getVersion();
+        var loaded = List.copyOf(loader.get());
+        var bytes = 16L * loaded.size();
+        for (var value : loaded) {
+            bytes += weigher.applyAsLong(value);
+        }
+        store(ALL, loaded, bytes, loadVersion);
+        return loaded;
+    }
+
+    /**
+     * Выполняет изменение записи id в репозитории и сбрасывает ее в кеше вместе со списком.
+     *
+     * @param id
+     * @param write
+     * @param <R>
+     * @return результат write
+     */
+    public <R> R write(int id, Supplier<R> write) {
+        synchronized (this) {
+            writes++;
+            version++;
+        }
+        try {
+            return write.get();
+        } finally {
+            synchronized (this) {
+                writes--;
+                version++;
+                remove(id);
+                remove(ALL);
+            }
+        }
+    }
+
+    /**
+     * Изменение, которое добавляет новую запись: ее id еще неизвестен, а сбросить нужно только список.
+     *
+     * @param write
+     * @param <R>
+     * @return результат write
+     */
+    public <R> R write(Supplier<R> write) {
+        return write(0, write);
+    }
+
+    private synchronized Entry lookup(Object key) {
+        if (writes > 0) {
+            misses.incrementAndGet();
+            return null;
+        }
+        var cached = entries.get(key);
+        if (cached != null && clock.getAsLong() - cached.loadedAt >= ttlNanos) {
+            remove(key);
+            cached = null;
+        }
+        if (cached == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return cached;
+    }
+
+    private synchronized void store(Object key, Object value, long bytes, long loadVersion) {
+        if (loadVersion != version || bytes > maxBytes) {
+            return;
+        }
+        remove(key);
+        entries.put(key, new Entry(value, bytes, clock.getAsLong()));
+        usedBytes += bytes;
+        var iterator = entries.values().iterator();
+        while (usedBytes > maxBytes && iterator.hasNext()) {
+            usedBytes -= iterator.next().bytes;
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void remove(Object key) {
+        var removed = entries.remove(key);
+        if (removed != null) {
+            usedBytes -= removed.bytes;
+        }
+    }
+
+    /**
+     * Номер версии данных: меняется при каждом изменении записей.
+     * По нему кеши производных данных, например отрисованных страниц, понимают, что устарели.
+     *
+     * @return версия или -1, пока идет изменение и производные данные кешировать нельзя
+     */
+    public synchronized long getVersion() {
+        return writes > 0 ? -1 : version;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return доля попаданий среди всех обращений или 0, если обращений не было
+     */
+    public double getHitRatio() {
+        var hitCount = hits.get();
+        var total = hitCount + misses.get();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("dreamjob.entity.cache.requests", hits, AtomicLong::get)
+                .tag("cache", name).tag("result", "hit").register(registry);
+        FunctionCounter.builder("dreamjob.entity.cache.requests", misses, AtomicLong::get)
+                .tag("cache", name).tag("result", "miss").register(registry);
+        FunctionCounter.builder("dreamjob.entity.cache.evictions", evictions, AtomicLong::get)
+                .tag("cache", name).register(registry);
+        Gauge.builder("dreamjob.entity.cache.hit.ratio", this, EntityCache::getHitRatio)
+                .tag("cache", name).register(registry);
+        Gauge.builder("dreamjob.entity.cache.size", this, EntityCache::getUsedBytes)
+                .tag("cache", name).baseUnit("bytes").register(registry);
+        Gauge.builder("dreamjob.entity.cache.entries", this, EntityCache::getEntryCount)
+                .tag("cache", name).register(registry);
+    }
+
+    private static class Entry {
+
+        private final Object value;
+
+        private final long bytes;
+
+        private final long loadedAt;
+
+        Entry(Object value, long bytes, long loadedAt) {
+            this.value = value;
+            this.bytes = bytes;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
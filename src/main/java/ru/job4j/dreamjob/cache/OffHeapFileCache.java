@@ -0,0 +1,203 @@
+package ru.job4j.dreamjob.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.jcip.annotations.ThreadSafe;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Кеш содержимого популярных файлов в прямых ByteBuffer, то есть вне кучи Java.
+ * Файлы хранятся по хешу содержимого и не меняются, поэтому запись в кеше не устаревает,
+ * ее достаточно убрать при удалении файла.
+ * <br>Вытесняется давно не запрошенный файл (LRU), пока суммарный размер не уложится в бюджет.
+ * Файл попадает в кеш только при втором промахе: одиночные запросы редких файлов
+ * не вытесняют популярные. Для этого недавние промахи запоминаются без содержимого.
+ * <br>Большие файлы не кешируются: их Tomcat и так отдает через sendfile прямо из page cache.
+ * <br>Память прямого буфера освобождается сборщиком мусора после вытеснения,
+ * поэтому бюджет ограничивает то, что держит кеш, а не мгновенное потребление процесса.
+ */
+@Component
+@ThreadSafe
+public class OffHeapFileCache implements MeterBinder {
+
+    private static final int DOORKEEPER_CAPACITY = 10_000;
+
+    private final long maxBytes;
+
+    private final long maxEntryBytes;
+
+    private final LinkedHashMap<String, CachedFile> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LinkedHashMap<String, Boolean> doorkeeper = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > DOORKEEPER_CAPACITY;
+        }
+    };
+
+    private long usedBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    public OffHeapFileCache(@Value("${file.cache.max-bytes}") long maxBytes,
+                            @Value("${file.cache.max-entry-bytes}") long maxEntryBytes) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.min(maxEntryBytes, maxBytes);
+    }
+
+    /**
+     * Попадание в кеш не обращается к файловой системе вовсе,
+     * даже размер и время изменения файла берутся из записи кеша.
+     *
+     * @param path
+     * @return
+     */
+    public synchronized Optional<CachedFile> get(String path) {
+        var cached = entries.get(path);
+        if (cached == null) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        hits.incrementAndGet();
+        return Optional.of(cached);
+    }
+
+    /**
+     * Вызывается после промаха. Файл читается в прямой буфер через FileChannel,
+     * минуя кучу, но только если его уже запрашивали недавно.
+     * Чтение идет без блокировки, чтобы промахи по разным файлам не ждали друг друга.
+     *
+     * @param path
+     * @param size
+     * @param lastModified
+     * @return
+     */
+    public Optional<CachedFile> admit(String path, long size, long lastModified) {
+        synchronized (this) {
+            if (size > maxEntryBytes || doorkeeper.put(path, Boolean.TRUE) == null) {
+                return Optional.empty();
+            }
+        }
+        var loaded = new CachedFile(load(Path.of(path), size), lastModified);
+        synchronized (this) {
+            var cached = entries.get(path);
+            if (cached != null) {
+                return Optional.of(cached);
+            }
+            doorkeeper.remove(path);
+            entries.put(path, loaded);
+            usedBytes += loaded.getSize();
+            evictOverBudget();
+        }
+        return Optional.of(loaded);
+    }
+
+    private ByteBuffer load(Path path, long size) {
+        var buffer = ByteBuffer.allocateDirect((int) size);
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) == -1) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return buffer.flip();
+    }
+
+    private void evictOverBudget() {
+        var iterator = entries.values().iterator();
+        while (usedBytes > maxBytes && iterator.hasNext()) {
+            usedBytes -= iterator.next().getSize();
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Убирает из кеша файл, его уменьшенные копии и сжатые варианты,
+     * пути которых начинаются с пути оригинала.
+     *
+     * @param path
+     */
+    public synchronized void evict(String path) {
+        var iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            var entry = iterator.next();
+            if (entry.getKey().equals(path) || entry.getKey().startsWith(path + "-")
+                    || entry.getKey().startsWith(path + ".")) {
+                usedBytes -= entry.getValue().getSize();
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+        }
+        doorkeeper.remove(path);
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("dreamjob.file.cache.requests", hits, AtomicLong::get)
+                .tag("result", "hit").register(registry);
+        FunctionCounter.builder("dreamjob.file.cache.requests", misses, AtomicLong::get)
+                .tag("result", "miss").register(registry);
+        FunctionCounter.builder("dreamjob.file.cache.evictions", evictions, AtomicLong::get)
+                .register(registry);
+        Gauge.builder("dreamjob.file.cache.size", this, OffHeapFileCache::getUsedBytes)
+                .baseUnit("bytes").register(registry);
+        Gauge.builder("dreamjob.file.cache.entries", this, OffHeapFileCache::getEntryCount)
+                .register(registry);
+    }
+
+    /**
+     * Содержимое файла и время его изменения на момент чтения в кеш.
+     */
+    public static class CachedFile {
+
+        private final ByteBuffer content;
+
+        private final long lastModified;
+
+        CachedFile(ByteBuffer content, long lastModified) {
+            this.content = content;
+            this.lastModified = lastModified;
+        }
+
+        public ByteBufferResource toResource(String description) {
+            return new ByteBufferResource(content, description);
+        }
+
+        public long getSize() {
+            return content.remaining();
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+}
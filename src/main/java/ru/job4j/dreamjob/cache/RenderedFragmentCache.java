@@ -0,0 +1,171 @@
+package ru.job4j.dreamjob.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Кеш отрисованных фрагментов страниц, общих для всех пользователей, например таблицы списка.
+ * Ключ - шаблон, параметры запроса и версия данных, по которым фрагмент отрисован.
+ * <br>Версию дает EntityCache.getVersion: она меняется при каждом изменении записей,
+ * поэтому после изменения фрагмент ищется по новому ключу и отрисовывается заново.
+ * Фрагменты шаблона с прежней версией удаляются, как только сохранен фрагмент с новой.
+ * Пока идет изменение, версия -1 и фрагмент отрисовывается без кеша.
+ * <br>Изменения, сделанные другими экземплярами приложения, версию не меняют,
+ * их фрагмент покажет после cache.fragment.ttl-seconds.
+ * <br>Размер фрагмента считается по два байта на символ, давно не запрошенные вытесняются (LRU),
+ * пока сумма не уложится в cache.fragment.max-bytes.
+ * <br>В кеш нельзя класть то, что зависит от пользователя или сессии:
+ * имя в шапке страницы, токены форм, адреса с jsessionid.
+ */
+@ThreadSafe
+public class RenderedFragmentCache implements MeterBinder {
+
+    private final long maxBytes;
+
+    private final long ttlNanos;
+
+    private final LongSupplier clock;
+
+    private final LinkedHashMap<String, Fragment> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Map<String, Long> versions = new HashMap<>();
+
+    private long usedBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    public RenderedFragmentCache(long maxBytes, long ttlSeconds) {
+        this(maxBytes, ttlSeconds, System::nanoTime);
+    }
+
+    RenderedFragmentCache(long maxBytes, long ttlSeconds, LongSupplier clock) {
+        this.maxBytes = maxBytes;
+        this.ttlNanos = ttlSeconds * 1_000_000_000L;
+        this.clock = clock;
+    }
+
+    /**
+     * Отрисовка идет без блокировки: промахи по разным ключам не ждут друг друга,
+     * а одновременные промахи по одному ключу отрисуют его несколько раз.
+     *
+     * @param template
+     * @param parameters параметры запроса, от которых зависит фрагмент
+     * @param version версия данных или -1, чтобы не кешировать
+     * @param render
+     * @return
+     */
+    public String get(String template, String parameters, long version, Supplier<String> render) {
+        var key = template + "?" + parameters + "#" + version;
+        if (version >= 0) {
+            synchronized (this) {
+                var cached = entries.get(key);
+                if (cached != null && clock.getAsLong() - cached.renderedAt < ttlNanos) {
+                    hits.incrementAndGet();
+                    return cached.html;
+                }
+            }
+        }
+        misses.incrementAndGet();
+        var html = render.get();
+        if (version >= 0) {
+            store(template, version, key, html);
+        }
+        return html;
+    }
+
+    private synchronized void store(String template, long version, String key, String html) {
+        var currentVersion = versions.getOrDefault(template, -1L);
+        if (version < currentVersion) {
+            return;
+        }
+        if (version > currentVersion) {
+            versions.put(template, version);
+            removeOlderVersions(template, version);
+        }
+        var bytes = 2L * html.length();
+        if (bytes > maxBytes) {
+            return;
+        }
+        remove(key);
+        entries.put(key, new Fragment(html, clock.getAsLong()));
+        usedBytes += bytes;
+        var iterator = entries.values().iterator();
+        while (usedBytes > maxBytes && iterator.hasNext()) {
+            usedBytes -= iterator.next().getBytes();
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void removeOlderVersions(String template, long version) {
+        var iterator = entries.entrySet().iterator();
+        var prefix = template + "?";
+        var suffix = "#" + version;
+        while (iterator.hasNext()) {
+            var entry = iterator.next();
+            if (entry.getKey().startsWith(prefix) && !entry.getKey().endsWith(suffix)) {
+                usedBytes -= entry.getValue().getBytes();
+                iterator.remove();
+            }
+        }
+    }
+
+    private void remove(String key) {
+        var removed = entries.remove(key);
+        if (removed != null) {
+            usedBytes -= removed.getBytes();
+        }
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("dreamjob.fragment.cache.requests", hits, AtomicLong::get)
+                .tag("result", "hit").register(registry);
+        FunctionCounter.builder("dreamjob.fragment.cache.requests", misses, AtomicLong::get)
+                .tag("result", "miss").register(registry);
+        FunctionCounter.builder("dreamjob.fragment.cache.evictions", evictions, AtomicLong::get)
+                .register(registry);
+        Gauge.builder("dreamjob.fragment.cache.size", this, RenderedFragmentCache::getUsedBytes)
+                .baseUnit("bytes").register(registry);
+        Gauge.builder("dreamjob.fragment.cache.entries", this, RenderedFragmentCache::getEntryCount)
+                .register(registry);
+    }
+
+    private static class Fragment {
+
+        private final String html;
+
+        private final long renderedAt;
+
+        Fragment(String html, long renderedAt) {
+            this.html = html;
+            this.renderedAt = renderedAt;
+        }
+
+        long getBytes() {
+            return 2L * html.length();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package ru.job4j.dreamjob.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.job4j.dreamjob.cache.EntityCache;
+import ru.job4j.dreamjob.cache.RenderedFragmentCache;
+import ru.job4j.dreamjob.model.Candidate;
+import ru.job4j.dreamjob.model.Vacancy;
+
+/**
+ * Кеши вакансий и кандидатов для SimpleVacancyService и SimpleCandidateService
+ * и кеш отрисованных фрагментов списков для контроллеров.
+ * Бюджет cache.entity.max-bytes и срок жизни записи cache.entity.ttl-seconds у кешей записей свои.
+ * Spring Boot сам регистрирует метрики кешей: все они реализуют MeterBinder.
+ */
+@Configuration
+public class CacheConfiguration {
+
+    @Bean
+    public EntityCache<Vacancy> vacancyCache(@Value("${cache.entity.max-bytes}") long maxBytes,
+                                             @Value("${cache.entity.ttl-seconds}") long ttlSeconds) {
+        return new EntityCache<>("vacancies", maxBytes, ttlSeconds,
+                vacancy -> EntityCache.estimate(vacancy.getTitle(), vacancy.getDescription()));
+    }
+
+    @Bean
+    public EntityCache<Candidate> candidateCache(@Value("${cache.entity.max-bytes}") long maxBytes,
+                                                 @Value("${cache.entity.ttl-seconds}") long ttlSeconds) {
+        return new EntityCache<>("candidates", maxBytes, ttlSeconds,
+                candidate -> EntityCache.estimate(candidate.getName(), candidate.getDescription()));
+    }
+
+    @Bean
+    public RenderedFragmentCache fragmentCache(@Value("${cache.fragment.max-bytes}") long maxBytes,
+                                               @Value("${cache.fragment.ttl-seconds}") long ttlSeconds) {
+        return new RenderedFragmentCache(maxBytes, ttlSeconds);
+    }
+}
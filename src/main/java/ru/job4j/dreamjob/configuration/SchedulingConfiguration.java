@@ -0,0 +1,20 @@
+package ru.job4j.dreamjob.configuration;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Включает обработку аннотации Scheduled: методы с ней
+ * Spring вызывает по расписанию в потоках планировщика.
+ * <br>Пул планировщика задает spring.task.scheduling.pool.size. По умолчанию у Spring он из одного потока,
+ * и долгая пересборка индекса или сверка файлов задерживала бы все остальные задачи,
+ * поэтому размер пула должен быть не меньше числа методов с Scheduled.
+ * <br>Все задачи объявлены с fixedDelay: следующий запуск назначается только после окончания предыдущего,
+ * так что одна задача сама с собой не пересекается, хотя запуски могут идти в разных потоках пула.
+ * Назначение следующего запуска через пул упорядочивает его с предыдущим,
+ * поэтому состояние задачи между запусками не нужно синхронизировать.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfiguration {
+}
@@ -0,0 +1,206 @@
+package ru.job4j.dreamjob.controller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.job4j.dreamjob.dto.UploadChunkDto;
+import ru.job4j.dreamjob.service.UploadService;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+
+/**
+ * Принимает часть загрузки без блокировок: пока в сокете есть данные, блок читается в буфер,
+ * затем пишется на свое смещение через AsynchronousFileChannel, и только после этого читается следующий.
+ * <br>Как и в AsyncFileWriter, события от Tomcat и от потока ввода-вывода обрабатывает step в одном потоке.
+ */
+class AsyncChunkReader extends AsyncTransfer implements ReadListener, CompletionHandler<Integer, Void>, AsyncListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncChunkReader.class);
+
+    private final AsyncContext context;
+
+    private final ServletInputStream in;
+
+    private final HttpServletResponse response;
+
+    private final AsynchronousFileChannel channel;
+
+    private final UploadService uploadService;
+
+    private final UploadChunkDto chunk;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(AsyncFileIo.BUFFER_SIZE);
+
+    private long received;
+
+    private volatile boolean writing;
+
+    private volatile boolean allDataRead;
+
+    private volatile int failedStatus;
+
+    private volatile Throwable failure;
+
+    AsyncChunkReader(AsyncContext context, ServletInputStream in, HttpServletResponse response,
+                     AsynchronousFileChannel channel, UploadService uploadService, UploadChunkDto chunk) {
+        this.context = context;
+        this.in = in;
+        this.response = response;
+        this.channel = channel;
+        this.uploadService = uploadService;
+        this.chunk = chunk;
+    }
+
+    void start() {
+        context.addListener(this);
+        in.setReadListener(this);
+    }
+
+    @Override
+    public void onDataAvailable() {
+        drain();
+    }
+
+    @Override
+    public void onAllDataRead() {
+        allDataRead = true;
+        drain();
+    }
+
+    /**
+     * Читается на один байт больше, чем осталось до конца части:
+     * так лишние байты в теле обнаруживаются, не дожидаясь конца запроса.
+     *
+     * @throws IOException
+     */
+    @Override
+    protected void step() throws IOException {
+        if (failedStatus != 0) {
+            LOG.debug("Прием части {} загрузки {} прерван", chunk.getNumber(), chunk.getSessionId(), failure);
+            finish(failedStatus);
+            return;
+        }
+        while (!writing) {
+            if (allDataRead) {
+                complete();
+                return;
+            }
+            if (!in.isReady()) {
+                return;
+            }
+            var limit = (int) Math.min(buffer.capacity(), chunk.getLength() - received + 1);
+            var read = in.read(buffer.array(), 0, limit);
+            if (read < 0) {
+                return;
+            }
+            if (received + read > chunk.getLength()) {
+                finish(HttpServletResponse.SC_BAD_REQUEST);
+                return;
+            }
+            writing = true;
+            buffer.clear().limit(read);
+            channel.write(buffer, chunk.getOffset() + received, null, this);
+        }
+    }
+
+    /**
+     * Блок может записаться не целиком, тогда дописывается остаток.
+     *
+     * @param written
+     * @param attachment
+     */
+    @Override
+    public void completed(Integer written, Void attachment) {
+        received += written;
+        if (buffer.hasRemaining()) {
+            channel.write(buffer, chunk.getOffset() + received, null, this);
+            return;
+        }
+        writing = false;
+        drain();
+    }
+
+    @Override
+    public void failed(Throwable exc, Void attachment) {
+        failWith(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, exc);
+        writing = false;
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        failWith(HttpServletResponse.SC_BAD_REQUEST, throwable);
+        drain();
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        failWith(HttpServletResponse.SC_REQUEST_TIMEOUT, null);
+        drain();
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        onError(event.getThrowable());
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+    }
+
+    @Override
+    protected void fail(Throwable e) {
+        LOG.warn("Не удалось принять часть {} загрузки {}", chunk.getNumber(), chunk.getSessionId(), e);
+        finish(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+    }
+
+    private void failWith(int status, Throwable throwable) {
+        failure = throwable;
+        failedStatus = status;
+    }
+
+    /**
+     * Все тело прочитано и записано: часть засчитывается, только если длина совпала
+     * и байты сброшены на диск.
+     *
+     * @throws IOException
+     */
+    private void complete() throws IOException {
+        if (received != chunk.getLength()) {
+            finish(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        channel.force(false);
+        finish(HttpServletResponse.SC_NO_CONTENT);
+    }
+
+    private void finish(int status) {
+        markDone();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.warn("Не удалось закрыть файл загрузки {}", chunk.getSessionId(), e);
+        }
+        try {
+            uploadService.endChunk(chunk, status == HttpServletResponse.SC_NO_CONTENT);
+            response.setStatus(status);
+        } catch (RuntimeException e) {
+            LOG.warn("Не удалось записать часть {} загрузки {}", chunk.getNumber(), chunk.getSessionId(), e);
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        } finally {
+            context.complete();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package ru.job4j.dreamjob.controller;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.job4j.dreamjob.dto.UploadChunkDto;
+import ru.job4j.dreamjob.service.UploadService;
+
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Неблокирующая передача файлов: неблокирующий ввод-вывод Servlet 3.1
+ * (WriteListener и ReadListener) со стороны клиента и AsynchronousFileChannel со стороны диска.
+ * <br>При обычной передаче поток Tomcat занят все время, пока медленный клиент принимает файл.
+ * Здесь поток запроса только запускает передачу и сразу освобождается.
+ * Дальше блок файла читается в file.async.io-threads потоках ввода-вывода,
+ * а в сокет он пишется, когда Tomcat сообщает, что сокет готов.
+ * Поэтому тысячи медленных передач обслуживает небольшой пул потоков.
+ * <br>Используется для тел не меньше file.async.min-bytes. Меньшие файлы целиком
+ * помещаются в буфер сокета, и для них обычная запись дешевле.
+ */
+@Component
+public class AsyncFileIo {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Set<StandardOpenOption> READ = Set.of(StandardOpenOption.READ);
+
+    private static final Set<StandardOpenOption> WRITE = Set.of(StandardOpenOption.WRITE);
+
+    private final boolean enabled;
+
+    private final long minBytes;
+
+    private final long timeoutMillis;
+
+    private final ExecutorService executor;
+
+    public AsyncFileIo(@Value("${file.async.enabled}") boolean enabled,
+                       @Value("${file.async.min-bytes}") long minBytes,
+                       @Value("${file.async.io-threads}") int ioThreads,
+                       @Value("${file.async.timeout-millis}") long timeoutMillis) {
+        this.enabled = enabled;
+        this.minBytes = minBytes;
+        this.timeoutMillis = timeoutMillis;
+        var threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(ioThreads, runnable -> {
+            var thread = new Thread(runnable, "file-io-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * HEAD не передает тело, а без поддержки асинхронной обработки
+     * у какого-либо фильтра запрос нельзя перевести в асинхронный режим.
+     *
+     * @param request
+     * @param length
+     * @return
+     */
+    public boolean canTransfer(HttpServletRequest request, long length) {
+        return enabled && request.isAsyncSupported() && !"HEAD".equals(request.getMethod()) && length >= minBytes;
+    }
+
+    /**
+     * Заголовки ответа должны быть выставлены до вызова. После вызова ответ принадлежит передаче,
+     * контроллер возвращает null.
+     *
+     * @param request
+     * @param response
+     * @param path
+     * @param position
+     * @param count
+     * @throws IOException
+     */
+    public void send(HttpServletRequest request, HttpServletResponse response, Path path, long position, long count)
+            throws IOException {
+        var channel = AsynchronousFileChannel.open(path, READ, executor);
+        try {
+            var context = request.startAsync(request, response);
+            context.setTimeout(timeoutMillis);
+            new AsyncFileWriter(context, response.getOutputStream(), channel, position, count).start();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Принимает тело запроса в открытую часть загрузки. Ответ 204 отправляется,
+     * когда часть записана и сброшена на диск, и 400, если тело не совпало по длине.
+     *
+     * @param request
+     * @param response
+     * @param uploadService
+     * @param chunk
+     * @throws IOException
+     */
+    public void receive(HttpServletRequest request, HttpServletResponse response,
+                        UploadService uploadService, UploadChunkDto chunk) throws IOException {
+        var channel = AsynchronousFileChannel.open(chunk.getPath(), WRITE, executor);
+        try {
+            var context = request.startAsync(request, response);
+            context.setTimeout(timeoutMillis);
+            new AsyncChunkReader(context, request.getInputStream(), response, channel, uploadService, chunk).start();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,157 @@
+package ru.job4j.dreamjob.controller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Передает окно файла клиенту без блокировок: пока сокет готов, пишется очередной блок,
+ * а когда блок кончился, следующий читается из AsynchronousFileChannel.
+ * <br>Буфер у передачи один, поэтому чтение из файла и запись в сокет никогда не идут одновременно:
+ * пока блок читается, step не трогает буфер.
+ */
+class AsyncFileWriter extends AsyncTransfer implements WriteListener, CompletionHandler<Integer, Void>, AsyncListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncFileWriter.class);
+
+    private final AsyncContext context;
+
+    private final ServletOutputStream out;
+
+    private final AsynchronousFileChannel channel;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(AsyncFileIo.BUFFER_SIZE).flip();
+
+    private final long end;
+
+    private long position;
+
+    private volatile boolean reading;
+
+    private volatile Throwable failure;
+
+    AsyncFileWriter(AsyncContext context, ServletOutputStream out, AsynchronousFileChannel channel,
+                    long position, long count) {
+        this.context = context;
+        this.out = out;
+        this.channel = channel;
+        this.position = position;
+        this.end = position + count;
+    }
+
+    /**
+     * Tomcat сразу вызывает onWritePossible, если сокет готов к записи.
+     */
+    void start() {
+        context.addListener(this);
+        out.setWriteListener(this);
+    }
+
+    @Override
+    public void onWritePossible() {
+        drain();
+    }
+
+    /**
+     * Запись идет, пока isReady возвращает true. Когда сокет заполнен, метод выходит,
+     * и Tomcat вызовет onWritePossible, как только клиент примет данные.
+     *
+     * @throws IOException
+     */
+    @Override
+    protected void step() throws IOException {
+        if (failure != null) {
+            fail(failure);
+            return;
+        }
+        while (!reading && out.isReady()) {
+            if (buffer.hasRemaining()) {
+                out.write(buffer.array(), buffer.position(), buffer.remaining());
+                buffer.position(buffer.limit());
+            } else if (position >= end) {
+                finish();
+                return;
+            } else {
+                reading = true;
+                buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+                channel.read(buffer, position, null, this);
+            }
+        }
+    }
+
+    @Override
+    public void completed(Integer read, Void attachment) {
+        if (read < 0) {
+            failure = new EOFException("Файл короче заявленной длины");
+        } else {
+            position += read;
+            buffer.flip();
+        }
+        reading = false;
+        drain();
+    }
+
+    @Override
+    public void failed(Throwable exc, Void attachment) {
+        failure = exc;
+        reading = false;
+        drain();
+    }
+
+    /**
+     * Клиент закрыл соединение или запись в сокет не удалась.
+     *
+     * @param throwable
+     */
+    @Override
+    public void onError(Throwable throwable) {
+        failure = throwable;
+        drain();
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        failure = new TimeoutException("Передача файла не завершилась за отведенное время");
+        drain();
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        onError(event.getThrowable());
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+    }
+
+    @Override
+    protected void fail(Throwable e) {
+        LOG.debug("Передача файла прервана", e);
+        finish();
+    }
+
+    private void finish() {
+        markDone();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.warn("Не удалось закрыть файл", e);
+        }
+        context.complete();
+    }
+}
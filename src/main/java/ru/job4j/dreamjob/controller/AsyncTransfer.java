@@ -0,0 +1,63 @@
+package ru.job4j.dreamjob.controller;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Общая часть AsyncFileWriter и AsyncChunkReader.
+ * <br>События приходят из двух потоков: от Tomcat (сокет готов, тело прочитано, ошибка, таймаут)
+ * и из потока ввода-вывода (блок файла прочитан или записан). Брать здесь монитор нельзя:
+ * Tomcat вызывает слушатели, удерживая блокировку сокета, а isReady из потока ввода-вывода
+ * ждет ту же блокировку, и два потока блокируют друг друга.
+ * <br>Поэтому событие только отмечается в полях и счетчике, а обрабатывает их тот поток,
+ * который первым увеличил счетчик. Он вызывает step, пока счетчик не обнулится,
+ * так что step никогда не выполняется одновременно в двух потоках,
+ * а остальные потоки сразу возвращаются.
+ */
+abstract class AsyncTransfer {
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private boolean done;
+
+    /**
+     * Вызывается после каждого события.
+     */
+    protected void drain() {
+        if (pending.getAndIncrement() != 0) {
+            return;
+        }
+        var missed = 1;
+        while (missed != 0) {
+            if (!done) {
+                try {
+                    step();
+                } catch (IOException | RuntimeException e) {
+                    fail(e);
+                }
+            }
+            missed = pending.addAndGet(-missed);
+        }
+    }
+
+    /**
+     * Выполняет все, что возможно при текущем состоянии, и выходит, не дожидаясь следующего события.
+     *
+     * @throws IOException
+     */
+    protected abstract void step() throws IOException;
+
+    /**
+     * Завершает передачу с ошибкой. Вызывается из step или, если step бросил исключение, из drain.
+     *
+     * @param e
+     */
+    protected abstract void fail(Throwable e);
+
+    /**
+     * После этого step больше не вызывается. Вызывается только из step или fail.
+     */
+    protected void markDone() {
+        done = true;
+    }
+}
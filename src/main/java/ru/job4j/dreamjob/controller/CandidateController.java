@@ -5,10 +5,16 @@ import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
-import ru.job4j.dreamjob.dto.FileDto;
+import ru.job4j.dreamjob.cache.RenderedFragmentCache;
+import ru.job4j.dreamjob.dto.FileStreamDto;
+import ru.job4j.dreamjob.dto.ListingFilterDto;
 import ru.job4j.dreamjob.model.Candidate;
+import ru.job4j.dreamjob.model.File;
 import ru.job4j.dreamjob.service.CandidateService;
 import ru.job4j.dreamjob.service.CityService;
+import ru.job4j.dreamjob.service.FileService;
+
+import java.util.Map;
 
 @Controller
 @RequestMapping("/candidates")
@@ -16,18 +22,74 @@ import ru.job4j.dreamjob.service.CityService;
 public class CandidateController {
     private final CandidateService candidateService;
     private final CityService cityService;
+    private final FileService fileService;
+    private final RenderedFragmentCache fragmentCache;
+    private final FragmentRenderer fragmentRenderer;
 
-    public CandidateController(CandidateService candidateService, CityService cityService) {
+    public CandidateController(CandidateService candidateService, CityService cityService, FileService fileService,
+                               RenderedFragmentCache fragmentCache, FragmentRenderer fragmentRenderer) {
         this.candidateService = candidateService;
         this.cityService = cityService;
+        this.fileService = fileService;
+        this.fragmentCache = fragmentCache;
+        this.fragmentRenderer = fragmentRenderer;
     }
 
+    /**
+     * Список выводится страницами по listing.page-size записей.
+     * after и before - курсоры из ссылок на следующую и предыдущую страницы.
+     * cityId и visible отбирают записи одного города и только видимые или только скрытые.
+     * Рядом с каждым городом в фильтре выводится число записей в нем с учетом видимости.
+     * <br>Все, кроме шапки, одинаково для всех пользователей и берется из RenderedFragmentCache:
+     * пока кандидаты не менялись, повторный запрос с теми же параметрами
+     * не обращается ни к базе, ни к шаблону candidates/listing. Шапку с именем пользователя
+     * отрисовывает candidates/list при каждом запросе.
+     *
+     * @param model
+     * @param after
+     * @param before
+     * @param cityId
+     * @param visible
+     * @return
+     */
     @GetMapping
-    public String getAll(Model model) {
-        model.addAttribute("candidates", candidateService.findAll());
+    public String getAll(Model model, @RequestParam(required = false) String after,
+                         @RequestParam(required = false) String before,
+                         @RequestParam(required = false) Integer cityId,
+                         @RequestParam(required = false) Boolean visible) {
+        var parameters = "after=" + after + "&before=" + before + "&cityId=" + cityId + "&visible=" + visible;
+        var listing = fragmentCache.get("candidates/listing", parameters, candidateService.getVersion(), () -> {
+            var filter = new ListingFilterDto(cityId, visible);
+            var page = candidateService.findPage(filter, after, before);
+            return fragmentRenderer.render("candidates/listing", Map.of(
+                    "candidates", page.getItems(),
+                    "page", page,
+                    "filter", filter,
+                    "cities", cityService.findAll(),
+                    "cityCounts", candidateService.countByCity(visible)));
+        });
+        model.addAttribute("listing", listing);
         return "candidates/list";
     }
 
+    /**
+     * Результаты поиска тоже выводятся страницами по listing.page-size записей,
+     * page - номер страницы, начиная с 1.
+     *
+     * @param model
+     * @param query
+     * @param page
+     * @return
+     */
+    @GetMapping("/search")
+    public String search(Model model, @RequestParam(required = false) String query,
+                         @RequestParam(defaultValue = "1") int page) {
+        var searchPage = candidateService.search(query, page);
+        model.addAttribute("candidates", searchPage.getItems());
+        model.addAttribute("page", searchPage);
+        return "candidates/search";
+    }
+
     @GetMapping("/create")
     public String getCreationPage(Model model) {
         model.addAttribute("cities", cityService.findAll());
@@ -37,7 +99,7 @@ public class CandidateController {
     @PostMapping("/create")
     public String create(@ModelAttribute Candidate candidate, @RequestParam MultipartFile file, Model model) {
         try {
-            candidateService.save(candidate, new FileDto(file.getOriginalFilename(), file.getBytes()));
+            candidateService.save(candidate, new FileStreamDto(file.getOriginalFilename(), file.getSize(), file));
             return "redirect:/candidates";
         } catch (Exception exception) {
             model.addAttribute("message", exception.getMessage());
@@ -62,6 +124,8 @@ public class CandidateController {
         }
         model.addAttribute("cities", cityService.findAll());
         model.addAttribute("candidate", candidateOptional.get());
+        model.addAttribute("fileHash", fileService.findById(candidateOptional.get().getFileId())
+                .map(File::getContentHash).orElse(null));
         return "candidates/one";
     }
 
@@ -78,7 +142,7 @@ public class CandidateController {
     public String update(@ModelAttribute Candidate candidate, @RequestParam MultipartFile file, Model model) {
         try {
             var isUpdated = candidateService.update(candidate,
-                    new FileDto(file.getOriginalFilename(), file.getBytes()));
+                    new FileStreamDto(file.getOriginalFilename(), file.getSize(), file));
             if (!isUpdated) {
                 model.addAttribute("message",
                         "Кандидат с указанным идентификатором не найден");
@@ -0,0 +1,156 @@
+package ru.job4j.dreamjob.controller;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.job4j.dreamjob.dto.ListingFilterDto;
+import ru.job4j.dreamjob.importer.ImportFormat;
+import ru.job4j.dreamjob.importer.RecordWriter;
+import ru.job4j.dreamjob.service.CandidateService;
+import ru.job4j.dreamjob.service.VacancyService;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Выгрузка потоком: GET /export/vacancies и GET /export/candidates.
+ * Параметры: format - csv (по умолчанию) или ndjson, gzip=true - файл сжимается в .gz,
+ * cityId и visible - тот же фильтр, что у списка.
+ * <br>Записи читаются из базы курсором и пишутся прямо в ответ, поэтому память не зависит от их числа.
+ * Столбцы совпадают с импортом, файл можно загрузить обратно: id, дата и файл при импорте не учитываются.
+ * <br>Заголовки уходят с первыми записями, поэтому ошибка посреди выгрузки не меняет статус,
+ * а обрывает ответ: клиент увидит разрыв соединения, а не полный файл.
+ * <br>Пока идет выгрузка, она держит соединение из пула и открытую транзакцию, а скорость задает клиент:
+ * медленные скачивания могли бы занять весь пул, и остальные страницы ждали бы соединения.
+ * Поэтому одновременно идет не больше export.max-concurrent выгрузок, следующая сразу получает 503
+ * с Retry-After, а выгрузка дольше export.timeout-seconds обрывается на очередной записи,
+ * транзакция откатывается и соединение возвращается в пул.
+ * От клиента, который совсем перестал читать, запись в ответ отцепляет таймаут соединения Tomcat.
+ */
+@RestController
+@RequestMapping("/export")
+public class ExportController {
+
+    private static final List<String> VACANCY_COLUMNS =
+            List.of("id", "title", "description", "creationDate", "cityId", "visible", "fileId");
+
+    private static final List<String> CANDIDATE_COLUMNS =
+            List.of("id", "name", "description", "creationDate", "cityId", "visible", "fileId");
+
+    private final VacancyService vacancyService;
+
+    private final CandidateService candidateService;
+
+    private final Semaphore exports;
+
+    private final long timeoutNanos;
+
+    private final String retryAfterSeconds;
+
+    public ExportController(VacancyService vacancyService, CandidateService candidateService,
+                            @Value("${export.max-concurrent}") int maxConcurrent,
+                            @Value("${export.timeout-seconds}") long timeoutSeconds,
+                            @Value("${export.retry-after-seconds}") int retryAfterSeconds) {
+        this.vacancyService = vacancyService;
+        this.candidateService = candidateService;
+        this.exports = new Semaphore(maxConcurrent);
+        this.timeoutNanos = TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        this.retryAfterSeconds = String.valueOf(retryAfterSeconds);
+    }
+
+    @GetMapping("/vacancies")
+    public void exportVacancies(@RequestParam(defaultValue = "csv") String format,
+                                @RequestParam(defaultValue = "false") boolean gzip,
+                                @RequestParam(required = false) Integer cityId,
+                                @RequestParam(required = false) Boolean visible,
+                                HttpServletResponse response) throws IOException {
+        var filter = new ListingFilterDto(cityId, visible);
+        export(response, "vacancies", format, gzip, VACANCY_COLUMNS, records -> vacancyService.exportAll(filter,
+                vacancy -> records.write(vacancy.getId(), vacancy.getTitle(), vacancy.getDescription(),
+                        vacancy.getCreationDate(), vacancy.getCityId(), vacancy.getVisible(),
+                        fileId(vacancy.getFileId()))));
+    }
+
+    @GetMapping("/candidates")
+    public void exportCandidates(@RequestParam(defaultValue = "csv") String format,
+                                 @RequestParam(defaultValue = "false") boolean gzip,
+                                 @RequestParam(required = false) Integer cityId,
+                                 @RequestParam(required = false) Boolean visible,
+                                 HttpServletResponse response) throws IOException {
+        var filter = new ListingFilterDto(cityId, visible);
+        export(response, "candidates", format, gzip, CANDIDATE_COLUMNS, records -> candidateService.exportAll(filter,
+                candidate -> records.write(candidate.getId(), candidate.getName(), candidate.getDescription(),
+                        candidate.getCreationDate(), candidate.getCityId(), candidate.getVisible(),
+                        fileId(candidate.getFileId()))));
+    }
+
+    private void export(HttpServletResponse response, String name, String formatName, boolean gzip,
+                        List<String> columns, Consumer<RecordWriter> export) throws IOException {
+        var formatOptional = ImportFormat.ofName(formatName);
+        if (formatOptional.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Формат выгрузки должен быть csv или ndjson");
+            return;
+        }
+        if (!exports.tryAcquire()) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, retryAfterSeconds);
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Слишком много выгрузок, повторите позже");
+            return;
+        }
+        try {
+            var format = formatOptional.get();
+            var fileName = name + "." + format.getExtension() + (gzip ? ".gz" : "");
+            response.setContentType(gzip ? "application/gzip" : format.getContentType() + ";charset=UTF-8");
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"");
+            OutputStream out = response.getOutputStream();
+            if (gzip) {
+                out = new GZIPOutputStream(out, 8192);
+            }
+            try (var writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+                var records = withDeadline(format.create(writer, columns), System.nanoTime() + timeoutNanos);
+                export.accept(records);
+                records.flush();
+            }
+        } finally {
+            exports.release();
+        }
+    }
+
+    /**
+     * @param records
+     * @param deadline значение System.nanoTime, после которого следующая запись обрывает выгрузку
+     * @return
+     */
+    private RecordWriter withDeadline(RecordWriter records, long deadline) {
+        return new RecordWriter() {
+            @Override
+            public void write(Object... values) {
+                if (System.nanoTime() - deadline > 0) {
+                    throw new IllegalStateException(String.format("Выгрузка не уложилась в %d с",
+                            TimeUnit.NANOSECONDS.toSeconds(timeoutNanos)));
+                }
+                records.write(values);
+            }
+
+            @Override
+            public void flush() {
+                records.flush();
+            }
+        };
+    }
+
+    private static Integer fileId(int fileId) {
+        return fileId == 0 ? null : fileId;
+    }
+}
@@ -1,35 +1,374 @@
 package ru.job4j.dreamjob.controller;
 
+import org.springframework.core.io.support.ResourceRegion;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.ResourceRegionHttpMessageConverter;
+import org.springframework.http.server.ServletServerHttpResponse;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import ru.job4j.dreamjob.dto.FileResourceDto;
 import ru.job4j.dreamjob.service.FileService;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+
 @RestController
 @RequestMapping("/files")
 public class FileController {
 
+    /**
+     * Атрибуты запроса, через которые Tomcat принимает файл для отправки
+     * системным вызовом sendfile, минуя память приложения.
+     */
+    static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    /**
+     * Маленькие файлы дешевле отправить обычной записью в поток,
+     * порог совпадает со значением по умолчанию DefaultServlet в Tomcat.
+     */
+    private static final long SENDFILE_MIN_SIZE = 48 * 1024;
+
+    private static final String REVALIDATE = "no-cache";
+
+    private static final String IMMUTABLE = "max-age=31536000, immutable";
+
     private final FileService fileService;
 
-    public FileController(FileService fileService) {
+    private final AsyncFileIo asyncFileIo;
+
+    private final ResourceRegionHttpMessageConverter regionConverter = new ResourceRegionHttpMessageConverter();
+
+    public FileController(FileService fileService, AsyncFileIo asyncFileIo) {
         this.fileService = fileService;
+        this.asyncFileIo = asyncFileIo;
     }
 
     /**
      * Если файл не найден по id, то клиенту возвращается статус 404,
      * а если найден, то статус 200 с телом ответа в виде содержимого файла.
+     * <br>По одному и тому же id всегда отдается одно и то же содержимое,
+     * но браузер должен каждый раз сверить ETag (Cache-Control: no-cache).
+     * Повторный запрос получает 304 без чтения файла.
+     * <br>Параметр size просит уменьшенную копию изображения не уже указанной ширины.
+     * Без него сжатый вариант файла выбирается по заголовку Accept-Encoding.
      *
      * @param id
+     * @param size
+     * @param request
+     * @param response
      * @return
      */
     @GetMapping("/{id}")
-    public ResponseEntity<?> getById(@PathVariable int id) {
-        var contentOptional = fileService.getFileById(id);
-        if (contentOptional.isEmpty()) {
+    public ResponseEntity<?> getById(@PathVariable int id, @RequestParam(required = false) Integer size,
+                                     HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Optional<FileResourceDto> resourceOptional;
+        var encodings = getAcceptedEncodings(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        if (size != null) {
+            resourceOptional = fileService.getFileResourceById(id, size);
+        } else if (encodings.isEmpty()) {
+            resourceOptional = fileService.getFileResourceById(id);
+        } else {
+            resourceOptional = fileService.getFileResourceById(id, encodings);
+        }
+        return getFile(resourceOptional, REVALIDATE, request, response);
+    }
+
+    /**
+     * Ссылка по хешу содержимого никогда не указывает на другие байты,
+     * поэтому браузер может хранить ответ год и не перепроверять его вовсе.
+     * <br>Исключение - запрос копии, которая еще не построена: вместо нее отдается оригинал,
+     * и его нельзя кешировать навсегда, иначе браузер так и не получит копию.
+     *
+     * @param contentHash
+     * @param size
+     * @param request
+     * @param response
+     * @return
+     */
+    @GetMapping("/hash/{contentHash}")
+    public ResponseEntity<?> getByHash(@PathVariable String contentHash, @RequestParam(required = false) Integer size,
+                                       HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (size == null) {
+            var encodings = getAcceptedEncodings(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+            var resourceOptional = encodings.isEmpty()
+                    ? fileService.getFileResourceByHash(contentHash)
+                    : fileService.getFileResourceByHash(contentHash, encodings);
+            return getFile(resourceOptional, IMMUTABLE, request, response);
+        }
+        var resourceOptional = fileService.getFileResourceByHash(contentHash, size);
+        var cacheControl = resourceOptional.map(FileResourceDto::isThumbnail).orElse(false) ? IMMUTABLE : REVALIDATE;
+        return getFile(resourceOptional, cacheControl, request, response);
+    }
+
+    /**
+     * Кодировки из Accept-Encoding в порядке убывания веса q.
+     * Кодировки с q=0 клиент явно отклоняет, они не попадают в список,
+     * как и identity: несжатый файл отдается и без нее.
+     *
+     * @param acceptEncoding
+     * @return
+     */
+    static List<String> getAcceptedEncodings(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isBlank()) {
+            return List.of();
+        }
+        var weights = new LinkedHashMap<String, Double>();
+        for (var part : acceptEncoding.split(",")) {
+            var tokens = part.split(";");
+            var encoding = tokens[0].trim().toLowerCase();
+            var weight = 1.0;
+            for (var i = 1; i < tokens.length; i++) {
+                var parameter = tokens[i].trim();
+                if (parameter.startsWith("q=")) {
+                    weight = parseWeight(parameter.substring(2));
+                }
+            }
+            if (!encoding.isEmpty() && !"identity".equals(encoding) && weight > 0) {
+                weights.put(encoding, weight);
+            }
+        }
+        var encodings = new ArrayList<>(weights.keySet());
+        encodings.sort(Comparator.comparing(weights::get).reversed());
+        return encodings;
+    }
+
+    private static double parseWeight(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Содержимое не загружается в память целиком.
+     * Если Tomcat поддерживает sendfile, то файл передается ему через атрибуты запроса
+     * и копируется ядром прямо в сокет, тело ответа при этом пустое.
+     * Если sendfile недоступен, например под TLS, то большой файл передает AsyncFileIo,
+     * не занимая поток Tomcat на время передачи.
+     * Иначе Spring пишет Resource в ответ потоком небольшими блоками.
+     * <br>Если If-None-Match совпадает с ETag, то клиент получает 304 без тела.
+     * <br>Если клиент прислал заголовок Range, то отдается только запрошенная часть файла
+     * со статусом 206. If-Range позволяет докачать файл, только если он не изменился,
+     * иначе заголовок Range игнорируется и файл отдается целиком.
+     *
+     * @param resourceOptional
+     * @param cacheControl
+     * @param request
+     * @param response
+     * @return
+     * @throws IOException
+     */
+    private ResponseEntity<?> getFile(Optional<FileResourceDto> resourceOptional, String cacheControl,
+                                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (resourceOptional.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
-        return ResponseEntity.ok(contentOptional.get().getContent());
+        var file = resourceOptional.get();
+        var headers = getHeaders(file, cacheControl);
+        if (isNotModified(request.getHeader(HttpHeaders.IF_NONE_MATCH), headers.getETag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+        }
+        var range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null && isRangeValid(request.getHeader(HttpHeaders.IF_RANGE), headers)) {
+            return getRanges(range, file, headers, request, response);
+        }
+        var entity = ResponseEntity.ok()
+                .headers(headers)
+                .contentType(file.getMediaType())
+                .contentLength(file.getContentLength());
+        if (canSendFile(request, file, file.getContentLength())) {
+            sendFile(request, file, 0, file.getContentLength());
+            return entity.build();
+        }
+        if (canSendAsync(request, file, file.getContentLength())) {
+            sendAsync(request, response, entity.build(), file, 0, file.getContentLength());
+            return null;
+        }
+        return entity.body(file.getResource());
+    }
+
+    private HttpHeaders getHeaders(FileResourceDto file, String cacheControl) {
+        var headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        headers.setCacheControl(cacheControl);
+        headers.setLastModified(file.getLastModified());
+        if (file.getContentHash() != null) {
+            headers.setETag("\"" + file.getContentHash() + "\"");
+        }
+        if (file.getContentEncoding() != null) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, file.getContentEncoding());
+        }
+        if (file.hasVariants()) {
+            headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+        }
+        return headers;
+    }
+
+    /**
+     * If-None-Match может перечислять несколько ETag через запятую или содержать "*".
+     * Для этого заголовка слабые ETag (W/) сравниваются так же, как сильные.
+     *
+     * @param ifNoneMatch
+     * @param eTag
+     * @return
+     */
+    private boolean isNotModified(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null || eTag == null) {
+            return false;
+        }
+        for (var candidate : ifNoneMatch.split(",")) {
+            var value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if ("*".equals(value) || eTag.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * HttpRange разбирает заголовок и переводит диапазоны в ResourceRegion.
+     * Если диапазон не разобрать или он лежит за концом файла,
+     * то HttpRange бросает IllegalArgumentException и клиент получает 416.
+     * <br>Части файла пишутся в ответ через ResourceRegionHttpMessageConverter:
+     * он читает только нужное окно файла, а для нескольких диапазонов
+     * формирует ответ multipart/byteranges.
+     * Тело ответа записано напрямую, поэтому метод возвращает null.
+     *
+     * @param range
+     * @param file
+     * @param request
+     * @param response
+     * @return
+     * @throws IOException
+     */
+    private ResponseEntity<?> getRanges(String range, FileResourceDto file, HttpHeaders headers,
+                                        HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        List<ResourceRegion> regions;
+        try {
+            regions = HttpRange.toResourceRegions(HttpRange.parseRanges(range), file.getResource());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + file.getContentLength())
+                    .build();
+        }
+        if (regions.size() == 1) {
+            var region = regions.get(0);
+            var end = region.getPosition() + region.getCount();
+            var entity = ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                    .headers(headers)
+                    .header(HttpHeaders.CONTENT_RANGE,
+                            "bytes " + region.getPosition() + "-" + (end - 1) + "/" + file.getContentLength())
+                    .contentType(file.getMediaType())
+                    .contentLength(region.getCount())
+                    .build();
+            if (canSendFile(request, file, region.getCount())) {
+                sendFile(request, file, region.getPosition(), end);
+                return entity;
+            }
+            if (canSendAsync(request, file, region.getCount())) {
+                sendAsync(request, response, entity, file, region.getPosition(), region.getCount());
+                return null;
+            }
+        }
+        var outputMessage = new ServletServerHttpResponse(response);
+        outputMessage.setStatusCode(HttpStatus.PARTIAL_CONTENT);
+        outputMessage.getHeaders().putAll(headers);
+        if (regions.size() > 1) {
+            regionConverter.write(regions, null, outputMessage);
+        } else {
+            regionConverter.write(regions.get(0), file.getMediaType(), outputMessage);
+        }
+        return null;
+    }
+
+    /**
+     * If-Range содержит либо ETag, либо дату последнего изменения файла.
+     * ETag здесь сравнивается строго: слабый ETag не подтверждает,
+     * что байты файла совпадают, поэтому с ним Range игнорируется.
+     * Дата сравнивается с точностью до секунды, как она передается в HTTP.
+     *
+     * @param ifRange
+     * @param headers
+     * @return
+     */
+    private boolean isRangeValid(String ifRange, HttpHeaders headers) {
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(headers.getETag());
+        }
+        try {
+            var date = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return date.toEpochSecond() == headers.getLastModified() / 1000;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private boolean canSendFile(HttpServletRequest request, FileResourceDto file, long length) {
+        return Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))
+                && !"HEAD".equals(request.getMethod())
+                && file.getResource().isFile()
+                && length >= SENDFILE_MIN_SIZE;
+    }
+
+    private void sendFile(HttpServletRequest request, FileResourceDto file, long start, long end) {
+        request.setAttribute(SENDFILE_FILENAME, getAbsolutePath(file));
+        request.setAttribute(SENDFILE_START, start);
+        request.setAttribute(SENDFILE_END, end);
+    }
+
+    private boolean canSendAsync(HttpServletRequest request, FileResourceDto file, long length) {
+        return file.getResource().isFile() && asyncFileIo.canTransfer(request, length);
+    }
+
+    /**
+     * Заголовки пишутся в ответ сразу, тело передается уже после возврата из контроллера.
+     *
+     * @param request
+     * @param response
+     * @param entity
+     * @param file
+     * @param position
+     * @param count
+     * @throws IOException
+     */
+    private void sendAsync(HttpServletRequest request, HttpServletResponse response, ResponseEntity<?> entity,
+                           FileResourceDto file, long position, long count) throws IOException {
+        response.setStatus(entity.getStatusCodeValue());
+        entity.getHeaders().forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+        asyncFileIo.send(request, response, file.getResource().getFile().toPath(), position, count);
+    }
+
+    private String getAbsolutePath(FileResourceDto file) {
+        try {
+            return file.getResource().getFile().getAbsolutePath();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,80 @@
+package ru.job4j.dreamjob.controller;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.WebContext;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Отрисовывает шаблон Thymeleaf в строку, чтобы ее можно было положить в RenderedFragmentCache
+ * и вставить в страницу через th:utext.
+ * <br>Thymeleaf хранит переменные веб-контекста в атрибутах запроса, поэтому запрос подменяется
+ * оберткой со своими атрибутами: фрагмент видит только переданные переменные,
+ * а не пользователя из SessionFilter, и не оставляет свои переменные в настоящем запросе.
+ * От настоящего запроса нужен только путь приложения для ссылок @{...}.
+ * Ответ подменяется, чтобы ссылки не получили ;jsessionid новой сессии этого пользователя.
+ */
+@Component
+public class FragmentRenderer {
+
+    private final ITemplateEngine templateEngine;
+
+    private final ServletContext servletContext;
+
+    public FragmentRenderer(ITemplateEngine templateEngine, ServletContext servletContext) {
+        this.templateEngine = templateEngine;
+        this.servletContext = servletContext;
+    }
+
+    public String render(String template, Map<String, Object> variables) {
+        var attributes = (ServletRequestAttributes) RequestContextHolder.currentRequestAttributes();
+        var response = new HttpServletResponseWrapper(attributes.getResponse()) {
+            @Override
+            public String encodeURL(String url) {
+                return url;
+            }
+        };
+        var request = new IsolatedRequest(attributes.getRequest());
+        var context = new WebContext(request, response, servletContext, request.getLocale(), variables);
+        return templateEngine.process(template, context);
+    }
+
+    private static class IsolatedRequest extends HttpServletRequestWrapper {
+
+        private final Map<String, Object> attributes = new HashMap<>();
+
+        IsolatedRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public Enumeration<String> getAttributeNames() {
+            return Collections.enumeration(attributes.keySet());
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+            attributes.put(name, value);
+        }
+
+        @Override
+        public void removeAttribute(String name) {
+            attributes.remove(name);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package ru.job4j.dreamjob.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.job4j.dreamjob.dto.ImportReportDto;
+import ru.job4j.dreamjob.importer.ImportFormat;
+import ru.job4j.dreamjob.importer.RecordReader;
+import ru.job4j.dreamjob.service.CandidateService;
+import ru.job4j.dreamjob.service.VacancyService;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Массовый импорт без вложений: POST /import/vacancies и POST /import/candidates,
+ * файл в теле запроса с Content-Type text/csv или application/x-ndjson, по умолчанию в UTF-8.
+ * Неизвестный формат или кодировка - 415 без чтения тела.
+ * Тело читается потоком по мере разбора, Spring его не буферизует.
+ * В ответе ImportReportDto: сколько записей сохранено, сколько отклонено и почему.
+ */
+@RestController
+@RequestMapping("/import")
+public class ImportController {
+
+    private final VacancyService vacancyService;
+
+    private final CandidateService candidateService;
+
+    public ImportController(VacancyService vacancyService, CandidateService candidateService) {
+        this.vacancyService = vacancyService;
+        this.candidateService = candidateService;
+    }
+
+    @PostMapping("/vacancies")
+    public ResponseEntity<?> importVacancies(HttpServletRequest request) throws IOException {
+        return importAll(request, vacancyService::importAll);
+    }
+
+    @PostMapping("/candidates")
+    public ResponseEntity<?> importCandidates(HttpServletRequest request) throws IOException {
+        return importAll(request, candidateService::importAll);
+    }
+
+    private ResponseEntity<?> importAll(HttpServletRequest request,
+                                        Function<RecordReader, ImportReportDto> importer) throws IOException {
+        var format = ImportFormat.ofContentType(request.getContentType());
+        if (format.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE)
+                    .body(Map.of("message", "Ожидается Content-Type text/csv или application/x-ndjson"));
+        }
+        Charset charset;
+        try {
+            charset = request.getCharacterEncoding() == null
+                    ? StandardCharsets.UTF_8 : Charset.forName(request.getCharacterEncoding());
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+            return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE)
+                    .body(Map.of("message", "Неизвестная кодировка: " + request.getCharacterEncoding()));
+        }
+        try (var reader = new InputStreamReader(request.getInputStream(), charset)) {
+            return ResponseEntity.ok(importer.apply(format.get().open(reader)));
+        }
+    }
+}
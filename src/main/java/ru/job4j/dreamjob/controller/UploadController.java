@@ -0,0 +1,148 @@
+package ru.job4j.dreamjob.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.job4j.dreamjob.dto.UploadChunkDto;
+import ru.job4j.dreamjob.service.CandidateService;
+import ru.job4j.dreamjob.service.UploadService;
+import ru.job4j.dreamjob.service.VacancyService;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+
+/**
+ * Загрузка больших вложений по частям, которую можно продолжить после обрыва:
+ * <ol>
+ *     <li>POST /uploads?name=&amp;size= создает сессию и возвращает ее id и размер части.</li>
+ *     <li>PUT /uploads/{id}/chunks/{number} с байтами части в теле (Content-Type: application/octet-stream),
+ *     части в любом порядке.</li>
+ *     <li>GET /uploads/{id} возвращает смещения уже полученных частей,
+ *     после обрыва клиент присылает только недостающие.</li>
+ *     <li>POST /uploads/{id}/commit?candidateId= или ?vacancyId= сохраняет файл
+ *     и привязывает его к кандидату или вакансии вместо прежнего.</li>
+ * </ol>
+ */
+@RestController
+@RequestMapping("/uploads")
+public class UploadController {
+
+    private final UploadService uploadService;
+
+    private final CandidateService candidateService;
+
+    private final VacancyService vacancyService;
+
+    private final AsyncFileIo asyncFileIo;
+
+    public UploadController(UploadService uploadService, CandidateService candidateService,
+                            VacancyService vacancyService, AsyncFileIo asyncFileIo) {
+        this.uploadService = uploadService;
+        this.candidateService = candidateService;
+        this.vacancyService = vacancyService;
+        this.asyncFileIo = asyncFileIo;
+    }
+
+    @PostMapping
+    public ResponseEntity<?> create(@RequestParam String name, @RequestParam long size) {
+        try {
+            var status = uploadService.create(name, size);
+            return ResponseEntity.created(URI.create("/uploads/" + status.getId())).body(status);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<?> getById(@PathVariable String id) {
+        return uploadService.findById(id)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Тело запроса читается потоком прямо в файл сессии, Spring его не буферизует.
+     * Большую часть принимает AsyncFileIo: поток Tomcat не ждет медленного клиента,
+     * а ответ отправляется после возврата из контроллера.
+     *
+     * @param id
+     * @param number
+     * @param request
+     * @param response
+     * @return
+     */
+    @PutMapping("/{id}/chunks/{number}")
+    public ResponseEntity<?> putChunk(@PathVariable String id, @PathVariable int number,
+                                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        var length = request.getContentLengthLong();
+        try {
+            if (!asyncFileIo.canTransfer(request, length)) {
+                if (!uploadService.writeChunk(id, number, length, request::getInputStream)) {
+                    return ResponseEntity.notFound().build();
+                }
+                return ResponseEntity.noContent().build();
+            }
+            var chunkOptional = uploadService.beginChunk(id, number, length);
+            if (chunkOptional.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            receiveAsync(request, response, chunkOptional.get());
+            return null;
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+    }
+
+    private void receiveAsync(HttpServletRequest request, HttpServletResponse response, UploadChunkDto chunk)
+            throws IOException {
+        try {
+            asyncFileIo.receive(request, response, uploadService, chunk);
+        } catch (IOException | RuntimeException e) {
+            uploadService.endChunk(chunk, false);
+            throw e;
+        }
+    }
+
+    /**
+     * Если получены не все части, то возвращается 409 и загрузку можно продолжить.
+     * Если кандидата или вакансии нет, то файл сохраняется, но ссылка на него сразу снимается.
+     *
+     * @param id
+     * @param candidateId
+     * @param vacancyId
+     * @return
+     */
+    @PostMapping("/{id}/commit")
+    public ResponseEntity<?> commit(@PathVariable String id, @RequestParam(required = false) Integer candidateId,
+                                    @RequestParam(required = false) Integer vacancyId) {
+        if ((candidateId == null) == (vacancyId == null)) {
+            return ResponseEntity.badRequest().body(Map.of("message", "Укажите candidateId или vacancyId"));
+        }
+        try {
+            var fileOptional = uploadService.commit(id);
+            if (fileOptional.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            var file = fileOptional.get();
+            var isLinked = candidateId != null
+                    ? candidateService.replaceFile(candidateId, file)
+                    : vacancyService.replaceFile(vacancyId, file);
+            if (!isLinked) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("message", "Кандидат или вакансия с указанным идентификатором не найдены"));
+            }
+            return ResponseEntity.ok(Map.of("fileId", file.getId(), "contentHash", file.getContentHash()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("message", e.getMessage()));
+        }
+    }
+}
@@ -5,30 +5,91 @@ import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
-import ru.job4j.dreamjob.dto.FileDto;
+import ru.job4j.dreamjob.cache.RenderedFragmentCache;
+import ru.job4j.dreamjob.dto.FileStreamDto;
+import ru.job4j.dreamjob.dto.ListingFilterDto;
+import ru.job4j.dreamjob.model.File;
 import ru.job4j.dreamjob.model.Vacancy;
 import ru.job4j.dreamjob.service.CityService;
+import ru.job4j.dreamjob.service.FileService;
 import ru.job4j.dreamjob.service.VacancyService;
 
+import java.util.Map;
+
 @Controller
 @RequestMapping("/vacancies")
 @ThreadSafe
 public class VacancyController {
     private final VacancyService vacancyService;
     private final CityService cityService;
+    private final FileService fileService;
+    private final RenderedFragmentCache fragmentCache;
+    private final FragmentRenderer fragmentRenderer;
 
-
-    public VacancyController(VacancyService vacancyService, CityService cityService) {
+    public VacancyController(VacancyService vacancyService, CityService cityService, FileService fileService,
+                            RenderedFragmentCache fragmentCache, FragmentRenderer fragmentRenderer) {
         this.vacancyService = vacancyService;
         this.cityService = cityService;
+        this.fileService = fileService;
+        this.fragmentCache = fragmentCache;
+        this.fragmentRenderer = fragmentRenderer;
     }
 
+    /**
+     * Список выводится страницами по listing.page-size записей.
+     * after и before - курсоры из ссылок на следующую и предыдущую страницы.
+     * cityId и visible отбирают записи одного города и только видимые или только скрытые.
+     * Рядом с каждым городом в фильтре выводится число записей в нем с учетом видимости.
+     * <br>Все, кроме шапки, одинаково для всех пользователей и берется из RenderedFragmentCache:
+     * пока вакансии не менялись, повторный запрос с теми же параметрами
+     * не обращается ни к базе, ни к шаблону vacancies/listing. Шапку с именем пользователя
+     * отрисовывает vacancies/list при каждом запросе.
+     *
+     * @param model
+     * @param after
+     * @param before
+     * @param cityId
+     * @param visible
+     * @return
+     */
     @GetMapping
-    public String getAll(Model model) {
-        model.addAttribute("vacancies", vacancyService.findAll());
+    public String getAll(Model model, @RequestParam(required = false) String after,
+                         @RequestParam(required = false) String before,
+                         @RequestParam(required = false) Integer cityId,
+                         @RequestParam(required = false) Boolean visible) {
+        var parameters = "after=" + after + "&before=" + before + "&cityId=" + cityId + "&visible=" + visible;
+        var listing = fragmentCache.get("vacancies/listing", parameters, vacancyService.getVersion(), () -> {
+            var filter = new ListingFilterDto(cityId, visible);
+            var page = vacancyService.findPage(filter, after, before);
+            return fragmentRenderer.render("vacancies/listing", Map.of(
+                    "vacancies", page.getItems(),
+                    "page", page,
+                    "filter", filter,
+                    "cities", cityService.findAll(),
+                    "cityCounts", vacancyService.countByCity(visible)));
+        });
+        model.addAttribute("listing", listing);
         return "vacancies/list";
     }
 
+    /**
+     * Результаты поиска тоже выводятся страницами по listing.page-size записей,
+     * page - номер страницы, начиная с 1.
+     *
+     * @param model
+     * @param query
+     * @param page
+     * @return
+     */
+    @GetMapping("/search")
+    public String search(Model model, @RequestParam(required = false) String query,
+                         @RequestParam(defaultValue = "1") int page) {
+        var searchPage = vacancyService.search(query, page);
+        model.addAttribute("vacancies", searchPage.getItems());
+        model.addAttribute("page", searchPage);
+        return "vacancies/search";
+    }
+
     @GetMapping("/create")
     public String getCreationPage(Model model) {
         model.addAttribute("cities", cityService.findAll());
@@ -38,7 +99,7 @@ public class VacancyController {
     @PostMapping("/create")
     public String create(@ModelAttribute Vacancy vacancy, @RequestParam MultipartFile file, Model model) {
         try {
-            vacancyService.save(vacancy, new FileDto(file.getOriginalFilename(), file.getBytes()));
+            vacancyService.save(vacancy, new FileStreamDto(file.getOriginalFilename(), file.getSize(), file));
             return "redirect:/vacancies";
         } catch (Exception exception) {
             model.addAttribute("message", exception.getMessage());
@@ -63,6 +124,8 @@ public class VacancyController {
         }
         model.addAttribute("cities", cityService.findAll());
         model.addAttribute("vacancy", vacancyOptional.get());
+        model.addAttribute("fileHash", fileService.findById(vacancyOptional.get().getFileId())
+                .map(File::getContentHash).orElse(null));
         return "vacancies/one";
     }
 
@@ -72,7 +135,7 @@ public class VacancyController {
      * <br>Если вакансия не найдена возвращают страницу с ошибкой.
      * <br>RequestParam MultipartFile file - так мы получаем файл из формы.
      * Название параметра соответствует name из формы.
-     * <br>new FileDto(file.getOriginalFilename(), file.getBytes())
+     * <br>new FileStreamDto(file.getOriginalFilename(), file.getSize(), file)
      * - так мы передаем "упакованные" в DTO данные для обработки в сервисе.
      *
      * @param vacancy
@@ -83,7 +146,7 @@ public class VacancyController {
     public String update(@ModelAttribute Vacancy vacancy, @RequestParam MultipartFile file, Model model) {
         try {
             var isUpdated = vacancyService.update(vacancy,
-                    new FileDto(file.getOriginalFilename(), file.getBytes()));
+                    new FileStreamDto(file.getOriginalFilename(), file.getSize(), file));
             if (!isUpdated) {
                 model.addAttribute("message",
                         "Вакансия с указанным идентификатором не найдена");
@@ -0,0 +1,107 @@
+package ru.job4j.dreamjob.dto;
+
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+
+/**
+ * В отличие от FileDto не держит содержимое файла в памяти.
+ * Resource лишь указывает, откуда это содержимое читать,
+ * поэтому контроллер может отдать его клиенту потоком.
+ */
+public class FileResourceDto {
+
+    private final String name;
+
+    private final MediaType mediaType;
+
+    private final long contentLength;
+
+    /**
+     * Время последнего изменения в миллисекундах,
+     * по нему проверяется заголовок If-Range.
+     */
+    private final long lastModified;
+
+    /**
+     * Хеш содержимого, из него получается ETag.
+     * Может отсутствовать у старых файлов.
+     */
+    private final String contentHash;
+
+    private final Resource resource;
+
+    /**
+     * Вместо оригинала отдается уменьшенная копия изображения.
+     */
+    private final boolean thumbnail;
+
+    /**
+     * Content-Encoding сжатого варианта или null, если отдается сам файл.
+     */
+    private final String contentEncoding;
+
+    /**
+     * У файла есть сжатые варианты, поэтому ответ зависит от Accept-Encoding.
+     */
+    private final boolean variants;
+
+    public FileResourceDto(String name, MediaType mediaType, long contentLength, long lastModified,
+                           String contentHash, Resource resource) {
+        this(name, mediaType, contentLength, lastModified, contentHash, resource, false);
+    }
+
+    public FileResourceDto(String name, MediaType mediaType, long contentLength, long lastModified,
+                           String contentHash, Resource resource, boolean thumbnail) {
+        this(name, mediaType, contentLength, lastModified, contentHash, resource, thumbnail, null, false);
+    }
+
+    public FileResourceDto(String name, MediaType mediaType, long contentLength, long lastModified,
+                           String contentHash, Resource resource, boolean thumbnail,
+                           String contentEncoding, boolean variants) {
+        this.name = name;
+        this.mediaType = mediaType;
+        this.contentLength = contentLength;
+        this.lastModified = lastModified;
+        this.contentHash = contentHash;
+        this.resource = resource;
+        this.thumbnail = thumbnail;
+        this.contentEncoding = contentEncoding;
+        this.variants = variants;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public Resource getResource() {
+        return resource;
+    }
+
+    public boolean isThumbnail() {
+        return thumbnail;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public boolean hasVariants() {
+        return variants;
+    }
+}
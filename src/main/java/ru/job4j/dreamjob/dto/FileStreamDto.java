@@ -0,0 +1,40 @@
+package ru.job4j.dreamjob.dto;
+
+import org.springframework.core.io.InputStreamSource;
+
+/**
+ * В отличие от FileDto не держит содержимое файла в памяти.
+ * InputStreamSource открывает поток только в момент сохранения,
+ * поэтому загруженный файл копируется в хранилище небольшими блоками.
+ * MultipartFile сам является InputStreamSource и передается сюда как есть.
+ */
+public class FileStreamDto {
+
+    private final String name;
+
+    /**
+     * Размер, заявленный клиентом. По нему сервисы понимают,
+     * что файл в форме не выбран, не открывая поток.
+     */
+    private final long size;
+
+    private final InputStreamSource content;
+
+    public FileStreamDto(String name, long size, InputStreamSource content) {
+        this.name = name;
+        this.size = size;
+        this.content = content;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public InputStreamSource getContent() {
+        return content;
+    }
+}
@@ -0,0 +1,45 @@
+package ru.job4j.dreamjob.dto;
+
+import java.util.List;
+
+/**
+ * Итог импорта: сколько записей сохранено и сколько отклонено.
+ * Ошибки перечислены с номерами строк файла, но не больше первых BulkImporter.MAX_ERRORS,
+ * чтобы отчет по большому испорченному файлу не занимал память.
+ */
+public class ImportReportDto {
+
+    private final long imported;
+
+    private final long rejected;
+
+    private final boolean completed;
+
+    private final List<String> errors;
+
+    public ImportReportDto(long imported, long rejected, boolean completed, List<String> errors) {
+        this.imported = imported;
+        this.rejected = rejected;
+        this.completed = completed;
+        this.errors = errors;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return false, если файл прочитан не до конца из-за ошибки формата
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+}
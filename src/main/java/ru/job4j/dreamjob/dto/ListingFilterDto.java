@@ -0,0 +1,38 @@
+package ru.job4j.dreamjob.dto;
+
+/**
+ * Фильтр страницы списка. Поле, равное null, не фильтрует.
+ */
+public class ListingFilterDto {
+
+    private final Integer cityId;
+
+    private final Boolean visible;
+
+    public ListingFilterDto(Integer cityId, Boolean visible) {
+        this.cityId = cityId;
+        this.visible = visible;
+    }
+
+    public static ListingFilterDto none() {
+        return new ListingFilterDto(null, null);
+    }
+
+    public Integer getCityId() {
+        return cityId;
+    }
+
+    public Boolean getVisible() {
+        return visible;
+    }
+
+    /**
+     * @param cityId
+     * @param visible
+     * @return true, если запись проходит фильтр
+     */
+    public boolean matches(Integer cityId, boolean visible) {
+        return (this.cityId == null || this.cityId.equals(cityId))
+                && (this.visible == null || this.visible == visible);
+    }
+}
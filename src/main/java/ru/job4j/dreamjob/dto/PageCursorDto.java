@@ -0,0 +1,59 @@
+package ru.job4j.dreamjob.dto;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+
+/**
+ * Положение в списке, отсортированном по (creation_date, id):
+ * дата создания и id записи на краю страницы.
+ * В ссылке курсор передается строкой вида 2024-01-31T12:00:00.123456_42.
+ */
+public class PageCursorDto {
+
+    private static final char SEPARATOR = '_';
+
+    private final LocalDateTime creationDate;
+
+    private final int id;
+
+    public PageCursorDto(LocalDateTime creationDate, int id) {
+        this.creationDate = creationDate;
+        this.id = id;
+    }
+
+    /**
+     * Курсор приходит из адреса страницы, поэтому испорченный курсор
+     * не ошибка, а просто первая страница.
+     *
+     * @param value
+     * @return пустой Optional, если курсора нет или его не разобрать
+     */
+    public static Optional<PageCursorDto> parse(String value) {
+        if (value == null) {
+            return Optional.empty();
+        }
+        var separator = value.lastIndexOf(SEPARATOR);
+        if (separator < 0) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(new PageCursorDto(LocalDateTime.parse(value.substring(0, separator)),
+                    Integer.parseInt(value.substring(separator + 1))));
+        } catch (DateTimeParseException | NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    public static String format(LocalDateTime creationDate, int id) {
+        return creationDate.toString() + SEPARATOR + id;
+    }
+
+    public LocalDateTime getCreationDate() {
+        return creationDate;
+    }
+
+    public int getId() {
+        return id;
+    }
+}
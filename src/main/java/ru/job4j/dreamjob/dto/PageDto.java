@@ -0,0 +1,42 @@
+package ru.job4j.dreamjob.dto;
+
+import java.util.List;
+
+/**
+ * Страница списка и курсоры соседних страниц.
+ * Курсор равен null, если соседней страницы нет.
+ *
+ * @param <T>
+ */
+public class PageDto<T> {
+
+    private final List<T> items;
+
+    private final String previous;
+
+    private final String next;
+
+    public PageDto(List<T> items, String previous, String next) {
+        this.items = items;
+        this.previous = previous;
+        this.next = next;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * @return курсор для параметра before
+     */
+    public String getPrevious() {
+        return previous;
+    }
+
+    /**
+     * @return курсор для параметра after
+     */
+    public String getNext() {
+        return next;
+    }
+}
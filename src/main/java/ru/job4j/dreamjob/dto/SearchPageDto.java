@@ -0,0 +1,43 @@
+package ru.job4j.dreamjob.dto;
+
+import java.util.List;
+
+/**
+ * Страница результатов поиска. Страницы нумеруются с 1,
+ * номер соседней страницы равен null, если ее нет.
+ *
+ * @param <T>
+ */
+public class SearchPageDto<T> {
+
+    private final List<T> items;
+
+    private final String query;
+
+    private final Integer previous;
+
+    private final Integer next;
+
+    public SearchPageDto(List<T> items, String query, Integer previous, Integer next) {
+        this.items = items;
+        this.query = query;
+        this.previous = previous;
+        this.next = next;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public Integer getPrevious() {
+        return previous;
+    }
+
+    public Integer getNext() {
+        return next;
+    }
+}
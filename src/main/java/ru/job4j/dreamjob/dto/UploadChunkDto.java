@@ -0,0 +1,60 @@
+package ru.job4j.dreamjob.dto;
+
+import java.nio.file.Path;
+
+/**
+ * Часть загрузки, открытая на запись: куда и сколько байт записать.
+ * Пока часть открыта, сессию нельзя завершить или удалить,
+ * поэтому после записи часть обязательно закрывается через UploadService.endChunk.
+ */
+public class UploadChunkDto {
+
+    private final String sessionId;
+
+    private final int number;
+
+    private final Path path;
+
+    private final long offset;
+
+    private final long length;
+
+    /**
+     * Отметка блокировки чтения сессии. StampedLock, в отличие от ReentrantReadWriteLock,
+     * снимается из любого потока, а неблокирующая запись заканчивается не в том потоке, где началась.
+     */
+    private final long stamp;
+
+    public UploadChunkDto(String sessionId, int number, Path path, long offset, long length, long stamp) {
+        this.sessionId = sessionId;
+        this.number = number;
+        this.path = path;
+        this.offset = offset;
+        this.length = length;
+        this.stamp = stamp;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public long getStamp() {
+        return stamp;
+    }
+}
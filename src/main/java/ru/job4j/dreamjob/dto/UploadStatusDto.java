@@ -0,0 +1,52 @@
+package ru.job4j.dreamjob.dto;
+
+import java.util.List;
+
+/**
+ * Состояние загрузки по частям, которое видит клиент.
+ * По списку смещений полученных частей он присылает только недостающие.
+ */
+public class UploadStatusDto {
+
+    private final String id;
+
+    private final String name;
+
+    private final long size;
+
+    private final int chunkSize;
+
+    private final List<Long> receivedOffsets;
+
+    public UploadStatusDto(String id, String name, long size, int chunkSize, List<Long> receivedOffsets) {
+        this.id = id;
+        this.name = name;
+        this.size = size;
+        this.chunkSize = chunkSize;
+        this.receivedOffsets = receivedOffsets;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public List<Long> getReceivedOffsets() {
+        return receivedOffsets;
+    }
+
+    public boolean isComplete() {
+        return receivedOffsets.size() == (size + chunkSize - 1) / chunkSize;
+    }
+}
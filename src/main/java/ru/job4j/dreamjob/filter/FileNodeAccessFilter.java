@@ -0,0 +1,38 @@
+package ru.job4j.dreamjob.filter;
+
+import org.springframework.beans.factory.annotation.Value;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Фильтр узла FileNode: без авторизации узел отдает только /files/hash/{contentHash}.
+ * Хеш содержимого угадать нельзя, а id файлов идут подряд, и по /files/{id}
+ * можно было бы перебрать все файлы. Остальные адреса получают 404.
+ * <br>Отдачу по id включает file.node.id-access=true, если доступ к узлу
+ * и так ограничен, например прокси с авторизацией.
+ * <br>Класс не помечен Component: его подключает только FileNode, Main защищает AuthorizationFilter.
+ */
+public class FileNodeAccessFilter extends HttpFilter {
+
+    private final boolean idAccess;
+
+    public FileNodeAccessFilter(@Value("${file.node.id-access}") boolean idAccess) {
+        this.idAccess = idAccess;
+    }
+
+    @Override
+    protected void doFilter(HttpServletRequest request, HttpServletResponse response,
+                            FilterChain chain) throws IOException, ServletException {
+        var path = request.getRequestURI().substring(request.getContextPath().length());
+        if (idAccess || path.startsWith("/files/hash/")) {
+            chain.doFilter(request, response);
+            return;
+        }
+        response.sendError(HttpServletResponse.SC_NOT_FOUND);
+    }
+}
@@ -0,0 +1,143 @@
+package ru.job4j.dreamjob.filter;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ограничивает, сколько байт загрузок принимается одновременно.
+ * Тело multipart-запроса Spring разбирает до вызова контроллера,
+ * поэтому бюджет проверяется здесь, в фильтре, а не в CandidateController и VacancyController.
+ * <br>Запрос занимает из общего бюджета upload.admission.max-bytes столько байт,
+ * сколько указано в Content-Length, а если длина неизвестна - максимальный размер запроса.
+ * Если бюджета не хватает, запрос ждет не дольше upload.admission.wait-millis,
+ * а затем получает 503 с заголовком Retry-After. Всплеск загрузок тогда не вытесняет
+ * остальные запросы из памяти и с диска, а просто откладывается.
+ * <br>Order(3): анонимный пользователь отправляется на страницу входа, не заняв бюджета.
+ */
+@Component
+@Order(3)
+public class UploadAdmissionFilter extends HttpFilter implements MeterBinder {
+
+    private final Semaphore budget;
+
+    private final int maxBytes;
+
+    private final long maxRequestBytes;
+
+    private final long waitMillis;
+
+    private final String retryAfterSeconds;
+
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+
+    private final AtomicInteger inFlightBytes = new AtomicInteger();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    public UploadAdmissionFilter(@Value("${upload.admission.max-bytes}") int maxBytes,
+                                 @Value("${upload.admission.wait-millis}") long waitMillis,
+                                 @Value("${upload.admission.retry-after-seconds}") int retryAfterSeconds,
+                                 @Value("${spring.servlet.multipart.max-request-size:10MB}") DataSize maxRequestSize) {
+        this.budget = new Semaphore(maxBytes, true);
+        this.maxBytes = maxBytes;
+        this.maxRequestBytes = maxRequestSize.toBytes();
+        this.waitMillis = waitMillis;
+        this.retryAfterSeconds = String.valueOf(retryAfterSeconds);
+    }
+
+    @Override
+    protected void doFilter(HttpServletRequest request, HttpServletResponse response,
+                            FilterChain chain) throws IOException, ServletException {
+        if (!isUpload(request)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        var bytes = getChargedBytes(request);
+        if (!tryAcquire(bytes)) {
+            rejected.incrementAndGet();
+            response.setHeader(HttpHeaders.RETRY_AFTER, retryAfterSeconds);
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        inFlightRequests.incrementAndGet();
+        inFlightBytes.addAndGet(bytes);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            inFlightBytes.addAndGet(-bytes);
+            inFlightRequests.decrementAndGet();
+            budget.release(bytes);
+        }
+    }
+
+    private boolean isUpload(HttpServletRequest request) {
+        var contentType = request.getContentType();
+        return "POST".equals(request.getMethod())
+                && contentType != null && contentType.toLowerCase().startsWith("multipart/");
+    }
+
+    /**
+     * Запрос больше всего бюджета занимает весь бюджет, иначе он не дождался бы своей очереди никогда.
+     *
+     * @param request
+     * @return
+     */
+    private int getChargedBytes(HttpServletRequest request) {
+        var length = request.getContentLengthLong();
+        if (length < 0) {
+            length = maxRequestBytes;
+        }
+        return (int) Math.max(1, Math.min(length, maxBytes));
+    }
+
+    /**
+     * Семафор справедливый: большая загрузка не будет бесконечно уступать маленьким.
+     *
+     * @param bytes
+     * @return
+     */
+    private boolean tryAcquire(int bytes) {
+        try {
+            return budget.tryAcquire(bytes, waitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public int getInFlightBytes() {
+        return inFlightBytes.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("dreamjob.upload.inflight.requests", inFlightRequests, AtomicInteger::get)
+                .register(registry);
+        Gauge.builder("dreamjob.upload.inflight.bytes", inFlightBytes, AtomicInteger::get)
+                .baseUnit("bytes").register(registry);
+        FunctionCounter.builder("dreamjob.upload.rejected", rejected, AtomicLong::get)
+                .register(registry);
+    }
+}
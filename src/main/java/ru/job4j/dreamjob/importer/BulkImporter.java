@@ -0,0 +1,125 @@
+package ru.job4j.dreamjob.importer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.job4j.dreamjob.dto.ImportReportDto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Импорт потоком: записи читаются по одной, проверяются и копятся в пачку,
+ * полная пачка сохраняется одним вызовом writer, то есть одной транзакцией, и отбрасывается.
+ * В памяти одновременно не больше одной пачки и первых MAX_ERRORS сообщений,
+ * поэтому размер файла на память не влияет.
+ * <br>Запись, которую не разобрал parser, отклоняется одна. Если writer упал, отклоняется вся пачка
+ * (транзакция откатилась), в отчете - диапазон ее строк, а импорт продолжается со следующей пачки.
+ * <br>После испорченной записи CSV неизвестно, где начинается следующая, поэтому чтение прекращается,
+ * а уже собранная пачка сохраняется.
+ */
+public final class BulkImporter {
+
+    public static final int MAX_ERRORS = 100;
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkImporter.class);
+
+    private final int batchSize;
+
+    private final List<String> errors = new ArrayList<>();
+
+    private long imported;
+
+    private long rejected;
+
+    private BulkImporter(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param reader
+     * @param batchSize
+     * @param parser разбирает запись, IllegalArgumentException - запись отклоняется
+     * @param writer сохраняет пачку и возвращает число сохраненных записей
+     * @param <T>
+     * @return
+     */
+    public static <T> ImportReportDto run(RecordReader reader, int batchSize,
+                                          Function<Map<String, String>, T> parser, ToIntFunction<List<T>> writer) {
+        return new BulkImporter(batchSize).importAll(reader, parser, writer);
+    }
+
+    private <T> ImportReportDto importAll(RecordReader reader, Function<Map<String, String>, T> parser,
+                                          ToIntFunction<List<T>> writer) {
+        var batch = new ArrayList<T>(batchSize);
+        var firstLine = 0L;
+        var lastLine = 0L;
+        var completed = true;
+        while (true) {
+            Map<String, String> record;
+            try {
+                record = reader.next();
+            } catch (IllegalArgumentException e) {
+                reject(reader.getLine(), e.getMessage());
+                if (reader.canSkipBrokenRecord()) {
+                    continue;
+                }
+                completed = false;
+                break;
+            }
+            if (record == null) {
+                break;
+            }
+            try {
+                var parsed = parser.apply(record);
+                if (batch.isEmpty()) {
+                    firstLine = reader.getLine();
+                }
+                lastLine = reader.getLine();
+                batch.add(parsed);
+            } catch (IllegalArgumentException e) {
+                reject(reader.getLine(), e.getMessage());
+            }
+            if (batch.size() == batchSize) {
+                write(batch, firstLine, lastLine, writer);
+            }
+        }
+        write(batch, firstLine, lastLine, writer);
+        return new ImportReportDto(imported, rejected, completed, List.copyOf(errors));
+    }
+
+    private <T> void write(List<T> batch, long firstLine, long lastLine, ToIntFunction<List<T>> writer) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            imported += writer.applyAsInt(batch);
+        } catch (RuntimeException e) {
+            LOG.warn("Пачка импорта, строки {}-{}, не сохранена", firstLine, lastLine, e);
+            rejected += batch.size();
+            addError(firstLine, String.format("пачка до строки %d не сохранена: %s", lastLine, rootMessage(e)));
+        }
+        batch.clear();
+    }
+
+    private void reject(long line, String message) {
+        rejected++;
+        addError(line, message);
+    }
+
+    private void addError(long line, String message) {
+        if (errors.size() < MAX_ERRORS) {
+            errors.add("строка " + line + ": " + message);
+        }
+    }
+
+    private static String rootMessage(Throwable e) {
+        var cause = e;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage();
+    }
+}
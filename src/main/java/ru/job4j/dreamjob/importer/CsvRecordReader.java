@@ -0,0 +1,148 @@
+package ru.job4j.dreamjob.importer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CSV по RFC 4180: поля через запятую, поле в двойных кавычках может содержать запятые,
+ * переводы строк и удвоенные кавычки. Первая запись - имена столбцов.
+ * Файл читается через свой буфер символов, в памяти только текущая запись.
+ * <br>После незакрытой кавычки неизвестно, где кончается запись, поэтому ошибка формата
+ * прерывает чтение, а не пропускает запись.
+ */
+public class CsvRecordReader implements RecordReader {
+
+    private final Reader reader;
+
+    private final char[] buffer = new char[8192];
+
+    private int position;
+
+    private int limit;
+
+    private List<String> header;
+
+    private long line = 1;
+
+    private long recordLine;
+
+    private boolean finished;
+
+    public CsvRecordReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public Map<String, String> next() {
+        if (header == null) {
+            header = readFields();
+            if (header == null) {
+                return null;
+            }
+            header.replaceAll(String::trim);
+        }
+        var fields = readFields();
+        while (fields != null && fields.size() == 1 && fields.get(0).isEmpty()) {
+            fields = readFields();
+        }
+        if (fields == null) {
+            return null;
+        }
+        if (fields.size() != header.size()) {
+            throw new IllegalArgumentException(String.format("Ожидалось полей: %d, найдено: %d", header.size(), fields.size()));
+        }
+        var record = new HashMap<String, String>();
+        for (int i = 0; i < fields.size(); i++) {
+            record.put(header.get(i), fields.get(i));
+        }
+        return record;
+    }
+
+    @Override
+    public long getLine() {
+        return recordLine;
+    }
+
+    @Override
+    public boolean canSkipBrokenRecord() {
+        return false;
+    }
+
+    private List<String> readFields() {
+        if (finished) {
+            return null;
+        }
+        recordLine = line;
+        var fields = new ArrayList<String>();
+        var field = new StringBuilder();
+        var quoted = false;
+        var afterQuote = false;
+        try {
+            while (true) {
+                var next = read();
+                if (next == -1) {
+                    finished = true;
+                    if (quoted) {
+                        throw new IllegalArgumentException("Не закрыта кавычка");
+                    }
+                    if (fields.isEmpty() && field.length() == 0 && !afterQuote) {
+                        return null;
+                    }
+                    fields.add(field.toString());
+                    return fields;
+                }
+                var c = (char) next;
+                if (c == '\n') {
+                    line++;
+                }
+                if (quoted) {
+                    if (c == '"') {
+                        quoted = false;
+                        afterQuote = true;
+                    } else {
+                        field.append(c);
+                    }
+                } else if (c == '"') {
+                    if (afterQuote) {
+                        field.append('"');
+                        quoted = true;
+                    } else if (field.length() == 0) {
+                        quoted = true;
+                    } else {
+                        throw new IllegalArgumentException("Кавычка внутри поля без кавычек");
+                    }
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                    afterQuote = false;
+                } else if (c == '\n') {
+                    fields.add(field.toString());
+                    return fields;
+                } else if (c != '\r') {
+                    if (afterQuote) {
+                        throw new IllegalArgumentException("Текст после закрывающей кавычки");
+                    }
+                    field.append(c);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+}
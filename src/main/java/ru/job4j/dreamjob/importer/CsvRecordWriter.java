@@ -0,0 +1,58 @@
+package ru.job4j.dreamjob.importer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * CSV в том виде, который читает CsvRecordReader: первая строка - имена столбцов,
+ * строки через CRLF, в кавычки берутся только поля с запятой, кавычкой или переводом строки.
+ * null пишется пустым полем.
+ */
+public class CsvRecordWriter implements RecordWriter {
+
+    private final Writer writer;
+
+    public CsvRecordWriter(Writer writer, List<String> columns) {
+        this.writer = writer;
+        write(columns.toArray());
+    }
+
+    @Override
+    public void write(Object... values) {
+        try {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                if (values[i] != null) {
+                    writeField(values[i].toString());
+                }
+            }
+            writer.write("\r\n");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void writeField(String value) throws IOException {
+        var quoted = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        if (!quoted) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    @Override
+    public void flush() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
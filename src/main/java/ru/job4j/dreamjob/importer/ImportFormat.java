@@ -0,0 +1,75 @@
+package ru.job4j.dreamjob.importer;
+
+import java.io.Reader;
+import java.io.Writer;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Форматы файлов импорта и их Content-Type. Выгрузка пишет те же форматы,
+ * поэтому ее файл можно загрузить обратно через импорт.
+ */
+public enum ImportFormat {
+
+    /**
+     * Первая строка - имена столбцов, значения в кавычках могут содержать запятые и переводы строк.
+     */
+    CSV("text/csv"),
+
+    /**
+     * Один объект JSON на строке, имена полей как у столбцов CSV.
+     */
+    NDJSON("application/x-ndjson");
+
+    private final String contentType;
+
+    ImportFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @param contentType заголовок Content-Type, параметры вроде charset не учитываются
+     * @return
+     */
+    public static Optional<ImportFormat> ofContentType(String contentType) {
+        if (contentType == null) {
+            return Optional.empty();
+        }
+        var mediaType = contentType.split(";", 2)[0].trim().toLowerCase();
+        for (var format : values()) {
+            if (format.contentType.equals(mediaType)) {
+                return Optional.of(format);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @param name csv или ndjson в любом регистре
+     * @return
+     */
+    public static Optional<ImportFormat> ofName(String name) {
+        for (var format : values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return Optional.of(format);
+            }
+        }
+        return Optional.empty();
+    }
+
+    public String getExtension() {
+        return name().toLowerCase();
+    }
+
+    public RecordReader open(Reader reader) {
+        return this == CSV ? new CsvRecordReader(reader) : new NdjsonRecordReader(reader);
+    }
+
+    public RecordWriter create(Writer writer, List<String> columns) {
+        return this == CSV ? new CsvRecordWriter(writer, columns) : new NdjsonRecordWriter(writer, columns);
+    }
+}
@@ -0,0 +1,81 @@
+package ru.job4j.dreamjob.importer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * NDJSON: на каждой строке один объект JSON. Значения полей приводятся к строкам,
+ * как в CSV, вложенные объекты и массивы не поддерживаются. Пустые строки пропускаются.
+ * <br>Каждая строка разбирается отдельно, поэтому испорченная строка пропускается,
+ * а чтение продолжается со следующей.
+ */
+public class NdjsonRecordReader implements RecordReader {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final BufferedReader reader;
+
+    private long line;
+
+    private long recordLine;
+
+    public NdjsonRecordReader(Reader reader) {
+        this.reader = new BufferedReader(reader);
+    }
+
+    @Override
+    public Map<String, String> next() {
+        var text = readLine();
+        while (text != null && text.isBlank()) {
+            text = readLine();
+        }
+        if (text == null) {
+            return null;
+        }
+        recordLine = line;
+        try {
+            var node = MAPPER.readTree(text);
+            if (!node.isObject()) {
+                throw new IllegalArgumentException("Ожидался объект JSON");
+            }
+            var record = new HashMap<String, String>();
+            var fields = node.fields();
+            while (fields.hasNext()) {
+                var field = fields.next();
+                if (field.getValue().isContainerNode()) {
+                    throw new IllegalArgumentException("Вложенное значение в поле " + field.getKey());
+                }
+                record.put(field.getKey(), field.getValue().isNull() ? null : field.getValue().asText());
+            }
+            return record;
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Некорректный JSON: " + e.getOriginalMessage());
+        }
+    }
+
+    @Override
+    public long getLine() {
+        return recordLine;
+    }
+
+    @Override
+    public boolean canSkipBrokenRecord() {
+        return true;
+    }
+
+    private String readLine() {
+        try {
+            var text = reader.readLine();
+            line++;
+            return text;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ru.job4j.dreamjob.importer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * NDJSON: каждая запись - объект JSON на своей строке. Числа и логические значения пишутся как есть,
+ * остальное строками, null - null.
+ */
+public class NdjsonRecordWriter implements RecordWriter {
+
+    private static final JsonFactory FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private final List<String> columns;
+
+    private final JsonGenerator generator;
+
+    public NdjsonRecordWriter(Writer writer, List<String> columns) {
+        this.columns = columns;
+        try {
+            this.generator = FACTORY.createGenerator(writer);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void write(Object... values) {
+        try {
+            generator.writeStartObject();
+            for (int i = 0; i < values.length; i++) {
+                generator.writeFieldName(columns.get(i));
+                var value = values[i];
+                if (value == null) {
+                    generator.writeNull();
+                } else if (value instanceof Integer number) {
+                    generator.writeNumber(number);
+                } else if (value instanceof Boolean flag) {
+                    generator.writeBoolean(flag);
+                } else {
+                    generator.writeString(value.toString());
+                }
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void flush() {
+        try {
+            generator.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
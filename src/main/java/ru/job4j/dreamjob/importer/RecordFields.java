@@ -0,0 +1,72 @@
+package ru.job4j.dreamjob.importer;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Проверка и разбор полей записи импорта. Ошибка - IllegalArgumentException с понятным сообщением,
+ * BulkImporter отклоняет такую запись и пишет сообщение в отчет.
+ */
+public final class RecordFields {
+
+    private RecordFields() {
+    }
+
+    public static String required(Map<String, String> record, String name) {
+        var value = record.get(name);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Не заполнено поле " + name);
+        }
+        return value.trim();
+    }
+
+    /**
+     * @param record
+     * @param name
+     * @return значение или пустая строка, если поля нет
+     */
+    public static String optional(Map<String, String> record, String name) {
+        var value = record.get(name);
+        return value == null ? "" : value;
+    }
+
+    /**
+     * @param record
+     * @param name
+     * @param defaultValue значение для отсутствующего или пустого поля
+     * @return
+     */
+    public static boolean toBoolean(Map<String, String> record, String name, boolean defaultValue) {
+        var value = record.get(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        var text = value.trim().toLowerCase();
+        if ("true".equals(text) || "1".equals(text)) {
+            return true;
+        }
+        if ("false".equals(text) || "0".equals(text)) {
+            return false;
+        }
+        throw new IllegalArgumentException(String.format("Поле %s должно быть true или false: %s", name, value));
+    }
+
+    /**
+     * @param record
+     * @param name
+     * @param cityIds id существующих городов
+     * @return
+     */
+    public static int toCityId(Map<String, String> record, String name, Set<Integer> cityIds) {
+        var value = required(record, name);
+        try {
+            var cityId = Integer.parseInt(value);
+            if (!cityIds.contains(cityId)) {
+                throw new IllegalArgumentException(String.format("Неизвестный город в поле %s: %s", name, value));
+            }
+            return cityId;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Поле %s должно быть числом: %s", name, value));
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package ru.job4j.dreamjob.importer;
+
+import java.util.Map;
+
+/**
+ * Читает записи файла импорта по одной, не держа в памяти весь файл.
+ */
+public interface RecordReader {
+
+    /**
+     * @return поля записи по именам или null, если записей больше нет
+     * @throws IllegalArgumentException если запись испорчена; для NDJSON чтение можно продолжить
+     * со следующей строки, для CSV нет
+     */
+    Map<String, String> next();
+
+    /**
+     * @return номер строки файла, с которой начинается последняя прочитанная запись, начиная с 1
+     */
+    long getLine();
+
+    /**
+     * @return можно ли читать дальше после испорченной записи
+     */
+    boolean canSkipBrokenRecord();
+}
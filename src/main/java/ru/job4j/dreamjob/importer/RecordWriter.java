@@ -0,0 +1,18 @@
+package ru.job4j.dreamjob.importer;
+
+/**
+ * Пишет записи выгрузки по одной в формате импорта, так что выгрузку можно загрузить обратно.
+ * Имена столбцов задаются при создании, значения передаются в том же порядке.
+ */
+public interface RecordWriter {
+
+    /**
+     * @param values String, Number, Boolean, LocalDateTime или null
+     */
+    void write(Object... values);
+
+    /**
+     * Дописывает буферизованное в Writer. Сам Writer не закрывается.
+     */
+    void flush();
+}
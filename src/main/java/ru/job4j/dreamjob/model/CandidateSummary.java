@@ -0,0 +1,81 @@
+package ru.job4j.dreamjob.model;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Строка списка кандидатов: только столбцы, которые выводит страница списка.
+ * Описание бывает длинным, а в списке не показывается, поэтому оно не читается из базы.
+ */
+public class CandidateSummary {
+    public static final Map<String, String> COLUMN_MAPPING = Map.of(
+            "id", "id",
+            "name", "name",
+            "creation_date", "creationDate",
+            "visible", "visible"
+    );
+    private int id;
+    private String name;
+    private LocalDateTime creationDate;
+    private boolean visible;
+
+    public CandidateSummary(int id, String name, LocalDateTime creationDate, boolean visible) {
+        this.id = id;
+        this.name = name;
+        this.creationDate = creationDate;
+        this.visible = visible;
+    }
+
+    public CandidateSummary() {
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public LocalDateTime getCreationDate() {
+        return creationDate;
+    }
+
+    public void setCreationDate(LocalDateTime creationDate) {
+        this.creationDate = creationDate;
+    }
+
+    public boolean getVisible() {
+        return visible;
+    }
+
+    public void setVisible(boolean visible) {
+        this.visible = visible;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        CandidateSummary that = (CandidateSummary) o;
+        return id == that.id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+}
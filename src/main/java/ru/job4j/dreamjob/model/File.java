@@ -1,8 +1,22 @@
 package ru.job4j.dreamjob.model;
 
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
 import java.util.Objects;
 
 public class File {
+    public static final Map<String, String> COLUMN_MAPPING = Map.of(
+            "id", "id",
+            "name", "name",
+            "path", "path",
+            "content_hash", "contentHash",
+            "ref_count", "refCount",
+            "creation_date", "creationDate",
+            "pack_segment", "packSegment",
+            "pack_offset", "packOffset",
+            "pack_length", "packLength"
+    );
 
     private int id;
 
@@ -10,9 +24,48 @@ public class File {
 
     private String path;
 
+    /**
+     * SHA-256 содержимого в шестнадцатеричном виде.
+     * Вычисляется один раз при загрузке и служит ETag для браузера.
+     * У файлов, загруженных до появления этого столбца, он пустой.
+     */
+    private String contentHash;
+
+    /**
+     * Сколько вакансий и кандидатов ссылается на этот файл.
+     * Одинаковое содержимое хранится один раз, а каждая новая загрузка
+     * тех же байт только увеличивает счетчик.
+     */
+    private int refCount;
+
+    /**
+     * По времени создания сборщик сирот отличает запись, на которую еще не успели сослаться,
+     * от записи, на которую не сошлется уже никто.
+     */
+    private LocalDateTime creationDate = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+
+    /**
+     * Маленькое изображение может лежать не отдельным файлом, а внутри сегмента PackFileStore:
+     * номер сегмента, смещение и длина. У отдельных файлов эти поля пустые,
+     * а у упакованных path только описывает место в сегменте и на диске не существует.
+     */
+    private Integer packSegment;
+
+    private Long packOffset;
+
+    private Long packLength;
+
     public File(String name, String path) {
         this.name = name;
         this.path = path;
+        this.refCount = 1;
+    }
+
+    public File(String name, String path, String contentHash) {
+        this.name = name;
+        this.path = path;
+        this.contentHash = contentHash;
+        this.refCount = 1;
     }
 
     public int getId() {
@@ -39,6 +92,58 @@ public class File {
         this.path = path;
     }
 
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public int getRefCount() {
+        return refCount;
+    }
+
+    public void setRefCount(int refCount) {
+        this.refCount = refCount;
+    }
+
+    public LocalDateTime getCreationDate() {
+        return creationDate;
+    }
+
+    public void setCreationDate(LocalDateTime creationDate) {
+        this.creationDate = creationDate;
+    }
+
+    public Integer getPackSegment() {
+        return packSegment;
+    }
+
+    public void setPackSegment(Integer packSegment) {
+        this.packSegment = packSegment;
+    }
+
+    public Long getPackOffset() {
+        return packOffset;
+    }
+
+    public void setPackOffset(Long packOffset) {
+        this.packOffset = packOffset;
+    }
+
+    public Long getPackLength() {
+        return packLength;
+    }
+
+    public void setPackLength(Long packLength) {
+        this.packLength = packLength;
+    }
+
+    public boolean isPacked() {
+        return packSegment != null;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
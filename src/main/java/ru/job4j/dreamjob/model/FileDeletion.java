@@ -0,0 +1,59 @@
+package ru.job4j.dreamjob.model;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Запись очереди file_deletions: одна снятая ссылка на файл.
+ * Вакансия или кандидат ставят ее в очередь вместо удаления файла в потоке запроса,
+ * а FileDeletionWorker разбирает очередь порциями в фоне.
+ * <br>Внешнего ключа на files нет: запись очереди может пережить сам файл.
+ */
+public class FileDeletion {
+    public static final Map<String, String> COLUMN_MAPPING = Map.of(
+            "id", "id",
+            "file_id", "fileId"
+    );
+
+    private int id;
+
+    private int fileId;
+
+    public FileDeletion(int id, int fileId) {
+        this.id = id;
+        this.fileId = fileId;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public int getFileId() {
+        return fileId;
+    }
+
+    public void setFileId(int fileId) {
+        this.fileId = fileId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        FileDeletion that = (FileDeletion) o;
+        return id == that.id && fileId == that.fileId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, fileId);
+    }
+}
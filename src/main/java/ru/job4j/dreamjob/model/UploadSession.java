@@ -0,0 +1,117 @@
+package ru.job4j.dreamjob.model;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Загрузка большого файла по частям. Клиент создает сессию, присылает части
+ * в любом порядке и в любом числе запросов, а затем завершает загрузку.
+ * <br>Части пишутся сразу на свои места в заранее созданный файл полного размера,
+ * а номера полученных частей хранятся в upload_chunks.
+ * Поэтому оборванная загрузка продолжается с недостающих частей, а не с начала.
+ */
+public class UploadSession {
+    public static final Map<String, String> COLUMN_MAPPING = Map.of(
+            "id", "id",
+            "name", "name",
+            "size", "size",
+            "chunk_size", "chunkSize",
+            "creation_date", "creationDate"
+    );
+
+    private String id;
+
+    private String name;
+
+    private long size;
+
+    /**
+     * Размер каждой части, кроме последней: часть с номером n начинается со смещения n * chunkSize.
+     */
+    private int chunkSize;
+
+    private LocalDateTime creationDate = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+
+    public UploadSession(String id, String name, long size, int chunkSize) {
+        this.id = id;
+        this.name = name;
+        this.size = size;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Число частей, последняя может быть короче chunkSize.
+     *
+     * @return
+     */
+    public int getChunkCount() {
+        return Math.toIntExact((size + chunkSize - 1) / chunkSize);
+    }
+
+    public long getChunkOffset(int number) {
+        return (long) number * chunkSize;
+    }
+
+    public long getChunkLength(int number) {
+        return Math.min(chunkSize, size - getChunkOffset(number));
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public LocalDateTime getCreationDate() {
+        return creationDate;
+    }
+
+    public void setCreationDate(LocalDateTime creationDate) {
+        this.creationDate = creationDate;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        UploadSession that = (UploadSession) o;
+        return Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+}
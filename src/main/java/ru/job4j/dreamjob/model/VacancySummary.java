@@ -0,0 +1,81 @@
+package ru.job4j.dreamjob.model;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Строка списка вакансий: только столбцы, которые выводит страница списка.
+ * Описание бывает длинным, а в списке не показывается, поэтому оно не читается из базы.
+ */
+public class VacancySummary {
+    public static final Map<String, String> COLUMN_MAPPING = Map.of(
+            "id", "id",
+            "title", "title",
+            "creation_date", "creationDate",
+            "visible", "visible"
+    );
+    private int id;
+    private String title;
+    private LocalDateTime creationDate;
+    private boolean visible;
+
+    public VacancySummary(int id, String title, LocalDateTime creationDate, boolean visible) {
+        this.id = id;
+        this.title = title;
+        this.creationDate = creationDate;
+        this.visible = visible;
+    }
+
+    public VacancySummary() {
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public LocalDateTime getCreationDate() {
+        return creationDate;
+    }
+
+    public void setCreationDate(LocalDateTime creationDate) {
+        this.creationDate = creationDate;
+    }
+
+    public boolean getVisible() {
+        return visible;
+    }
+
+    public void setVisible(boolean visible) {
+        this.visible = visible;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        VacancySummary that = (VacancySummary) o;
+        return id == that.id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+}
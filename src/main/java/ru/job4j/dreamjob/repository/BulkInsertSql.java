@@ -0,0 +1,90 @@
+package ru.job4j.dreamjob.repository;
+
+import org.postgresql.PGConnection;
+import org.sql2o.Connection;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Вставка пачки строк одной командой, без ключей новых строк.
+ * <br>На PostgreSQL строки уходят через COPY ... FROM STDIN в формате CSV: сервер разбирает их потоком,
+ * без отдельного разбора и плана на каждую строку, как у INSERT. На H2 COPY нет,
+ * там строки добавляются в пакет JDBC (addToBatch) и отправляются одним executeBatch.
+ * <br>Строки передаются в памяти, поэтому размер пачки ограничивает вызывающий код.
+ * Значения - String, Integer, Boolean, LocalDateTime или null.
+ */
+public final class BulkInsertSql {
+
+    private BulkInsertSql() {
+    }
+
+    public static void insert(Connection connection, boolean postgres, String table, List<String> columns,
+                              List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        if (postgres) {
+            copy(connection, table, columns, rows);
+        } else {
+            batch(connection, table, columns, rows);
+        }
+    }
+
+    private static void copy(Connection connection, String table, List<String> columns, List<Object[]> rows) {
+        var csv = new StringBuilder();
+        for (var row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                if (i > 0) {
+                    csv.append(',');
+                }
+                appendCsv(csv, row[i]);
+            }
+            csv.append('\n');
+        }
+        var sql = "COPY " + table + " (" + String.join(", ", columns) + ") FROM STDIN WITH (FORMAT csv)";
+        try {
+            var pgConnection = connection.getJdbcConnection().unwrap(PGConnection.class);
+            pgConnection.getCopyAPI().copyIn(sql, new StringReader(csv.toString()));
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * null - пустое поле без кавычек, так COPY в формате CSV понимает NULL.
+     * Строки всегда в кавычках, чтобы пустая строка не стала NULL.
+     */
+    private static void appendCsv(StringBuilder csv, Object value) {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof String text) {
+            csv.append('"').append(text.replace("\"", "\"\"")).append('"');
+        } else if (value instanceof LocalDateTime dateTime) {
+            csv.append(Timestamp.valueOf(dateTime));
+        } else {
+            csv.append(value);
+        }
+    }
+
+    private static void batch(Connection connection, String table, List<String> columns, List<Object[]> rows) {
+        var values = new StringBuilder();
+        for (int i = 0; i < columns.size(); i++) {
+            values.append(i > 0 ? ", " : "").append(":p").append(i);
+        }
+        var sql = "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES (" + values + ")";
+        var query = connection.createQuery(sql);
+        for (var row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                query.addParameter("p" + i, row[i]);
+            }
+            query.addToBatch();
+        }
+        query.executeBatch();
+    }
+}
@@ -1,13 +1,28 @@
 package ru.job4j.dreamjob.repository;
 
+import ru.job4j.dreamjob.dto.ListingFilterDto;
 import ru.job4j.dreamjob.model.Candidate;
+import ru.job4j.dreamjob.model.CandidateSummary;
 
+import java.time.LocalDateTime;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface CandidateRepository {
     Candidate save(Candidate candidate);
 
+    /**
+     * Сохраняет пачку новых записей одной транзакцией: либо все, либо ни одной.
+     * id записям не присваиваются. Записи без файла (fileId 0) сохраняются с пустой ссылкой.
+     *
+     * @param candidates
+     * @return сколько записей сохранено
+     */
+    int saveAll(List<Candidate> candidates);
+
     boolean deleteById(int id);
 
     boolean update(Candidate candidate);
@@ -15,4 +30,41 @@ public interface CandidateRepository {
     Optional<Candidate> findById(int id);
 
     Collection<Candidate> findAll();
-}
\ No newline at end of file
+
+    List<CandidateSummary> findFirstPage(ListingFilterDto filter, int limit);
+
+    List<CandidateSummary> findOlderThan(ListingFilterDto filter, LocalDateTime creationDate, int id, int limit);
+
+    List<CandidateSummary> findNewerThan(ListingFilterDto filter, LocalDateTime creationDate, int id, int limit);
+
+    List<CandidateSummary> search(String query, int limit, int offset);
+
+    /**
+     * Полные записи по возрастанию id, начиная со следующей после id.
+     * Так записи читаются пачками, например для построения индекса поиска.
+     *
+     * @param id
+     * @param limit
+     * @return
+     */
+    List<Candidate> findAfterId(int id, int limit);
+
+    /**
+     * Передает action записи по возрастанию id, читая их из базы порциями по fetchSize,
+     * без списка всех записей в памяти. Так записи выгружаются потоком.
+     *
+     * @param filter
+     * @param fetchSize
+     * @param action
+     */
+    void forEach(ListingFilterDto filter, int fetchSize, Consumer<Candidate> action);
+
+    /**
+     * Число записей в каждом городе. Считается не по таблице записей, а берется из счетчиков,
+     * которые save, update и deleteById меняют вместе с записью.
+     *
+     * @param visible null - все записи, иначе только видимые или только скрытые
+     * @return число записей по id города, города без записей могут отсутствовать
+     */
+    Map<Integer, Integer> countByCity(Boolean visible);
+}
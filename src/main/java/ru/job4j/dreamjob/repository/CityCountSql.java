@@ -0,0 +1,118 @@
+package ru.job4j.dreamjob.repository;
+
+import org.sql2o.Connection;
+import org.sql2o.Sql2o;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Счетчики записей по городу и видимости: таблицы vacancy_city_counts и candidate_city_counts (скрипт 015).
+ * Их меняют save, saveAll, update и deleteById в той же транзакции, что и саму запись,
+ * поэтому страница списка читает готовые числа, а не выполняет COUNT(*) GROUP BY по всей таблице.
+ * <br>Когда запись переезжает, две строки счетчиков меняются по возрастанию (city_id, visible):
+ * транзакции, которые переносят записи между одними городами в разные стороны, не ждут друг друга по кругу.
+ * <br>Строки для городов скрипт создает заранее. Если города еще нет в счетчиках,
+ * при первом увеличении добавляется нулевая строка через INSERT ... ON CONFLICT DO NOTHING,
+ * а затем UPDATE повторяется. Две транзакции, которые первыми пишут в новый город одновременно,
+ * не падают на первичном ключе: вторая ждет первую на вставке, ничего не вставляет и увеличивает ее строку.
+ */
+public final class CityCountSql {
+
+    private CityCountSql() {
+    }
+
+    public static void increment(Connection connection, String table, int cityId, boolean visible) {
+        change(connection, table, cityId, visible, 1);
+    }
+
+    public static void decrement(Connection connection, String table, int cityId, boolean visible) {
+        change(connection, table, cityId, visible, -1);
+    }
+
+    public static void move(Connection connection, String table, int oldCityId, boolean oldVisible,
+                            int cityId, boolean visible) {
+        if (oldCityId == cityId && oldVisible == visible) {
+            return;
+        }
+        var oldFirst = oldCityId < cityId || oldCityId == cityId && !oldVisible;
+        if (oldFirst) {
+            decrement(connection, table, oldCityId, oldVisible);
+            increment(connection, table, cityId, visible);
+        } else {
+            increment(connection, table, cityId, visible);
+            decrement(connection, table, oldCityId, oldVisible);
+        }
+    }
+
+    /**
+     * Счетчики для пачки новых записей: по одному изменению на каждую пару (город, видимость),
+     * пары по возрастанию, как и в move.
+     *
+     * @param connection
+     * @param table
+     * @param records
+     * @param cityId
+     * @param visible
+     * @param <T>
+     */
+    public static <T> void incrementAll(Connection connection, String table, Collection<T> records,
+                                        ToIntFunction<T> cityId, Predicate<T> visible) {
+        var deltas = new TreeMap<Long, Integer>();
+        for (var record : records) {
+            var key = 2L * cityId.applyAsInt(record) + (visible.test(record) ? 1 : 0);
+            deltas.merge(key, 1, Integer::sum);
+        }
+        for (var entry : deltas.entrySet()) {
+            change(connection, table, (int) (entry.getKey() / 2), entry.getKey() % 2 == 1, entry.getValue());
+        }
+    }
+
+    /**
+     * @param sql2o
+     * @param table
+     * @param visible null - считать и видимые, и скрытые
+     * @return число записей по id города, города без записей могут отсутствовать
+     */
+    public static Map<Integer, Integer> find(Sql2o sql2o, String table, Boolean visible) {
+        try (var connection = sql2o.open()) {
+            var sql = "SELECT city_id, SUM(total) AS total FROM " + table
+                    + (visible == null ? "" : " WHERE visible = :visible")
+                    + " GROUP BY city_id";
+            var query = connection.createQuery(sql);
+            if (visible != null) {
+                query.addParameter("visible", visible);
+            }
+            var counts = new HashMap<Integer, Integer>();
+            for (var row : query.executeAndFetchTable().rows()) {
+                counts.put(row.getInteger("city_id"), row.getInteger("total"));
+            }
+            return counts;
+        }
+    }
+
+    private static void change(Connection connection, String table, int cityId, boolean visible, int delta) {
+        if (update(connection, table, cityId, visible, delta) == 0 && delta > 0) {
+            connection.createQuery("INSERT INTO " + table + " (city_id, visible, total) VALUES (:cityId, :visible, 0)"
+                            + " ON CONFLICT DO NOTHING")
+                    .addParameter("cityId", cityId)
+                    .addParameter("visible", visible)
+                    .executeUpdate();
+            update(connection, table, cityId, visible, delta);
+        }
+    }
+
+    private static int update(Connection connection, String table, int cityId, boolean visible, int delta) {
+        return connection.createQuery("UPDATE " + table + " SET total = total + :delta"
+                        + " WHERE city_id = :cityId AND visible = :visible")
+                .addParameter("delta", delta)
+                .addParameter("cityId", cityId)
+                .addParameter("visible", visible)
+                .executeUpdate()
+                .getResult();
+    }
+}
@@ -0,0 +1,62 @@
+package ru.job4j.dreamjob.repository;
+
+import org.postgresql.PGConnection;
+import org.sql2o.Sql2o;
+import ru.job4j.dreamjob.dto.ListingFilterDto;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Чтение всех записей таблицы курсором: строки приходят из базы порциями по fetchSize
+ * и отдаются по одной, не собираясь в список.
+ * <br>PostgreSQL читает курсором, только если у запроса задан fetch size и соединение не в autocommit,
+ * иначе драйвер получает весь результат в память. Sql2o не дает задать fetch size запроса,
+ * поэтому на время чтения меняется размер по умолчанию у соединения (PGConnection.setDefaultFetchSize)
+ * и потом возвращается прежний: соединение вернется в пул. Транзакция только читает и откатывается при закрытии.
+ * <br>H2 отдает строки через тот же ResultSet, большой результат он сам держит во временном файле.
+ */
+public final class CursorSql {
+
+    private CursorSql() {
+    }
+
+    /**
+     * @param sql2o
+     * @param postgres
+     * @param sql SELECT без условий фильтра, условия добавляются через ListingFilterSql.where
+     * @param orderBy окончание запроса после условий, например ORDER BY id
+     * @param filter
+     * @param mapping
+     * @param type
+     * @param fetchSize
+     * @param action вызывается для каждой записи в потоке вызывающего, пока открыта транзакция
+     * @param <T>
+     */
+    public static <T> void forEach(Sql2o sql2o, boolean postgres, String sql, String orderBy, ListingFilterDto filter,
+                                   Map<String, String> mapping, Class<T> type, int fetchSize, Consumer<T> action) {
+        try (var connection = sql2o.beginTransaction()) {
+            var pgConnection = postgres ? connection.getJdbcConnection().unwrap(PGConnection.class) : null;
+            var previousFetchSize = postgres ? pgConnection.getDefaultFetchSize() : 0;
+            if (postgres) {
+                pgConnection.setDefaultFetchSize(fetchSize);
+            }
+            try {
+                var query = connection.createQuery(sql + " " + ListingFilterSql.where(filter) + " " + orderBy);
+                ListingFilterSql.addParameters(query, filter).setColumnMappings(mapping);
+                try (var rows = query.executeAndFetchLazy(type)) {
+                    for (var row : rows) {
+                        action.accept(row);
+                    }
+                }
+            } finally {
+                if (postgres) {
+                    pgConnection.setDefaultFetchSize(previousFetchSize);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
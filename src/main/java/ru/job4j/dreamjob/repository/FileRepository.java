@@ -1,8 +1,14 @@
 package ru.job4j.dreamjob.repository;
 
 import ru.job4j.dreamjob.model.File;
+import ru.job4j.dreamjob.model.FileDeletion;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 public interface FileRepository {
 
@@ -10,5 +16,37 @@ public interface FileRepository {
 
     Optional<File> findById(int id);
 
+    Optional<File> findByContentHash(String contentHash);
+
+    Collection<File> findByIds(Collection<Integer> ids);
+
+    Collection<File> findByPathNotLike(String pathPattern, int afterId, int limit);
+
+    boolean updatePath(int id, String oldPath, String newPath);
+
+    Map<Integer, Long> findPackUsage();
+
+    Collection<File> findBySegment(int segment, int afterId, int limit);
+
+    long findSegmentEnd(int segment);
+
+    boolean updatePackLocation(int id, String oldPath, String newPath, int segment, long offset);
+
+    Collection<File> findPage(int afterId, int limit);
+
+    Collection<File> findUnreferenced(int afterId, LocalDateTime createdBefore, int limit);
+
+    Set<String> findExistingPaths(Collection<String> paths);
+
+    boolean incrementRefCount(int id);
+
+    boolean decrementRefCount(int id);
+
     boolean deleteById(int id);
+
+    void addDeletion(int fileId);
+
+    List<FileDeletion> findDeletions(int limit);
+
+    Collection<File> deleteReleased(Collection<FileDeletion> deletions);
 }
\ No newline at end of file
@@ -0,0 +1,88 @@
+package ru.job4j.dreamjob.repository;
+
+import org.sql2o.Query;
+import org.sql2o.Sql2o;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Общее для поиска по вакансиям и кандидатам.
+ * <br>В PostgreSQL ищет столбец search_vector с GIN индексом (скрипт 014):
+ * запрос разбирается websearch_to_tsquery, слова приводятся к основе словарем russian,
+ * заголовок весит больше описания, порядок задает ts_rank.
+ * <br>В H2 нет tsvector, поэтому для нее запрос разбивается на слова здесь,
+ * каждое слово ищется подстрокой через ILIKE, и все слова должны найтись.
+ * Вес слова: 2, если оно есть в заголовке, и 1, если в описании.
+ * Это перебор таблицы без индекса, он нужен для тестовой базы, а не для боевой.
+ * Поиск без базы, по индексу в памяти, устроен в InvertedIndex.
+ */
+public final class FullTextSearch {
+
+    /**
+     * Больше слов в запросе не берется: каждое слово добавляет в SQL для H2 четыре ILIKE.
+     */
+    public static final int MAX_WORDS = 8;
+
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private FullTextSearch() {
+    }
+
+    public static boolean isPostgres(Sql2o sql2o) {
+        try (var connection = sql2o.open()) {
+            return "PostgreSQL".equals(connection.getJdbcConnection().getMetaData().getDatabaseProductName());
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * В словах только буквы и цифры, поэтому символов шаблона LIKE в них нет.
+     *
+     * @param query
+     * @return различные слова запроса в нижнем регистре, не больше MAX_WORDS
+     */
+    public static List<String> words(String query) {
+        return Arrays.stream(SEPARATORS.split(query.toLowerCase(Locale.ROOT)))
+                .filter(word -> !word.isEmpty())
+                .distinct()
+                .limit(MAX_WORDS)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @param titleColumn
+     * @param words
+     * @return условие WHERE для H2: каждое слово есть в заголовке или описании
+     */
+    public static String likeCondition(String titleColumn, int words) {
+        return IntStream.range(0, words)
+                .mapToObj(i -> "(" + titleColumn + " ILIKE :word" + i + " OR description ILIKE :word" + i + ")")
+                .collect(Collectors.joining(" AND "));
+    }
+
+    /**
+     * @param titleColumn
+     * @param words
+     * @return выражение веса строки для ORDER BY в H2
+     */
+    public static String likeRank(String titleColumn, int words) {
+        return IntStream.range(0, words)
+                .mapToObj(i -> "CASE WHEN " + titleColumn + " ILIKE :word" + i + " THEN 2 ELSE 0 END"
+                        + " + CASE WHEN description ILIKE :word" + i + " THEN 1 ELSE 0 END")
+                .collect(Collectors.joining(" + "));
+    }
+
+    public static Query addWords(Query query, List<String> words) {
+        for (int i = 0; i < words.size(); i++) {
+            query.addParameter("word" + i, "%" + words.get(i) + "%");
+        }
+        return query;
+    }
+}
@@ -0,0 +1,130 @@
+package ru.job4j.dreamjob.repository;
+
+import net.jcip.annotations.ThreadSafe;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+import ru.job4j.dreamjob.dto.ListingFilterDto;
+import ru.job4j.dreamjob.model.Candidate;
+import ru.job4j.dreamjob.model.CandidateSummary;
+import ru.job4j.dreamjob.search.RebuildableIndex;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Слой над Sql2oCandidateRepository, который снимает поиск с базы:
+ * search отвечает из RebuildableIndex в памяти приложения, остальное уходит в базу как есть.
+ * <br>Индекс строится заново каждые search.index.refresh-delay, кандидаты читаются пачками
+ * по search.index.batch-size через findAfterId. Пока первая сборка не закончилась, поиск идет через базу.
+ * Свои изменения приложение вносит в индекс сразу, а изменения других экземпляров
+ * приложения попадут в поиск при следующей сборке.
+ * <br>При search.index.enabled=false слой только передает вызовы в базу.
+ */
+@Repository
+@ThreadSafe
+public class IndexedCandidateRepository implements CandidateRepository {
+
+    private final CandidateRepository candidateRepository;
+
+    private final RebuildableIndex<Candidate, CandidateSummary> index;
+
+    public IndexedCandidateRepository(CandidateRepository sql2oCandidateRepository,
+                                      @Value("${search.index.enabled}") boolean enabled,
+                                      @Value("${search.index.batch-size}") int batchSize) {
+        this.candidateRepository = sql2oCandidateRepository;
+        this.index = new RebuildableIndex<>("кандидатов", enabled, batchSize, Candidate::getId, Candidate::getName,
+                Candidate::getDescription, candidate -> new CandidateSummary(candidate.getId(), candidate.getName(),
+                        candidate.getCreationDate(), candidate.getVisible()));
+    }
+
+    @Override
+    public Candidate save(Candidate candidate) {
+        var savedCandidate = candidateRepository.save(candidate);
+        index.put(savedCandidate);
+        return savedCandidate;
+    }
+
+    /**
+     * id новых записей неизвестны, поэтому в индекс они попадут при следующей сборке.
+     *
+     * @param candidates
+     * @return
+     */
+    @Override
+    public int saveAll(List<Candidate> candidates) {
+        return candidateRepository.saveAll(candidates);
+    }
+
+    @Override
+    public boolean deleteById(int id) {
+        var isDeleted = candidateRepository.deleteById(id);
+        if (isDeleted) {
+            index.remove(id);
+        }
+        return isDeleted;
+    }
+
+    @Override
+    public boolean update(Candidate candidate) {
+        var isUpdated = candidateRepository.update(candidate);
+        if (isUpdated) {
+            index.put(candidate);
+        }
+        return isUpdated;
+    }
+
+    @Override
+    public Optional<Candidate> findById(int id) {
+        return candidateRepository.findById(id);
+    }
+
+    @Override
+    public Collection<Candidate> findAll() {
+        return candidateRepository.findAll();
+    }
+
+    @Override
+    public List<CandidateSummary> findFirstPage(ListingFilterDto filter, int limit) {
+        return candidateRepository.findFirstPage(filter, limit);
+    }
+
+    @Override
+    public List<CandidateSummary> findOlderThan(ListingFilterDto filter, LocalDateTime creationDate, int id, int limit) {
+        return candidateRepository.findOlderThan(filter, creationDate, id, limit);
+    }
+
+    @Override
+    public List<CandidateSummary> findNewerThan(ListingFilterDto filter, LocalDateTime creationDate, int id, int limit) {
+        return candidateRepository.findNewerThan(filter, creationDate, id, limit);
+    }
+
+    @Override
+    public List<CandidateSummary> search(String query, int limit, int offset) {
+        return index.search(query, limit, offset).orElseGet(() -> candidateRepository.search(query, limit, offset));
+    }
+
+    @Override
+    public List<Candidate> findAfterId(int id, int limit) {
+        return candidateRepository.findAfterId(id, limit);
+    }
+
+    @Override
+    public void forEach(ListingFilterDto filter, int fetchSize, Consumer<Candidate> action) {
+        candidateRepository.forEach(filter, fetchSize, action);
+    }
+
+    @Override
+    public Map<Integer, Integer> countByCity(Boolean visible) {
+        return candidateRepository.countByCity(visible);
+    }
+
+    @Scheduled(fixedDelayString = "${search.index.refresh-delay}")
+    public void rebuild() {
+        index.rebuild(candidateRepository::findAfterId);
+    }
+}
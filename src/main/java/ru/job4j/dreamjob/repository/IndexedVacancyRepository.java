@@ -0,0 +1,130 @@
+package ru.job4j.dreamjob.repository;
+
+import net.jcip.annotations.ThreadSafe;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+import ru.job4j.dreamjob.dto.ListingFilterDto;
+import ru.job4j.dreamjob.model.Vacancy;
+import ru.job4j.dreamjob.model.VacancySummary;
+import ru.job4j.dreamjob.search.RebuildableIndex;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Слой над Sql2oVacancyRepository, который снимает поиск с базы:
+ * search отвечает из RebuildableIndex в памяти приложения, остальное уходит в базу как есть.
+ * <br>Индекс строится заново каждые search.index.refresh-delay, вакансии читаются пачками
+ * по search.index.batch-size через findAfterId. Пока первая сборка не закончилась, поиск идет через базу.
+ * Свои изменения приложение вносит в индекс сразу, а изменения других экземпляров
+ * приложения попадут в поиск при следующей сборке.
+ * <br>При search.index.enabled=false слой только передает вызовы в базу.
+ */
+@Repository
+@ThreadSafe
+public class IndexedVacancyRepository implements VacancyRepository {
+
+    private final VacancyRepository vacancyRepository;
+
+    private final RebuildableIndex<Vacancy, VacancySummary> index;
+
+    public IndexedVacancyRepository(VacancyRepository sql2oVacancyRepository,
+                                    @Value("${search.index.enabled}") boolean enabled,
+                                    @Value("${search.index.batch-size}") int batchSize) {
+        this.vacancyRepository = sql2oVacancyRepository;
+        this.index = new RebuildableIndex<>("вакансий", enabled, batchSize, Vacancy::getId, Vacancy::getTitle,
+                Vacancy::getDescription, vacancy -> new VacancySummary(vacancy.getId(), vacancy.getTitle(),
+                        vacancy.getCreationDate(), vacancy.getVisible()));
+    }
+
+    @Override
+    public Vacancy save(Vacancy vacancy) {
+        var savedVacancy = vacancyRepository.save(vacancy);
+        index.put(savedVacancy);
+        return savedVacancy;
+    }
+
+    /**
+     * id новых записей неизвестны, поэтому в индекс они попадут при следующей сборке.
+     *
+     * @param vacancies
+     * @return
+     */
+    @Override
+    public int saveAll(List<Vacancy> vacancies) {
+        return vacancyRepository.saveAll(vacancies);
+    }
+
+    @Override
+    public boolean deleteById(int id) {
+        var isDeleted = vacancyRepository.deleteById(id);
+        if (isDeleted) {
+            index.remove(id);
+        }
+        return isDeleted;
+    }
+
+    @Override
+    public boolean update(Vacancy vacancy) {
+        var isUpdated = vacancyRepository.update(vacancy);
+        if (isUpdated) {
+            index.put(vacancy);
+        }
+        return isUpdated;
+    }
+
+    @Override
+    public Optional<Vacancy> findById(int id) {
+        return vacancyRepository.findById(id);
+    }
+
+    @Override
+    public Collection<Vacancy> findAll() {
+        return vacancyRepository.findAll();
+    }
+
+    @Override
+    public List<VacancySummary> findFirstPage(ListingFilterDto filter, int limit) {
+        return vacancyRepository.findFirstPage(filter, limit);
+    }
+
+    @Override
+    public List<VacancySummary> findOlderThan(ListingFilterDto filter, LocalDateTime creationDate, int id, int limit) {
+        return vacancyRepository.findOlderThan(filter, creationDate, id, limit);
+    }
+
+    @Override
+    public List<VacancySummary> findNewerThan(ListingFilterDto filter, LocalDateTime creationDate, int id, int limit) {
+        return vacancyRepository.findNewerThan(filter, creationDate, id, limit);
+    }
+
+    @Override
+    public List<VacancySummary> search(String query, int limit, int offset) {
+        return index.search(query, limit, offset).orElseGet(() -> vacancyRepository.search(query, limit, offset));
+    }
+
+    @Override
+    public List<Vacancy> findAfterId(int id, int limit) {
+        return vacancyRepository.findAfterId(id, limit);
+    }
+
+    @Override
+    public void forEach(ListingFilterDto filter, int fetchSize, Consumer<Vacancy> action) {
+        vacancyRepository.forEach(filter, fetchSize, action);
+    }
+
+    @Override
+    public Map<Integer, Integer> countByCity(Boolean visible) {
+        return vacancyRepository.countByCity(visible);
+    }
+
+    @Scheduled(fixedDelayString = "${search.index.refresh-delay}")
+    public void rebuild() {
+        index.rebuild(vacancyRepository::findAfterId);
+    }
+}
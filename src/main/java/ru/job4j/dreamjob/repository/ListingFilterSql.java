@@ -0,0 +1,52 @@
+package ru.job4j.dreamjob.repository;
+
+import org.sql2o.Query;
+import ru.job4j.dreamjob.dto.ListingFilterDto;
+
+/**
+ * Условия ListingFilterDto для запросов страниц списка вакансий и кандидатов.
+ * В SQL попадают только заданные поля: Sql2o не дает добавить параметр,
+ * которого нет в тексте запроса.
+ * <br>Под фильтр по городу есть индекс (city_id, creation_date desc, id desc),
+ * под фильтр по видимости - (visible, creation_date desc, id desc), скрипт 015.
+ * С обоими фильтрами берется индекс по городу, видимость проверяется по строке.
+ */
+public final class ListingFilterSql {
+
+    private ListingFilterSql() {
+    }
+
+    /**
+     * @param filter
+     * @return WHERE с условиями фильтра или пустая строка
+     */
+    public static String where(ListingFilterDto filter) {
+        var conditions = and(filter);
+        return conditions.isEmpty() ? "" : "WHERE" + conditions.substring(" AND".length());
+    }
+
+    /**
+     * @param filter
+     * @return условия с AND перед каждым или пустая строка
+     */
+    public static String and(ListingFilterDto filter) {
+        var conditions = new StringBuilder();
+        if (filter.getCityId() != null) {
+            conditions.append(" AND city_id = :cityId");
+        }
+        if (filter.getVisible() != null) {
+            conditions.append(" AND visible = :visible");
+        }
+        return conditions.toString();
+    }
+
+    public static Query addParameters(Query query, ListingFilterDto filter) {
+        if (filter.getCityId() != null) {
+            query.addParameter("cityId", filter.getCityId());
+        }
+        if (filter.getVisible() != null) {
+            query.addParameter("visible", filter.getVisible());
+        }
+        return query;
+    }
+}
@@ -2,20 +2,40 @@ package ru.job4j.dreamjob.repository;
 
 import net.jcip.annotations.ThreadSafe;
 import org.springframework.stereotype.Repository;
+import ru.job4j.dreamjob.dto.ListingFilterDto;
 import ru.job4j.dreamjob.model.Candidate;
+import ru.job4j.dreamjob.model.CandidateSummary;
+import ru.job4j.dreamjob.search.InvertedIndex;
 
+import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Repository
 @ThreadSafe
 public class MemoryCandidateRepository implements CandidateRepository {
 
+    /**
+     * Порядок списка: от новых к старым, при равной дате по убыванию id.
+     */
+    private static final Comparator<Candidate> NEWEST_FIRST = Comparator.comparing(Candidate::getCreationDate)
+            .thenComparing(Candidate::getId)
+            .reversed();
+
     private final AtomicInteger nextId = new AtomicInteger(0);
 
     private final Map<Integer, Candidate> candidates = new ConcurrentHashMap<>();
 
+    /**
+     * Поиск идет по индексу, а не перебором: индекс меняется вместе с candidates.
+     * Замена в индексе выполняется внутри computeIfPresent, поэтому при гонке
+     * двух обновлений одной записи в индексе остается та же версия, что и в candidates.
+     */
+    private final InvertedIndex<CandidateSummary> index = new InvertedIndex<>();
+
     public MemoryCandidateRepository() {
         save(new Candidate(0, "Vasiliy", "Intern java developer", 1, true, 0));
         save(new Candidate(0, "Oleg", "Junior java developer", 2, true, 0));
@@ -30,20 +50,34 @@ public class MemoryCandidateRepository implements CandidateRepository {
         int id = nextId.incrementAndGet();
         candidate.setId(id);
         candidates.putIfAbsent(candidate.getId(), candidate);
+        index(candidate);
         return candidate;
     }
 
+    @Override
+    public int saveAll(List<Candidate> newCandidates) {
+        newCandidates.forEach(this::save);
+        return newCandidates.size();
+    }
+
     @Override
     public boolean deleteById(int id) {
-        return candidates.remove(id) != null;
+        var isDeleted = candidates.remove(id) != null;
+        if (isDeleted) {
+            index.remove(id);
+        }
+        return isDeleted;
     }
 
     @Override
     public boolean update(Candidate candidate) {
-        return candidates.computeIfPresent(candidate.getId(), (id, oldCandidate) ->
-                new Candidate(oldCandidate.getId(), candidate.getName(),
-                        candidate.getDescription(), candidate.getCityId(), candidate.getVisible(),
-                        candidate.getFileId())) != null;
+        return candidates.computeIfPresent(candidate.getId(), (id, oldCandidate) -> {
+            var updatedCandidate = new Candidate(oldCandidate.getId(), candidate.getName(),
+                    candidate.getDescription(), candidate.getCityId(), candidate.getVisible(),
+                    candidate.getFileId());
+            index(updatedCandidate);
+            return updatedCandidate;
+        }) != null;
     }
 
     @Override
@@ -55,4 +89,81 @@ public class MemoryCandidateRepository implements CandidateRepository {
     public Collection<Candidate> findAll() {
         return candidates.values();
     }
-}
\ No newline at end of file
+
+    @Override
+    public List<CandidateSummary> findFirstPage(ListingFilterDto filter, int limit) {
+        return candidates.values().stream()
+                .filter(candidate -> filter.matches(candidate.getCityId(), candidate.getVisible()))
+                .sorted(NEWEST_FIRST)
+                .limit(limit)
+                .map(MemoryCandidateRepository::toSummary)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<CandidateSummary> findOlderThan(ListingFilterDto filter, LocalDateTime creationDate, int id, int limit) {
+        return candidates.values().stream()
+                .filter(candidate -> filter.matches(candidate.getCityId(), candidate.getVisible()))
+                .filter(candidate -> compareWithCursor(candidate, creationDate, id) < 0)
+                .sorted(NEWEST_FIRST)
+                .limit(limit)
+                .map(MemoryCandidateRepository::toSummary)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<CandidateSummary> findNewerThan(ListingFilterDto filter, LocalDateTime creationDate, int id, int limit) {
+        var page = candidates.values().stream()
+                .filter(candidate -> filter.matches(candidate.getCityId(), candidate.getVisible()))
+                .filter(candidate -> compareWithCursor(candidate, creationDate, id) > 0)
+                .sorted(NEWEST_FIRST.reversed())
+                .limit(limit)
+                .map(MemoryCandidateRepository::toSummary)
+                .collect(Collectors.toList());
+        Collections.reverse(page);
+        return page;
+    }
+
+    @Override
+    public List<CandidateSummary> search(String query, int limit, int offset) {
+        return index.search(query, limit, offset);
+    }
+
+    @Override
+    public List<Candidate> findAfterId(int id, int limit) {
+        return candidates.values().stream()
+                .filter(candidate -> candidate.getId() > id)
+                .sorted(Comparator.comparing(Candidate::getId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void forEach(ListingFilterDto filter, int fetchSize, Consumer<Candidate> action) {
+        candidates.values().stream()
+                .filter(candidate -> filter.matches(candidate.getCityId(), candidate.getVisible()))
+                .sorted(Comparator.comparingInt(Candidate::getId))
+                .forEach(action);
+    }
+
+    @Override
+    public Map<Integer, Integer> countByCity(Boolean visible) {
+        return candidates.values().stream()
+                .filter(candidate -> visible == null || candidate.getVisible() == visible)
+                .collect(Collectors.groupingBy(Candidate::getCityId, Collectors.summingInt(candidate -> 1)));
+    }
+
+    private void index(Candidate candidate) {
+        index.put(candidate.getId(), candidate.getName(), candidate.getDescription(), toSummary(candidate));
+    }
+
+    private static CandidateSummary toSummary(Candidate candidate) {
+        return new CandidateSummary(candidate.getId(), candidate.getName(),
+                candidate.getCreationDate(), candidate.getVisible());
+    }
+
+    private static int compareWithCursor(Candidate candidate, LocalDateTime creationDate, int id) {
+        var result = candidate.getCreationDate().compareTo(creationDate);
+        return result != 0 ? result : Integer.compare(candidate.getId(), id);
+    }
+}
@@ -2,11 +2,22 @@ package ru.job4j.dreamjob.repository;
 
 import org.springframework.stereotype.Repository;
 import ru.job4j.dreamjob.model.File;
+import ru.job4j.dreamjob.model.FileDeletion;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 @Repository
 public class MemoryFileRepository implements FileRepository {
@@ -15,6 +26,10 @@ public class MemoryFileRepository implements FileRepository {
 
     private final Map<Integer, File> files = new ConcurrentHashMap<>();
 
+    private final AtomicInteger nextDeletionId = new AtomicInteger(0);
+
+    private final Map<Integer, FileDeletion> deletions = new ConcurrentHashMap<>();
+
     @Override
     public File save(File file) {
         file.setId(nextId.incrementAndGet());
@@ -27,8 +42,194 @@ public class MemoryFileRepository implements FileRepository {
         return Optional.ofNullable(files.get(id));
     }
 
+    @Override
+    public Optional<File> findByContentHash(String contentHash) {
+        return files.values().stream()
+                .filter(file -> contentHash.equals(file.getContentHash()))
+                .findFirst();
+    }
+
+    @Override
+    public Collection<File> findByIds(Collection<Integer> ids) {
+        return ids.stream()
+                .distinct()
+                .map(files::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Collection<File> findByPathNotLike(String pathPattern, int afterId, int limit) {
+        var regex = toRegex(pathPattern);
+        return files.values().stream()
+                .filter(file -> file.getId() > afterId && !file.isPacked() && !regex.matcher(file.getPath()).matches())
+                .sorted(Comparator.comparingInt(File::getId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Переводит шаблон LIKE в регулярное выражение: % - любая строка, _ - один символ,
+     * обратная косая черта экранирует следующий символ.
+     *
+     * @param pattern
+     * @return
+     */
+    private Pattern toRegex(String pattern) {
+        var regex = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            var c = pattern.charAt(i);
+            if (c == '\\' && i + 1 < pattern.length()) {
+                regex.append(Pattern.quote(String.valueOf(pattern.charAt(++i))));
+            } else if (c == '%') {
+                regex.append(".*");
+            } else if (c == '_') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    @Override
+    public boolean updatePath(int id, String oldPath, String newPath) {
+        var isUpdated = new AtomicBoolean(false);
+        files.computeIfPresent(id, (key, file) -> {
+            if (file.getPath().equals(oldPath)) {
+                file.setPath(newPath);
+                isUpdated.set(true);
+            }
+            return file;
+        });
+        return isUpdated.get();
+    }
+
+    @Override
+    public Map<Integer, Long> findPackUsage() {
+        return files.values().stream()
+                .filter(File::isPacked)
+                .collect(Collectors.groupingBy(File::getPackSegment, Collectors.summingLong(File::getPackLength)));
+    }
+
+    @Override
+    public Collection<File> findBySegment(int segment, int afterId, int limit) {
+        return files.values().stream()
+                .filter(file -> file.getId() > afterId && Objects.equals(file.getPackSegment(), segment))
+                .sorted(Comparator.comparingInt(File::getId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public long findSegmentEnd(int segment) {
+        return files.values().stream()
+                .filter(file -> Objects.equals(file.getPackSegment(), segment))
+                .mapToLong(file -> file.getPackOffset() + file.getPackLength())
+                .max()
+                .orElse(0);
+    }
+
+    @Override
+    public boolean updatePackLocation(int id, String oldPath, String newPath, int segment, long offset) {
+        var isUpdated = new AtomicBoolean(false);
+        files.computeIfPresent(id, (key, file) -> {
+            if (file.getPath().equals(oldPath)) {
+                file.setPath(newPath);
+                file.setPackSegment(segment);
+                file.setPackOffset(offset);
+                isUpdated.set(true);
+            }
+            return file;
+        });
+        return isUpdated.get();
+    }
+
+    @Override
+    public Collection<File> findPage(int afterId, int limit) {
+        return files.values().stream()
+                .filter(file -> file.getId() > afterId)
+                .sorted(Comparator.comparingInt(File::getId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Вакансии и кандидаты в памяти хранятся отдельно и ссылок на файлы отсюда не видно,
+     * поэтому непривязанные файлы в памяти не ищутся.
+     *
+     * @param afterId
+     * @param createdBefore
+     * @param limit
+     * @return
+     */
+    @Override
+    public Collection<File> findUnreferenced(int afterId, LocalDateTime createdBefore, int limit) {
+        return List.of();
+    }
+
+    @Override
+    public Set<String> findExistingPaths(Collection<String> paths) {
+        return files.values().stream()
+                .map(File::getPath)
+                .filter(paths::contains)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public boolean incrementRefCount(int id) {
+        return files.computeIfPresent(id, (key, file) -> {
+            file.setRefCount(file.getRefCount() + 1);
+            return file;
+        }) != null;
+    }
+
+    @Override
+    public boolean decrementRefCount(int id) {
+        var isDecremented = new AtomicBoolean(false);
+        files.computeIfPresent(id, (key, file) -> {
+            if (file.getRefCount() > 1) {
+                file.setRefCount(file.getRefCount() - 1);
+                isDecremented.set(true);
+            }
+            return file;
+        });
+        return isDecremented.get();
+    }
+
     @Override
     public boolean deleteById(int id) {
         return files.remove(id) != null;
     }
-}
\ No newline at end of file
+
+    @Override
+    public void addDeletion(int fileId) {
+        var deletion = new FileDeletion(nextDeletionId.incrementAndGet(), fileId);
+        deletions.put(deletion.getId(), deletion);
+    }
+
+    @Override
+    public List<FileDeletion> findDeletions(int limit) {
+        return deletions.values().stream()
+                .sorted(Comparator.comparingInt(FileDeletion::getId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public synchronized Collection<File> deleteReleased(Collection<FileDeletion> deletions) {
+        var released = new ArrayList<File>();
+        for (var deletion : deletions) {
+            var file = files.get(deletion.getFileId());
+            if (file != null) {
+                file.setRefCount(file.getRefCount() - 1);
+                if (file.getRefCount() <= 0) {
+                    files.remove(file.getId());
+                    released.add(file);
+                }
+            }
+            this.deletions.remove(deletion.getId());
+        }
+        return released;
+    }
+}
@@ -0,0 +1,61 @@
+package ru.job4j.dreamjob.repository;
+
+import org.springframework.stereotype.Repository;
+import ru.job4j.dreamjob.model.UploadSession;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+@Repository
+public class MemoryUploadSessionRepository implements UploadSessionRepository {
+
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    private final Map<String, Set<Integer>> chunks = new ConcurrentHashMap<>();
+
+    @Override
+    public UploadSession save(UploadSession session) {
+        sessions.put(session.getId(), session);
+        chunks.put(session.getId(), ConcurrentHashMap.newKeySet());
+        return session;
+    }
+
+    @Override
+    public Optional<UploadSession> findById(String id) {
+        return Optional.ofNullable(sessions.get(id));
+    }
+
+    @Override
+    public void addChunk(String id, int number) {
+        var received = chunks.get(id);
+        if (received != null) {
+            received.add(number);
+        }
+    }
+
+    @Override
+    public Set<Integer> findChunks(String id) {
+        return Set.copyOf(chunks.getOrDefault(id, Set.of()));
+    }
+
+    @Override
+    public boolean deleteById(String id) {
+        chunks.remove(id);
+        return sessions.remove(id) != null;
+    }
+
+    @Override
+    public Collection<UploadSession> findCreatedBefore(LocalDateTime createdBefore, int limit) {
+        return sessions.values().stream()
+                .filter(session -> session.getCreationDate().isBefore(createdBefore))
+                .sorted(Comparator.comparing(UploadSession::getCreationDate))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+}
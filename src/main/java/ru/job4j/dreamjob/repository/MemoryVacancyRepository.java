@@ -2,20 +2,40 @@ package ru.job4j.dreamjob.repository;
 
 import net.jcip.annotations.ThreadSafe;
 import org.springframework.stereotype.Repository;
+import ru.job4j.dreamjob.dto.ListingFilterDto;
 import ru.job4j.dreamjob.model.Vacancy;
+import ru.job4j.dreamjob.model.VacancySummary;
+import ru.job4j.dreamjob.search.InvertedIndex;
 
+import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Repository
 @ThreadSafe
 public class MemoryVacancyRepository implements VacancyRepository {
 
+    /**
+     * Порядок списка: от новых к старым, при равной дате по убыванию id.
+     */
+    private static final Comparator<Vacancy> NEWEST_FIRST = Comparator.comparing(Vacancy::getCreationDate)
+            .thenComparing(Vacancy::getId)
+            .reversed();
+
     private final AtomicInteger nextId = new AtomicInteger(0);
 
     private final Map<Integer, Vacancy> vacancies = new ConcurrentHashMap<>();
 
+    /**
+     * Поиск идет по индексу, а не перебором: индекс меняется вместе с vacancies.
+     * Замена в индексе выполняется внутри computeIfPresent, поэтому при гонке
+     * двух обновлений одной записи в индексе остается та же версия, что и в vacancies.
+     */
+    private final InvertedIndex<VacancySummary> index = new InvertedIndex<>();
+
     public MemoryVacancyRepository() {
         save(new Vacancy(0, "Intern Java Developer", "Описание для интерна",
                 true, 1, 0));
@@ -36,19 +56,33 @@ public class MemoryVacancyRepository implements VacancyRepository {
         int id = nextId.incrementAndGet();
         vacancy.setId(id);
         vacancies.put(vacancy.getId(), vacancy);
+        index(vacancy);
         return vacancy;
     }
 
+    @Override
+    public int saveAll(List<Vacancy> newVacancies) {
+        newVacancies.forEach(this::save);
+        return newVacancies.size();
+    }
+
     @Override
     public boolean deleteById(int id) {
-        return vacancies.remove(id) != null;
+        var isDeleted = vacancies.remove(id) != null;
+        if (isDeleted) {
+            index.remove(id);
+        }
+        return isDeleted;
     }
 
     @Override
     public boolean update(Vacancy vacancy) {
-        return vacancies.computeIfPresent(vacancy.getId(), (id, oldVacancy) ->
-                new Vacancy(oldVacancy.getId(), vacancy.getTitle(), vacancy.getDescription(),
-                        vacancy.getVisible(), vacancy.getCityId(), vacancy.getFileId())) != null;
+        return vacancies.computeIfPresent(vacancy.getId(), (id, oldVacancy) -> {
+            var updatedVacancy = new Vacancy(oldVacancy.getId(), vacancy.getTitle(), vacancy.getDescription(),
+                    vacancy.getVisible(), vacancy.getCityId(), vacancy.getFileId());
+            index(updatedVacancy);
+            return updatedVacancy;
+        }) != null;
     }
 
     @Override
@@ -60,4 +94,80 @@ public class MemoryVacancyRepository implements VacancyRepository {
     public Collection<Vacancy> findAll() {
         return vacancies.values();
     }
+
+    @Override
+    public List<VacancySummary> findFirstPage(ListingFilterDto filter, int limit) {
+        return vacancies.values().stream()
+                .filter(vacancy -> filter.matches(vacancy.getCityId(), vacancy.getVisible()))
+                .sorted(NEWEST_FIRST)
+                .limit(limit)
+                .map(MemoryVacancyRepository::toSummary)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<VacancySummary> findOlderThan(ListingFilterDto filter, LocalDateTime creationDate, int id, int limit) {
+        return vacancies.values().stream()
+                .filter(vacancy -> filter.matches(vacancy.getCityId(), vacancy.getVisible()))
+                .filter(vacancy -> compareWithCursor(vacancy, creationDate, id) < 0)
+                .sorted(NEWEST_FIRST)
+                .limit(limit)
+                .map(MemoryVacancyRepository::toSummary)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<VacancySummary> findNewerThan(ListingFilterDto filter, LocalDateTime creationDate, int id, int limit) {
+        var page = vacancies.values().stream()
+                .filter(vacancy -> filter.matches(vacancy.getCityId(), vacancy.getVisible()))
+                .filter(vacancy -> compareWithCursor(vacancy, creationDate, id) > 0)
+                .sorted(NEWEST_FIRST.reversed())
+                .limit(limit)
+                .map(MemoryVacancyRepository::toSummary)
+                .collect(Collectors.toList());
+        Collections.reverse(page);
+        return page;
+    }
+
+    @Override
+    public List<VacancySummary> search(String query, int limit, int offset) {
+        return index.search(query, limit, offset);
+    }
+
+    @Override
+    public List<Vacancy> findAfterId(int id, int limit) {
+        return vacancies.values().stream()
+                .filter(vacancy -> vacancy.getId() > id)
+                .sorted(Comparator.comparing(Vacancy::getId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void forEach(ListingFilterDto filter, int fetchSize, Consumer<Vacancy> action) {
+        vacancies.values().stream()
+                .filter(vacancy -> filter.matches(vacancy.getCityId(), vacancy.getVisible()))
+                .sorted(Comparator.comparingInt(Vacancy::getId))
+                .forEach(action);
+    }
+
+    @Override
+    public Map<Integer, Integer> countByCity(Boolean visible) {
+        return vacancies.values().stream()
+                .filter(vacancy -> visible == null || vacancy.getVisible() == visible)
+                .collect(Collectors.groupingBy(Vacancy::getCityId, Collectors.summingInt(vacancy -> 1)));
+    }
+
+    private void index(Vacancy vacancy) {
+        index.put(vacancy.getId(), vacancy.getTitle(), vacancy.getDescription(), toSummary(vacancy));
+    }
+
+    private static VacancySummary toSummary(Vacancy vacancy) {
+        return new VacancySummary(vacancy.getId(), vacancy.getTitle(), vacancy.getCreationDate(), vacancy.getVisible());
+    }
+
+    private static int compareWithCursor(Vacancy vacancy, LocalDateTime creationDate, int id) {
+        var result = vacancy.getCreationDate().compareTo(creationDate);
+        return result != 0 ? result : Integer.compare(vacancy.getId(), id);
+    }
 }
@@ -1,24 +1,38 @@
 package ru.job4j.dreamjob.repository;
 
 import org.springframework.stereotype.Repository;
+import org.sql2o.Connection;
+import org.sql2o.Query;
 import org.sql2o.Sql2o;
+import org.sql2o.data.Row;
+import ru.job4j.dreamjob.dto.ListingFilterDto;
 import ru.job4j.dreamjob.model.Candidate;
+import ru.job4j.dreamjob.model.CandidateSummary;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 @Repository
 public class Sql2oCandidateRepository implements CandidateRepository {
 
     private final Sql2o sql2o;
 
+    private final boolean postgres;
+
     public Sql2oCandidateRepository(Sql2o sql2o) {
         this.sql2o = sql2o;
+        this.postgres = FullTextSearch.isPostgres(sql2o);
     }
 
     @Override
     public Candidate save(Candidate candidate) {
-        try (var connection = sql2o.open()) {
+        try (var connection = sql2o.beginTransaction()) {
             var sql = """
                     INSERT INTO candidates(name, description, creation_date, city_id, visible, file_id)
                     VALUES (:name, :description, :creationDate, :cityId, :visible, :fileId)
@@ -32,23 +46,46 @@ public class Sql2oCandidateRepository implements CandidateRepository {
                     .addParameter("fileId", candidate.getFileId());
             int generatedId = query.executeUpdate().getKey(Integer.class);
             candidate.setId(generatedId);
+            CityCountSql.increment(connection, "candidate_city_counts", candidate.getCityId(), candidate.getVisible());
+            connection.commit();
             return candidate;
         }
     }
 
+    @Override
+    public int saveAll(List<Candidate> candidates) {
+        var rows = new ArrayList<Object[]>(candidates.size());
+        for (var candidate : candidates) {
+            rows.add(new Object[] {candidate.getName(), candidate.getDescription(), candidate.getCreationDate(), candidate.getCityId(),
+                    candidate.getVisible(), candidate.getFileId() == 0 ? null : candidate.getFileId()});
+        }
+        try (var connection = sql2o.beginTransaction()) {
+            BulkInsertSql.insert(connection, postgres, "candidates", List.of("name", "description", "creation_date", "city_id", "visible", "file_id"), rows);
+            CityCountSql.incrementAll(connection, "candidate_city_counts", candidates, Candidate::getCityId, Candidate::getVisible);
+            connection.commit();
+            return candidates.size();
+        }
+    }
+
     @Override
     public boolean deleteById(int id) {
-        try (var connection = sql2o.open()) {
+        try (var connection = sql2o.beginTransaction()) {
+            var old = lockCityAndVisibility(connection, id);
             var query = connection.createQuery("DELETE FROM candidates WHERE id = :id");
             query.addParameter("id", id);
             var affectedRows = query.executeUpdate().getResult();
+            if (old != null && old.getInteger("city_id") != null) {
+                CityCountSql.decrement(connection, "candidate_city_counts", old.getInteger("city_id"), old.getBoolean("visible"));
+            }
+            connection.commit();
             return affectedRows > 0;
         }
     }
 
     @Override
     public boolean update(Candidate candidate) {
-        try (var connection = sql2o.open()) {
+        try (var connection = sql2o.beginTransaction()) {
+            var old = lockCityAndVisibility(connection, candidate.getId());
             var sql = """
                     UPDATE candidates
                     SET name = :name, description = :description, creation_date = :creationDate,
@@ -61,9 +98,16 @@ public class Sql2oCandidateRepository implements CandidateRepository {
                     .addParameter("creationDate", candidate.getCreationDate())
                     .addParameter("cityId", candidate.getCityId())
                     .addParameter("visible", candidate.getVisible())
-                    .addParameter("fileId", candidate.getFileId())
+                    .addParameter("fileId", candidate.getFileId() == 0 ? null : candidate.getFileId())
                     .addParameter("id", candidate.getId());
             var affectedRows = query.executeUpdate().getResult();
+            if (old != null && old.getInteger("city_id") != null) {
+                CityCountSql.move(connection, "candidate_city_counts", old.getInteger("city_id"), old.getBoolean("visible"),
+                        candidate.getCityId(), candidate.getVisible());
+            } else if (old != null) {
+                CityCountSql.increment(connection, "candidate_city_counts", candidate.getCityId(), candidate.getVisible());
+            }
+            connection.commit();
             return affectedRows > 0;
         }
     }
@@ -87,4 +131,155 @@ public class Sql2oCandidateRepository implements CandidateRepository {
         }
     }
 
-}
\ No newline at end of file
+    @Override
+    public List<CandidateSummary> findFirstPage(ListingFilterDto filter, int limit) {
+        try (var connection = sql2o.open()) {
+            var sql = """
+                    SELECT id, name, creation_date, visible FROM candidates
+                    %s
+                    ORDER BY creation_date DESC, id DESC
+                    LIMIT :limit
+                    """.formatted(ListingFilterSql.where(filter));
+            var query = ListingFilterSql.addParameters(connection.createQuery(sql), filter)
+                    .addParameter("limit", limit);
+            return query.setColumnMappings(CandidateSummary.COLUMN_MAPPING).executeAndFetch(CandidateSummary.class);
+        }
+    }
+
+    /**
+     * Условие на ключ (creation_date, id) записано развернуто, а не как (creation_date, id) < (...):
+     * сравнение строк H2 проверяет перебором всей таблицы.
+     * Развернутое условие читает индекс (creation_date desc, id desc) с позиции курсора,
+     * поэтому страница стоит одинаково на любой глубине списка.
+     *
+     * @param filter
+     * @param creationDate
+     * @param id
+     * @param limit
+     * @return
+     */
+    @Override
+    public List<CandidateSummary> findOlderThan(ListingFilterDto filter, LocalDateTime creationDate, int id, int limit) {
+        try (var connection = sql2o.open()) {
+            var sql = """
+                    SELECT id, name, creation_date, visible FROM candidates
+                    WHERE creation_date <= :creationDate AND (creation_date < :creationDate OR id < :id)%s
+                    ORDER BY creation_date DESC, id DESC
+                    LIMIT :limit
+                    """.formatted(ListingFilterSql.and(filter));
+            var query = ListingFilterSql.addParameters(connection.createQuery(sql), filter)
+                    .addParameter("creationDate", creationDate)
+                    .addParameter("id", id)
+                    .addParameter("limit", limit);
+            return query.setColumnMappings(CandidateSummary.COLUMN_MAPPING).executeAndFetch(CandidateSummary.class);
+        }
+    }
+
+    /**
+     * Записи перед курсором выбираются по возрастанию ключа, чтобы LIMIT взял ближайшие к курсору,
+     * а затем переворачиваются в порядок списка.
+     *
+     * @param filter
+     * @param creationDate
+     * @param id
+     * @param limit
+     * @return
+     */
+    @Override
+    public List<CandidateSummary> findNewerThan(ListingFilterDto filter, LocalDateTime creationDate, int id, int limit) {
+        try (var connection = sql2o.open()) {
+            var sql = """
+                    SELECT id, name, creation_date, visible FROM candidates
+                    WHERE creation_date >= :creationDate AND (creation_date > :creationDate OR id > :id)%s
+                    ORDER BY creation_date, id
+                    LIMIT :limit
+                    """.formatted(ListingFilterSql.and(filter));
+            var query = ListingFilterSql.addParameters(connection.createQuery(sql), filter)
+                    .addParameter("creationDate", creationDate)
+                    .addParameter("id", id)
+                    .addParameter("limit", limit);
+            var candidates = query.setColumnMappings(CandidateSummary.COLUMN_MAPPING).executeAndFetch(CandidateSummary.class);
+            Collections.reverse(candidates);
+            return candidates;
+        }
+    }
+
+    /**
+     * Поиск по имени и описанию, самые подходящие записи первыми.
+     * Как ищется в PostgreSQL и в H2, описано в FullTextSearch.
+     * Страницы задаются смещением, а не курсором: порядок по весу все равно требует
+     * оценить все найденные записи, так что дальние страницы стоят почти как первая.
+     *
+     * @param query
+     * @param limit
+     * @param offset
+     * @return
+     */
+    @Override
+    public List<CandidateSummary> search(String query, int limit, int offset) {
+        var words = FullTextSearch.words(query);
+        if (words.isEmpty()) {
+            return Collections.emptyList();
+        }
+        try (var connection = sql2o.open()) {
+            Query sqlQuery;
+            if (postgres) {
+                var sql = """
+                        SELECT id, name, creation_date, visible
+                        FROM candidates, websearch_to_tsquery('russian', :query) search_query
+                        WHERE search_vector @@ search_query
+                        ORDER BY ts_rank(search_vector, search_query) DESC, id DESC
+                        LIMIT :limit OFFSET :offset
+                        """;
+                sqlQuery = connection.createQuery(sql)
+                        .addParameter("query", query);
+            } else {
+                var sql = "SELECT id, name, creation_date, visible FROM candidates"
+                        + " WHERE " + FullTextSearch.likeCondition("name", words.size())
+                        + " ORDER BY " + FullTextSearch.likeRank("name", words.size()) + " DESC, id DESC"
+                        + " LIMIT :limit OFFSET :offset";
+                sqlQuery = FullTextSearch.addWords(connection.createQuery(sql), words);
+            }
+            sqlQuery.addParameter("limit", limit)
+                    .addParameter("offset", offset);
+            return sqlQuery.setColumnMappings(CandidateSummary.COLUMN_MAPPING).executeAndFetch(CandidateSummary.class);
+        }
+    }
+
+    @Override
+    public List<Candidate> findAfterId(int id, int limit) {
+        try (var connection = sql2o.open()) {
+            var query = connection.createQuery("SELECT * FROM candidates WHERE id > :id ORDER BY id LIMIT :limit")
+                    .addParameter("id", id)
+                    .addParameter("limit", limit);
+            return query.setColumnMappings(Candidate.COLUMN_MAPPING).executeAndFetch(Candidate.class);
+        }
+    }
+
+    @Override
+    public void forEach(ListingFilterDto filter, int fetchSize, Consumer<Candidate> action) {
+        CursorSql.forEach(sql2o, postgres, "SELECT * FROM candidates", "ORDER BY id", filter,
+                Candidate.COLUMN_MAPPING, Candidate.class, fetchSize, action);
+    }
+
+    @Override
+    public Map<Integer, Integer> countByCity(Boolean visible) {
+        return CityCountSql.find(sql2o, "candidate_city_counts", visible);
+    }
+
+    /**
+     * Блокирует запись до конца транзакции, чтобы параллельные update и deleteById
+     * одной записи меняли счетчики по очереди и от того состояния, которое видят.
+     *
+     * @param connection
+     * @param id
+     * @return город и видимость записи или null, если записи нет
+     */
+    private static Row lockCityAndVisibility(Connection connection, int id) {
+        var rows = connection.createQuery("SELECT city_id, visible FROM candidates WHERE id = :id FOR UPDATE")
+                .addParameter("id", id)
+                .executeAndFetchTable()
+                .rows();
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+}
@@ -3,8 +3,17 @@ package ru.job4j.dreamjob.repository;
 import org.springframework.stereotype.Repository;
 import org.sql2o.Sql2o;
 import ru.job4j.dreamjob.model.File;
+import ru.job4j.dreamjob.model.FileDeletion;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Repository
 public class Sql2oFileRepository implements FileRepository {
@@ -27,9 +36,19 @@ public class Sql2oFileRepository implements FileRepository {
     public File save(File file) {
         try (var connection = sql2o.open()) {
             var query = connection.createQuery(
-                            "INSERT INTO files (name, path) VALUES (:name, :path)", true)
+                            "INSERT INTO files (name, path, content_hash, ref_count, creation_date,"
+                                    + " pack_segment, pack_offset, pack_length)"
+                                    + " VALUES (:name, :path, :contentHash, :refCount, :creationDate,"
+                                    + " :packSegment, :packOffset, :packLength)",
+                            true)
                     .addParameter("name", file.getName())
-                    .addParameter("path", file.getPath());
+                    .addParameter("path", file.getPath())
+                    .addParameter("contentHash", file.getContentHash())
+                    .addParameter("refCount", file.getRefCount())
+                    .addParameter("creationDate", file.getCreationDate())
+                    .addParameter("packSegment", file.getPackSegment())
+                    .addParameter("packOffset", file.getPackOffset())
+                    .addParameter("packLength", file.getPackLength());
             int generatedId = query.executeUpdate().getKey(Integer.class);
             file.setId(generatedId);
             return file;
@@ -50,11 +69,257 @@ public class Sql2oFileRepository implements FileRepository {
     public Optional<File> findById(int id) {
         try (var connection = sql2o.open()) {
             var query = connection.createQuery("SELECT * FROM files WHERE id = :id");
-            var file = query.addParameter("id", id).executeAndFetchFirst(File.class);
+            var file = query.addParameter("id", id)
+                    .setColumnMappings(File.COLUMN_MAPPING)
+                    .executeAndFetchFirst(File.class);
             return Optional.ofNullable(file);
         }
     }
 
+    /**
+     * По хешу содержимого отдается файл для неизменяемых ссылок /files/hash/{hash}.
+     * Одинаковое содержимое могло быть загружено несколько раз,
+     * поэтому берется первый найденный файл: байты у них все равно совпадают.
+     *
+     * @param contentHash
+     * @return
+     */
+    @Override
+    public Optional<File> findByContentHash(String contentHash) {
+        try (var connection = sql2o.open()) {
+            var query = connection.createQuery(
+                    "SELECT * FROM files WHERE content_hash = :contentHash ORDER BY id LIMIT 1");
+            var file = query.addParameter("contentHash", contentHash)
+                    .setColumnMappings(File.COLUMN_MAPPING)
+                    .executeAndFetchFirst(File.class);
+            return Optional.ofNullable(file);
+        }
+    }
+
+    @Override
+    public Collection<File> findByIds(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        try (var connection = sql2o.open()) {
+            var query = connection.createQuery("SELECT * FROM files WHERE id IN (:ids)")
+                    .addParameter("ids", ids);
+            return query.setColumnMappings(File.COLUMN_MAPPING).executeAndFetch(File.class);
+        }
+    }
+
+    /**
+     * Шаблон в синтаксисе LIKE, спецсимволы в нем экранируются обратной косой чертой.
+     * Записи отдаются по возрастанию id порциями: следующая порция начинается после afterId.
+     * Упакованные в сегменты файлы не переносятся и не отдаются.
+     *
+     * @param pathPattern
+     * @param afterId
+     * @param limit
+     * @return
+     */
+    @Override
+    public Collection<File> findByPathNotLike(String pathPattern, int afterId, int limit) {
+        try (var connection = sql2o.open()) {
+            var sql = """
+                    SELECT * FROM files
+                    WHERE id > :afterId AND path NOT LIKE :pathPattern ESCAPE '\\' AND pack_segment IS NULL
+                    ORDER BY id
+                    LIMIT :limit
+                    """;
+            var query = connection.createQuery(sql)
+                    .addParameter("afterId", afterId)
+                    .addParameter("pathPattern", pathPattern)
+                    .addParameter("limit", limit);
+            return query.setColumnMappings(File.COLUMN_MAPPING).executeAndFetch(File.class);
+        }
+    }
+
+    /**
+     * Путь меняется, только если запись за это время не изменили и не удалили.
+     *
+     * @param id
+     * @param oldPath
+     * @param newPath
+     * @return
+     */
+    @Override
+    public boolean updatePath(int id, String oldPath, String newPath) {
+        try (var connection = sql2o.open()) {
+            var query = connection.createQuery("UPDATE files SET path = :newPath WHERE id = :id AND path = :oldPath")
+                    .addParameter("newPath", newPath)
+                    .addParameter("id", id)
+                    .addParameter("oldPath", oldPath);
+            var affectedRows = query.executeUpdate().getResult();
+            return affectedRows > 0;
+        }
+    }
+
+    /**
+     * Сколько байт каждого сегмента занято живыми записями.
+     * Остальное место сегмента - удаленные файлы, его освобождает уплотнение.
+     *
+     * @return
+     */
+    @Override
+    public Map<Integer, Long> findPackUsage() {
+        try (var connection = sql2o.open()) {
+            var sql = """
+                    SELECT pack_segment, SUM(pack_length) AS used FROM files
+                    WHERE pack_segment IS NOT NULL
+                    GROUP BY pack_segment
+                    """;
+            var usage = new HashMap<Integer, Long>();
+            for (var row : connection.createQuery(sql).executeAndFetchTable().rows()) {
+                usage.put(row.getInteger("pack_segment"), row.getLong("used"));
+            }
+            return usage;
+        }
+    }
+
+    @Override
+    public Collection<File> findBySegment(int segment, int afterId, int limit) {
+        try (var connection = sql2o.open()) {
+            var query = connection.createQuery(
+                            "SELECT * FROM files WHERE pack_segment = :segment AND id > :afterId ORDER BY id LIMIT :limit")
+                    .addParameter("segment", segment)
+                    .addParameter("afterId", afterId)
+                    .addParameter("limit", limit);
+            return query.setColumnMappings(File.COLUMN_MAPPING).executeAndFetch(File.class);
+        }
+    }
+
+    /**
+     * Конец последней записи сегмента, с него продолжается дозапись после перезапуска.
+     *
+     * @param segment
+     * @return
+     */
+    @Override
+    public long findSegmentEnd(int segment) {
+        try (var connection = sql2o.open()) {
+            var query = connection.createQuery(
+                    "SELECT MAX(pack_offset + pack_length) FROM files WHERE pack_segment = :segment");
+            var end = query.addParameter("segment", segment).executeScalar(Long.class);
+            return end == null ? 0 : end;
+        }
+    }
+
+    /**
+     * Место меняется, только если запись за это время не изменили и не удалили.
+     *
+     * @param id
+     * @param oldPath
+     * @param newPath
+     * @param segment
+     * @param offset
+     * @return
+     */
+    @Override
+    public boolean updatePackLocation(int id, String oldPath, String newPath, int segment, long offset) {
+        try (var connection = sql2o.open()) {
+            var sql = """
+                    UPDATE files SET path = :newPath, pack_segment = :segment, pack_offset = :offset
+                    WHERE id = :id AND path = :oldPath
+                    """;
+            var query = connection.createQuery(sql)
+                    .addParameter("newPath", newPath)
+                    .addParameter("segment", segment)
+                    .addParameter("offset", offset)
+                    .addParameter("id", id)
+                    .addParameter("oldPath", oldPath);
+            var affectedRows = query.executeUpdate().getResult();
+            return affectedRows > 0;
+        }
+    }
+
+    @Override
+    public Collection<File> findPage(int afterId, int limit) {
+        try (var connection = sql2o.open()) {
+            var query = connection.createQuery("SELECT * FROM files WHERE id > :afterId ORDER BY id LIMIT :limit")
+                    .addParameter("afterId", afterId)
+                    .addParameter("limit", limit);
+            return query.setColumnMappings(File.COLUMN_MAPPING).executeAndFetch(File.class);
+        }
+    }
+
+    /**
+     * Файлы, на которые не ссылается ни одна вакансия и ни один кандидат.
+     * Такие записи остаются, например, если вставка кандидата упала после сохранения файла.
+     * Только что созданные записи пропускаются: ссылку на них, возможно, еще вставляют.
+     * Записи, ссылки на которые уже стоят в очереди file_deletions, снимет FileDeletionWorker.
+     *
+     * @param afterId
+     * @param createdBefore
+     * @param limit
+     * @return
+     */
+    @Override
+    public Collection<File> findUnreferenced(int afterId, LocalDateTime createdBefore, int limit) {
+        try (var connection = sql2o.open()) {
+            var sql = """
+                    SELECT * FROM files f
+                    WHERE f.id > :afterId AND f.creation_date < :createdBefore
+                    AND NOT EXISTS (SELECT 1 FROM vacancies v WHERE v.file_id = f.id)
+                    AND NOT EXISTS (SELECT 1 FROM candidates c WHERE c.file_id = f.id)
+                    AND NOT EXISTS (SELECT 1 FROM file_deletions d WHERE d.file_id = f.id)
+                    ORDER BY f.id
+                    LIMIT :limit
+                    """;
+            var query = connection.createQuery(sql)
+                    .addParameter("afterId", afterId)
+                    .addParameter("createdBefore", createdBefore)
+                    .addParameter("limit", limit);
+            return query.setColumnMappings(File.COLUMN_MAPPING).executeAndFetch(File.class);
+        }
+    }
+
+    /**
+     * Sql2o сам раскрывает коллекцию в список параметров для IN.
+     *
+     * @param paths
+     * @return
+     */
+    @Override
+    public Set<String> findExistingPaths(Collection<String> paths) {
+        if (paths.isEmpty()) {
+            return Set.of();
+        }
+        try (var connection = sql2o.open()) {
+            var query = connection.createQuery("SELECT path FROM files WHERE path IN (:paths)")
+                    .addParameter("paths", paths);
+            return new HashSet<>(query.executeScalarList(String.class));
+        }
+    }
+
+    @Override
+    public boolean incrementRefCount(int id) {
+        try (var connection = sql2o.open()) {
+            var query = connection.createQuery("UPDATE files SET ref_count = ref_count + 1 WHERE id = :id");
+            var affectedRows = query.addParameter("id", id).executeUpdate().getResult();
+            return affectedRows > 0;
+        }
+    }
+
+    /**
+     * Последняя ссылка счетчиком не снимается: метод вернет false,
+     * и тогда запись вместе с файлом на диске удаляет сервис.
+     * Проверка и уменьшение идут одним UPDATE, поэтому два параллельных
+     * удаления не опустят счетчик ниже единицы.
+     *
+     * @param id
+     * @return
+     */
+    @Override
+    public boolean decrementRefCount(int id) {
+        try (var connection = sql2o.open()) {
+            var query = connection.createQuery(
+                    "UPDATE files SET ref_count = ref_count - 1 WHERE id = :id AND ref_count > 1");
+            var affectedRows = query.addParameter("id", id).executeUpdate().getResult();
+            return affectedRows > 0;
+        }
+    }
+
     /**
      * Выполняется с помощью executeUpdate(),
      * а результат (количество удаленных строк)
@@ -71,4 +336,59 @@ public class Sql2oFileRepository implements FileRepository {
             return affectedRows > 0;
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public void addDeletion(int fileId) {
+        try (var connection = sql2o.open()) {
+            connection.createQuery("INSERT INTO file_deletions (file_id) VALUES (:fileId)")
+                    .addParameter("fileId", fileId)
+                    .executeUpdate();
+        }
+    }
+
+    @Override
+    public List<FileDeletion> findDeletions(int limit) {
+        try (var connection = sql2o.open()) {
+            var query = connection.createQuery("SELECT id, file_id FROM file_deletions ORDER BY id LIMIT :limit")
+                    .addParameter("limit", limit);
+            return query.setColumnMappings(FileDeletion.COLUMN_MAPPING).executeAndFetch(FileDeletion.class);
+        }
+    }
+
+    /**
+     * Снимает ссылки из очереди одной транзакцией: счетчики уменьшаются пакетом UPDATE,
+     * записи без ссылок удаляются одним DELETE, затем одним DELETE удаляется порция очереди.
+     * Если транзакция не прошла, не снимается ни одна ссылка и порция будет разобрана заново,
+     * поэтому ссылка никогда не снимается дважды.
+     * <br>Счетчик здесь может дойти до нуля: такая запись удаляется в той же транзакции.
+     *
+     * @param deletions
+     * @return удаленные записи, их файлы нужно удалить с диска
+     */
+    @Override
+    public Collection<File> deleteReleased(Collection<FileDeletion> deletions) {
+        if (deletions.isEmpty()) {
+            return List.of();
+        }
+        var releases = deletions.stream()
+                .collect(Collectors.groupingBy(FileDeletion::getFileId, Collectors.counting()));
+        var deletionIds = deletions.stream().map(FileDeletion::getId).collect(Collectors.toList());
+        try (var connection = sql2o.beginTransaction()) {
+            var update = connection.createQuery("UPDATE files SET ref_count = ref_count - :count WHERE id = :id");
+            releases.forEach((id, count) -> update.addParameter("count", count).addParameter("id", id).addToBatch());
+            update.executeBatch();
+            var released = connection.createQuery("SELECT * FROM files WHERE id IN (:ids) AND ref_count <= 0")
+                    .addParameter("ids", releases.keySet())
+                    .setColumnMappings(File.COLUMN_MAPPING)
+                    .executeAndFetch(File.class);
+            connection.createQuery("DELETE FROM files WHERE id IN (:ids) AND ref_count <= 0")
+                    .addParameter("ids", releases.keySet())
+                    .executeUpdate();
+            connection.createQuery("DELETE FROM file_deletions WHERE id IN (:ids)")
+                    .addParameter("ids", deletionIds)
+                    .executeUpdate();
+            connection.commit();
+            return released;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package ru.job4j.dreamjob.repository;
+
+import org.springframework.stereotype.Repository;
+import org.sql2o.Sql2o;
+import ru.job4j.dreamjob.model.UploadSession;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+@Repository
+public class Sql2oUploadSessionRepository implements UploadSessionRepository {
+
+    private final Sql2o sql2o;
+
+    public Sql2oUploadSessionRepository(Sql2o sql2o) {
+        this.sql2o = sql2o;
+    }
+
+    @Override
+    public UploadSession save(UploadSession session) {
+        try (var connection = sql2o.open()) {
+            var query = connection.createQuery(
+                            "INSERT INTO upload_sessions (id, name, size, chunk_size, creation_date)"
+                                    + " VALUES (:id, :name, :size, :chunkSize, :creationDate)")
+                    .addParameter("id", session.getId())
+                    .addParameter("name", session.getName())
+                    .addParameter("size", session.getSize())
+                    .addParameter("chunkSize", session.getChunkSize())
+                    .addParameter("creationDate", session.getCreationDate());
+            query.executeUpdate();
+            return session;
+        }
+    }
+
+    @Override
+    public Optional<UploadSession> findById(String id) {
+        try (var connection = sql2o.open()) {
+            var query = connection.createQuery("SELECT * FROM upload_sessions WHERE id = :id")
+                    .addParameter("id", id);
+            var session = query.setColumnMappings(UploadSession.COLUMN_MAPPING)
+                    .executeAndFetchFirst(UploadSession.class);
+            return Optional.ofNullable(session);
+        }
+    }
+
+    /**
+     * Повторная отправка части - обычное дело для загрузки с продолжением:
+     * строка с тем же номером уже есть, и ON CONFLICT DO NOTHING не добавит вторую.
+     *
+     * @param id
+     * @param number
+     */
+    @Override
+    public void addChunk(String id, int number) {
+        try (var connection = sql2o.open()) {
+            connection.createQuery("INSERT INTO upload_chunks (session_id, number) VALUES (:id, :number)"
+                            + " ON CONFLICT DO NOTHING")
+                    .addParameter("id", id)
+                    .addParameter("number", number)
+                    .executeUpdate();
+        }
+    }
+
+    @Override
+    public Set<Integer> findChunks(String id) {
+        try (var connection = sql2o.open()) {
+            var query = connection.createQuery("SELECT number FROM upload_chunks WHERE session_id = :id")
+                    .addParameter("id", id);
+            return new HashSet<>(query.executeScalarList(Integer.class));
+        }
+    }
+
+    /**
+     * Части сессии удаляются каскадно.
+     *
+     * @param id
+     * @return
+     */
+    @Override
+    public boolean deleteById(String id) {
+        try (var connection = sql2o.open()) {
+            var query = connection.createQuery("DELETE FROM upload_sessions WHERE id = :id")
+                    .addParameter("id", id);
+            return query.executeUpdate().getResult() > 0;
+        }
+    }
+
+    @Override
+    public Collection<UploadSession> findCreatedBefore(LocalDateTime createdBefore, int limit) {
+        try (var connection = sql2o.open()) {
+            var query = connection.createQuery(
+                            "SELECT * FROM upload_sessions WHERE creation_date < :createdBefore"
+                                    + " ORDER BY creation_date LIMIT :limit")
+                    .addParameter("createdBefore", createdBefore)
+                    .addParameter("limit", limit);
+            return query.setColumnMappings(UploadSession.COLUMN_MAPPING).executeAndFetch(UploadSession.class);
+        }
+    }
+}
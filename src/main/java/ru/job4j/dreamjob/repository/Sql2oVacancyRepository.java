@@ -1,24 +1,38 @@
 package ru.job4j.dreamjob.repository;
 
 import org.springframework.stereotype.Repository;
+import org.sql2o.Connection;
+import org.sql2o.Query;
 import org.sql2o.Sql2o;
+import org.sql2o.data.Row;
+import ru.job4j.dreamjob.dto.ListingFilterDto;
 import ru.job4j.dreamjob.model.Vacancy;
+import ru.job4j.dreamjob.model.VacancySummary;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 @Repository
 public class Sql2oVacancyRepository implements VacancyRepository {
 
     private final Sql2o sql2o;
 
+    private final boolean postgres;
+
     public Sql2oVacancyRepository(Sql2o sql2o) {
         this.sql2o = sql2o;
+        this.postgres = FullTextSearch.isPostgres(sql2o);
     }
 
     @Override
     public Vacancy save(Vacancy vacancy) {
-        try (var connection = sql2o.open()) {
+        try (var connection = sql2o.beginTransaction()) {
             var sql = """
                     INSERT INTO vacancies(title, description, creation_date, visible, city_id, file_id)
                     VALUES (:title, :description, :creationDate, :visible, :cityId, :fileId)
@@ -32,23 +46,46 @@ public class Sql2oVacancyRepository implements VacancyRepository {
                     .addParameter("fileId", vacancy.getFileId());
             int generatedId = query.executeUpdate().getKey(Integer.class);
             vacancy.setId(generatedId);
+            CityCountSql.increment(connection, "vacancy_city_counts", vacancy.getCityId(), vacancy.getVisible());
+            connection.commit();
             return vacancy;
         }
     }
 
+    @Override
+    public int saveAll(List<Vacancy> vacancies) {
+        var rows = new ArrayList<Object[]>(vacancies.size());
+        for (var vacancy : vacancies) {
+            rows.add(new Object[] {vacancy.getTitle(), vacancy.getDescription(), vacancy.getCreationDate(), vacancy.getVisible(),
+                    vacancy.getCityId(), vacancy.getFileId() == 0 ? null : vacancy.getFileId()});
+        }
+        try (var connection = sql2o.beginTransaction()) {
+            BulkInsertSql.insert(connection, postgres, "vacancies", List.of("title", "description", "creation_date", "visible", "city_id", "file_id"), rows);
+            CityCountSql.incrementAll(connection, "vacancy_city_counts", vacancies, Vacancy::getCityId, Vacancy::getVisible);
+            connection.commit();
+            return vacancies.size();
+        }
+    }
+
     @Override
     public boolean deleteById(int id) {
-        try (var connection = sql2o.open()) {
+        try (var connection = sql2o.beginTransaction()) {
+            var old = lockCityAndVisibility(connection, id);
             var query = connection.createQuery("DELETE FROM vacancies WHERE id = :id");
             query.addParameter("id", id);
             var affectedRows = query.executeUpdate().getResult();
+            if (old != null && old.getInteger("city_id") != null) {
+                CityCountSql.decrement(connection, "vacancy_city_counts", old.getInteger("city_id"), old.getBoolean("visible"));
+            }
+            connection.commit();
             return affectedRows > 0;
         }
     }
 
     @Override
     public boolean update(Vacancy vacancy) {
-        try (var connection = sql2o.open()) {
+        try (var connection = sql2o.beginTransaction()) {
+            var old = lockCityAndVisibility(connection, vacancy.getId());
             var sql = """
                     UPDATE vacancies
                     SET title = :title, description = :description, creation_date = :creationDate,
@@ -61,9 +98,16 @@ public class Sql2oVacancyRepository implements VacancyRepository {
                     .addParameter("creationDate", vacancy.getCreationDate())
                     .addParameter("visible", vacancy.getVisible())
                     .addParameter("cityId", vacancy.getCityId())
-                    .addParameter("fileId", vacancy.getFileId())
+                    .addParameter("fileId", vacancy.getFileId() == 0 ? null : vacancy.getFileId())
                     .addParameter("id", vacancy.getId());
             var affectedRows = query.executeUpdate().getResult();
+            if (old != null && old.getInteger("city_id") != null) {
+                CityCountSql.move(connection, "vacancy_city_counts", old.getInteger("city_id"), old.getBoolean("visible"),
+                        vacancy.getCityId(), vacancy.getVisible());
+            } else if (old != null) {
+                CityCountSql.increment(connection, "vacancy_city_counts", vacancy.getCityId(), vacancy.getVisible());
+            }
+            connection.commit();
             return affectedRows > 0;
         }
     }
@@ -85,4 +129,156 @@ public class Sql2oVacancyRepository implements VacancyRepository {
             return query.setColumnMappings(Vacancy.COLUMN_MAPPING).executeAndFetch(Vacancy.class);
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public List<VacancySummary> findFirstPage(ListingFilterDto filter, int limit) {
+        try (var connection = sql2o.open()) {
+            var sql = """
+                    SELECT id, title, creation_date, visible FROM vacancies
+                    %s
+                    ORDER BY creation_date DESC, id DESC
+                    LIMIT :limit
+                    """.formatted(ListingFilterSql.where(filter));
+            var query = ListingFilterSql.addParameters(connection.createQuery(sql), filter)
+                    .addParameter("limit", limit);
+            return query.setColumnMappings(VacancySummary.COLUMN_MAPPING).executeAndFetch(VacancySummary.class);
+        }
+    }
+
+    /**
+     * Условие на ключ (creation_date, id) записано развернуто, а не как (creation_date, id) < (...):
+     * сравнение строк H2 проверяет перебором всей таблицы.
+     * Развернутое условие читает индекс (creation_date desc, id desc) с позиции курсора,
+     * поэтому страница стоит одинаково на любой глубине списка.
+     *
+     * @param filter
+     * @param creationDate
+     * @param id
+     * @param limit
+     * @return
+     */
+    @Override
+    public List<VacancySummary> findOlderThan(ListingFilterDto filter, LocalDateTime creationDate, int id, int limit) {
+        try (var connection = sql2o.open()) {
+            var sql = """
+                    SELECT id, title, creation_date, visible FROM vacancies
+                    WHERE creation_date <= :creationDate AND (creation_date < :creationDate OR id < :id)%s
+                    ORDER BY creation_date DESC, id DESC
+                    LIMIT :limit
+                    """.formatted(ListingFilterSql.and(filter));
+            var query = ListingFilterSql.addParameters(connection.createQuery(sql), filter)
+                    .addParameter("creationDate", creationDate)
+                    .addParameter("id", id)
+                    .addParameter("limit", limit);
+            return query.setColumnMappings(VacancySummary.COLUMN_MAPPING).executeAndFetch(VacancySummary.class);
+        }
+    }
+
+    /**
+     * Записи перед курсором выбираются по возрастанию ключа, чтобы LIMIT взял ближайшие к курсору,
+     * а затем переворачиваются в порядок списка.
+     *
+     * @param filter
+     * @param creationDate
+     * @param id
+     * @param limit
+     * @return
+     */
+    @Override
+    public List<VacancySummary> findNewerThan(ListingFilterDto filter, LocalDateTime creationDate, int id, int limit) {
+        try (var connection = sql2o.open()) {
+            var sql = """
+                    SELECT id, title, creation_date, visible FROM vacancies
+                    WHERE creation_date >= :creationDate AND (creation_date > :creationDate OR id > :id)%s
+                    ORDER BY creation_date, id
+                    LIMIT :limit
+                    """.formatted(ListingFilterSql.and(filter));
+            var query = ListingFilterSql.addParameters(connection.createQuery(sql), filter)
+                    .addParameter("creationDate", creationDate)
+                    .addParameter("id", id)
+                    .addParameter("limit", limit);
+            var vacancies = query.setColumnMappings(VacancySummary.COLUMN_MAPPING).executeAndFetch(VacancySummary.class);
+            Collections.reverse(vacancies);
+            return vacancies;
+        }
+    }
+
+    /**
+     * Поиск по заголовку и описанию, самые подходящие записи первыми.
+     * Как ищется в PostgreSQL и в H2, описано в FullTextSearch.
+     * Страницы задаются смещением, а не курсором: порядок по весу все равно требует
+     * оценить все найденные записи, так что дальние страницы стоят почти как первая.
+     *
+     * @param query
+     * @param limit
+     * @param offset
+     * @return
+     */
+    @Override
+    public List<VacancySummary> search(String query, int limit, int offset) {
+        var words = FullTextSearch.words(query);
+        if (words.isEmpty()) {
+            return Collections.emptyList();
+        }
+        try (var connection = sql2o.open()) {
+            Query sqlQuery;
+            if (postgres) {
+                var sql = """
+                        SELECT id, title, creation_date, visible
+                        FROM vacancies, websearch_to_tsquery('russian', :query) search_query
+                        WHERE search_vector @@ search_query
+                        ORDER BY ts_rank(search_vector, search_query) DESC, id DESC
+                        LIMIT :limit OFFSET :offset
+                        """;
+                sqlQuery = connection.createQuery(sql)
+                        .addParameter("query", query);
+            } else {
+                var sql = "SELECT id, title, creation_date, visible FROM vacancies"
+                        + " WHERE " + FullTextSearch.likeCondition("title", words.size())
+                        + " ORDER BY " + FullTextSearch.likeRank("title", words.size()) + " DESC, id DESC"
+                        + " LIMIT :limit OFFSET :offset";
+                sqlQuery = FullTextSearch.addWords(connection.createQuery(sql), words);
+            }
+            sqlQuery.addParameter("limit", limit)
+                    .addParameter("offset", offset);
+            return sqlQuery.setColumnMappings(VacancySummary.COLUMN_MAPPING).executeAndFetch(VacancySummary.class);
+        }
+    }
+
+    @Override
+    public List<Vacancy> findAfterId(int id, int limit) {
+        try (var connection = sql2o.open()) {
+            var query = connection.createQuery("SELECT * FROM vacancies WHERE id > :id ORDER BY id LIMIT :limit")
+                    .addParameter("id", id)
+                    .addParameter("limit", limit);
+            return query.setColumnMappings(Vacancy.COLUMN_MAPPING).executeAndFetch(Vacancy.class);
+        }
+    }
+
+    @Override
+    public void forEach(ListingFilterDto filter, int fetchSize, Consumer<Vacancy> action) {
+        CursorSql.forEach(sql2o, postgres, "SELECT * FROM vacancies", "ORDER BY id", filter,
+                Vacancy.COLUMN_MAPPING, Vacancy.class, fetchSize, action);
+    }
+
+    @Override
+    public Map<Integer, Integer> countByCity(Boolean visible) {
+        return CityCountSql.find(sql2o, "vacancy_city_counts", visible);
+    }
+
+    /**
+     * Блокирует запись до конца транзакции, чтобы параллельные update и deleteById
+     * одной записи меняли счетчики по очереди и от того состояния, которое видят.
+     *
+     * @param connection
+     * @param id
+     * @return город и видимость записи или null, если записи нет
+     */
+    private static Row lockCityAndVisibility(Connection connection, int id) {
+        var rows = connection.createQuery("SELECT city_id, visible FROM vacancies WHERE id = :id FOR UPDATE")
+                .addParameter("id", id)
+                .executeAndFetchTable()
+                .rows();
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+}
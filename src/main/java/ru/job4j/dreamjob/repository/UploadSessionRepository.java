@@ -0,0 +1,24 @@
+package ru.job4j.dreamjob.repository;
+
+import ru.job4j.dreamjob.model.UploadSession;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
+
+public interface UploadSessionRepository {
+
+    UploadSession save(UploadSession session);
+
+    Optional<UploadSession> findById(String id);
+
+    void addChunk(String id, int number);
+
+    Set<Integer> findChunks(String id);
+
+    boolean deleteById(String id);
+
+    Collection<UploadSession> findCreatedBefore(LocalDateTime createdBefore, int limit);
+
+}
@@ -1,14 +1,29 @@
 package ru.job4j.dreamjob.repository;
 
+import ru.job4j.dreamjob.dto.ListingFilterDto;
 import ru.job4j.dreamjob.model.Vacancy;
+import ru.job4j.dreamjob.model.VacancySummary;
 
+import java.time.LocalDateTime;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface VacancyRepository {
 
     Vacancy save(Vacancy vacancy);
 
+    /**
+     * Сохраняет пачку новых записей одной транзакцией: либо все, либо ни одной.
+     * id записям не присваиваются. Записи без файла (fileId 0) сохраняются с пустой ссылкой.
+     *
+     * @param vacancies
+     * @return сколько записей сохранено
+     */
+    int saveAll(List<Vacancy> vacancies);
+
     boolean deleteById(int id);
 
     boolean update(Vacancy vacancy);
@@ -16,4 +31,41 @@ public interface VacancyRepository {
     Optional<Vacancy> findById(int id);
 
     Collection<Vacancy> findAll();
-}
\ No newline at end of file
+
+    List<VacancySummary> findFirstPage(ListingFilterDto filter, int limit);
+
+    List<VacancySummary> findOlderThan(ListingFilterDto filter, LocalDateTime creationDate, int id, int limit);
+
+    List<VacancySummary> findNewerThan(ListingFilterDto filter, LocalDateTime creationDate, int id, int limit);
+
+    List<VacancySummary> search(String query, int limit, int offset);
+
+    /**
+     * Полные записи по возрастанию id, начиная со следующей после id.
+     * Так записи читаются пачками, например для построения индекса поиска.
+     *
+     * @param id
+     * @param limit
+     * @return
+     */
+    List<Vacancy> findAfterId(int id, int limit);
+
+    /**
+     * Передает action записи по возрастанию id, читая их из базы порциями по fetchSize,
+     * без списка всех записей в памяти. Так записи выгружаются потоком.
+     *
+     * @param filter
+     * @param fetchSize
+     * @param action
+     */
+    void forEach(ListingFilterDto filter, int fetchSize, Consumer<Vacancy> action);
+
+    /**
+     * Число записей в каждом городе. Считается не по таблице записей, а берется из счетчиков,
+     * которые save, update и deleteById меняют вместе с записью.
+     *
+     * @param visible null - все записи, иначе только видимые или только скрытые
+     * @return число записей по id города, города без записей могут отсутствовать
+     */
+    Map<Integer, Integer> countByCity(Boolean visible);
+}
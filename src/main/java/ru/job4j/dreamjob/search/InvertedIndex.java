@@ -0,0 +1,411 @@
+package ru.job4j.dreamjob.search;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Инвертированный индекс в памяти приложения: для каждого терма список документов, где он встречается.
+ * Документ - это id записи, заголовок, текст и значение, которое возвращает поиск.
+ * <br>Поиск находит документы со всеми термами запроса (термы дает TextAnalyzer)
+ * и упорядочивает их по BM25, при равной оценке по убыванию id.
+ * Терм заголовка считается за TITLE_WEIGHT термов текста, как и в поиске через базу
+ * заголовок весит больше описания.
+ * <br>Каждой версии документа выдается внутренний номер по возрастанию,
+ * поэтому списки вхождений всегда отсортированы и новые вхождения только дописываются в конец.
+ * Замена и удаление не трогают списки: старый номер помечается мертвым.
+ * Когда мертвых номеров становится больше, чем живых, индекс пересобирается
+ * без них под замком записи, это стоит одного прохода по всем вхождениям.
+ * <br>Читающие потоки замков не берут. Все состояние для чтения лежит в неизменяемом Snapshot,
+ * и поиск работает с тем снимком, который прочитал в начале.
+ * Пишущие потоки выстраиваются по одному замку и публикуют новый снимок записью в volatile поле.
+ * Вхождения нового документа появляются в списках раньше, чем номер документа попадает в снимок,
+ * поэтому поиск пропускает номера за концом своего снимка.
+ * <br>Частота документов для BM25 - длина списка вхождений, в ней до пересборки
+ * учтены и мертвые номера. Так же считает и Lucene до слияния сегментов.
+ *
+ * @param <T>
+ */
+@ThreadSafe
+public class InvertedIndex<T> {
+
+    private static final int TITLE_WEIGHT = 2;
+
+    private static final double K1 = 1.2;
+
+    private static final double B = 0.75;
+
+    /**
+     * Меньше мертвых номеров не пересобирается: пересборка маленького индекса не стоит прохода.
+     */
+    private static final int MIN_DEAD_TO_COMPACT = 1024;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * Номер текущей версии документа по id. Читается и пишется только под writeLock.
+     */
+    private final Map<Integer, Integer> numbers = new HashMap<>();
+
+    private volatile Snapshot snapshot = new Snapshot(new ConcurrentHashMap<>(), new int[INITIAL_CAPACITY],
+            new int[INITIAL_CAPACITY], new Object[INITIAL_CAPACITY], new long[1], 0, 0, 0);
+
+    /**
+     * Добавляет документ или заменяет прежнюю версию документа с тем же id.
+     *
+     * @param id
+     * @param title
+     * @param text
+     * @param value
+     */
+    public void put(int id, String title, String text, T value) {
+        writeLock.lock();
+        try {
+            add(id, title, text, value);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @param id
+     * @param title
+     * @param text
+     * @param value
+     * @return false, если документ с таким id уже есть, тогда индекс не меняется
+     */
+    public boolean putIfAbsent(int id, String title, String text, T value) {
+        writeLock.lock();
+        try {
+            if (numbers.containsKey(id)) {
+                return false;
+            }
+            add(id, title, text, value);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean remove(int id) {
+        writeLock.lock();
+        try {
+            var number = numbers.remove(id);
+            if (number == null) {
+                return false;
+            }
+            var current = snapshot;
+            current.dead[number >> 6] |= 1L << number;
+            snapshot = new Snapshot(current.terms, current.ids, current.lengths, current.values, current.dead,
+                    current.size, current.live - 1, current.totalLength - current.lengths[number]);
+            compactIfNeeded();
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return число документов в индексе
+     */
+    public int size() {
+        return snapshot.live;
+    }
+
+    /**
+     * Пересечение списков идет от самого короткого: каждый его документ ищется в остальных
+     * галопирующим поиском, поэтому запрос с редким термом дешев, даже если другой терм есть везде.
+     * Лучшие offset + limit документов отбираются кучей, полная сортировка найденного не нужна.
+     *
+     * @param query
+     * @param limit
+     * @param offset
+     * @return
+     */
+    public List<T> search(String query, int limit, int offset) {
+        var queryTerms = TextAnalyzer.terms(query).stream().distinct().toList();
+        var current = snapshot;
+        if (queryTerms.isEmpty() || limit <= 0 || current.live == 0) {
+            return List.of();
+        }
+        var lists = new Postings[queryTerms.size()];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = current.terms.get(queryTerms.get(i));
+            if (lists[i] == null) {
+                return List.of();
+            }
+        }
+        Arrays.sort(lists, Comparator.comparingInt(postings -> postings.size));
+        var rarest = lists[0];
+        var capacity = (int) Math.min((long) offset + limit, rarest.size);
+        if (offset >= capacity) {
+            return List.of();
+        }
+        var idf = new double[lists.length];
+        for (int i = 0; i < lists.length; i++) {
+            var df = Math.min(lists[i].size, current.live);
+            idf[i] = Math.log(1 + (current.live - df + 0.5) / (df + 0.5));
+        }
+        var averageLength = (double) current.totalLength / current.live;
+        var positions = new int[lists.length];
+        var top = new TopDocuments(capacity, current.ids);
+        for (int i = 0; i < rarest.size; i++) {
+            var number = rarest.documents[i];
+            if (number >= current.size) {
+                break;
+            }
+            if (current.isDead(number)) {
+                continue;
+            }
+            var lengthNorm = K1 * (1 - B + B * current.lengths[number] / averageLength);
+            var score = idf[0] * termScore(rarest.frequencies[i], lengthNorm);
+            var found = true;
+            for (int j = 1; j < lists.length && found; j++) {
+                var position = lists[j].advance(number, positions[j]);
+                found = position >= 0;
+                positions[j] = found ? position : -position - 1;
+                if (found) {
+                    score += idf[j] * termScore(lists[j].frequencies[position], lengthNorm);
+                }
+            }
+            if (found) {
+                top.offer(number, score);
+            }
+        }
+        return top.page(offset, current.values);
+    }
+
+    private static double termScore(int frequency, double lengthNorm) {
+        return frequency * (K1 + 1) / (frequency + lengthNorm);
+    }
+
+    private void add(int id, String title, String text, T value) {
+        var frequencies = new HashMap<String, Integer>();
+        for (var term : TextAnalyzer.terms(title)) {
+            frequencies.merge(term, TITLE_WEIGHT, Integer::sum);
+        }
+        for (var term : TextAnalyzer.terms(text)) {
+            frequencies.merge(term, 1, Integer::sum);
+        }
+        var length = 0;
+        for (var frequency : frequencies.values()) {
+            length += frequency;
+        }
+        var current = snapshot;
+        var number = current.size;
+        var ids = current.ids;
+        var lengths = current.lengths;
+        var values = current.values;
+        var dead = current.dead;
+        if (number == ids.length) {
+            var capacity = number + (number >> 1);
+            ids = Arrays.copyOf(ids, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        if ((number >> 6) == dead.length) {
+            dead = Arrays.copyOf(dead, dead.length * 2);
+        }
+        ids[number] = id;
+        lengths[number] = length;
+        values[number] = value;
+        for (var entry : frequencies.entrySet()) {
+            var postings = current.terms.get(entry.getKey());
+            current.terms.put(entry.getKey(), postings == null
+                    ? Postings.of(number, entry.getValue()) : postings.append(number, entry.getValue()));
+        }
+        var live = current.live + 1;
+        var totalLength = current.totalLength + length;
+        var previous = numbers.put(id, number);
+        if (previous != null) {
+            dead[previous >> 6] |= 1L << previous;
+            live--;
+            totalLength -= lengths[previous];
+        }
+        snapshot = new Snapshot(current.terms, ids, lengths, values, dead, number + 1, live, totalLength);
+        compactIfNeeded();
+    }
+
+    private void compactIfNeeded() {
+        var current = snapshot;
+        var deadCount = current.size - current.live;
+        if (deadCount < MIN_DEAD_TO_COMPACT || deadCount <= current.live) {
+            return;
+        }
+        var capacity = Math.max(current.live, INITIAL_CAPACITY);
+        var renumbering = new int[current.size];
+        var ids = new int[capacity];
+        var lengths = new int[capacity];
+        var values = new Object[capacity];
+        var size = 0;
+        for (int number = 0; number < current.size; number++) {
+            if (current.isDead(number)) {
+                renumbering[number] = -1;
+            } else {
+                renumbering[number] = size;
+                ids[size] = current.ids[number];
+                lengths[size] = current.lengths[number];
+                values[size] = current.values[number];
+                size++;
+            }
+        }
+        numbers.replaceAll((id, number) -> renumbering[number]);
+        var terms = new ConcurrentHashMap<String, Postings>(current.terms.size());
+        for (var entry : current.terms.entrySet()) {
+            var postings = entry.getValue().renumber(renumbering);
+            if (postings != null) {
+                terms.put(entry.getKey(), postings);
+            }
+        }
+        snapshot = new Snapshot(terms, ids, lengths, values, new long[(capacity >> 6) + 1],
+                size, current.live, current.totalLength);
+    }
+
+    /**
+     * Состояние индекса для чтения. Массивы по внутреннему номеру документа:
+     * id, длина в термах с учетом веса заголовка, значение и битовая маска мертвых номеров.
+     * Ячейки за size и биты мертвых номеров дописываются на месте, остальное не меняется.
+     */
+    private static final class Snapshot {
+
+        private final ConcurrentHashMap<String, Postings> terms;
+
+        private final int[] ids;
+
+        private final int[] lengths;
+
+        private final Object[] values;
+
+        private final long[] dead;
+
+        private final int size;
+
+        private final int live;
+
+        private final long totalLength;
+
+        private Snapshot(ConcurrentHashMap<String, Postings> terms, int[] ids, int[] lengths, Object[] values,
+                         long[] dead, int size, int live, long totalLength) {
+            this.terms = terms;
+            this.ids = ids;
+            this.lengths = lengths;
+            this.values = values;
+            this.dead = dead;
+            this.size = size;
+            this.live = live;
+            this.totalLength = totalLength;
+        }
+
+        private boolean isDead(int number) {
+            return (dead[number >> 6] & (1L << number)) != 0;
+        }
+    }
+
+    /**
+     * Куча лучших документов ограниченного размера. В корне худший из отобранных:
+     * меньшая оценка, при равной оценке меньший id.
+     */
+    private static final class TopDocuments {
+
+        private final int[] numbers;
+
+        private final double[] scores;
+
+        private final int[] ids;
+
+        private int size;
+
+        private TopDocuments(int capacity, int[] ids) {
+            this.numbers = new int[capacity];
+            this.scores = new double[capacity];
+            this.ids = ids;
+        }
+
+        private void offer(int number, double score) {
+            if (size < numbers.length) {
+                numbers[size] = number;
+                scores[size] = score;
+                siftUp(size);
+                size++;
+            } else if (isWorse(numbers[0], scores[0], number, score)) {
+                numbers[0] = number;
+                scores[0] = score;
+                siftDown(0);
+            }
+        }
+
+        /**
+         * Разбирает кучу: документы выходят от худшего к лучшему.
+         */
+        @SuppressWarnings("unchecked")
+        private <T> List<T> page(int offset, Object[] values) {
+            var ordered = new int[size];
+            for (int i = size - 1; i >= 0; i--) {
+                ordered[i] = numbers[0];
+                size--;
+                numbers[0] = numbers[size];
+                scores[0] = scores[size];
+                siftDown(0);
+            }
+            var result = new ArrayList<T>(Math.max(ordered.length - offset, 0));
+            for (int i = offset; i < ordered.length; i++) {
+                result.add((T) values[ordered[i]]);
+            }
+            return result;
+        }
+
+        private boolean isWorse(int number, double score, int otherNumber, double otherScore) {
+            return score < otherScore || score == otherScore && ids[number] < ids[otherNumber];
+        }
+
+        private void siftUp(int index) {
+            var child = index;
+            while (child > 0) {
+                var parent = (child - 1) >> 1;
+                if (!isWorse(numbers[child], scores[child], numbers[parent], scores[parent])) {
+                    return;
+                }
+                swap(child, parent);
+                child = parent;
+            }
+        }
+
+        private void siftDown(int index) {
+            var parent = index;
+            while (true) {
+                var worst = parent;
+                var left = 2 * parent + 1;
+                var right = left + 1;
+                if (left < size && isWorse(numbers[left], scores[left], numbers[worst], scores[worst])) {
+                    worst = left;
+                }
+                if (right < size && isWorse(numbers[right], scores[right], numbers[worst], scores[worst])) {
+                    worst = right;
+                }
+                if (worst == parent) {
+                    return;
+                }
+                swap(parent, worst);
+                parent = worst;
+            }
+        }
+
+        private void swap(int first, int second) {
+            var number = numbers[first];
+            var score = scores[first];
+            numbers[first] = numbers[second];
+            scores[first] = scores[second];
+            numbers[second] = number;
+            scores[second] = score;
+        }
+    }
+}
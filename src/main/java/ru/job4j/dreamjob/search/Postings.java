@@ -0,0 +1,88 @@
+package ru.job4j.dreamjob.search;
+
+import java.util.Arrays;
+
+/**
+ * Список вхождений одного терма: внутренние номера документов по возрастанию
+ * и частота терма в каждом из них. Два массива int, по 8 байт на вхождение.
+ * <br>Объект не меняется. Добавление создает новый объект, который разделяет с прежним массивы,
+ * если в них есть место: пишется только ячейка за концом прежнего списка,
+ * а читатель прежнего объекта дальше своего size не заглядывает.
+ * Добавляет только поток, который держит замок InvertedIndex, и всегда к последнему объекту.
+ */
+final class Postings {
+
+    final int[] documents;
+
+    final int[] frequencies;
+
+    final int size;
+
+    private Postings(int[] documents, int[] frequencies, int size) {
+        this.documents = documents;
+        this.frequencies = frequencies;
+        this.size = size;
+    }
+
+    static Postings of(int document, int frequency) {
+        return new Postings(new int[] {document}, new int[] {frequency}, 1);
+    }
+
+    Postings append(int document, int frequency) {
+        var nextDocuments = documents;
+        var nextFrequencies = frequencies;
+        if (size == documents.length) {
+            var capacity = size + (size >> 1) + 1;
+            nextDocuments = Arrays.copyOf(documents, capacity);
+            nextFrequencies = Arrays.copyOf(frequencies, capacity);
+        }
+        nextDocuments[size] = document;
+        nextFrequencies[size] = frequency;
+        return new Postings(nextDocuments, nextFrequencies, size + 1);
+    }
+
+    /**
+     * Оставляет вхождения живых документов и переводит их на новые номера.
+     *
+     * @param renumbering новый номер для каждого старого или -1, если документ удален
+     * @return null, если не осталось ни одного вхождения
+     */
+    Postings renumber(int[] renumbering) {
+        var nextDocuments = new int[size];
+        var nextFrequencies = new int[size];
+        var nextSize = 0;
+        for (int i = 0; i < size; i++) {
+            var document = documents[i] < renumbering.length ? renumbering[documents[i]] : -1;
+            if (document >= 0) {
+                nextDocuments[nextSize] = document;
+                nextFrequencies[nextSize] = frequencies[i];
+                nextSize++;
+            }
+        }
+        if (nextSize == 0) {
+            return null;
+        }
+        return new Postings(Arrays.copyOf(nextDocuments, nextSize), Arrays.copyOf(nextFrequencies, nextSize), nextSize);
+    }
+
+    /**
+     * Галопирующий поиск: шаг растет вдвое, пока не перешагнет document, затем двоичный поиск.
+     * Документы пересечения идут по возрастанию, поэтому поиск продолжается с прошлой позиции
+     * и стоит порядка логарифма расстояния до нее, а не всего списка.
+     *
+     * @param document
+     * @param from
+     * @return позиция document или, если его нет, -(позиция вставки) - 1
+     */
+    int advance(int document, int from) {
+        var step = 1;
+        var low = from;
+        var high = from;
+        while (high < size && documents[high] < document) {
+            low = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        return Arrays.binarySearch(documents, low, Math.min(high + 1, size), document);
+    }
+}
@@ -0,0 +1,173 @@
+package ru.job4j.dreamjob.search;
+
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * InvertedIndex записей одной таблицы, который периодически строится заново из базы
+ * и между сборками получает изменения этого экземпляра приложения.
+ * Общая часть IndexedVacancyRepository и IndexedCandidateRepository: они отличаются только тем,
+ * откуда брать id, заголовок, текст и краткое представление записи.
+ * <br>Сборка читает записи пачками через findAfterId. Пока первая сборка не закончилась,
+ * search возвращает пустой Optional, и репозиторий ищет через базу.
+ * <br>Изменения во время сборки вносятся и в собираемый индекс, а пачки из базы добавляются
+ * через putIfAbsent: запись, которую уже положило обновление, новее прочитанной из базы.
+ * Удаленные во время сборки id запоминаются, чтобы пачка, прочитанная до удаления, их не вернула.
+ * <br>При enabled=false индекс не строится и не меняется.
+ *
+ * @param <E> запись
+ * @param <S> краткое представление записи, которое возвращает поиск
+ */
+@ThreadSafe
+public class RebuildableIndex<E, S> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RebuildableIndex.class);
+
+    /**
+     * Пачка записей с id больше заданного, по возрастанию id.
+     *
+     * @param <E>
+     */
+    public interface BatchLoader<E> {
+        List<E> findAfterId(int id, int limit);
+    }
+
+    private final String name;
+
+    private final boolean enabled;
+
+    private final int batchSize;
+
+    private final ToIntFunction<E> id;
+
+    private final Function<E, String> title;
+
+    private final Function<E, String> description;
+
+    private final Function<E, S> summary;
+
+    private final Object rebuildLock = new Object();
+
+    private final Set<Integer> removedDuringRebuild = ConcurrentHashMap.newKeySet();
+
+    private volatile InvertedIndex<S> index;
+
+    private volatile InvertedIndex<S> rebuilding;
+
+    /**
+     * @param name чьи записи в индексе, для журнала, например "вакансий"
+     * @param enabled
+     * @param batchSize
+     * @param id
+     * @param title
+     * @param description
+     * @param summary
+     */
+    public RebuildableIndex(String name, boolean enabled, int batchSize, ToIntFunction<E> id,
+                            Function<E, String> title, Function<E, String> description, Function<E, S> summary) {
+        this.name = name;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.id = id;
+        this.title = title;
+        this.description = description;
+        this.summary = summary;
+    }
+
+    /**
+     * @param query
+     * @param limit
+     * @param offset
+     * @return найденное или пустой Optional, пока индекс не построен
+     */
+    public Optional<List<S>> search(String query, int limit, int offset) {
+        var current = index;
+        if (current == null) {
+            return Optional.empty();
+        }
+        return Optional.of(current.search(query, limit, offset));
+    }
+
+    public void rebuild(BatchLoader<E> loader) {
+        if (!enabled) {
+            return;
+        }
+        var timeBefore = System.nanoTime();
+        var next = new InvertedIndex<S>();
+        removedDuringRebuild.clear();
+        rebuilding = next;
+        try {
+            var lastId = 0;
+            List<E> batch;
+            do {
+                batch = loader.findAfterId(lastId, batchSize);
+                synchronized (rebuildLock) {
+                    for (var record : batch) {
+                        var recordId = id.applyAsInt(record);
+                        if (!removedDuringRebuild.contains(recordId)) {
+                            next.putIfAbsent(recordId, title.apply(record), description.apply(record),
+                                    summary.apply(record));
+                        }
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    lastId = id.applyAsInt(batch.get(batch.size() - 1));
+                }
+            } while (batch.size() == batchSize);
+            index = next;
+        } finally {
+            rebuilding = null;
+        }
+        LOG.info("Индекс поиска {} пересобран: {} записей за {} мс",
+                name, next.size(), (System.nanoTime() - timeBefore) / 1_000_000);
+    }
+
+    /**
+     * Сначала читается rebuilding, потом index: сборка присваивает index раньше,
+     * чем обнуляет rebuilding, поэтому запись не проскочит мимо нового индекса.
+     *
+     * @param record
+     */
+    public void put(E record) {
+        if (!enabled) {
+            return;
+        }
+        var next = rebuilding;
+        var current = index;
+        var recordId = id.applyAsInt(record);
+        var recordTitle = title.apply(record);
+        var recordDescription = description.apply(record);
+        var recordSummary = summary.apply(record);
+        if (next != null) {
+            next.put(recordId, recordTitle, recordDescription, recordSummary);
+        }
+        if (current != null && current != next) {
+            current.put(recordId, recordTitle, recordDescription, recordSummary);
+        }
+    }
+
+    public void remove(int recordId) {
+        if (!enabled) {
+            return;
+        }
+        var next = rebuilding;
+        var current = index;
+        if (next != null) {
+            synchronized (rebuildLock) {
+                removedDuringRebuild.add(recordId);
+                next.remove(recordId);
+            }
+        }
+        if (current != null && current != next) {
+            current.remove(recordId);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package ru.job4j.dreamjob.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Разбор текста на термы для InvertedIndex.
+ * <br>Слово - непрерывная последовательность букв и цифр, все остальное разделители.
+ * Слово приводится к нижнему регистру, ё заменяется на е, затем у него отрезается окончание:
+ * у русских слов падежные и родовые окончания, у английских -s, -es, -ies, -ed, -ing.
+ * Это не полноценный стеммер: задача только в том, чтобы "разработчик", "разработчика"
+ * и "разработчиков" или "developer" и "developers" давали один терм.
+ * Основа не бывает короче трех символов, поэтому короткие слова не меняются.
+ * Слова из цифр и из смеси алфавитов остаются как есть.
+ */
+public final class TextAnalyzer {
+
+    private static final int MIN_STEM_LENGTH = 3;
+
+    /**
+     * Окончания проверяются по порядку, поэтому длинные стоят раньше коротких.
+     */
+    private static final String[] RUSSIAN_ENDINGS = {
+            "иями", "ями", "ами", "иях", "ого", "его", "ому", "ему", "ыми", "ими", "ией", "ием", "иям",
+            "ой", "ей", "ий", "ый", "ая", "яя", "ое", "ее", "ые", "ие", "ов", "ев", "ам", "ям", "ах", "ях",
+            "ом", "ем", "ую", "юю", "ью", "ия", "ии",
+            "а", "я", "о", "е", "ы", "и", "у", "ю", "ь", "й"
+    };
+
+    private TextAnalyzer() {
+    }
+
+    /**
+     * @param text
+     * @return термы текста в порядке появления, с повторами
+     */
+    public static List<String> terms(String text) {
+        var terms = new ArrayList<String>();
+        var word = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            var c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c == 'ё' || c == 'Ё' ? 'е' : Character.toLowerCase(c));
+            } else if (word.length() > 0) {
+                terms.add(stem(word.toString()));
+                word.setLength(0);
+            }
+        }
+        if (word.length() > 0) {
+            terms.add(stem(word.toString()));
+        }
+        return terms;
+    }
+
+    static String stem(String word) {
+        if (isAlphabet(word, 'а', 'я')) {
+            return stemRussian(word);
+        }
+        if (isAlphabet(word, 'a', 'z')) {
+            return stemEnglish(word);
+        }
+        return word;
+    }
+
+    private static String stemRussian(String word) {
+        for (var ending : RUSSIAN_ENDINGS) {
+            if (word.endsWith(ending) && word.length() - ending.length() >= MIN_STEM_LENGTH) {
+                return word.substring(0, word.length() - ending.length());
+            }
+        }
+        return word;
+    }
+
+    private static String stemEnglish(String word) {
+        var length = word.length();
+        if (word.endsWith("ies") && length - 3 >= MIN_STEM_LENGTH) {
+            return word.substring(0, length - 3) + "y";
+        }
+        if (word.endsWith("ing") && length - 3 >= MIN_STEM_LENGTH) {
+            return word.substring(0, length - 3);
+        }
+        if (word.endsWith("ed") && length - 2 >= MIN_STEM_LENGTH) {
+            return word.substring(0, length - 2);
+        }
+        if (word.endsWith("es") && length - 2 >= MIN_STEM_LENGTH
+                && (word.endsWith("sses") || word.endsWith("xes") || word.endsWith("ches") || word.endsWith("shes"))) {
+            return word.substring(0, length - 2);
+        }
+        if (word.endsWith("s") && !word.endsWith("ss") && !word.endsWith("us") && !word.endsWith("is")
+                && length - 1 >= MIN_STEM_LENGTH) {
+            return word.substring(0, length - 1);
+        }
+        return word;
+    }
+
+    private static boolean isAlphabet(String word, char first, char last) {
+        for (int i = 0; i < word.length(); i++) {
+            var c = word.charAt(i);
+            if (c < first || c > last) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,21 +1,60 @@
 package ru.job4j.dreamjob.service;
 
-import ru.job4j.dreamjob.dto.FileDto;
+import ru.job4j.dreamjob.dto.FileStreamDto;
+import ru.job4j.dreamjob.dto.ImportReportDto;
+import ru.job4j.dreamjob.dto.ListingFilterDto;
+import ru.job4j.dreamjob.dto.PageDto;
+import ru.job4j.dreamjob.dto.SearchPageDto;
+import ru.job4j.dreamjob.importer.RecordReader;
+import ru.job4j.dreamjob.model.File;
 import ru.job4j.dreamjob.model.Candidate;
+import ru.job4j.dreamjob.model.CandidateSummary;
 
 import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface CandidateService {
 
-    Candidate save(Candidate candidate, FileDto image);
+    Candidate save(Candidate candidate, FileStreamDto image);
 
     boolean deleteById(int id);
 
-    boolean update(Candidate candidate, FileDto image);
+    boolean update(Candidate candidate, FileStreamDto image);
+
+    boolean replaceFile(int id, File file);
 
     Optional<Candidate> findById(int id);
 
     Collection<Candidate> findAll();
 
+    PageDto<CandidateSummary> findPage(ListingFilterDto filter, String after, String before);
+
+    Map<Integer, Integer> countByCity(Boolean visible);
+
+    /**
+     * Сохраняет записи из файла импорта пачками, испорченные записи отклоняются.
+     *
+     * @param reader
+     * @return сколько записей сохранено и отклонено, ошибки с номерами строк
+     */
+    ImportReportDto importAll(RecordReader reader);
+
+    /**
+     * Передает action все записи, подходящие под фильтр, по возрастанию id,
+     * не собирая их в память.
+     *
+     * @param filter
+     * @param action
+     */
+    void exportAll(ListingFilterDto filter, Consumer<Candidate> action);
+
+    /**
+     * @return версия данных, меняется при каждом изменении записей, или -1, пока изменение идет
+     */
+    long getVersion();
+
+    SearchPageDto<CandidateSummary> search(String query, int page);
+
 }
\ No newline at end of file
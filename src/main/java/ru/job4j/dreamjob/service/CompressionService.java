@@ -0,0 +1,24 @@
+package ru.job4j.dreamjob.service;
+
+import ru.job4j.dreamjob.model.File;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+public interface CompressionService {
+
+    void compress(File file);
+
+    List<String> getEncodings();
+
+    Optional<Path> findVariant(File file, String encoding);
+
+    boolean hasVariants(File file);
+
+    void deleteVariants(File file);
+
+    List<Path> getVariantPaths(File file);
+
+    Optional<Path> getOriginalPath(Path variant);
+}
@@ -0,0 +1,42 @@
+package ru.job4j.dreamjob.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Разбирает очередь file_deletions в фоне. Удаление и замена файла вакансии или кандидата
+ * только ставят ссылку в очередь, поэтому время ответа пользователю
+ * не зависит ни от лишних запросов к files, ни от скорости файловой системы.
+ * <br>Очередь хранится в базе и переживает перезапуск приложения.
+ * Пока очередь не пуста, порции по file.deletion.batch-size разбираются одна за другой,
+ * затем пауза file.deletion.delay миллисекунд.
+ */
+@Service
+public class FileDeletionWorker {
+
+    private final FileService fileService;
+
+    private final int batchSize;
+
+    public FileDeletionWorker(FileService fileService, @Value("${file.deletion.batch-size}") int batchSize) {
+        this.fileService = fileService;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Запуски планировщика с fixedDelay не пересекаются, поэтому порции не разбираются параллельно.
+     *
+     * @return сколько записей очереди разобрано
+     */
+    @Scheduled(fixedDelayString = "${file.deletion.delay}")
+    public int drain() {
+        var total = 0;
+        int deleted;
+        do {
+            deleted = fileService.deleteScheduled(batchSize);
+            total += deleted;
+        } while (deleted == batchSize);
+        return total;
+    }
+}
@@ -1,16 +1,44 @@
 package ru.job4j.dreamjob.service;
 
 import ru.job4j.dreamjob.dto.FileDto;
+import ru.job4j.dreamjob.dto.FileResourceDto;
+import ru.job4j.dreamjob.dto.FileStreamDto;
 import ru.job4j.dreamjob.model.File;
 
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Optional;
 
 public interface FileService {
 
     File save(FileDto fileDto);
 
+    File save(FileStreamDto fileStreamDto);
+
+    File save(String name, Path source);
+
+    Optional<File> findById(int id);
+
     Optional<FileDto> getFileById(int id);
 
+    Optional<FileResourceDto> getFileResourceById(int id);
+
+    Optional<FileResourceDto> getFileResourceByHash(String contentHash);
+
+    Optional<FileResourceDto> getFileResourceById(int id, int width);
+
+    Optional<FileResourceDto> getFileResourceByHash(String contentHash, int width);
+
+    Optional<FileResourceDto> getFileResourceById(int id, List<String> encodings);
+
+    Optional<FileResourceDto> getFileResourceByHash(String contentHash, List<String> encodings);
+
     boolean deleteById(int id);
 
+    void scheduleDeleteById(int id);
+
+    int deleteScheduled(int limit);
+
+    boolean deleteOrphan(String path);
+
 }
\ No newline at end of file
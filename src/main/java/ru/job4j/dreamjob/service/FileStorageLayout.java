@@ -0,0 +1,65 @@
+package ru.job4j.dreamjob.service;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Раскладка файлов хранилища по подкаталогам: storage/ab/cd/abcdef...
+ * Два уровня по два шестнадцатеричных символа дают 65536 каталогов,
+ * поэтому даже миллионы файлов не собираются в одном каталоге.
+ * <br>Имена новых файлов - хеш содержимого, старые начинаются с UUID,
+ * так что подкаталоги берутся прямо из начала имени.
+ * Для имени, которое не начинается с четырех шестнадцатеричных символов,
+ * подкаталоги берутся из SHA-256 самого имени.
+ */
+public final class FileStorageLayout {
+
+    private static final int PREFIX_LENGTH = 4;
+
+    private FileStorageLayout() {
+    }
+
+    public static Path resolve(String storageDirectory, String fileName) {
+        var prefix = isHexPrefix(fileName) ? fileName.substring(0, PREFIX_LENGTH).toLowerCase() : hashPrefix(fileName);
+        return Path.of(storageDirectory, prefix.substring(0, 2), prefix.substring(2, PREFIX_LENGTH), fileName);
+    }
+
+    /**
+     * Шаблон LIKE, под который подходят пути, уже разложенные по подкаталогам.
+     *
+     * @param storageDirectory
+     * @return
+     */
+    public static String likePattern(String storageDirectory) {
+        var separator = escapeLike(java.io.File.separator);
+        return escapeLike(storageDirectory) + separator + "__" + separator + "__" + separator + "%";
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private static boolean isHexPrefix(String fileName) {
+        if (fileName.length() < PREFIX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < PREFIX_LENGTH; i++) {
+            if (Character.digit(fileName.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String hashPrefix(String fileName) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(fileName.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, PREFIX_LENGTH / 2);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package ru.job4j.dreamjob.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.job4j.dreamjob.cache.OffHeapFileCache;
+import ru.job4j.dreamjob.model.File;
+import ru.job4j.dreamjob.repository.FileRepository;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Переносит файлы, загруженные до появления подкаталогов, из плоского каталога хранилища
+ * в раскладку FileStorageLayout, пока приложение работает.
+ * <br>Файлы обрабатываются порциями по file.migration.batch-size,
+ * между порциями выдерживается пауза file.migration.delay миллисекунд,
+ * поэтому перенос не забирает диск и базу у пользователей.
+ * <br>Для каждого файла сначала создается жесткая ссылка по новому пути,
+ * затем в files.path записывается новый путь, и только в следующей порции удаляется старый.
+ * Запись в базе всегда указывает на существующий файл, а запрос,
+ * успевший прочитать старый путь до обновления, еще успеет его открыть.
+ */
+@Service
+@ConditionalOnProperty(name = "file.migration.enabled", havingValue = "true")
+public class FileStorageMigration {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileStorageMigration.class);
+
+    private final FileRepository fileRepository;
+
+    private final OffHeapFileCache fileCache;
+
+    private final ThumbnailService thumbnailService;
+
+    private final CompressionService compressionService;
+
+    private final String storageDirectory;
+
+    private final int batchSize;
+
+    private final List<Path> oldPaths = new ArrayList<>();
+
+    private int lastId;
+
+    private boolean finished;
+
+    public FileStorageMigration(FileRepository sql2oFileRepository, OffHeapFileCache fileCache,
+                                ThumbnailService thumbnailService, CompressionService compressionService,
+                                @Value("${file.directory}") String storageDirectory,
+                                @Value("${file.migration.batch-size}") int batchSize) {
+        this.fileRepository = sql2oFileRepository;
+        this.fileCache = fileCache;
+        this.thumbnailService = thumbnailService;
+        this.compressionService = compressionService;
+        this.storageDirectory = storageDirectory;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Запуски планировщика с fixedDelay не пересекаются, поэтому состояние переноса не нужно синхронизировать,
+     * см. SchedulingConfiguration.
+     * Когда файлов в старой раскладке не осталось, метод больше не обращается к базе.
+     *
+     * @return сколько файлов перенесено в этой порции
+     */
+    @Scheduled(fixedDelayString = "${file.migration.delay}")
+    public int migrateBatch() {
+        deleteOldPaths();
+        if (finished) {
+            return 0;
+        }
+        var files = fileRepository.findByPathNotLike(FileStorageLayout.likePattern(storageDirectory),
+                lastId, batchSize);
+        if (files.isEmpty()) {
+            finished = true;
+            LOG.info("Перенос файлов хранилища в подкаталоги завершен");
+            return 0;
+        }
+        var migrated = 0;
+        for (var file : files) {
+            lastId = file.getId();
+            try {
+                if (migrate(file)) {
+                    migrated++;
+                }
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("Не удалось перенести файл {}", file.getPath(), e);
+            }
+        }
+        return migrated;
+    }
+
+    /**
+     * Файл, которого нет на диске, пропускается: переносить нечего.
+     * Уменьшенные копии и сжатые варианты лежат рядом с оригиналом и переносятся вместе с ним.
+     * Их пути перечисляют ThumbnailService и CompressionService, а не шаблон по имени файла:
+     * в старых именах бывают *, ?, [ и {, и шаблон захватил бы чужие файлы.
+     * Путь варианта, у которого есть своя запись в files, - это самостоятельная старая загрузка,
+     * она переносится отдельно.
+     * Если запись изменили или удалили во время переноса, новые ссылки удаляются.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    private boolean migrate(File file) throws IOException {
+        var oldPath = Path.of(file.getPath());
+        if (!Files.exists(oldPath)) {
+            return false;
+        }
+        var fileName = oldPath.getFileName().toString();
+        var newPath = FileStorageLayout.resolve(storageDirectory, fileName);
+        Files.createDirectories(newPath.getParent());
+        var variants = new ArrayList<String>();
+        for (var variant : thumbnailService.getThumbnailPaths(file)) {
+            variants.add(variant.toString());
+        }
+        for (var variant : compressionService.getVariantPaths(file)) {
+            variants.add(variant.toString());
+        }
+        var stored = fileRepository.findExistingPaths(variants);
+        var sources = new ArrayList<Path>();
+        sources.add(oldPath);
+        for (var variant : variants) {
+            var path = Path.of(variant);
+            if (!stored.contains(variant) && Files.exists(path)) {
+                sources.add(path);
+            }
+        }
+        var targets = new ArrayList<Path>();
+        for (var source : sources) {
+            var target = newPath.resolveSibling(source.getFileName());
+            link(source, target);
+            targets.add(target);
+        }
+        if (!fileRepository.updatePath(file.getId(), file.getPath(), newPath.toString())) {
+            for (var target : targets) {
+                Files.deleteIfExists(target);
+            }
+            return false;
+        }
+        fileCache.evict(file.getPath());
+        oldPaths.addAll(sources);
+        return true;
+    }
+
+    /**
+     * Жесткая ссылка не копирует данные. Если файловая система их не поддерживает,
+     * файл копируется.
+     *
+     * @param source
+     * @param target
+     * @throws IOException
+     */
+    private void link(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+        } catch (FileAlreadyExistsException e) {
+            return;
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(source, target);
+        }
+    }
+
+    private void deleteOldPaths() {
+        for (var path : oldPaths) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                LOG.warn("Не удалось удалить перенесенный файл {}", path, e);
+            }
+        }
+        oldPaths.clear();
+    }
+}
@@ -0,0 +1,287 @@
+package ru.job4j.dreamjob.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.job4j.dreamjob.repository.FileRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Сверяет каталог хранилища с таблицей files и убирает то, что не нужно ни одной стороне.
+ * <br>Работа идет по кругу в три прохода, за один вызов планировщика обрабатывается
+ * не больше file.reconciler.batch-size файлов или записей, между вызовами пауза file.reconciler.delay.
+ * Поэтому сверка нагружает диск и базу понемногу и не мешает запросам пользователей.
+ * <ol>
+ *     <li>Файлы на диске без записи в files. Например, файл сохранили,
+ *     а вставка записи упала. Такой файл удаляется, только если он оказался сиротой
+ *     и в следующем вызове: между переносом файла и вставкой записи он тоже выглядит сиротой.
+ *     Временные файлы оборванных загрузок удаляются, когда им больше file.reconciler.grace-minutes.</li>
+ *     <li>Записи без файла на диске. Удалить их нельзя, на них ссылаются вакансии и кандидаты,
+ *     поэтому они только попадают в журнал и метрику.</li>
+ *     <li>Записи, на которые не ссылается ни одна вакансия и ни один кандидат, старше
+ *     file.reconciler.grace-minutes. Например, вставка кандидата упала после сохранения файла.
+ *     С них снимается ссылка через FileService, и последняя ссылка удаляет файл.</li>
+ * </ol>
+ * При file.reconciler.delete=false сироты только попадают в журнал и метрику.
+ */
+@Service
+@ConditionalOnProperty(name = "file.reconciler.enabled", havingValue = "true")
+public class FileStorageReconciler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileStorageReconciler.class);
+
+    private enum Phase {
+        DISK, MISSING_FILES, UNREFERENCED_ROWS
+    }
+
+    private final FileRepository fileRepository;
+
+    private final FileService fileService;
+
+    private final ThumbnailService thumbnailService;
+
+    private final CompressionService compressionService;
+
+    private final String storageDirectory;
+
+    private final int batchSize;
+
+    private final Duration gracePeriod;
+
+    private final boolean delete;
+
+    private final Counter orphanFiles;
+
+    private final Counter missingFiles;
+
+    private final Counter unreferencedRows;
+
+    private Phase phase = Phase.DISK;
+
+    private Stream<Path> walk;
+
+    private Iterator<Path> walker;
+
+    private Set<String> suspects = new LinkedHashSet<>();
+
+    private int lastId;
+
+    public FileStorageReconciler(FileRepository sql2oFileRepository, FileService fileService,
+                                 ThumbnailService thumbnailService, CompressionService compressionService,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${file.directory}") String storageDirectory,
+                                 @Value("${file.reconciler.batch-size}") int batchSize,
+                                 @Value("${file.reconciler.grace-minutes}") long graceMinutes,
+                                 @Value("${file.reconciler.delete}") boolean delete) {
+        this.fileRepository = sql2oFileRepository;
+        this.fileService = fileService;
+        this.thumbnailService = thumbnailService;
+        this.compressionService = compressionService;
+        this.storageDirectory = storageDirectory;
+        this.batchSize = batchSize;
+        this.gracePeriod = Duration.ofMinutes(graceMinutes);
+        this.delete = delete;
+        this.orphanFiles = meterRegistry.counter("dreamjob.file.reconciler.orphans", "kind", "file");
+        this.missingFiles = meterRegistry.counter("dreamjob.file.reconciler.orphans", "kind", "missing-file");
+        this.unreferencedRows = meterRegistry.counter("dreamjob.file.reconciler.orphans", "kind", "row");
+    }
+
+    /**
+     * Запуски планировщика с fixedDelay не пересекаются, поэтому состояние сверки не нужно синхронизировать,
+     * см. SchedulingConfiguration.
+     */
+    @Scheduled(fixedDelayString = "${file.reconciler.delay}")
+    public void reconcileBatch() {
+        deleteSuspects();
+        switch (phase) {
+            case DISK -> scanDisk();
+            case MISSING_FILES -> scanMissingFiles();
+            default -> scanUnreferencedRows();
+        }
+    }
+
+    /**
+     * Сироты прошлого вызова проверяются заново через FileService.deleteOrphan:
+     * если за это время на файл появилась запись, он останется на месте.
+     */
+    private void deleteSuspects() {
+        var previous = suspects;
+        suspects = new LinkedHashSet<>();
+        for (var path : previous) {
+            if (!delete) {
+                LOG.warn("Файл {} не записан в таблицу files", path);
+            } else if (fileService.deleteOrphan(path)) {
+                LOG.info("Удален файл {}, не записанный в таблицу files", path);
+            }
+        }
+    }
+
+    private void scanDisk() {
+        if (walker == null) {
+            walk = walk();
+            walker = walk.iterator();
+        }
+        var batch = new ArrayList<Path>();
+        boolean hasNext;
+        try {
+            hasNext = walker.hasNext();
+            while (batch.size() < batchSize && hasNext) {
+                var path = walker.next();
+                hasNext = walker.hasNext();
+                if (isTemporary(path)) {
+                    deleteStaleTemporary(path);
+                } else {
+                    batch.add(path);
+                }
+            }
+        } catch (UncheckedIOException e) {
+            LOG.warn("Обход каталога {} прерван и начнется заново", storageDirectory, e);
+            hasNext = false;
+        }
+        var paths = new LinkedHashSet<String>();
+        for (var path : batch) {
+            paths.add(path.toString());
+            getOriginalPath(path).ifPresent(original -> paths.add(original.toString()));
+        }
+        var existing = fileRepository.findExistingPaths(new ArrayList<>(paths));
+        var orphans = new LinkedHashSet<String>();
+        for (var path : batch) {
+            if (existing.contains(path.toString())) {
+                continue;
+            }
+            var original = getOriginalPath(path)
+                    .filter(candidate -> existing.contains(candidate.toString()) || Files.exists(candidate));
+            if (original.isEmpty()) {
+                orphans.add(path.toString());
+            } else if (!existing.contains(original.get().toString())) {
+                orphans.add(original.get().toString());
+            }
+        }
+        for (var orphan : orphans) {
+            orphanFiles.increment();
+            suspects.add(orphan);
+        }
+        if (!hasNext) {
+            walk.close();
+            walk = null;
+            walker = null;
+            nextPhase(Phase.MISSING_FILES);
+        }
+    }
+
+    /**
+     * Путь оригинала, если имя построено как имя уменьшенной копии или сжатого варианта.
+     * Такое имя еще не значит, что файл - копия: так могут называться и старые загрузки,
+     * например photo-w320.jpg или resume.json.gz. Поэтому scanDisk сначала ищет в files сам путь,
+     * а копией считает файл, только если оригинал есть в files или на диске.
+     *
+     * @param path
+     * @return
+     */
+    private Optional<Path> getOriginalPath(Path path) {
+        return thumbnailService.getOriginalPath(path)
+                .or(() -> compressionService.getOriginalPath(path));
+    }
+
+    /**
+     * Сегменты PackFileStore не сверяются с files по пути: место в них освобождает PackFileCompaction.
+     * Файлы незавершенных загрузок по частям удаляет SimpleUploadService по истечении срока сессии.
+     *
+     * @return
+     */
+    private Stream<Path> walk() {
+        try {
+            var packs = Path.of(storageDirectory, PackFileStore.DIRECTORY);
+            var uploads = Path.of(storageDirectory, SimpleUploadService.DIRECTORY);
+            return Files.walk(Path.of(storageDirectory))
+                    .filter(path -> !path.startsWith(packs) && !path.startsWith(uploads) && Files.isRegularFile(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Так называет временные файлы SimpleFileService при загрузке,
+     * SimpleThumbnailService при построении копий и SimpleCompressionService при сжатии.
+     *
+     * @param path
+     * @return
+     */
+    private boolean isTemporary(Path path) {
+        var name = path.getFileName().toString();
+        return (name.startsWith("upload-") || name.startsWith("thumbnail-") || name.startsWith("compress-"))
+                && name.endsWith(".tmp");
+    }
+
+    private void deleteStaleTemporary(Path path) {
+        try {
+            if (Files.getLastModifiedTime(path).toInstant().isBefore(Instant.now().minus(gracePeriod))) {
+                orphanFiles.increment();
+                if (delete) {
+                    Files.deleteIfExists(path);
+                    LOG.info("Удален временный файл оборванной загрузки {}", path);
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Не удалось удалить временный файл {}", path, e);
+        }
+    }
+
+    private void scanMissingFiles() {
+        var files = fileRepository.findPage(lastId, batchSize);
+        for (var file : files) {
+            lastId = file.getId();
+            var path = file.isPacked()
+                    ? PackFileStore.getSegmentPath(storageDirectory, file.getPackSegment())
+                    : Path.of(file.getPath());
+            if (!Files.exists(path)) {
+                missingFiles.increment();
+                LOG.warn("Файл {} записи files.id = {} отсутствует на диске", file.getPath(), file.getId());
+            }
+        }
+        if (files.size() < batchSize) {
+            nextPhase(Phase.UNREFERENCED_ROWS);
+        }
+    }
+
+    private void scanUnreferencedRows() {
+        var createdBefore = LocalDateTime.now().minus(gracePeriod);
+        var files = fileRepository.findUnreferenced(lastId, createdBefore, batchSize);
+        for (var file : files) {
+            lastId = file.getId();
+            unreferencedRows.increment();
+            if (delete) {
+                fileService.deleteById(file.getId());
+                LOG.info("Снята ссылка с файла files.id = {}, на который никто не ссылается", file.getId());
+            } else {
+                LOG.warn("На файл files.id = {} не ссылается ни одна вакансия и ни один кандидат", file.getId());
+            }
+        }
+        if (files.size() < batchSize) {
+            nextPhase(Phase.DISK);
+        }
+    }
+
+    private void nextPhase(Phase next) {
+        phase = next;
+        lastId = 0;
+    }
+}
@@ -0,0 +1,103 @@
+package ru.job4j.dreamjob.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.job4j.dreamjob.repository.FileRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Возвращает место удаленных файлов в сегментах PackFileStore.
+ * <br>Удаление упакованного файла удаляет только запись в files, байты остаются в сегменте.
+ * Если живые записи занимают меньше file.pack.compaction-threshold заполненного сегмента,
+ * они переписываются в текущий сегмент, а старый сегмент удаляется целиком.
+ * Текущий сегмент, в который идет дозапись, не уплотняется.
+ * <br>Место записи меняется условным UPDATE: если файл удалили во время переноса,
+ * его копия просто станет свободным местом нового сегмента.
+ * Освободившийся сегмент удаляется только при следующем вызове,
+ * чтобы запросы, уже прочитавшие старое место, успели его отдать.
+ */
+@Service
+@ConditionalOnProperty(name = "file.pack.enabled", havingValue = "true")
+public class PackFileCompaction {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PackFileCompaction.class);
+
+    private final FileRepository fileRepository;
+
+    private final PackFileStore packStore;
+
+    private final double threshold;
+
+    private final int batchSize;
+
+    private final List<Integer> retiredSegments = new ArrayList<>();
+
+    public PackFileCompaction(FileRepository sql2oFileRepository, PackFileStore packStore,
+                              @Value("${file.pack.compaction-threshold}") double threshold,
+                              @Value("${file.pack.compaction-batch-size}") int batchSize) {
+        this.fileRepository = sql2oFileRepository;
+        this.packStore = packStore;
+        this.threshold = threshold;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Запуски планировщика с fixedDelay не пересекаются, поэтому состояние уплотнения не нужно синхронизировать,
+     * см. SchedulingConfiguration.
+     *
+     * @return сколько файлов перенесено
+     */
+    @Scheduled(fixedDelayString = "${file.pack.compaction-delay}")
+    public int compact() {
+        deleteRetiredSegments();
+        var usage = fileRepository.findPackUsage();
+        var moved = 0;
+        for (var segment : packStore.findSegments()) {
+            var used = usage.getOrDefault(segment, 0L);
+            if (packStore.isActive(segment) || used > packStore.getSegmentBytes() * threshold) {
+                continue;
+            }
+            moved += moveLiveFiles(segment);
+            if (fileRepository.findBySegment(segment, 0, 1).isEmpty()) {
+                retiredSegments.add(segment);
+                LOG.info("Сегмент {} уплотнен, живых байт было {}", segment, used);
+            }
+        }
+        return moved;
+    }
+
+    private int moveLiveFiles(int segment) {
+        var moved = 0;
+        var lastId = 0;
+        var files = fileRepository.findBySegment(segment, lastId, batchSize);
+        while (!files.isEmpty()) {
+            for (var file : files) {
+                lastId = file.getId();
+                var copy = packStore.copy(file);
+                if (fileRepository.updatePackLocation(file.getId(), file.getPath(), copy.getPath(),
+                        copy.getPackSegment(), copy.getPackOffset())) {
+                    moved++;
+                }
+            }
+            files = fileRepository.findBySegment(segment, lastId, batchSize);
+        }
+        return moved;
+    }
+
+    private void deleteRetiredSegments() {
+        for (var segment : retiredSegments) {
+            try {
+                packStore.deleteSegment(segment);
+            } catch (RuntimeException e) {
+                LOG.warn("Не удалось удалить сегмент {}", segment, e);
+            }
+        }
+        retiredSegments.clear();
+    }
+}
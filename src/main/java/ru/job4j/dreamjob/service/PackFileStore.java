@@ -0,0 +1,294 @@
+package ru.job4j.dreamjob.service;
+
+import net.jcip.annotations.ThreadSafe;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Component;
+import ru.job4j.dreamjob.model.File;
+import ru.job4j.dreamjob.repository.FileRepository;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Хранит маленькие изображения не отдельными файлами, а подряд внутри больших сегментов
+ * file.directory/packs/000001.pack размером file.pack.segment-bytes.
+ * Тысячи фотографий кандидатов тогда занимают несколько inode вместо тысяч,
+ * а резервная копия читает несколько больших файлов вместо множества мелких.
+ * <br>Индекс хранится в таблице files: сегмент, смещение и длина.
+ * Сегмент создается сразу нужного размера и дописывается только в конец,
+ * а запись в files вставляется после того, как байты записаны,
+ * поэтому по индексу никогда не читается недописанный файл.
+ * <br>Сегменты читаются через отображение в память (MappedByteBuffer):
+ * ответ отдается прямо из страничного кеша ОС, без копии в куче.
+ * <br>Место удаленных файлов возвращает PackFileCompaction.
+ * <br>При file.pack.read-only=true хранилище только читает уже существующие сегменты:
+ * они открываются на чтение, новые не создаются и не дописываются. Так работает узел FileNode,
+ * которому не нужны права на запись в общий каталог.
+ */
+@Component
+@ThreadSafe
+public class PackFileStore {
+
+    public static final String DIRECTORY = "packs";
+
+    private static final String EXTENSION = ".pack";
+
+    private static final Set<MediaType> PACKED_TYPES = Set.of(
+            MediaType.IMAGE_PNG, MediaType.IMAGE_JPEG, MediaType.IMAGE_GIF, MediaType.valueOf("image/webp"));
+
+    private final FileRepository fileRepository;
+
+    private final Path directory;
+
+    private final boolean enabled;
+
+    private final long maxFileBytes;
+
+    private final int segmentBytes;
+
+    private final boolean readOnly;
+
+    private final Map<Integer, FileChannel> channels = new ConcurrentHashMap<>();
+
+    private final Map<Integer, MappedByteBuffer> mappings = new ConcurrentHashMap<>();
+
+    private int activeSegment;
+
+    private long position;
+
+    /**
+     * Дозапись продолжается в последний сегмент с конца его последней записи в files.
+     * Байты, записанные после нее до падения приложения, просто станут свободным местом.
+     *
+     * @param sql2oFileRepository
+     * @param storageDirectory
+     * @param enabled
+     * @param maxFileBytes
+     * @param segmentBytes
+     * @param readOnly
+     */
+    public PackFileStore(FileRepository sql2oFileRepository,
+                         @Value("${file.directory}") String storageDirectory,
+                         @Value("${file.pack.enabled}") boolean enabled,
+                         @Value("${file.pack.max-file-bytes}") long maxFileBytes,
+                         @Value("${file.pack.segment-bytes}") int segmentBytes,
+                         @Value("${file.pack.read-only:false}") boolean readOnly) {
+        this.fileRepository = sql2oFileRepository;
+        this.directory = Path.of(storageDirectory, DIRECTORY);
+        this.enabled = enabled;
+        this.maxFileBytes = Math.min(maxFileBytes, segmentBytes);
+        this.segmentBytes = segmentBytes;
+        this.readOnly = readOnly;
+        if (enabled && !readOnly) {
+            openLastSegment();
+        }
+    }
+
+    private void openLastSegment() {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        var segments = findSegments();
+        if (segments.isEmpty()) {
+            createSegment(1);
+            return;
+        }
+        activeSegment = segments.get(segments.size() - 1);
+        position = fileRepository.findSegmentEnd(activeSegment);
+    }
+
+    public static Path getSegmentPath(String storageDirectory, int segment) {
+        return Path.of(storageDirectory, DIRECTORY, String.format("%06d%s", segment, EXTENSION));
+    }
+
+    private Path getSegmentPath(int segment) {
+        return directory.resolve(String.format("%06d%s", segment, EXTENSION));
+    }
+
+    /**
+     * В сегменты попадают только растровые изображения не больше file.pack.max-file-bytes.
+     * Для них не строятся уменьшенные копии и сжатые варианты: файл и так маленький и уже сжат.
+     *
+     * @param name
+     * @param size
+     * @return
+     */
+    public boolean accepts(String name, long size) {
+        return enabled && !readOnly && size > 0 && size <= maxFileBytes
+                && MediaTypeFactory.getMediaType(name).map(PACKED_TYPES::contains).orElse(false);
+    }
+
+    /**
+     * Под блокировкой только выделяется место в сегменте, сами байты пишутся без нее,
+     * поэтому загрузки разных файлов пишут в сегмент параллельно.
+     *
+     * @param name
+     * @param content
+     * @param contentHash
+     * @return файл с местом в сегменте, еще не сохраненный в files
+     */
+    public File append(String name, ByteBuffer content, String contentHash) {
+        checkWritable();
+        var length = content.remaining();
+        int segment;
+        long offset;
+        synchronized (this) {
+            if (position + length > segmentBytes) {
+                createSegment(activeSegment + 1);
+            }
+            segment = activeSegment;
+            offset = position;
+            position += length;
+        }
+        var channel = getChannel(segment);
+        try {
+            var written = 0L;
+            while (content.hasRemaining()) {
+                written += channel.write(content, offset + written);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        var file = new File(name, getSegmentPath(segment) + "#" + offset, contentHash);
+        file.setPackSegment(segment);
+        file.setPackOffset(offset);
+        file.setPackLength((long) length);
+        return file;
+    }
+
+    /**
+     * Переписывает файл в текущий сегмент, этим пользуется уплотнение.
+     *
+     * @param file
+     * @return файл с новым местом, запись в files нужно обновить
+     */
+    public File copy(File file) {
+        return append(file.getName(), read(file), file.getContentHash());
+    }
+
+    /**
+     * Сегмент сразу получает полный размер, поэтому его можно отобразить в память целиком,
+     * а файловая система может выделить ему непрерывное место.
+     *
+     * @param segment
+     */
+    private synchronized void createSegment(int segment) {
+        try (var file = new RandomAccessFile(getSegmentPath(segment).toFile(), "rw")) {
+            file.setLength(segmentBytes);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        activeSegment = segment;
+        position = 0;
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new IllegalStateException("Хранилище сегментов открыто только на чтение");
+        }
+    }
+
+    private FileChannel getChannel(int segment) {
+        return channels.computeIfAbsent(segment, key -> {
+            try {
+                return readOnly
+                        ? FileChannel.open(getSegmentPath(key), StandardOpenOption.READ)
+                        : FileChannel.open(getSegmentPath(key), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    /**
+     * Возвращает окно отображенного в память сегмента. Запись через FileChannel
+     * и отображение используют один страничный кеш, поэтому дописанные байты сразу видны.
+     *
+     * @param file
+     * @return
+     */
+    public ByteBuffer read(File file) {
+        var mapping = mappings.computeIfAbsent(file.getPackSegment(), this::map);
+        var offset = Math.toIntExact(file.getPackOffset());
+        return mapping.duplicate()
+                .position(offset)
+                .limit(offset + Math.toIntExact(file.getPackLength()))
+                .slice()
+                .asReadOnlyBuffer();
+    }
+
+    private MappedByteBuffer map(int segment) {
+        try {
+            var channel = getChannel(segment);
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), segmentBytes));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public List<Integer> findSegments() {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (var paths = Files.list(directory)) {
+            return paths.map(path -> path.getFileName().toString())
+                    .filter(name -> name.matches("\\d+" + EXTENSION.replace(".", "\\.")))
+                    .map(name -> Integer.parseInt(name.substring(0, name.length() - EXTENSION.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public synchronized boolean isActive(int segment) {
+        return segment == activeSegment;
+    }
+
+    public int getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    /**
+     * Отображение освобождается сборщиком мусора, а уже выданные окна
+     * остаются читаемыми и после удаления файла сегмента.
+     *
+     * @param segment
+     */
+    public void deleteSegment(int segment) {
+        checkWritable();
+        mappings.remove(segment);
+        var channel = channels.remove(segment);
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+            Files.deleteIfExists(getSegmentPath(segment));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        for (var channel : channels.values()) {
+            channel.close();
+        }
+    }
+}
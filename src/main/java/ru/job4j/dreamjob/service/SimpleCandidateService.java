@@ -1,68 +1,259 @@
 package ru.job4j.dreamjob.service;
 
 import net.jcip.annotations.ThreadSafe;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import ru.job4j.dreamjob.dto.FileDto;
+import ru.job4j.dreamjob.cache.EntityCache;
+import ru.job4j.dreamjob.dto.FileStreamDto;
+import ru.job4j.dreamjob.dto.ImportReportDto;
+import ru.job4j.dreamjob.dto.ListingFilterDto;
+import ru.job4j.dreamjob.dto.PageCursorDto;
+import ru.job4j.dreamjob.dto.PageDto;
+import ru.job4j.dreamjob.dto.SearchPageDto;
+import ru.job4j.dreamjob.importer.BulkImporter;
+import ru.job4j.dreamjob.importer.RecordFields;
+import ru.job4j.dreamjob.importer.RecordReader;
+import ru.job4j.dreamjob.model.City;
+import ru.job4j.dreamjob.model.File;
 import ru.job4j.dreamjob.model.Candidate;
+import ru.job4j.dreamjob.model.CandidateSummary;
 import ru.job4j.dreamjob.repository.CandidateRepository;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Service
 @ThreadSafe
 public class SimpleCandidateService implements CandidateService {
 
     private final CandidateRepository candidateRepository;
+    private final EntityCache<Candidate> candidateCache;
+    private final CityService cityService;
     private final FileService fileService;
+    private final int pageSize;
+    private final int importBatchSize;
+    private final int exportFetchSize;
 
-    public SimpleCandidateService(CandidateRepository sql2oCandidateRepository, FileService fileService) {
-        this.candidateRepository = sql2oCandidateRepository;
+    public SimpleCandidateService(CandidateRepository indexedCandidateRepository, EntityCache<Candidate> candidateCache,
+                                  CityService cityService, FileService fileService,
+                                  @Value("${listing.page-size}") int pageSize,
+                                  @Value("${import.batch-size}") int importBatchSize,
+                                  @Value("${export.fetch-size}") int exportFetchSize) {
+        this.candidateRepository = indexedCandidateRepository;
+        this.candidateCache = candidateCache;
+        this.cityService = cityService;
         this.fileService = fileService;
+        this.pageSize = pageSize;
+        this.importBatchSize = importBatchSize;
+        this.exportFetchSize = exportFetchSize;
     }
 
     @Override
-    public Candidate save(Candidate candidate, FileDto image) {
+    public Candidate save(Candidate candidate, FileStreamDto image) {
         saveNewFile(candidate, image);
-        return candidateRepository.save(candidate);
+        return candidateCache.write(() -> candidateRepository.save(candidate));
     }
 
-    private void saveNewFile(Candidate candidate, FileDto image) {
+    private void saveNewFile(Candidate candidate, FileStreamDto image) {
         var file = fileService.save(image);
         candidate.setFileId(file.getId());
     }
 
+    /**
+     * Ссылка на файл снимается, только если запись удалил именно этот вызов:
+     * два одновременных удаления одной записи иначе сняли бы ее дважды,
+     * и общий с другой записью файл был бы удален.
+     *
+     * @param id
+     * @return
+     */
     @Override
     public boolean deleteById(int id) {
         var fileOptional = findById(id);
         if (fileOptional.isEmpty()) {
             return false;
         }
-        var isDeleted = candidateRepository.deleteById(id);
-        fileService.deleteById(fileOptional.get().getFileId());
+        var isDeleted = candidateCache.write(id, () -> candidateRepository.deleteById(id));
+        if (isDeleted) {
+            fileService.scheduleDeleteById(fileOptional.get().getFileId());
+        }
         return isDeleted;
     }
 
+    /**
+     * Если запись обновлена, снимается ссылка на старый файл, иначе на только что сохраненный:
+     * старый файл все еще нужен записи.
+     *
+     * @param candidate
+     * @param image
+     * @return
+     */
     @Override
-    public boolean update(Candidate candidate, FileDto image) {
-        var isNewFileEmpty = image.getContent().length == 0;
+    public boolean update(Candidate candidate, FileStreamDto image) {
+        var isNewFileEmpty = image.getSize() == 0;
         if (isNewFileEmpty) {
-            return candidateRepository.update(candidate);
+            return candidateCache.write(candidate.getId(), () -> candidateRepository.update(candidate));
         }
         var oldFileId = candidate.getFileId();
         saveNewFile(candidate, image);
-        var isUpdated = candidateRepository.update(candidate);
-        fileService.deleteById(oldFileId);
+        var isUpdated = candidateCache.write(candidate.getId(), () -> candidateRepository.update(candidate));
+        fileService.scheduleDeleteById(isUpdated ? oldFileId : candidate.getFileId());
+        return isUpdated;
+    }
+
+    /**
+     * Привязывает к записи уже сохраненный файл, например собранный из частей загрузки.
+     * Ссылка на старый файл снимается. Если записи нет, то снимается ссылка на новый файл,
+     * иначе на него никто бы не сослался.
+     * <br>Запись читается из репозитория, а не из кеша: она меняется перед сохранением,
+     * а объекты из кеша общие для всех запросов.
+     *
+     * @param id
+     * @param file
+     * @return
+     */
+    @Override
+    public boolean replaceFile(int id, File file) {
+        var candidateOptional = candidateRepository.findById(id);
+        if (candidateOptional.isEmpty()) {
+            fileService.scheduleDeleteById(file.getId());
+            return false;
+        }
+        var candidate = candidateOptional.get();
+        var oldFileId = candidate.getFileId();
+        candidate.setFileId(file.getId());
+        var isUpdated = candidateCache.write(id, () -> candidateRepository.update(candidate));
+        fileService.scheduleDeleteById(isUpdated ? oldFileId : file.getId());
         return isUpdated;
     }
 
     @Override
     public Optional<Candidate> findById(int id) {
-        return candidateRepository.findById(id);
+        return candidateCache.get(id, candidateRepository::findById);
     }
 
     @Override
     public Collection<Candidate> findAll() {
-        return candidateRepository.findAll();
+        return candidateCache.getAll(candidateRepository::findAll);
+    }
+
+    /**
+     * Страница списка от новых к старым. after - курсор для перехода вперед, before - назад.
+     * Без курсора, с испорченным курсором или если вперед идти некуда, возвращается первая страница.
+     * Назад тоже возвращается первая страница, если перед курсором меньше полной страницы:
+     * так первая страница всегда одинаковая.
+     * <br>Запрашивается на одну запись больше размера страницы:
+     * лишняя запись показывает, что дальше в этом направлении есть еще страница.
+     * <br>Курсоры относятся к списку с тем же фильтром: страницы листаются внутри отобранных записей.
+     *
+     * @param filter
+     * @param after
+     * @param before
+     * @return
+     */
+    @Override
+    public PageDto<CandidateSummary> findPage(ListingFilterDto filter, String after, String before) {
+        var afterCursor = PageCursorDto.parse(after);
+        if (afterCursor.isPresent()) {
+            var cursor = afterCursor.get();
+            var candidates = candidateRepository.findOlderThan(filter, cursor.getCreationDate(), cursor.getId(), pageSize + 1);
+            if (!candidates.isEmpty()) {
+                var hasNext = candidates.size() > pageSize;
+                return toPage(hasNext ? candidates.subList(0, pageSize) : candidates, true, hasNext);
+            }
+        }
+        var beforeCursor = PageCursorDto.parse(before);
+        if (beforeCursor.isPresent()) {
+            var cursor = beforeCursor.get();
+            var candidates = candidateRepository.findNewerThan(filter, cursor.getCreationDate(), cursor.getId(), pageSize + 1);
+            if (candidates.size() > pageSize) {
+                return toPage(candidates.subList(1, candidates.size()), true, true);
+            }
+        }
+        var candidates = candidateRepository.findFirstPage(filter, pageSize + 1);
+        var hasNext = candidates.size() > pageSize;
+        return toPage(hasNext ? candidates.subList(0, pageSize) : candidates, false, hasNext);
+    }
+
+    @Override
+    public Map<Integer, Integer> countByCity(Boolean visible) {
+        return candidateRepository.countByCity(visible);
+    }
+
+    /**
+     * Импорт без вложений: у новых записей нет файла. Столбцы: name, description, cityId, visible,
+     * пустой visible - true. Города проверяются по списку, прочитанному один раз перед импортом.
+     * <br>Каждая пачка сохраняется через кеш отдельно: между пачками чтение идет из кеша,
+     * а после каждой пачки сбрасывается список и меняется версия данных.
+     *
+     * @param reader
+     * @return
+     */
+    @Override
+    public ImportReportDto importAll(RecordReader reader) {
+        var cityIds = cityService.findAll().stream().map(City::getId).collect(Collectors.toSet());
+        return BulkImporter.run(reader, importBatchSize, record -> parse(record, cityIds),
+                batch -> candidateCache.write(() -> candidateRepository.saveAll(batch)));
+    }
+
+    /**
+     * Выгрузка идет мимо кеша: записи читаются курсором и сразу отдаются action,
+     * класть их в кеш незачем, а список всех записей занял бы память.
+     *
+     * @param filter
+     * @param action
+     */
+    @Override
+    public void exportAll(ListingFilterDto filter, Consumer<Candidate> action) {
+        candidateRepository.forEach(filter, exportFetchSize, action);
+    }
+
+    private static Candidate parse(Map<String, String> record, Set<Integer> cityIds) {
+        return new Candidate(0, RecordFields.required(record, "name"), RecordFields.optional(record, "description"),
+                RecordFields.toCityId(record, "cityId", cityIds), RecordFields.toBoolean(record, "visible", true), 0);
+    }
+
+    @Override
+    public long getVersion() {
+        return candidateCache.getVersion();
+    }
+
+    /**
+     * Страница результатов поиска, page начинается с 1. Пустой запрос ничего не находит.
+     * Как и в findPage, запрашивается на одну запись больше размера страницы.
+     *
+     * @param query
+     * @param page
+     * @return
+     */
+    @Override
+    public SearchPageDto<CandidateSummary> search(String query, int page) {
+        if (query == null || query.isBlank()) {
+            return new SearchPageDto<>(List.of(), "", null, null);
+        }
+        var number = Math.min(Math.max(page, 1), Integer.MAX_VALUE / pageSize);
+        var candidates = candidateRepository.search(query, pageSize + 1, (number - 1) * pageSize);
+        var hasNext = candidates.size() > pageSize;
+        return new SearchPageDto<>(hasNext ? candidates.subList(0, pageSize) : candidates, query,
+                number > 1 ? number - 1 : null, hasNext ? number + 1 : null);
+    }
+
+    private PageDto<CandidateSummary> toPage(List<CandidateSummary> candidates, boolean hasPrevious, boolean hasNext) {
+        String previous = null;
+        String next = null;
+        if (hasPrevious) {
+            var first = candidates.get(0);
+            previous = PageCursorDto.format(first.getCreationDate(), first.getId());
+        }
+        if (hasNext) {
+            var last = candidates.get(candidates.size() - 1);
+            next = PageCursorDto.format(last.getCreationDate(), last.getId());
+        }
+        return new PageDto<>(candidates, previous, next);
     }
 }
\ No newline at end of file
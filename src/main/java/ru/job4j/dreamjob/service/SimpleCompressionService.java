@@ -0,0 +1,180 @@
+package ru.job4j.dreamjob.service;
+
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import ru.job4j.dreamjob.model.File;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Сжатый вариант файла строится один раз при загрузке и лежит рядом с оригиналом:
+ * путь оригинала + ".gz". Контроллер выбирает вариант по Accept-Encoding
+ * и ничего не сжимает на каждый запрос.
+ * <br>Сжимаются только текстовые форматы: изображения, архивы и видео уже сжаты.
+ * Вариант сохраняется, только если он заметно меньше оригинала.
+ */
+@Service
+@ThreadSafe
+public class SimpleCompressionService implements CompressionService {
+
+    public static final String GZIP = "gzip";
+
+    private static final Logger LOG = LoggerFactory.getLogger(SimpleCompressionService.class);
+
+    private static final String GZIP_EXTENSION = ".gz";
+
+    /**
+     * Вариант должен быть не больше этой доли оригинала, иначе экономия не окупает лишний файл.
+     */
+    private static final double MAX_RATIO = 0.9;
+
+    private static final Set<String> COMPRESSIBLE_TYPES = Set.of(
+            "application/json", "application/xml", "application/javascript",
+            "application/msword", "application/rtf", "application/x-tex",
+            "image/svg+xml", "image/bmp");
+
+    private final boolean enabled;
+
+    private final long minSize;
+
+    public SimpleCompressionService(@Value("${file.compression.enabled}") boolean enabled,
+                                    @Value("${file.compression.min-size}") long minSize) {
+        this.enabled = enabled;
+        this.minSize = minSize;
+    }
+
+    /**
+     * Ошибка сжатия не мешает загрузке: без варианта файл просто отдается как есть.
+     *
+     * @param file
+     */
+    @Override
+    public void compress(File file) {
+        if (!enabled || !isCompressible(file.getName())) {
+            return;
+        }
+        var path = Path.of(file.getPath());
+        try {
+            var size = Files.size(path);
+            if (size >= minSize) {
+                writeVariant(path, size, getVariantPath(path));
+            }
+        } catch (IOException e) {
+            LOG.warn("Не удалось сжать файл {}", file.getPath(), e);
+        }
+    }
+
+    /**
+     * Вариант пишется во временный файл и затем переименовывается,
+     * поэтому контроллер никогда не отдаст недописанный архив.
+     *
+     * @param path
+     * @param size
+     * @param target
+     * @throws IOException
+     */
+    private void writeVariant(Path path, long size, Path target) throws IOException {
+        var temp = target.resolveSibling("compress-" + UUID.randomUUID() + ".tmp");
+        try {
+            try (var in = Files.newInputStream(path);
+                 var out = new BestGzipOutputStream(Files.newOutputStream(temp, StandardOpenOption.CREATE_NEW))) {
+                in.transferTo(out);
+            }
+            if (Files.size(temp) <= size * MAX_RATIO) {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private boolean isCompressible(String name) {
+        return MediaTypeFactory.getMediaType(name).map(this::isCompressible).orElse(false);
+    }
+
+    private boolean isCompressible(MediaType mediaType) {
+        var subtype = mediaType.getSubtype();
+        return "text".equals(mediaType.getType())
+                || subtype.endsWith("+xml") || subtype.endsWith("+json")
+                || COMPRESSIBLE_TYPES.contains(mediaType.getType() + "/" + subtype);
+    }
+
+    private Path getVariantPath(Path path) {
+        return path.resolveSibling(path.getFileName() + GZIP_EXTENSION);
+    }
+
+    @Override
+    public List<String> getEncodings() {
+        return List.of(GZIP);
+    }
+
+    @Override
+    public Optional<Path> findVariant(File file, String encoding) {
+        if (!GZIP.equals(encoding) || !isCompressible(file.getName())) {
+            return Optional.empty();
+        }
+        var variant = getVariantPath(Path.of(file.getPath()));
+        return Files.exists(variant) ? Optional.of(variant) : Optional.empty();
+    }
+
+    /**
+     * Для форматов, которые не сжимаются, файловая система не проверяется вовсе.
+     *
+     * @param file
+     * @return
+     */
+    @Override
+    public boolean hasVariants(File file) {
+        return findVariant(file, GZIP).isPresent();
+    }
+
+    @Override
+    public void deleteVariants(File file) {
+        try {
+            Files.deleteIfExists(getVariantPath(Path.of(file.getPath())));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public List<Path> getVariantPaths(File file) {
+        return List.of(getVariantPath(Path.of(file.getPath())));
+    }
+
+    @Override
+    public Optional<Path> getOriginalPath(Path variant) {
+        var name = variant.getFileName().toString();
+        return name.endsWith(GZIP_EXTENSION) && name.length() > GZIP_EXTENSION.length()
+                ? Optional.of(variant.resolveSibling(name.substring(0, name.length() - GZIP_EXTENSION.length())))
+                : Optional.empty();
+    }
+
+    /**
+     * Вариант сжимается один раз, а отдается много раз,
+     * поэтому используется максимальная степень сжатия.
+     */
+    private static class BestGzipOutputStream extends GZIPOutputStream {
+
+        BestGzipOutputStream(OutputStream out) throws IOException {
+            super(out, 64 * 1024);
+            def.setLevel(Deflater.BEST_COMPRESSION);
+        }
+    }
+}
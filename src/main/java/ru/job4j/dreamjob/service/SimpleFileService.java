@@ -1,36 +1,80 @@
 package ru.job4j.dreamjob.service;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.stereotype.Service;
+import ru.job4j.dreamjob.cache.ByteBufferResource;
+import ru.job4j.dreamjob.cache.OffHeapFileCache;
 import ru.job4j.dreamjob.dto.FileDto;
+import ru.job4j.dreamjob.dto.FileResourceDto;
+import ru.job4j.dreamjob.dto.FileStreamDto;
 import ru.job4j.dreamjob.model.File;
+import ru.job4j.dreamjob.model.FileDeletion;
 import ru.job4j.dreamjob.repository.FileRepository;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 @Service
 public class SimpleFileService implements FileService {
 
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[64 * 1024]);
+
     private final FileRepository fileRepository;
 
+    private final ThumbnailService thumbnailService;
+
+    private final CompressionService compressionService;
+
+    private final OffHeapFileCache fileCache;
+
+    private final PackFileStore packStore;
+
     private final String storageDirectory;
 
+    private final Object[] locks = new Object[64];
+
     /**
      * Value("${file.directory}") String storageDirectory.
      * Эта строка позволяет подставить на место storageDirectory
      * значение из файла application.properties с ключом file.directory;
      *
      * @param fileRepository
+     * @param thumbnailService
+     * @param compressionService
+     * @param fileCache
+     * @param packStore
      * @param storageDirectory
      */
-    public SimpleFileService(FileRepository sql2oFileRepository,
-                             @Value("${file.directory}") String storageDirectory) {
+    public SimpleFileService(FileRepository sql2oFileRepository, ThumbnailService thumbnailService,
+                             CompressionService compressionService, OffHeapFileCache fileCache,
+                             PackFileStore packStore, @Value("${file.directory}") String storageDirectory) {
         this.fileRepository = sql2oFileRepository;
+        this.thumbnailService = thumbnailService;
+        this.compressionService = compressionService;
+        this.fileCache = fileCache;
+        this.packStore = packStore;
         this.storageDirectory = storageDirectory;
+        Arrays.setAll(locks, i -> new Object());
         createStorageDirectory(storageDirectory);
     }
 
@@ -42,32 +86,249 @@ public class SimpleFileService implements FileService {
         }
     }
 
+    /**
+     * Файлы хранятся по хешу содержимого: путь к файлу и есть его SHA-256.
+     * Если такие байты уже загружались, то на диск ничего не пишется,
+     * у существующей записи только увеличивается счетчик ссылок.
+     * Поэтому повторная загрузка той же фотографии при редактировании
+     * вакансии или кандидата не копирует файл заново.
+     * <br>Хеш считается один раз при сохранении,
+     * чтобы при каждом запросе файла не перечитывать его с диска.
+     *
+     * @param fileDto
+     * @return
+     */
     @Override
     public File save(FileDto fileDto) {
-        var path = getNewFilePath(fileDto.getName());
-        writeFileBytes(path, fileDto.getContent());
-        return fileRepository.save(new File(fileDto.getName(), path));
+        var content = fileDto.getContent();
+        return save(new FileStreamDto(fileDto.getName(), content.length,
+                () -> new ByteArrayInputStream(content)));
+    }
+
+    /**
+     * Содержимое копируется во временный файл в каталоге хранилища
+     * буфером фиксированного размера, хеш и размер считаются по ходу копирования.
+     * Затем временный файл переименовывается в путь с хешем
+     * или удаляется, если такие байты уже есть.
+     * Маленькое изображение вместо этого дописывается в сегмент PackFileStore.
+     *
+     * @param fileStreamDto
+     * @return
+     */
+    @Override
+    public File save(FileStreamDto fileStreamDto) {
+        if (packStore.accepts(fileStreamDto.getName(), fileStreamDto.getSize())) {
+            return savePacked(fileStreamDto);
+        }
+        return store(fileStreamDto.getName(), writeTempFile(fileStreamDto));
     }
 
     /**
-     * storageDirectory + java.io.File.separator +
-     * UUID.randomUUID() + sourceName.
-     * Так создается уникальный путь для ногового файла.
-     * UUID это просто рандомная строка определенного формата;
+     * Файл уже лежит в каталоге хранилища, например собран из частей загрузки,
+     * поэтому он не копируется, а переносится переименованием. Хеш считается одним чтением файла.
+     * После вызова исходного файла на месте нет, даже если сохранить его не удалось.
      *
-     * @param sourceName
+     * @param name
+     * @param source
      * @return
      */
-    private String getNewFilePath(String sourceName) {
-        return storageDirectory + java.io.File.separator + UUID.randomUUID() + sourceName;
+    @Override
+    public File save(String name, Path source) {
+        try {
+            var size = Files.size(source);
+            if (packStore.accepts(name, size)) {
+                try {
+                    return savePacked(new FileStreamDto(name, size, new FileSystemResource(source)));
+                } finally {
+                    deleteFile(source.toString());
+                }
+            }
+        } catch (IOException e) {
+            deleteFile(source.toString());
+            throw new RuntimeException(e);
+        }
+        return store(name, new Upload(source, hash(source)));
     }
 
-    private void writeFileBytes(String path, byte[] content) {
+    private File store(String name, Upload upload) {
         try {
-            Files.write(Path.of(path), content);
+            synchronized (getLock(upload.contentHash)) {
+                var existing = addReference(upload.contentHash);
+                if (existing.isPresent()) {
+                    return existing.get();
+                }
+                var path = getContentFilePath(upload.contentHash);
+                moveToStorage(upload.path, path);
+                var file = fileRepository.save(new File(name, path, upload.contentHash));
+                thumbnailService.generate(file);
+                compressionService.compress(file);
+                return file;
+            }
+        } finally {
+            deleteFile(upload.path.toString());
+        }
+    }
+
+    private String hash(Path source) {
+        var digest = getDigest();
+        var buffer = BUFFER.get();
+        try (var in = Files.newInputStream(source)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            deleteFile(source.toString());
+            throw new RuntimeException(e);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Маленькое изображение читается в массив: он не больше file.pack.max-file-bytes,
+     * а временный файл стоил бы дороже самой дозаписи в сегмент.
+     *
+     * @param fileStreamDto
+     * @return
+     */
+    private File savePacked(FileStreamDto fileStreamDto) {
+        byte[] content;
+        try (var in = fileStreamDto.getContent().getInputStream()) {
+            content = in.readNBytes(Math.toIntExact(fileStreamDto.getSize()));
+            if (content.length != fileStreamDto.getSize() || in.read() != -1) {
+                throw new IllegalStateException(String.format("Файл %s загружен не полностью: заявлено %d байт",
+                        fileStreamDto.getName(), fileStreamDto.getSize()));
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        var contentHash = HexFormat.of().formatHex(getDigest().digest(content));
+        synchronized (getLock(contentHash)) {
+            var existing = addReference(contentHash);
+            if (existing.isPresent()) {
+                return existing.get();
+            }
+            return fileRepository.save(packStore.append(fileStreamDto.getName(), ByteBuffer.wrap(content), contentHash));
+        }
+    }
+
+    /**
+     * Если такие байты уже сохранены, то на них добавляется ссылка.
+     *
+     * @param contentHash
+     * @return
+     */
+    private Optional<File> addReference(String contentHash) {
+        var existing = fileRepository.findByContentHash(contentHash);
+        if (existing.isPresent() && fileRepository.incrementRefCount(existing.get().getId())) {
+            var file = existing.get();
+            file.setRefCount(file.getRefCount() + 1);
+            return Optional.of(file);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Буфер берется из ThreadLocal и переиспользуется между загрузками,
+     * поэтому на один файл не выделяется ничего размером с файл.
+     * Если прочитано не столько байт, сколько заявил клиент,
+     * то загрузка оборвалась и файл не сохраняется.
+     *
+     * @param fileStreamDto
+     * @return
+     */
+    private Upload writeTempFile(FileStreamDto fileStreamDto) {
+        var temp = Path.of(storageDirectory, "upload-" + UUID.randomUUID() + ".tmp");
+        var digest = getDigest();
+        var buffer = BUFFER.get();
+        long size = 0;
+        try (var in = fileStreamDto.getContent().getInputStream();
+             var out = Files.newOutputStream(temp, StandardOpenOption.CREATE_NEW)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+                size += read;
+            }
+        } catch (IOException e) {
+            deleteFile(temp.toString());
+            throw new RuntimeException(e);
+        }
+        if (fileStreamDto.getSize() >= 0 && size != fileStreamDto.getSize()) {
+            deleteFile(temp.toString());
+            throw new IllegalStateException(String.format("Файл %s загружен не полностью: %d из %d байт",
+                    fileStreamDto.getName(), size, fileStreamDto.getSize()));
+        }
+        return new Upload(temp, HexFormat.of().formatHex(digest.digest()));
+    }
+
+    /**
+     * Сохранение и удаление одного и того же содержимого не должны идти параллельно,
+     * иначе файл может быть удален с диска сразу после того, как на него сослалась новая запись.
+     * Блокировка берется по хешу, поэтому загрузки разных файлов друг друга не ждут.
+     *
+     * @param contentHash
+     * @return
+     */
+    private Object getLock(String contentHash) {
+        return locks[getStripe(contentHash)];
+    }
+
+    private int getStripe(String contentHash) {
+        return Math.floorMod(Objects.hashCode(contentHash), locks.length);
+    }
+
+    private MessageDigest getDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private String getContentFilePath(String contentHash) {
+        return FileStorageLayout.resolve(storageDirectory, contentHash).toString();
+    }
+
+    /**
+     * Файл переименовывается целиком, поэтому по пути с хешем
+     * никогда не лежит недописанное содержимое.
+     * Если файл с таким хешем уже есть на диске, то в нем те же байты и переносить его не нужно.
+     *
+     * @param temp
+     * @param path
+     */
+    private void moveToStorage(Path temp, String path) {
+        var target = Path.of(path);
+        if (Files.exists(target)) {
+            return;
+        }
+        try {
+            Files.createDirectories(target.getParent());
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Временный файл с уже посчитанным хешем содержимого.
+     */
+    private static class Upload {
+
+        private final Path path;
+
+        private final String contentHash;
+
+        Upload(Path path, String contentHash) {
+            this.path = path;
+            this.contentHash = contentHash;
+        }
+    }
+
+    @Override
+    public Optional<File> findById(int id) {
+        return fileRepository.findById(id);
     }
 
     @Override
@@ -76,11 +337,18 @@ public class SimpleFileService implements FileService {
         if (fileOptional.isEmpty()) {
             return Optional.empty();
         }
-        var content = readFileAsBytes(fileOptional.get().getPath());
+        var content = readFileAsBytes(fileOptional.get());
         return Optional.of(new FileDto(fileOptional.get().getName(), content));
     }
 
-    private byte[] readFileAsBytes(String path) {
+    private byte[] readFileAsBytes(File file) {
+        if (file.isPacked()) {
+            var buffer = packStore.read(file);
+            var content = new byte[buffer.remaining()];
+            buffer.get(content);
+            return content;
+        }
+        var path = file.getPath();
         try {
             return Files.readAllBytes(Path.of(path));
         } catch (IOException e) {
@@ -88,14 +356,295 @@ public class SimpleFileService implements FileService {
         }
     }
 
+    /**
+     * В отличие от getFileById содержимое файла здесь не читается.
+     * Возвращается только FileSystemResource, который откроет файл
+     * в момент записи ответа и передаст его клиенту потоком,
+     * поэтому на каждый запрос не выделяется массив размером с файл.
+     * <br>Тип содержимого определяется по расширению исходного имени файла.
+     *
+     * @param id
+     * @return
+     */
+    @Override
+    public Optional<FileResourceDto> getFileResourceById(int id) {
+        return fileRepository.findById(id).map(this::toFileResource);
+    }
+
+    @Override
+    public Optional<FileResourceDto> getFileResourceByHash(String contentHash) {
+        return fileRepository.findByContentHash(contentHash).map(this::toFileResource);
+    }
+
+    /**
+     * Если уменьшенная копия нужной ширины еще не готова или файл не изображение,
+     * то отдается оригинал: картинка на странице будет тяжелее, но не пропадет.
+     *
+     * @param id
+     * @param width
+     * @return
+     */
+    @Override
+    public Optional<FileResourceDto> getFileResourceById(int id, int width) {
+        return fileRepository.findById(id).map(file -> toFileResource(file, width));
+    }
+
+    @Override
+    public Optional<FileResourceDto> getFileResourceByHash(String contentHash, int width) {
+        return fileRepository.findByContentHash(contentHash).map(file -> toFileResource(file, width));
+    }
+
+    /**
+     * Кодировки перебираются в порядке предпочтения клиента, "*" означает любую.
+     * Если подходящего сжатого варианта нет, то отдается сам файл.
+     *
+     * @param id
+     * @param encodings
+     * @return
+     */
+    @Override
+    public Optional<FileResourceDto> getFileResourceById(int id, List<String> encodings) {
+        return fileRepository.findById(id).map(file -> toFileResource(file, encodings));
+    }
+
+    @Override
+    public Optional<FileResourceDto> getFileResourceByHash(String contentHash, List<String> encodings) {
+        return fileRepository.findByContentHash(contentHash).map(file -> toFileResource(file, encodings));
+    }
+
+    /**
+     * У сжатого варианта свой ETag: хеш оригинала с суффиксом кодировки,
+     * ведь байты в ответе другие. Имя и тип содержимого остаются от оригинала.
+     *
+     * @param file
+     * @param encodings
+     * @return
+     */
+    private FileResourceDto toFileResource(File file, List<String> encodings) {
+        for (var accepted : encodings) {
+            for (var encoding : compressionService.getEncodings()) {
+                if (!accepted.equals(encoding) && !"*".equals(accepted)) {
+                    continue;
+                }
+                var variant = compressionService.findVariant(file, encoding);
+                if (variant.isPresent()) {
+                    var eTag = file.getContentHash() == null ? null : file.getContentHash() + "-" + encoding;
+                    return toFileResource(file.getName(), variant.get(), eTag, false, encoding, true);
+                }
+            }
+        }
+        return toFileResource(file);
+    }
+
+    /**
+     * У копии свой ETag: хеш оригинала с суффиксом запрошенной ширины.
+     * Тип содержимого берется по расширению копии, оно может отличаться от оригинала.
+     *
+     * @param file
+     * @param width
+     * @return
+     */
+    private FileResourceDto toFileResource(File file, int width) {
+        if (file.isPacked()) {
+            return toPackedResource(file, true);
+        }
+        var thumbnailOptional = thumbnailService.findThumbnail(file, width);
+        if (thumbnailOptional.isEmpty()) {
+            return toFileResource(file);
+        }
+        var thumbnail = thumbnailOptional.get();
+        return toFileResource(thumbnail.getFileName().toString(), thumbnail,
+                file.getContentHash() + "-w" + width, true, null, false);
+    }
+
+    private FileResourceDto toFileResource(File file) {
+        if (file.isPacked()) {
+            return toPackedResource(file, false);
+        }
+        return toFileResource(file.getName(), Path.of(file.getPath()), file.getContentHash(), false,
+                null, compressionService.hasVariants(file));
+    }
+
+    /**
+     * Популярный файл отдается из OffHeapFileCache: без обращения к диску и без копии в куче.
+     * Остальные файлы отдаются как FileSystemResource, и Tomcat может передать их через sendfile.
+     *
+     * @param name
+     * @param path
+     * @param contentHash
+     * @param thumbnail
+     * @param contentEncoding
+     * @param variants
+     * @return
+     */
+    private FileResourceDto toFileResource(String name, Path path, String contentHash, boolean thumbnail,
+                                           String contentEncoding, boolean variants) {
+        var key = path.toString();
+        var cached = fileCache.get(key);
+        if (cached.isEmpty()) {
+            var attributes = readAttributes(path);
+            var size = attributes.size();
+            var lastModified = attributes.lastModifiedTime().toMillis();
+            cached = fileCache.admit(key, size, lastModified);
+            if (cached.isEmpty()) {
+                return new FileResourceDto(name, getMediaType(name), size, lastModified, contentHash,
+                        new FileSystemResource(path), thumbnail, contentEncoding, variants);
+            }
+        }
+        var file = cached.get();
+        return new FileResourceDto(name, getMediaType(name), file.getSize(), file.getLastModified(), contentHash,
+                file.toResource(key), thumbnail, contentEncoding, variants);
+    }
+
+    /**
+     * Файл из сегмента отдается окном отображенного в память сегмента, без OffHeapFileCache:
+     * его байты и так лежат в страничном кеше ОС.
+     * <br>Уменьшенных копий у таких файлов не бывает, поэтому на запрос копии любой ширины
+     * окончательный ответ - сам файл, и его тоже можно кешировать навсегда.
+     *
+     * @param file
+     * @param finalForWidth
+     * @return
+     */
+    private FileResourceDto toPackedResource(File file, boolean finalForWidth) {
+        var lastModified = file.getCreationDate().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return new FileResourceDto(file.getName(), getMediaType(file.getName()), file.getPackLength(), lastModified,
+                file.getContentHash(), new ByteBufferResource(packStore.read(file), file.getPath()), finalForWidth);
+    }
+
+    private MediaType getMediaType(String name) {
+        return MediaTypeFactory.getMediaType(name).orElse(MediaType.APPLICATION_OCTET_STREAM);
+    }
+
+    private BasicFileAttributes readAttributes(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Снимает одну ссылку на файл. Запись и файл на диске удаляются,
+     * только когда на содержимое больше никто не ссылается.
+     *
+     * @param id
+     * @return
+     */
     @Override
     public boolean deleteById(int id) {
         var fileOptional = fileRepository.findById(id);
         if (fileOptional.isEmpty()) {
             return false;
         }
-        deleteFile(fileOptional.get().getPath());
-        return fileRepository.deleteById(id);
+        var file = fileOptional.get();
+        synchronized (getLock(file.getContentHash())) {
+            if (fileRepository.decrementRefCount(id)) {
+                return true;
+            }
+            var isDeleted = fileRepository.deleteById(id);
+            if (isDeleted) {
+                fileCache.evict(file.getPath());
+                deleteFile(file.getPath());
+                thumbnailService.deleteThumbnails(file);
+                compressionService.deleteVariants(file);
+            }
+            return isDeleted;
+        }
+    }
+
+    /**
+     * Ставит снятие ссылки в очередь file_deletions и сразу возвращается:
+     * поток запроса не ждет ни удаления записи, ни файловой системы.
+     * <br>id 0 - у записи нет файла, например она пришла из импорта, снимать нечего.
+     *
+     * @param id
+     */
+    @Override
+    public void scheduleDeleteById(int id) {
+        if (id == 0) {
+            return;
+        }
+        fileRepository.addDeletion(id);
+    }
+
+    /**
+     * Разбирает порцию очереди file_deletions. Ссылки снимаются одной транзакцией в FileRepository,
+     * затем файлы удаленных записей удаляются с диска.
+     * <br>На все это время берутся блокировки хешей порции, в порядке возрастания номера,
+     * чтобы загрузка тех же байт не сослалась на запись или файл в момент их удаления.
+     *
+     * @param limit
+     * @return сколько записей очереди разобрано
+     */
+    @Override
+    public int deleteScheduled(int limit) {
+        var deletions = fileRepository.findDeletions(limit);
+        if (deletions.isEmpty()) {
+            return 0;
+        }
+        var fileIds = deletions.stream().map(FileDeletion::getFileId).collect(Collectors.toSet());
+        var stripes = fileRepository.findByIds(fileIds).stream()
+                .mapToInt(file -> getStripe(file.getContentHash()))
+                .distinct()
+                .sorted()
+                .toArray();
+        withLocks(stripes, 0, () -> {
+            for (var file : fileRepository.deleteReleased(deletions)) {
+                fileCache.evict(file.getPath());
+                deleteFile(file.getPath());
+                thumbnailService.deleteThumbnails(file);
+                compressionService.deleteVariants(file);
+            }
+        });
+        return deletions.size();
+    }
+
+    private void withLocks(int[] stripes, int from, Runnable action) {
+        if (from == stripes.length) {
+            action.run();
+            return;
+        }
+        synchronized (locks[stripes[from]]) {
+            withLocks(stripes, from + 1, action);
+        }
+    }
+
+    /**
+     * Удаляет с диска файл, на который нет записи в files, вместе с его уменьшенными копиями и сжатыми вариантами.
+     * Имя файла - хеш содержимого, поэтому проверка идет под той же блокировкой,
+     * что и сохранение таких же байт: загрузка не сошлется на файл в момент его удаления.
+     * <br>Старые загрузки названы по имени пользователя, и файл вида photo-w320.jpg или resume.json.gz
+     * может быть самостоятельной записью в files, а не копией. Путь с записью не удаляется никогда.
+     *
+     * @param path
+     * @return
+     */
+    @Override
+    public boolean deleteOrphan(String path) {
+        var fileName = Path.of(path).getFileName().toString();
+        synchronized (getLock(fileName)) {
+            var file = new File(fileName, path);
+            var paths = new ArrayList<String>();
+            paths.add(path);
+            for (var variant : thumbnailService.getThumbnailPaths(file)) {
+                paths.add(variant.toString());
+            }
+            for (var variant : compressionService.getVariantPaths(file)) {
+                paths.add(variant.toString());
+            }
+            var existing = fileRepository.findExistingPaths(paths);
+            if (existing.contains(path)) {
+                return false;
+            }
+            fileCache.evict(path);
+            for (var orphan : paths) {
+                if (!existing.contains(orphan)) {
+                    deleteFile(orphan);
+                }
+            }
+            return true;
+        }
     }
 
     private void deleteFile(String path) {
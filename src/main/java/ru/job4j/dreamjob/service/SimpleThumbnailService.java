@@ -0,0 +1,245 @@
+package ru.job4j.dreamjob.service;
+
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import ru.job4j.dreamjob.model.File;
+
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Уменьшенные копии изображений строятся в фоне средствами ImageIO
+ * и лежат рядом с оригиналом: путь оригинала + "-w" + ширина + расширение.
+ * Поэтому отдельная таблица не нужна, а готовность копии проверяется наличием файла.
+ * <br>Пул потоков и очередь ограничены. Если очередь заполнена, задача отбрасывается:
+ * вместо уменьшенной копии клиент просто получит оригинал.
+ */
+@Service
+@ThreadSafe
+public class SimpleThumbnailService implements ThumbnailService {
+
+    /**
+     * Ширины уменьшенных копий в пикселях, по возрастанию.
+     */
+    public static final int[] WIDTHS = {320, 640, 1280};
+
+    private static final Logger LOG = LoggerFactory.getLogger(SimpleThumbnailService.class);
+
+    private static final Pattern THUMBNAIL_NAME = Pattern.compile("(.+)-w\\d+\\.(jpg|png)");
+
+    private static final int THREADS = 2;
+
+    private static final int QUEUE_CAPACITY = 100;
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            THREADS, THREADS, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+            new ThumbnailThreadFactory(), new ThreadPoolExecutor.DiscardPolicy());
+
+    @Override
+    public void generate(File file) {
+        if (file.getContentHash() == null) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                createThumbnails(Path.of(file.getPath()));
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("Не удалось построить уменьшенные копии файла {}", file.getPath(), e);
+            }
+        });
+    }
+
+    /**
+     * Большое изображение сразу читается с прореживанием пикселей (subsampling),
+     * чтобы не раскладывать в памяти, например, 6000x4000 пикселей ради копии шириной 1280.
+     * Прореживание выбирается так, чтобы ширина прочитанного изображения
+     * была не меньше самой большой копии.
+     *
+     * @param path
+     * @throws IOException
+     */
+    private void createThumbnails(Path path) throws IOException {
+        BufferedImage image;
+        try (var input = ImageIO.createImageInputStream(path.toFile())) {
+            var readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                var subsampling = Math.max(1, reader.getWidth(0) / WIDTHS[WIDTHS.length - 1]);
+                var param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                image = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+        var format = image.getColorModel().hasAlpha() ? "png" : "jpg";
+        for (var width : WIDTHS) {
+            writeImage(scale(image, width), format, getThumbnailPath(path, width, format));
+        }
+    }
+
+    /**
+     * Изображение уменьшается в несколько шагов не более чем вдвое за раз,
+     * иначе билинейная интерполяция теряет детали и копия получается зернистой.
+     * Изображения уже не шире нужной копии не увеличиваются.
+     *
+     * @param image
+     * @param width
+     * @return
+     */
+    private BufferedImage scale(BufferedImage image, int width) {
+        var type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        var targetWidth = Math.min(width, image.getWidth());
+        var result = image;
+        do {
+            var stepWidth = Math.max(targetWidth, result.getWidth() / 2);
+            var stepHeight = Math.max(1, (int) ((long) image.getHeight() * stepWidth / image.getWidth()));
+            var step = new BufferedImage(stepWidth, stepHeight, type);
+            var graphics = step.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.drawImage(result, 0, 0, stepWidth, stepHeight, null);
+            } finally {
+                graphics.dispose();
+            }
+            result = step;
+        } while (result.getWidth() > targetWidth);
+        return result;
+    }
+
+    /**
+     * Копия пишется во временный файл и затем переименовывается,
+     * поэтому контроллер никогда не отдаст недописанное изображение.
+     *
+     * @param image
+     * @param format
+     * @param target
+     * @throws IOException
+     */
+    private void writeImage(BufferedImage image, String format, Path target) throws IOException {
+        var temp = target.resolveSibling("thumbnail-" + UUID.randomUUID() + ".tmp");
+        try {
+            ImageIO.write(image, format, temp.toFile());
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path getThumbnailPath(Path path, int width, String format) {
+        return path.resolveSibling(path.getFileName() + "-w" + width + "." + format);
+    }
+
+    /**
+     * Возвращает самую маленькую готовую копию не уже запрошенной ширины.
+     * Если запрошено больше самой большой копии или копия еще не построена,
+     * то результат пустой и отдавать нужно оригинал.
+     *
+     * @param file
+     * @param width
+     * @return
+     */
+    @Override
+    public Optional<Path> findThumbnail(File file, int width) {
+        var path = Path.of(file.getPath());
+        for (var candidate : WIDTHS) {
+            if (candidate < width) {
+                continue;
+            }
+            for (var format : new String[] {"jpg", "png"}) {
+                var thumbnail = getThumbnailPath(path, candidate, format);
+                if (Files.exists(thumbnail)) {
+                    return Optional.of(thumbnail);
+                }
+            }
+            return Optional.empty();
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public void deleteThumbnails(File file) {
+        try {
+            for (var thumbnail : getThumbnailPaths(file)) {
+                Files.deleteIfExists(thumbnail);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Все пути, по которым могут лежать уменьшенные копии файла, есть они на диске или нет.
+     *
+     * @param file
+     * @return
+     */
+    @Override
+    public List<Path> getThumbnailPaths(File file) {
+        var path = Path.of(file.getPath());
+        var thumbnails = new ArrayList<Path>();
+        for (var width : WIDTHS) {
+            thumbnails.add(getThumbnailPath(path, width, "jpg"));
+            thumbnails.add(getThumbnailPath(path, width, "png"));
+        }
+        return thumbnails;
+    }
+
+    /**
+     * Если имя файла построено как имя уменьшенной копии, то возвращает путь оригинала.
+     *
+     * @param thumbnail
+     * @return
+     */
+    @Override
+    public Optional<Path> getOriginalPath(Path thumbnail) {
+        var matcher = THUMBNAIL_NAME.matcher(thumbnail.getFileName().toString());
+        return matcher.matches() ? Optional.of(thumbnail.resolveSibling(matcher.group(1))) : Optional.empty();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Потоки-демоны с понятными именами, чтобы они не мешали остановке приложения
+     * и были видны в дампе потоков.
+     */
+    private static class ThumbnailThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger number = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            var thread = new Thread(runnable, "thumbnail-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
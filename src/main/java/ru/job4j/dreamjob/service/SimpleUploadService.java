@@ -0,0 +1,331 @@
+package ru.job4j.dreamjob.service;
+
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.job4j.dreamjob.dto.UploadChunkDto;
+import ru.job4j.dreamjob.dto.UploadStatusDto;
+import ru.job4j.dreamjob.model.File;
+import ru.job4j.dreamjob.model.UploadSession;
+import ru.job4j.dreamjob.repository.UploadSessionRepository;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Collectors;
+
+/**
+ * Собирает большой файл из частей в file.directory/uploads/{id}.part.
+ * <br>Файл создается сразу полного размера, и каждая часть пишется прямо на свое смещение
+ * буфером фиксированного размера, поэтому ни часть, ни файл целиком в памяти не держатся,
+ * а части можно присылать в любом порядке и параллельно.
+ * Номер части записывается в upload_chunks только после того, как ее байты сброшены на диск.
+ * <br>Завершение загрузки переносит собранный файл в хранилище через FileService без копирования.
+ * Сессии старше upload.chunked.expiration-minutes удаляются вместе с недособранным файлом.
+ */
+@Service
+@ThreadSafe
+public class SimpleUploadService implements UploadService {
+
+    public static final String DIRECTORY = "uploads";
+
+    private static final Logger LOG = LoggerFactory.getLogger(SimpleUploadService.class);
+
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[64 * 1024]);
+
+    private static final int EXPIRED_BATCH_SIZE = 100;
+
+    private final UploadSessionRepository uploadSessionRepository;
+
+    private final FileService fileService;
+
+    private final Path directory;
+
+    private final int chunkSize;
+
+    private final long maxBytes;
+
+    private final Duration expiration;
+
+    /**
+     * Части одной сессии пишутся параллельно под блокировкой чтения,
+     * а завершение и удаление сессии берут блокировку записи и ждут, пока части допишутся.
+     */
+    private final StampedLock[] locks = new StampedLock[64];
+
+    public SimpleUploadService(UploadSessionRepository sql2oUploadSessionRepository, FileService fileService,
+                               @Value("${file.directory}") String storageDirectory,
+                               @Value("${upload.chunked.chunk-bytes}") int chunkSize,
+                               @Value("${upload.chunked.max-bytes}") long maxBytes,
+                               @Value("${upload.chunked.expiration-minutes}") long expirationMinutes) {
+        this.uploadSessionRepository = sql2oUploadSessionRepository;
+        this.fileService = fileService;
+        this.directory = Path.of(storageDirectory, DIRECTORY);
+        this.chunkSize = chunkSize;
+        this.maxBytes = maxBytes;
+        this.expiration = Duration.ofMinutes(expirationMinutes);
+        Arrays.setAll(locks, i -> new StampedLock());
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Файл полного размера создается до ответа клиенту: если места на диске нет,
+     * загрузка не начнется, а не оборвется на последней части.
+     *
+     * @param name
+     * @param size
+     * @return
+     */
+    @Override
+    public UploadStatusDto create(String name, long size) {
+        if (size <= 0 || size > maxBytes) {
+            throw new IllegalArgumentException(String.format("Размер файла должен быть от 1 до %d байт", maxBytes));
+        }
+        var session = new UploadSession(UUID.randomUUID().toString(), name, size, chunkSize);
+        try (var file = new RandomAccessFile(getPartPath(session).toFile(), "rw")) {
+            file.setLength(size);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        uploadSessionRepository.save(session);
+        return toStatus(session);
+    }
+
+    @Override
+    public Optional<UploadStatusDto> findById(String id) {
+        return uploadSessionRepository.findById(id).map(this::toStatus);
+    }
+
+    private UploadStatusDto toStatus(UploadSession session) {
+        var offsets = uploadSessionRepository.findChunks(session.getId()).stream()
+                .sorted()
+                .map(session::getChunkOffset)
+                .collect(Collectors.toList());
+        return new UploadStatusDto(session.getId(), session.getName(), session.getSize(),
+                session.getChunkSize(), offsets);
+    }
+
+    /**
+     * Блокирующая запись части: байты читаются из потока и пишутся буфером фиксированного размера.
+     * Повторно присланная часть просто перезаписывает те же байты.
+     *
+     * @param id
+     * @param number
+     * @param length
+     * @param content
+     * @return false, если сессии нет
+     */
+    @Override
+    public boolean writeChunk(String id, int number, long length, InputStreamSource content) {
+        var chunkOptional = beginChunk(id, number, length);
+        if (chunkOptional.isEmpty()) {
+            return false;
+        }
+        var chunk = chunkOptional.get();
+        var received = false;
+        try {
+            writeAt(chunk, content);
+            received = true;
+        } finally {
+            endChunk(chunk, received);
+        }
+        return true;
+    }
+
+    /**
+     * Длина части должна совпасть с ожидаемой: chunkSize, а у последней части остаток файла.
+     * Если клиент не указал длину (length меньше нуля), то число байт сверяет тот, кто пишет часть.
+     * До endChunk сессию нельзя завершить или удалить.
+     *
+     * @param id
+     * @param number
+     * @param length
+     * @return открытая часть или пустой Optional, если сессии нет
+     */
+    @Override
+    public Optional<UploadChunkDto> beginChunk(String id, int number, long length) {
+        var lock = getLock(id);
+        var stamp = lock.readLock();
+        try {
+            var sessionOptional = uploadSessionRepository.findById(id);
+            if (sessionOptional.isEmpty()) {
+                lock.unlockRead(stamp);
+                return Optional.empty();
+            }
+            var session = sessionOptional.get();
+            if (number < 0 || number >= session.getChunkCount()) {
+                throw new IllegalArgumentException(String.format("Номер части должен быть от 0 до %d",
+                        session.getChunkCount() - 1));
+            }
+            var expected = session.getChunkLength(number);
+            if (length >= 0 && length != expected) {
+                throw new IllegalArgumentException(String.format("Часть %d должна быть длиной %d байт",
+                        number, expected));
+            }
+            return Optional.of(new UploadChunkDto(id, number, getPartPath(session),
+                    session.getChunkOffset(number), expected, stamp));
+        } catch (RuntimeException e) {
+            lock.unlockRead(stamp);
+            throw e;
+        }
+    }
+
+    /**
+     * Номер части записывается, только если ее байты уже сброшены на диск.
+     *
+     * @param chunk
+     * @param received
+     */
+    @Override
+    public void endChunk(UploadChunkDto chunk, boolean received) {
+        try {
+            if (received) {
+                uploadSessionRepository.addChunk(chunk.getSessionId(), chunk.getNumber());
+            }
+        } finally {
+            getLock(chunk.getSessionId()).unlockRead(chunk.getStamp());
+        }
+    }
+
+    private void writeAt(UploadChunkDto chunk, InputStreamSource content) {
+        var buffer = BUFFER.get();
+        var offset = chunk.getOffset();
+        var expected = chunk.getLength();
+        long written = 0;
+        try (var in = content.getInputStream();
+             var channel = FileChannel.open(chunk.getPath(), StandardOpenOption.WRITE)) {
+            int read = in.readNBytes(buffer, 0, (int) Math.min(buffer.length, expected));
+            while (read > 0) {
+                var bytes = ByteBuffer.wrap(buffer, 0, read);
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes, offset + written + bytes.position());
+                }
+                written += read;
+                read = in.readNBytes(buffer, 0, (int) Math.min(buffer.length, expected - written));
+            }
+            if (written != expected || in.read() != -1) {
+                throw new IllegalArgumentException(String.format("Часть загружена не полностью или длиннее %d байт",
+                        expected));
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Если получены не все части, то бросается IllegalStateException и сессия остается.
+     * <br>Под блокировкой записи сессия только проверяется и удаляется из базы: после этого
+     * новые части и повторное завершение ее уже не найдут. Файл сохраняется после снятия блокировки:
+     * хеш считается чтением всего файла, и все это время части других сессий той же полосы
+     * и очистка по расписанию ждали бы блокировку чтения.
+     * <br>FileService.save не оставляет исходный файл при ошибке, поэтому повторить завершение нельзя:
+     * сессия и ее файл удаляются, а загрузку нужно начать заново.
+     *
+     * @param id
+     * @return сохраненный файл или пустой Optional, если сессии нет
+     */
+    @Override
+    public Optional<File> commit(String id) {
+        var lock = getLock(id);
+        var stamp = lock.writeLock();
+        UploadSession session;
+        try {
+            var sessionOptional = uploadSessionRepository.findById(id);
+            if (sessionOptional.isEmpty()) {
+                return Optional.empty();
+            }
+            session = sessionOptional.get();
+            var received = uploadSessionRepository.findChunks(id).size();
+            if (received < session.getChunkCount()) {
+                throw new IllegalStateException(String.format("Получено %d частей из %d",
+                        received, session.getChunkCount()));
+            }
+            if (!uploadSessionRepository.deleteById(id)) {
+                return Optional.empty();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        var partPath = getPartPath(session);
+        try {
+            return Optional.of(fileService.save(session.getName(), partPath));
+        } catch (RuntimeException e) {
+            LOG.warn("Не удалось сохранить файл загрузки {}, загрузка удалена", id, e);
+            try {
+                Files.deleteIfExists(partPath);
+            } catch (IOException deleteException) {
+                e.addSuppressed(deleteException);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Вызывается планировщиком раз в upload.chunked.cleanup-delay.
+     *
+     * @return сколько сессий удалено
+     */
+    @Override
+    @Scheduled(fixedDelayString = "${upload.chunked.cleanup-delay}")
+    public int deleteExpired() {
+        var createdBefore = LocalDateTime.now().minus(expiration);
+        var total = 0;
+        var sessions = uploadSessionRepository.findCreatedBefore(createdBefore, EXPIRED_BATCH_SIZE);
+        while (!sessions.isEmpty()) {
+            for (var session : sessions) {
+                delete(session);
+                total++;
+            }
+            sessions = uploadSessionRepository.findCreatedBefore(createdBefore, EXPIRED_BATCH_SIZE);
+        }
+        return total;
+    }
+
+    private void delete(UploadSession session) {
+        var lock = getLock(session.getId());
+        var stamp = lock.writeLock();
+        try {
+            uploadSessionRepository.deleteById(session.getId());
+            Files.deleteIfExists(getPartPath(session));
+            LOG.info("Удалена незавершенная загрузка {} файла {}", session.getId(), session.getName());
+        } catch (IOException e) {
+            LOG.warn("Не удалось удалить файл незавершенной загрузки {}", session.getId(), e);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private StampedLock getLock(String id) {
+        return locks[Math.floorMod(Objects.hashCode(id), locks.length)];
+    }
+
+    /**
+     * Путь строится по id сессии из базы, а не по строке из запроса.
+     *
+     * @param session
+     * @return
+     */
+    private Path getPartPath(UploadSession session) {
+        return directory.resolve(session.getId() + ".part");
+    }
+}
@@ -1,67 +1,258 @@
 package ru.job4j.dreamjob.service;
 
 import net.jcip.annotations.ThreadSafe;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import ru.job4j.dreamjob.dto.FileDto;
+import ru.job4j.dreamjob.cache.EntityCache;
+import ru.job4j.dreamjob.dto.FileStreamDto;
+import ru.job4j.dreamjob.dto.ImportReportDto;
+import ru.job4j.dreamjob.dto.ListingFilterDto;
+import ru.job4j.dreamjob.dto.PageCursorDto;
+import ru.job4j.dreamjob.dto.PageDto;
+import ru.job4j.dreamjob.dto.SearchPageDto;
+import ru.job4j.dreamjob.importer.BulkImporter;
+import ru.job4j.dreamjob.importer.RecordFields;
+import ru.job4j.dreamjob.importer.RecordReader;
+import ru.job4j.dreamjob.model.City;
+import ru.job4j.dreamjob.model.File;
 import ru.job4j.dreamjob.model.Vacancy;
+import ru.job4j.dreamjob.model.VacancySummary;
 import ru.job4j.dreamjob.repository.VacancyRepository;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Service
 @ThreadSafe
 public class SimpleVacancyService implements VacancyService {
     private final VacancyRepository vacancyRepository;
+    private final EntityCache<Vacancy> vacancyCache;
+    private final CityService cityService;
     private final FileService fileService;
+    private final int pageSize;
+    private final int importBatchSize;
+    private final int exportFetchSize;
 
-    public SimpleVacancyService(VacancyRepository sql2oVacancyRepository, FileService fileService) {
-        this.vacancyRepository = sql2oVacancyRepository;
+    public SimpleVacancyService(VacancyRepository indexedVacancyRepository, EntityCache<Vacancy> vacancyCache,
+                                CityService cityService, FileService fileService,
+                                @Value("${listing.page-size}") int pageSize,
+                                @Value("${import.batch-size}") int importBatchSize,
+                                @Value("${export.fetch-size}") int exportFetchSize) {
+        this.vacancyRepository = indexedVacancyRepository;
+        this.vacancyCache = vacancyCache;
+        this.cityService = cityService;
         this.fileService = fileService;
+        this.pageSize = pageSize;
+        this.importBatchSize = importBatchSize;
+        this.exportFetchSize = exportFetchSize;
     }
 
     @Override
-    public Vacancy save(Vacancy vacancy, FileDto image) {
+    public Vacancy save(Vacancy vacancy, FileStreamDto image) {
         saveNewFile(vacancy, image);
-        return vacancyRepository.save(vacancy);
+        return vacancyCache.write(() -> vacancyRepository.save(vacancy));
     }
 
-    private void saveNewFile(Vacancy vacancy, FileDto image) {
+    private void saveNewFile(Vacancy vacancy, FileStreamDto image) {
         var file = fileService.save(image);
         vacancy.setFileId(file.getId());
     }
 
+    /**
+     * Ссылка на файл снимается, только если запись удалил именно этот вызов:
+     * два одновременных удаления одной записи иначе сняли бы ее дважды,
+     * и общий с другой записью файл был бы удален.
+     *
+     * @param id
+     * @return
+     */
     @Override
     public boolean deleteById(int id) {
         var fileOptional = findById(id);
         if (fileOptional.isEmpty()) {
             return false;
         }
-        var isDeleted = vacancyRepository.deleteById(id);
-        fileService.deleteById(fileOptional.get().getFileId());
+        var isDeleted = vacancyCache.write(id, () -> vacancyRepository.deleteById(id));
+        if (isDeleted) {
+            fileService.scheduleDeleteById(fileOptional.get().getFileId());
+        }
         return isDeleted;
     }
 
+    /**
+     * Если запись обновлена, снимается ссылка на старый файл, иначе на только что сохраненный:
+     * старый файл все еще нужен записи.
+     *
+     * @param vacancy
+     * @param image
+     * @return
+     */
     @Override
-    public boolean update(Vacancy vacancy, FileDto image) {
-        var isNewFileEmpty = image.getContent().length == 0;
+    public boolean update(Vacancy vacancy, FileStreamDto image) {
+        var isNewFileEmpty = image.getSize() == 0;
         if (isNewFileEmpty) {
-            return vacancyRepository.update(vacancy);
+            return vacancyCache.write(vacancy.getId(), () -> vacancyRepository.update(vacancy));
         }
         var oldFileId = vacancy.getFileId();
         saveNewFile(vacancy, image);
-        var isUpdated = vacancyRepository.update(vacancy);
-        fileService.deleteById(oldFileId);
+        var isUpdated = vacancyCache.write(vacancy.getId(), () -> vacancyRepository.update(vacancy));
+        fileService.scheduleDeleteById(isUpdated ? oldFileId : vacancy.getFileId());
+        return isUpdated;
+    }
+
+    /**
+     * Привязывает к записи уже сохраненный файл, например собранный из частей загрузки.
+     * Ссылка на старый файл снимается. Если записи нет, то снимается ссылка на новый файл,
+     * иначе на него никто бы не сослался.
+     * <br>Запись читается из репозитория, а не из кеша: она меняется перед сохранением,
+     * а объекты из кеша общие для всех запросов.
+     *
+     * @param id
+     * @param file
+     * @return
+     */
+    @Override
+    public boolean replaceFile(int id, File file) {
+        var vacancyOptional = vacancyRepository.findById(id);
+        if (vacancyOptional.isEmpty()) {
+            fileService.scheduleDeleteById(file.getId());
+            return false;
+        }
+        var vacancy = vacancyOptional.get();
+        var oldFileId = vacancy.getFileId();
+        vacancy.setFileId(file.getId());
+        var isUpdated = vacancyCache.write(id, () -> vacancyRepository.update(vacancy));
+        fileService.scheduleDeleteById(isUpdated ? oldFileId : file.getId());
         return isUpdated;
     }
 
     @Override
     public Optional<Vacancy> findById(int id) {
-        return vacancyRepository.findById(id);
+        return vacancyCache.get(id, vacancyRepository::findById);
     }
 
     @Override
     public Collection<Vacancy> findAll() {
-        return vacancyRepository.findAll();
+        return vacancyCache.getAll(vacancyRepository::findAll);
+    }
+
+    /**
+     * Страница списка от новых к старым. after - курсор для перехода вперед, before - назад.
+     * Без курсора, с испорченным курсором или если вперед идти некуда, возвращается первая страница.
+     * Назад тоже возвращается первая страница, если перед курсором меньше полной страницы:
+     * так первая страница всегда одинаковая.
+     * <br>Запрашивается на одну запись больше размера страницы:
+     * лишняя запись показывает, что дальше в этом направлении есть еще страница.
+     * <br>Курсоры относятся к списку с тем же фильтром: страницы листаются внутри отобранных записей.
+     *
+     * @param filter
+     * @param after
+     * @param before
+     * @return
+     */
+    @Override
+    public PageDto<VacancySummary> findPage(ListingFilterDto filter, String after, String before) {
+        var afterCursor = PageCursorDto.parse(after);
+        if (afterCursor.isPresent()) {
+            var cursor = afterCursor.get();
+            var vacancies = vacancyRepository.findOlderThan(filter, cursor.getCreationDate(), cursor.getId(), pageSize + 1);
+            if (!vacancies.isEmpty()) {
+                var hasNext = vacancies.size() > pageSize;
+                return toPage(hasNext ? vacancies.subList(0, pageSize) : vacancies, true, hasNext);
+            }
+        }
+        var beforeCursor = PageCursorDto.parse(before);
+        if (beforeCursor.isPresent()) {
+            var cursor = beforeCursor.get();
+            var vacancies = vacancyRepository.findNewerThan(filter, cursor.getCreationDate(), cursor.getId(), pageSize + 1);
+            if (vacancies.size() > pageSize) {
+                return toPage(vacancies.subList(1, vacancies.size()), true, true);
+            }
+        }
+        var vacancies = vacancyRepository.findFirstPage(filter, pageSize + 1);
+        var hasNext = vacancies.size() > pageSize;
+        return toPage(hasNext ? vacancies.subList(0, pageSize) : vacancies, false, hasNext);
+    }
+
+    @Override
+    public Map<Integer, Integer> countByCity(Boolean visible) {
+        return vacancyRepository.countByCity(visible);
+    }
+
+    /**
+     * Импорт без вложений: у новых записей нет файла. Столбцы: title, description, cityId, visible,
+     * пустой visible - true. Города проверяются по списку, прочитанному один раз перед импортом.
+     * <br>Каждая пачка сохраняется через кеш отдельно: между пачками чтение идет из кеша,
+     * а после каждой пачки сбрасывается список и меняется версия данных.
+     *
+     * @param reader
+     * @return
+     */
+    @Override
+    public ImportReportDto importAll(RecordReader reader) {
+        var cityIds = cityService.findAll().stream().map(City::getId).collect(Collectors.toSet());
+        return BulkImporter.run(reader, importBatchSize, record -> parse(record, cityIds),
+                batch -> vacancyCache.write(() -> vacancyRepository.saveAll(batch)));
+    }
+
+    /**
+     * Выгрузка идет мимо кеша: записи читаются курсором и сразу отдаются action,
+     * класть их в кеш незачем, а список всех записей занял бы память.
+     *
+     * @param filter
+     * @param action
+     */
+    @Override
+    public void exportAll(ListingFilterDto filter, Consumer<Vacancy> action) {
+        vacancyRepository.forEach(filter, exportFetchSize, action);
+    }
+
+    private static Vacancy parse(Map<String, String> record, Set<Integer> cityIds) {
+        return new Vacancy(0, RecordFields.required(record, "title"), RecordFields.optional(record, "description"),
+                RecordFields.toBoolean(record, "visible", true), RecordFields.toCityId(record, "cityId", cityIds), 0);
+    }
+
+    @Override
+    public long getVersion() {
+        return vacancyCache.getVersion();
+    }
+
+    /**
+     * Страница результатов поиска, page начинается с 1. Пустой запрос ничего не находит.
+     * Как и в findPage, запрашивается на одну запись больше размера страницы.
+     *
+     * @param query
+     * @param page
+     * @return
+     */
+    @Override
+    public SearchPageDto<VacancySummary> search(String query, int page) {
+        if (query == null || query.isBlank()) {
+            return new SearchPageDto<>(List.of(), "", null, null);
+        }
+        var number = Math.min(Math.max(page, 1), Integer.MAX_VALUE / pageSize);
+        var vacancies = vacancyRepository.search(query, pageSize + 1, (number - 1) * pageSize);
+        var hasNext = vacancies.size() > pageSize;
+        return new SearchPageDto<>(hasNext ? vacancies.subList(0, pageSize) : vacancies, query,
+                number > 1 ? number - 1 : null, hasNext ? number + 1 : null);
+    }
+
+    private PageDto<VacancySummary> toPage(List<VacancySummary> vacancies, boolean hasPrevious, boolean hasNext) {
+        String previous = null;
+        String next = null;
+        if (hasPrevious) {
+            var first = vacancies.get(0);
+            previous = PageCursorDto.format(first.getCreationDate(), first.getId());
+        }
+        if (hasNext) {
+            var last = vacancies.get(vacancies.size() - 1);
+            next = PageCursorDto.format(last.getCreationDate(), last.getId());
+        }
+        return new PageDto<>(vacancies, previous, next);
     }
-}
+}
\ No newline at end of file
@@ -0,0 +1,20 @@
+package ru.job4j.dreamjob.service;
+
+import ru.job4j.dreamjob.model.File;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+public interface ThumbnailService {
+
+    void generate(File file);
+
+    Optional<Path> findThumbnail(File file, int width);
+
+    void deleteThumbnails(File file);
+
+    List<Path> getThumbnailPaths(File file);
+
+    Optional<Path> getOriginalPath(Path thumbnail);
+}
@@ -0,0 +1,26 @@
+package ru.job4j.dreamjob.service;
+
+import org.springframework.core.io.InputStreamSource;
+import ru.job4j.dreamjob.dto.UploadChunkDto;
+import ru.job4j.dreamjob.dto.UploadStatusDto;
+import ru.job4j.dreamjob.model.File;
+
+import java.util.Optional;
+
+public interface UploadService {
+
+    UploadStatusDto create(String name, long size);
+
+    Optional<UploadStatusDto> findById(String id);
+
+    boolean writeChunk(String id, int number, long length, InputStreamSource content);
+
+    Optional<UploadChunkDto> beginChunk(String id, int number, long length);
+
+    void endChunk(UploadChunkDto chunk, boolean received);
+
+    Optional<File> commit(String id);
+
+    int deleteExpired();
+
+}
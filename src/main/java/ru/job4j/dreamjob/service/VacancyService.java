@@ -1,20 +1,59 @@
 package ru.job4j.dreamjob.service;
 
-import ru.job4j.dreamjob.dto.FileDto;
+import ru.job4j.dreamjob.dto.FileStreamDto;
+import ru.job4j.dreamjob.dto.ImportReportDto;
+import ru.job4j.dreamjob.dto.ListingFilterDto;
+import ru.job4j.dreamjob.dto.PageDto;
+import ru.job4j.dreamjob.dto.SearchPageDto;
+import ru.job4j.dreamjob.importer.RecordReader;
+import ru.job4j.dreamjob.model.File;
 import ru.job4j.dreamjob.model.Vacancy;
+import ru.job4j.dreamjob.model.VacancySummary;
 
 import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface VacancyService {
 
-    Vacancy save(Vacancy vacancy, FileDto image);
+    Vacancy save(Vacancy vacancy, FileStreamDto image);
 
     boolean deleteById(int id);
 
-    boolean update(Vacancy vacancy, FileDto image);
+    boolean update(Vacancy vacancy, FileStreamDto image);
+
+    boolean replaceFile(int id, File file);
 
     Optional<Vacancy> findById(int id);
 
     Collection<Vacancy> findAll();
+
+    PageDto<VacancySummary> findPage(ListingFilterDto filter, String after, String before);
+
+    Map<Integer, Integer> countByCity(Boolean visible);
+
+    /**
+     * Сохраняет записи из файла импорта пачками, испорченные записи отклоняются.
+     *
+     * @param reader
+     * @return сколько записей сохранено и отклонено, ошибки с номерами строк
+     */
+    ImportReportDto importAll(RecordReader reader);
+
+    /**
+     * Передает action все записи, подходящие под фильтр, по возрастанию id,
+     * не собирая их в память.
+     *
+     * @param filter
+     * @param action
+     */
+    void exportAll(ListingFilterDto filter, Consumer<Vacancy> action);
+
+    /**
+     * @return версия данных, меняется при каждом изменении записей, или -1, пока изменение идет
+     */
+    long getVersion();
+
+    SearchPageDto<VacancySummary> search(String query, int page);
 }
\ No newline at end of file
@@ -0,0 +1,126 @@
+package ru.job4j.dreamjob.benchmark;
+
+import ru.job4j.dreamjob.configuration.DatasourceConfiguration;
+import ru.job4j.dreamjob.dto.ListingFilterDto;
+import ru.job4j.dreamjob.importer.ImportFormat;
+import ru.job4j.dreamjob.importer.RecordWriter;
+import ru.job4j.dreamjob.model.Vacancy;
+import ru.job4j.dreamjob.repository.Sql2oVacancyRepository;
+
+import java.io.BufferedWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Сравнивает выгрузку вакансий через findAll, который собирает всю таблицу в список,
+ * и через forEach, который читает ее курсором. Обе пишут CSV в Writer.nullWriter,
+ * так что замеряется только чтение и форматирование. Печатается время и рост кучи:
+ * для findAll - занятая списком, для forEach - наибольшая за время выгрузки вместе с мусором.
+ * Нагляднее запуск с маленькой кучей, например -Xmx64m: forEach проходит, а findAll ее исчерпывает,
+ * поэтому он замеряется вторым.
+ * <br>Аргументы: число строк (по умолчанию 1000000), fetch size (по умолчанию 1000)
+ * и адрес базы с именем и паролем. По умолчанию H2 в файле во временном каталоге, строки создаются здесь же.
+ * Для PostgreSQL, где курсор работает через fetch size, строки должны быть в базе заранее,
+ * например загружены ImportBenchmark.
+ */
+public class ExportBenchmark {
+
+    private static final List<String> COLUMNS =
+            List.of("id", "title", "description", "creationDate", "cityId", "visible", "fileId");
+
+    public static void main(String[] args) throws Exception {
+        var count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        var fetchSize = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        var directory = Files.createTempDirectory("export-benchmark");
+        var h2 = args.length <= 2;
+        var url = h2 ? "jdbc:h2:" + directory.resolve("db") + ";MODE=PostgreSQL" : args[2];
+        var username = args.length > 3 ? args[3] : "";
+        var password = args.length > 4 ? args[4] : "";
+        var configuration = new DatasourceConfiguration();
+        var sql2o = configuration.databaseClient(configuration.connectionPool(url, username, password));
+        var repository = new Sql2oVacancyRepository(sql2o);
+        try {
+            if (h2) {
+                try (var connection = sql2o.open()) {
+                    connection.createQuery("""
+                            CREATE TABLE vacancies (
+                                id            serial primary key,
+                                title         varchar not null,
+                                description   varchar not null,
+                                creation_date timestamp not null,
+                                visible       boolean not null,
+                                city_id       int,
+                                file_id       int
+                            )
+                            """).executeUpdate();
+                    connection.createQuery("CREATE TABLE vacancy_city_counts (city_id int, visible boolean, total int, "
+                            + "primary key (city_id, visible))").executeUpdate();
+                }
+                var batch = new ArrayList<Vacancy>();
+                for (int i = 0; i < count; i++) {
+                    batch.add(new Vacancy(0, "Vacancy " + i, "Description of vacancy " + i + ", remote", true, 1, 0));
+                    if (batch.size() == 1000) {
+                        repository.saveAll(batch);
+                        batch.clear();
+                    }
+                }
+                repository.saveAll(batch);
+            }
+            System.out.printf("fetch size: %d%n", fetchSize);
+
+            System.gc();
+            var heapBefore = usedHeap();
+            var peak = new long[1];
+            var rows = new int[1];
+            var timeBefore = System.nanoTime();
+            try (var writer = new BufferedWriter(Writer.nullWriter())) {
+                var records = ImportFormat.CSV.create(writer, COLUMNS);
+                repository.forEach(ListingFilterDto.none(), fetchSize, vacancy -> {
+                    write(records, vacancy);
+                    if (++rows[0] % 10_000 == 0) {
+                        peak[0] = Math.max(peak[0], usedHeap());
+                    }
+                });
+            }
+            var time = (System.nanoTime() - timeBefore) / 1_000_000;
+            System.out.printf("%-8s %,10d rows %,8d ms heap peak %,6d MB%n", "forEach", rows[0], time,
+                    Math.max(0, peak[0] - heapBefore) / 1024 / 1024);
+
+            System.gc();
+            heapBefore = usedHeap();
+            timeBefore = System.nanoTime();
+            try {
+                var all = repository.findAll();
+                try (var writer = new BufferedWriter(Writer.nullWriter())) {
+                    var records = ImportFormat.CSV.create(writer, COLUMNS);
+                    all.forEach(vacancy -> write(records, vacancy));
+                }
+                time = (System.nanoTime() - timeBefore) / 1_000_000;
+                System.gc();
+                System.out.printf("%-8s %,10d rows %,8d ms heap %,6d MB%n", "findAll", all.size(), time,
+                        (usedHeap() - heapBefore) / 1024 / 1024);
+            } catch (OutOfMemoryError e) {
+                System.out.printf("%-8s out of memory%n", "findAll");
+            }
+        } finally {
+            try (var files = Files.list(directory)) {
+                for (var path : files.toList()) {
+                    Files.delete(path);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private static void write(RecordWriter records, Vacancy vacancy) {
+        records.write(vacancy.getId(), vacancy.getTitle(), vacancy.getDescription(), vacancy.getCreationDate(),
+                vacancy.getCityId(), vacancy.getVisible(), vacancy.getFileId() == 0 ? null : vacancy.getFileId());
+    }
+
+    private static long usedHeap() {
+        var runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,101 @@
+package ru.job4j.dreamjob.benchmark;
+
+import org.springframework.util.StreamUtils;
+import ru.job4j.dreamjob.cache.OffHeapFileCache;
+import ru.job4j.dreamjob.dto.FileDto;
+import ru.job4j.dreamjob.repository.MemoryFileRepository;
+import ru.job4j.dreamjob.service.PackFileStore;
+import ru.job4j.dreamjob.service.SimpleCompressionService;
+import ru.job4j.dreamjob.service.SimpleFileService;
+import ru.job4j.dreamjob.service.SimpleThumbnailService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Сравнивает, сколько памяти в куче выделяется на один запрос файла
+ * при чтении через getFileById (массив байт размером с файл)
+ * и при потоковой отдаче через getFileResourceById, в том числе из OffHeapFileCache.
+ * <br>Это не тест, а программа: запускается через main, результат печатается в консоль.
+ * Выделенная память считается через com.sun.management.ThreadMXBean
+ * для текущего потока, поэтому замер не зависит от работы сборщика мусора.
+ * <br>Аргументы: размер файла в мегабайтах (по умолчанию 10) и число запросов (по умолчанию 200).
+ */
+public class FileDownloadBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        var sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        var requests = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        var directory = Files.createTempDirectory("dreamjob-benchmark");
+        var packStore = new PackFileStore(new MemoryFileRepository(), directory.toString(), false, 0, 0, false);
+        var fileService = new SimpleFileService(new MemoryFileRepository(), new SimpleThumbnailService(),
+                new SimpleCompressionService(false, 0),
+                new OffHeapFileCache(0, 0), packStore, directory.toString());
+        var file = fileService.save(new FileDto("photo.png", new byte[sizeMb * 1024 * 1024]));
+        var id = file.getId();
+        var contentLength = (long) sizeMb * 1024 * 1024;
+        var cachedFileService = new SimpleFileService(new MemoryFileRepository(), new SimpleThumbnailService(),
+                new SimpleCompressionService(false, 0),
+                new OffHeapFileCache(contentLength, contentLength), packStore, directory.toString());
+        var cachedId = cachedFileService.save(new FileDto("photo.png", new byte[sizeMb * 1024 * 1024])).getId();
+        var out = OutputStream.nullOutputStream();
+
+        Download bytes = () -> out.write(fileService.getFileById(id).get().getContent());
+        Download stream = () -> {
+            var resource = fileService.getFileResourceById(id).get().getResource();
+            try (var in = resource.getInputStream()) {
+                StreamUtils.copy(in, out);
+            }
+        };
+        Download channel = () -> {
+            var dto = fileService.getFileResourceById(id).get();
+            try (var source = FileChannel.open(dto.getResource().getFile().toPath(), StandardOpenOption.READ)) {
+                source.transferTo(0, dto.getContentLength(), Channels.newChannel(out));
+            }
+        };
+        Download cached = () -> {
+            var resource = cachedFileService.getFileResourceById(cachedId).get().getResource();
+            try (var in = resource.getInputStream()) {
+                StreamUtils.copy(in, out);
+            }
+        };
+
+        System.out.printf("file size: %d MB, requests: %d%n", sizeMb, requests);
+        report("byte[] (getFileById)", bytes, requests);
+        report("stream (getFileResourceById)", stream, requests);
+        report("channel (transferTo)", channel, requests);
+        report("off-heap cache", cached, requests);
+
+        try (var paths = Files.walk(directory)) {
+            paths.sorted((left, right) -> right.compareTo(left)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static void report(String name, Download download, int requests) throws IOException {
+        for (int i = 0; i < requests; i++) {
+            download.run();
+        }
+        var threadId = Thread.currentThread().getId();
+        var allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+        var timeBefore = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            download.run();
+        }
+        var time = System.nanoTime() - timeBefore;
+        var allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        System.out.printf("%-30s %,15d bytes/request %,10d us/request%n",
+                name, allocated / requests, time / requests / 1000);
+    }
+
+    private interface Download {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,167 @@
+package ru.job4j.dreamjob.benchmark;
+
+import org.sql2o.Sql2o;
+import ru.job4j.dreamjob.FileNode;
+import ru.job4j.dreamjob.Main;
+import ru.job4j.dreamjob.cache.OffHeapFileCache;
+import ru.job4j.dreamjob.configuration.DatasourceConfiguration;
+import ru.job4j.dreamjob.dto.FileDto;
+import ru.job4j.dreamjob.repository.Sql2oFileRepository;
+import ru.job4j.dreamjob.service.PackFileStore;
+import ru.job4j.dreamjob.service.SimpleCompressionService;
+import ru.job4j.dreamjob.service.SimpleFileService;
+import ru.job4j.dreamjob.service.SimpleThumbnailService;
+
+import java.io.IOException;
+import java.net.CookieManager;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Сравнивает Main и FileNode на отдаче одного и того же небольшого изображения по /files/{id}:
+ * время запуска до первого ответа и время одного запроса.
+ * <br>Это не тест, а программа: запускается через main, результат печатается в консоль.
+ * Каждое приложение запускается в отдельной JVM с classpath этой программы.
+ * База берется из connection.properties с AUTO_SERVER=TRUE, чтобы ее могли открыть несколько процессов,
+ * файл сохраняется во временный каталог, который передается приложениям как file.directory.
+ * <br>Main пускает к файлам только после входа, поэтому запросы к нему идут с cookie сессии.
+ * FileNode запускается с file.node.id-access=true, чтобы оба отдавали файл по одному адресу.
+ * Отдельно проверяется запрос без cookie: Main создает на него сессию, FileNode нет.
+ * <br>Аргументы: размер файла в килобайтах (по умолчанию 20) и число запросов (по умолчанию 2000).
+ */
+public class FileNodeBenchmark {
+
+    private static final String EMAIL = "file-node-benchmark@mail.ru";
+
+    public static void main(String[] args) throws Exception {
+        var sizeKb = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        var requests = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        var properties = new Properties();
+        try (var inputStream = FileNodeBenchmark.class.getClassLoader()
+                .getResourceAsStream("connection.properties")) {
+            properties.load(inputStream);
+        }
+        var url = properties.getProperty("datasource.url") + "AUTO_SERVER=TRUE;";
+        var username = properties.getProperty("datasource.username");
+        var password = properties.getProperty("datasource.password");
+        var configuration = new DatasourceConfiguration();
+        var sql2o = configuration.databaseClient(configuration.connectionPool(url, username, password));
+        var directory = Files.createTempDirectory("dreamjob-benchmark");
+        var fileRepository = new Sql2oFileRepository(sql2o);
+        var fileService = new SimpleFileService(fileRepository, new SimpleThumbnailService(),
+                new SimpleCompressionService(false, 0), new OffHeapFileCache(0, 0),
+                new PackFileStore(fileRepository, directory.toString(), false, 0, 0, false), directory.toString());
+        var content = new byte[sizeKb * 1024];
+        new Random(1).nextBytes(content);
+        var id = fileService.save(new FileDto("photo.png", content)).getId();
+        var arguments = List.of("--datasource.url=" + url, "--datasource.username=" + username,
+                "--datasource.password=" + password, "--file.directory=" + directory,
+                "--spring.devtools.restart.enabled=false", "--file.node.id-access=true");
+
+        System.out.printf("file size: %d KB, requests: %d%n", sizeKb, requests);
+        try {
+            report(Main.class, "/users/login", arguments, id, content.length, requests, true);
+            report(FileNode.class, "/files/" + id, arguments, id, content.length, requests, false);
+        } finally {
+            fileService.deleteById(id);
+            deleteUser(sql2o);
+            try (var paths = Files.walk(directory)) {
+                paths.sorted((left, right) -> right.compareTo(left)).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static void report(Class<?> application, String readyPath, List<String> arguments, int id,
+                               int contentLength, int requests, boolean login) throws Exception {
+        var port = getFreePort();
+        var base = "http://localhost:" + port;
+        var command = new ArrayList<>(List.of(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), application.getName(), "--server.port=" + port));
+        command.addAll(arguments);
+        var timeBefore = System.nanoTime();
+        var process = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try {
+            var anonymous = HttpClient.newHttpClient();
+            awaitStartup(anonymous, base + readyPath, process);
+            var startup = (System.nanoTime() - timeBefore) / 1_000_000;
+            var client = HttpClient.newBuilder().cookieHandler(new CookieManager()).build();
+            if (login) {
+                post(client, base + "/users/register", "name=benchmark&email=" + EMAIL + "&password=1");
+                post(client, base + "/users/login", "email=" + EMAIL + "&password=1");
+            }
+            var request = HttpRequest.newBuilder(URI.create(base + "/files/" + id)).build();
+            for (int i = 0; i < requests; i++) {
+                get(client, request, contentLength);
+            }
+            var requestsBefore = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                get(client, request, contentLength);
+            }
+            var time = System.nanoTime() - requestsBefore;
+            var response = anonymous.send(request, HttpResponse.BodyHandlers.discarding());
+            var session = response.headers().firstValue("Set-Cookie").isPresent() ? "session created" : "no session";
+            System.out.printf("%-10s startup %,6d ms %,8d us/request   without cookie: %d, %s%n",
+                    application.getSimpleName(), startup, time / requests / 1000, response.statusCode(), session);
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    private static void awaitStartup(HttpClient client, String url, Process process) throws Exception {
+        var request = HttpRequest.newBuilder(URI.create(url)).build();
+        for (int i = 0; i < 6000; i++) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Приложение завершилось при запуске");
+            }
+            try {
+                client.send(request, HttpResponse.BodyHandlers.discarding());
+                return;
+            } catch (IOException e) {
+                Thread.sleep(10);
+            }
+        }
+        throw new IllegalStateException("Приложение не запустилось за минуту");
+    }
+
+    private static void post(HttpClient client, String url, String form) throws Exception {
+        var request = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build();
+        client.send(request, HttpResponse.BodyHandlers.discarding());
+    }
+
+    private static void get(HttpClient client, HttpRequest request, int contentLength) throws Exception {
+        var response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200 || response.body().length != contentLength) {
+            throw new IllegalStateException("Файл не получен: " + response.statusCode());
+        }
+    }
+
+    private static int getFreePort() throws IOException {
+        try (var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void deleteUser(Sql2o sql2o) {
+        try (var connection = sql2o.open()) {
+            connection.createQuery("DELETE FROM users WHERE email = :email")
+                    .addParameter("email", EMAIL)
+                    .executeUpdate();
+        }
+    }
+}
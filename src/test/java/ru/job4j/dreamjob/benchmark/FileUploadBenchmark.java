@@ -0,0 +1,85 @@
+package ru.job4j.dreamjob.benchmark;
+
+import org.springframework.core.io.FileSystemResource;
+import ru.job4j.dreamjob.cache.OffHeapFileCache;
+import ru.job4j.dreamjob.dto.FileDto;
+import ru.job4j.dreamjob.dto.FileStreamDto;
+import ru.job4j.dreamjob.repository.MemoryFileRepository;
+import ru.job4j.dreamjob.service.PackFileStore;
+import ru.job4j.dreamjob.service.SimpleCompressionService;
+import ru.job4j.dreamjob.service.SimpleFileService;
+import ru.job4j.dreamjob.service.SimpleThumbnailService;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Сравнивает, сколько памяти в куче выделяется на одну загрузку файла
+ * при передаче содержимого массивом байт (MultipartFile.getBytes() и FileDto)
+ * и при потоковом копировании через FileStreamDto.
+ * <br>Загруженный файл Tomcat хранит на диске, поэтому источником служит файл на диске.
+ * Каждая загрузка получает новое содержимое, иначе сервис найдет его по хешу и ничего не запишет.
+ * <br>Аргументы: размер файла в мегабайтах (по умолчанию 10) и число загрузок (по умолчанию 50).
+ */
+public class FileUploadBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        var sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        var uploads = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        var directory = Files.createTempDirectory("dreamjob-benchmark");
+        var fileRepository = new MemoryFileRepository();
+        var storageDirectory = directory.resolve("files").toString();
+        var fileService = new SimpleFileService(fileRepository, new SimpleThumbnailService(),
+                new SimpleCompressionService(false, 0), new OffHeapFileCache(0, 0),
+                new PackFileStore(fileRepository, storageDirectory, false, 0, 0, false), storageDirectory);
+        var source = directory.resolve("upload.png");
+        var content = new byte[sizeMb * 1024 * 1024];
+        var random = new Random();
+
+        Upload bytes = () -> fileService.save(new FileDto("photo.png", Files.readAllBytes(source)));
+        Upload stream = () -> fileService.save(
+                new FileStreamDto("photo.png", Files.size(source), new FileSystemResource(source)));
+
+        System.out.printf("file size: %d MB, uploads: %d%n", sizeMb, uploads);
+        report("byte[] (FileDto)", bytes, () -> {
+            random.nextBytes(content);
+            Files.write(source, content);
+        }, uploads);
+        report("stream (FileStreamDto)", stream, () -> {
+            random.nextBytes(content);
+            Files.write(source, content);
+        }, uploads);
+
+        try (var paths = Files.walk(directory)) {
+            paths.sorted((left, right) -> right.compareTo(left)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * Подготовка нового содержимого в замер не входит.
+     */
+    private static void report(String name, Upload upload, Upload prepare, int uploads) throws IOException {
+        var threadId = Thread.currentThread().getId();
+        long allocated = 0;
+        long time = 0;
+        for (int i = 0; i < uploads; i++) {
+            prepare.run();
+            var allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+            var timeBefore = System.nanoTime();
+            upload.run();
+            time += System.nanoTime() - timeBefore;
+            allocated += THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        }
+        System.out.printf("%-30s %,15d bytes/upload %,10d us/upload%n",
+                name, allocated / uploads, time / uploads / 1000);
+    }
+
+    private interface Upload {
+        void run() throws IOException;
+    }
+}
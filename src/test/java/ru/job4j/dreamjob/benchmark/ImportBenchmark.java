@@ -0,0 +1,125 @@
+package ru.job4j.dreamjob.benchmark;
+
+import org.sql2o.Sql2o;
+import ru.job4j.dreamjob.configuration.DatasourceConfiguration;
+import ru.job4j.dreamjob.importer.BulkImporter;
+import ru.job4j.dreamjob.importer.ImportFormat;
+import ru.job4j.dreamjob.importer.RecordFields;
+import ru.job4j.dreamjob.model.Vacancy;
+import ru.job4j.dreamjob.repository.Sql2oVacancyRepository;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Сравнивает сохранение вакансий по одной (save, своя транзакция на каждую)
+ * и импорт того же файла CSV через BulkImporter и saveAll пачками.
+ * <br>Файл пишется на диск заранее и читается потоком, поэтому по пику кучи видно,
+ * что импорт не держит файл в памяти.
+ * <br>Аргументы: число строк (по умолчанию 200000), размер пачки (по умолчанию 1000)
+ * и адрес базы с именем и паролем. По умолчанию H2 в файле во временном каталоге, таблицы создаются здесь же:
+ * H2 в памяти держал бы в куче все строки, и рост кучи был бы не от импорта.
+ * Для PostgreSQL, где saveAll идет через COPY, схема должна быть создана скриптами liquibase,
+ * а город с id 1 должен существовать.
+ */
+public class ImportBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        var count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        var batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        var directory = Files.createTempDirectory("import-benchmark");
+        var url = args.length > 2 ? args[2] : "jdbc:h2:" + directory.resolve("db") + ";MODE=PostgreSQL";
+        var username = args.length > 3 ? args[3] : "";
+        var password = args.length > 4 ? args[4] : "";
+        var configuration = new DatasourceConfiguration();
+        var sql2o = configuration.databaseClient(configuration.connectionPool(url, username, password));
+        if (url.startsWith("jdbc:h2:")) {
+            createTables(sql2o);
+        }
+        var repository = new Sql2oVacancyRepository(sql2o);
+        var file = Files.createTempFile("import-benchmark", ".csv");
+        try {
+            writeCsv(file, count);
+            System.out.printf("rows: %,d, file: %,d KB, batch size: %d%n", count, Files.size(file) / 1024, batchSize);
+
+            var single = Math.min(count, 20_000);
+            var timeBefore = System.nanoTime();
+            for (int i = 0; i < single; i++) {
+                repository.save(new Vacancy(0, "Vacancy " + i, "Description, \"quoted\"", true, 1, 0));
+            }
+            var singleMillis = (System.nanoTime() - timeBefore) / 1_000_000.0;
+            System.out.printf("%-10s %,10d rows %,10.0f ms %,12.0f rows/s%n", "save", single, singleMillis,
+                    single / singleMillis * 1000);
+
+            System.gc();
+            var heapBefore = usedHeap();
+            var peak = new long[1];
+            timeBefore = System.nanoTime();
+            try (var reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                var report = BulkImporter.run(ImportFormat.CSV.open(reader), batchSize, ImportBenchmark::parse, batch -> {
+                    peak[0] = Math.max(peak[0], usedHeap());
+                    return repository.saveAll(batch);
+                });
+                var bulkMillis = (System.nanoTime() - timeBefore) / 1_000_000.0;
+                System.out.printf("%-10s %,10d rows %,10.0f ms %,12.0f rows/s%n", "saveAll", report.getImported(),
+                        bulkMillis, report.getImported() / bulkMillis * 1000);
+            }
+            System.out.printf("heap growth during import, peak: %,d MB%n", (peak[0] - heapBefore) / 1024 / 1024);
+        } finally {
+            Files.delete(file);
+            try (var files = Files.list(directory)) {
+                for (var path : files.toList()) {
+                    Files.delete(path);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private static Vacancy parse(Map<String, String> record) {
+        return new Vacancy(0, RecordFields.required(record, "title"), RecordFields.optional(record, "description"),
+                RecordFields.toBoolean(record, "visible", true), RecordFields.toCityId(record, "cityId", Set.of(1)), 0);
+    }
+
+    private static void writeCsv(Path file, int count) throws Exception {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("title,description,cityId,visible\n");
+            for (int i = 0; i < count; i++) {
+                writer.write("Imported " + i + ",\"Description, \"\"quoted\"\"\",1,true\n");
+            }
+        }
+    }
+
+    private static void createTables(Sql2o sql2o) {
+        try (var connection = sql2o.open()) {
+            connection.createQuery("""
+                    CREATE TABLE vacancies (
+                        id            serial primary key,
+                        title         varchar not null,
+                        description   varchar not null,
+                        creation_date timestamp not null,
+                        visible       boolean not null,
+                        city_id       int,
+                        file_id       int
+                    )
+                    """).executeUpdate();
+            connection.createQuery("""
+                    CREATE TABLE vacancy_city_counts (
+                        city_id int not null,
+                        visible boolean not null,
+                        total   int not null,
+                        primary key (city_id, visible)
+                    )
+                    """).executeUpdate();
+        }
+    }
+
+    private static long usedHeap() {
+        var runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,114 @@
+package ru.job4j.dreamjob.benchmark;
+
+import ru.job4j.dreamjob.cache.OffHeapFileCache;
+import ru.job4j.dreamjob.dto.FileDto;
+import ru.job4j.dreamjob.model.File;
+import ru.job4j.dreamjob.repository.MemoryFileRepository;
+import ru.job4j.dreamjob.service.PackFileStore;
+import ru.job4j.dreamjob.service.SimpleCompressionService;
+import ru.job4j.dreamjob.service.SimpleFileService;
+import ru.job4j.dreamjob.service.SimpleThumbnailService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Сравнивает хранение маленьких изображений отдельными файлами в подкаталогах
+ * и дозапись в сегменты PackFileStore.
+ * <br>Для каждого варианта замеряются: сохранение, чтение всех файлов в случайном порядке,
+ * сколько файлов и каталогов появилось в хранилище и сколько идет копирование хранилища целиком,
+ * как при резервном копировании. Уменьшенные копии не строятся ни в одном из вариантов,
+ * чтобы сравнивать только хранение.
+ * <br>Аргументы: число файлов (по умолчанию 10000) и средний размер в килобайтах (по умолчанию 24).
+ */
+public class PackFileBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        var count = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        var sizeKb = args.length > 1 ? Integer.parseInt(args[1]) : 24;
+        var random = new Random(42);
+        var contents = new ArrayList<byte[]>();
+        for (int i = 0; i < count; i++) {
+            var content = new byte[sizeKb * 1024 / 2 + random.nextInt(sizeKb * 1024)];
+            random.nextBytes(content);
+            contents.add(content);
+        }
+        System.out.printf("files: %d, average size: %d KB%n", count, sizeKb);
+        run("file per upload", false, contents);
+        run("pack segments", true, contents);
+    }
+
+    private static void run(String name, boolean packed, List<byte[]> contents) throws IOException {
+        var directory = Files.createTempDirectory("dreamjob-benchmark");
+        var storage = directory.resolve("files").toString();
+        var fileRepository = new MemoryFileRepository();
+        var fileService = new SimpleFileService(fileRepository, new NoThumbnailService(),
+                new SimpleCompressionService(false, 0), new OffHeapFileCache(0, 0),
+                new PackFileStore(fileRepository, storage, packed, 256 * 1024, 64 * 1024 * 1024, false), storage);
+        try {
+            var ids = new ArrayList<Integer>();
+            var start = System.nanoTime();
+            for (var content : contents) {
+                ids.add(fileService.save(new FileDto("photo.jpg", content)).getId());
+            }
+            var saveTime = System.nanoTime() - start;
+
+            Collections.shuffle(ids, new Random(7));
+            var out = OutputStream.nullOutputStream();
+            start = System.nanoTime();
+            for (var id : ids) {
+                try (var in = fileService.getFileResourceById(id).get().getResource().getInputStream()) {
+                    in.transferTo(out);
+                }
+            }
+            var readTime = System.nanoTime() - start;
+
+            long files;
+            long directories;
+            try (var paths = Files.walk(Path.of(storage))) {
+                var all = paths.toList();
+                files = all.stream().filter(Files::isRegularFile).count();
+                directories = all.size() - files;
+            }
+            start = System.nanoTime();
+            copy(Path.of(storage), directory.resolve("backup"));
+            var backupTime = System.nanoTime() - start;
+
+            System.out.printf("%-16s save %,8d us/file  read %,6d us/file  files %,7d  dirs %,7d  backup %,6d ms%n",
+                    name, saveTime / contents.size() / 1000, readTime / contents.size() / 1000,
+                    files, directories, backupTime / 1_000_000);
+        } finally {
+            try (var paths = Files.walk(directory)) {
+                paths.sorted((left, right) -> right.compareTo(left)).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static void copy(Path source, Path target) throws IOException {
+        try (var paths = Files.walk(source)) {
+            for (var path : paths.toList()) {
+                var copy = target.resolve(source.relativize(path));
+                if (Files.isDirectory(path)) {
+                    Files.createDirectories(copy);
+                } else {
+                    Files.copy(path, copy);
+                }
+            }
+        }
+    }
+
+    /**
+     * Уменьшенные копии в замер не входят: их построение в фоне не зависит от способа хранения.
+     */
+    private static class NoThumbnailService extends SimpleThumbnailService {
+        @Override
+        public void generate(File file) {
+        }
+    }
+}
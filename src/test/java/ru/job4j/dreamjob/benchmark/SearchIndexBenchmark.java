@@ -0,0 +1,189 @@
+package ru.job4j.dreamjob.benchmark;
+
+import org.sql2o.Sql2o;
+import ru.job4j.dreamjob.configuration.DatasourceConfiguration;
+import ru.job4j.dreamjob.model.VacancySummary;
+import ru.job4j.dreamjob.repository.Sql2oVacancyRepository;
+import ru.job4j.dreamjob.search.InvertedIndex;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Сравнивает поиск по вакансиям через ILIKE в H2 (Sql2oVacancyRepository.search)
+ * и через InvertedIndex на одних и тех же сгенерированных документах.
+ * <br>Слова документов берутся из словаря синтетических слов с распределением Ципфа,
+ * как в живом тексте: первые слова словаря встречаются почти везде, дальние редко.
+ * Запросы составлены из слов разной частоты. Для каждого запроса печатается
+ * среднее время и сколько записей нашлось на первой странице.
+ * <br>База H2 в памяти, чтобы обе стороны читали из памяти. Сначала замеряется база,
+ * затем ее таблица удаляется и строится индекс: так обе не занимают память одновременно.
+ * Для миллиона документов нужен -Xmx3g.
+ * <br>Аргументы: число документов (по умолчанию 1000000) и размер страницы (по умолчанию 20).
+ */
+public class SearchIndexBenchmark {
+
+    private static final int VOCABULARY = 50_000;
+
+    private static final int TITLE_WORDS = 4;
+
+    private static final int DESCRIPTION_WORDS = 20;
+
+    private static final String[] SYLLABLES = {"ka", "ro", "mi", "tu", "le", "sa", "po", "ni", "de", "vo",
+            "ga", "ze", "bu", "li", "fa", "no", "ri", "te", "mo", "su"};
+
+    private static final int[][] QUERIES = {{1}, {30}, {1000}, {30_000}, {1, 30}, {30, 1000}, {1, 30, 1000}};
+
+    public static void main(String[] args) throws Exception {
+        var count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        var pageSize = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        var cumulative = zipf();
+        var queries = Arrays.stream(QUERIES).map(SearchIndexBenchmark::query).toList();
+        System.out.printf("documents: %,d, page size: %d%n", count, pageSize);
+
+        var configuration = new DatasourceConfiguration();
+        var url = "jdbc:h2:mem:search-benchmark;MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+        var sql2o = configuration.databaseClient(configuration.connectionPool(url, "", ""));
+        var timeBefore = System.nanoTime();
+        fillDatabase(sql2o, count, cumulative);
+        System.out.printf("database filled in %,d ms%n", (System.nanoTime() - timeBefore) / 1_000_000);
+        var repository = new Sql2oVacancyRepository(sql2o);
+        var likeTimes = new double[queries.size()];
+        var likeFound = new int[queries.size()];
+        for (int i = 0; i < queries.size(); i++) {
+            var query = queries.get(i);
+            repository.search(query, pageSize, 0);
+            var iterations = 3;
+            var start = System.nanoTime();
+            for (int j = 0; j < iterations; j++) {
+                likeFound[i] = repository.search(query, pageSize, 0).size();
+            }
+            likeTimes[i] = (System.nanoTime() - start) / 1_000_000.0 / iterations;
+        }
+        try (var connection = sql2o.open()) {
+            connection.createQuery("DROP ALL OBJECTS").executeUpdate();
+        }
+
+        System.gc();
+        var heapBefore = usedHeap();
+        timeBefore = System.nanoTime();
+        var index = new InvertedIndex<VacancySummary>();
+        var random = new Random(1);
+        var creationDate = LocalDateTime.now();
+        for (int id = 1; id <= count; id++) {
+            var title = text(random, cumulative, TITLE_WORDS);
+            index.put(id, title, text(random, cumulative, DESCRIPTION_WORDS),
+                    new VacancySummary(id, title, creationDate, true));
+        }
+        var buildTime = (System.nanoTime() - timeBefore) / 1_000_000;
+        System.gc();
+        System.out.printf("index built in %,d ms, heap %,d MB%n", buildTime, (usedHeap() - heapBefore) / 1024 / 1024);
+
+        System.out.printf("%-28s %12s %6s %12s %6s%n", "query", "ILIKE ms", "found", "index ms", "found");
+        for (int i = 0; i < queries.size(); i++) {
+            var query = queries.get(i);
+            for (int j = 0; j < 20; j++) {
+                index.search(query, pageSize, 0);
+            }
+            var iterations = 200;
+            var found = 0;
+            var start = System.nanoTime();
+            for (int j = 0; j < iterations; j++) {
+                found = index.search(query, pageSize, 0).size();
+            }
+            var indexTime = (System.nanoTime() - start) / 1_000_000.0 / iterations;
+            System.out.printf("%-28s %12.1f %6d %12.3f %6d%n", query, likeTimes[i], likeFound[i], indexTime, found);
+        }
+    }
+
+    private static void fillDatabase(Sql2o sql2o, int count, double[] cumulative) throws SQLException {
+        try (var connection = sql2o.open()) {
+            connection.createQuery("""
+                    CREATE TABLE vacancies (
+                        id            serial primary key,
+                        title         varchar not null,
+                        description   varchar not null,
+                        creation_date timestamp not null,
+                        visible       boolean not null,
+                        city_id       int,
+                        file_id       int
+                    )
+                    """).executeUpdate();
+            var jdbcConnection = connection.getJdbcConnection();
+            var random = new Random(1);
+            var creationDate = Timestamp.valueOf(LocalDateTime.now());
+            try (var statement = jdbcConnection.prepareStatement(
+                    "INSERT INTO vacancies(title, description, creation_date, visible) VALUES (?, ?, ?, true)")) {
+                for (int id = 1; id <= count; id++) {
+                    statement.setString(1, text(random, cumulative, TITLE_WORDS));
+                    statement.setString(2, text(random, cumulative, DESCRIPTION_WORDS));
+                    statement.setTimestamp(3, creationDate);
+                    statement.addBatch();
+                    if (id % 1000 == 0) {
+                        statement.executeBatch();
+                    }
+                }
+                statement.executeBatch();
+            }
+        }
+    }
+
+    private static String text(Random random, double[] cumulative, int words) {
+        var text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            var position = Arrays.binarySearch(cumulative, random.nextDouble());
+            var rank = position >= 0 ? position : Math.min(-position - 1, cumulative.length - 1);
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(word(rank + 1));
+        }
+        return text.toString();
+    }
+
+    private static String query(int[] ranks) {
+        var query = new StringBuilder();
+        for (var rank : ranks) {
+            if (query.length() > 0) {
+                query.append(' ');
+            }
+            query.append(word(rank));
+        }
+        return query.toString();
+    }
+
+    /**
+     * Слово по номеру в словаре: номер записывается по основанию числа слогов, не меньше трех слогов.
+     * Короткое слово бывает началом длинного, тогда ILIKE находит и его, а индекс нет.
+     */
+    private static String word(int rank) {
+        var word = new StringBuilder();
+        var rest = rank;
+        for (int i = 0; i < 3 || rest > 0; i++) {
+            word.append(SYLLABLES[rest % SYLLABLES.length]);
+            rest /= SYLLABLES.length;
+        }
+        return word.toString();
+    }
+
+    private static double[] zipf() {
+        var cumulative = new double[VOCABULARY];
+        var sum = 0.0;
+        for (int rank = 1; rank <= VOCABULARY; rank++) {
+            sum += 1.0 / rank;
+            cumulative[rank - 1] = sum;
+        }
+        for (int i = 0; i < VOCABULARY; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+
+    private static long usedHeap() {
+        var runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,100 @@
+package ru.job4j.dreamjob.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EntityCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private EntityCache<String> cache(long maxBytes) {
+        return new EntityCache<>("test", maxBytes, 60, String::length, now::get);
+    }
+
+    private Optional<String> load(String value) {
+        loads.incrementAndGet();
+        return Optional.of(value);
+    }
+
+    @Test
+    public void whenReadTwiceThenLoadedOnce() {
+        var cache = cache(100);
+        assertThat(cache.get(1, id -> load("first"))).contains("first");
+        assertThat(cache.get(1, id -> load("other"))).contains("first");
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(cache.getHitRatio()).isEqualTo(0.5);
+        assertThat(cache.getUsedBytes()).isEqualTo(5);
+    }
+
+    @Test
+    public void whenWriteThenRecordAndListReloaded() {
+        var cache = cache(100);
+        cache.get(1, id -> load("old"));
+        cache.getAll(() -> List.of("old"));
+        cache.write(1, () -> true);
+        assertThat(cache.get(1, id -> load("new"))).contains("new");
+        assertThat(cache.getAll(() -> List.of("new"))).containsExactly("new");
+        assertThat(cache.getAll(() -> List.of("newer"))).containsExactly("new");
+    }
+
+    @Test
+    public void whenAbsentThenNotCached() {
+        var cache = cache(100);
+        cache.get(1, id -> Optional.empty());
+        assertThat(cache.get(1, id -> load("saved"))).contains("saved");
+        assertThat(cache.getEntryCount()).isEqualTo(1);
+    }
+
+    /**
+     * Загрузка прочитала прежнее значение, а пока она шла, запись изменили:
+     * прочитанное значение возвращается, но в кеш не попадает.
+     */
+    @Test
+    public void whenWriteDuringLoadThenLoadedValueNotCached() {
+        var cache = cache(100);
+        var loaded = cache.get(1, id -> {
+            cache.write(1, () -> true);
+            return load("old");
+        });
+        assertThat(loaded).contains("old");
+        assertThat(cache.get(1, id -> load("new"))).contains("new");
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void whenReadDuringWriteThenCacheBypassed() {
+        var cache = cache(100);
+        cache.get(1, id -> load("old"));
+        var readDuringWrite = cache.write(1, () -> cache.get(1, id -> load("new")));
+        assertThat(readDuringWrite).contains("new");
+        assertThat(cache.getEntryCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void whenTtlPassedThenReloaded() {
+        var cache = cache(100);
+        cache.get(1, id -> load("old"));
+        now.addAndGet(61_000_000_000L);
+        assertThat(cache.get(1, id -> load("new"))).contains("new");
+    }
+
+    @Test
+    public void whenOverBudgetThenLeastRecentlyReadEvicted() {
+        var cache = cache(10);
+        cache.get(1, id -> load("first"));
+        cache.get(2, id -> load("secnd"));
+        cache.get(1, id -> load("first"));
+        cache.get(3, id -> load("third"));
+        assertThat(cache.getUsedBytes()).isEqualTo(10);
+        assertThat(cache.get(1, id -> load("reloaded"))).contains("first");
+        assertThat(cache.get(2, id -> load("reloaded"))).contains("reloaded");
+    }
+}
@@ -0,0 +1,85 @@
+package ru.job4j.dreamjob.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.StreamUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OffHeapFileCacheTest {
+    @TempDir
+    Path directory;
+    private Path first;
+    private Path second;
+
+    @BeforeEach
+    public void initFiles() throws Exception {
+        first = Files.write(directory.resolve("first"), new byte[]{1, 2, 3, 4, 5, 6});
+        second = Files.write(directory.resolve("second"), new byte[]{7, 8, 9, 10, 11, 12});
+    }
+
+    private void request(OffHeapFileCache cache, Path path) {
+        if (cache.get(path.toString()).isEmpty()) {
+            cache.admit(path.toString(), 6, 0);
+        }
+    }
+
+    @Test
+    public void whenFileRequestedOnceThenNotCached() {
+        var cache = new OffHeapFileCache(100, 100);
+        request(cache, first);
+        assertThat(cache.get(first.toString())).isEmpty();
+        assertThat(cache.getEntryCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void whenFileRequestedTwiceThenContentServedFromCache() throws Exception {
+        var cache = new OffHeapFileCache(100, 100);
+        request(cache, first);
+        request(cache, first);
+        Files.delete(first);
+        var cached = cache.get(first.toString()).get();
+        try (var in = cached.toResource("first").getInputStream()) {
+            assertThat(StreamUtils.copyToByteArray(in)).containsExactly(1, 2, 3, 4, 5, 6);
+        }
+        assertThat(cache.getUsedBytes()).isEqualTo(6);
+    }
+
+    @Test
+    public void whenBudgetExceededThenLeastRecentlyUsedEvicted() {
+        var cache = new OffHeapFileCache(10, 10);
+        request(cache, first);
+        request(cache, first);
+        request(cache, second);
+        request(cache, second);
+        assertThat(cache.get(first.toString())).isEmpty();
+        assertThat(cache.get(second.toString())).isPresent();
+        assertThat(cache.getUsedBytes()).isEqualTo(6);
+    }
+
+    @Test
+    public void whenFileLargerThanEntryLimitThenNotCached() {
+        var cache = new OffHeapFileCache(100, 5);
+        request(cache, first);
+        request(cache, first);
+        assertThat(cache.get(first.toString())).isEmpty();
+    }
+
+    @Test
+    public void whenEvictThenFileAndItsThumbnailsRemoved() throws Exception {
+        var thumbnail = Files.write(directory.resolve("first-w320.jpg"), new byte[]{1, 2, 3, 4, 5, 6});
+        var cache = new OffHeapFileCache(100, 100);
+        for (var path : new Path[] {first, first, thumbnail, thumbnail, second, second}) {
+            request(cache, path);
+        }
+        cache.evict(first.toString());
+        assertThat(cache.get(first.toString())).isEmpty();
+        assertThat(cache.get(thumbnail.toString())).isEmpty();
+        assertThat(cache.get(second.toString())).isPresent();
+        assertThat(cache.getEntryCount()).isEqualTo(1);
+    }
+}
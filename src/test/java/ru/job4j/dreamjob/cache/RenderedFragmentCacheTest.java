@@ -0,0 +1,68 @@
+package ru.job4j.dreamjob.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RenderedFragmentCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final AtomicInteger renders = new AtomicInteger();
+
+    private String render(String html) {
+        renders.incrementAndGet();
+        return html;
+    }
+
+    @Test
+    public void whenSameParametersAndVersionThenRenderedOnce() {
+        var cache = new RenderedFragmentCache(100, 60, now::get);
+        assertThat(cache.get("list", "page=1", 0, () -> render("first"))).isEqualTo("first");
+        assertThat(cache.get("list", "page=1", 0, () -> render("other"))).isEqualTo("first");
+        assertThat(cache.get("list", "page=2", 0, () -> render("second"))).isEqualTo("second");
+        assertThat(renders.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void whenVersionChangedThenRenderedAgainAndOldVersionDropped() {
+        var cache = new RenderedFragmentCache(100, 60, now::get);
+        cache.get("list", "page=1", 1, () -> render("old"));
+        cache.get("list", "page=2", 1, () -> render("old"));
+        cache.get("other", "page=1", 1, () -> render("kept"));
+        assertThat(cache.get("list", "page=1", 2, () -> render("new"))).isEqualTo("new");
+        assertThat(cache.getEntryCount()).isEqualTo(2);
+        assertThat(cache.get("list", "page=1", 1, () -> render("late"))).isEqualTo("late");
+        assertThat(cache.getEntryCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void whenWriteInProgressThenNotCached() {
+        var cache = new RenderedFragmentCache(100, 60, now::get);
+        cache.get("list", "page=1", -1, () -> render("during write"));
+        assertThat(cache.get("list", "page=1", -1, () -> render("during write"))).isEqualTo("during write");
+        assertThat(renders.get()).isEqualTo(2);
+        assertThat(cache.getEntryCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void whenTtlPassedThenRenderedAgain() {
+        var cache = new RenderedFragmentCache(100, 60, now::get);
+        cache.get("list", "page=1", 0, () -> render("old"));
+        now.addAndGet(61_000_000_000L);
+        assertThat(cache.get("list", "page=1", 0, () -> render("new"))).isEqualTo("new");
+    }
+
+    @Test
+    public void whenOverBudgetThenLeastRecentlyUsedEvicted() {
+        var cache = new RenderedFragmentCache(20, 60, now::get);
+        cache.get("list", "page=1", 0, () -> render("first"));
+        cache.get("list", "page=2", 0, () -> render("secnd"));
+        cache.get("list", "page=3", 0, () -> render("third"));
+        assertThat(cache.getUsedBytes()).isEqualTo(20);
+        assertThat(cache.get("list", "page=1", 0, () -> render("again"))).isEqualTo("again");
+    }
+}
@@ -0,0 +1,229 @@
+package ru.job4j.dreamjob.controller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import ru.job4j.dreamjob.dto.UploadChunkDto;
+import ru.job4j.dreamjob.service.UploadService;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Заглушки потоков ведут себя как Tomcat: каждый третий вызов isReady возвращает false,
+ * и слушатель вызывается снова из другого потока.
+ */
+public class AsyncFileIoTest {
+    @TempDir
+    Path directory;
+    private AsyncFileIo asyncFileIo;
+    private ExecutorService container;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @BeforeEach
+    public void init() {
+        asyncFileIo = new AsyncFileIo(true, 0, 2, 10_000);
+        container = Executors.newSingleThreadExecutor();
+        request = new MockHttpServletRequest("GET", "/files/1");
+        request.setAsyncSupported(true);
+        response = new MockHttpServletResponse();
+    }
+
+    @AfterEach
+    public void close() {
+        asyncFileIo.close();
+        container.shutdownNow();
+    }
+
+    private static byte[] content(int size) {
+        var content = new byte[size];
+        new Random(1).nextBytes(content);
+        return content;
+    }
+
+    private void awaitCompletion() throws InterruptedException {
+        for (int i = 0; i < 500 && request.isAsyncStarted(); i++) {
+            Thread.sleep(10);
+        }
+        assertThat(request.isAsyncStarted()).isFalse();
+    }
+
+    @Test
+    public void whenSendThenRegionIsWrittenThroughSlowSocket() throws Exception {
+        var content = content(200_000);
+        var path = Files.write(directory.resolve("file"), content);
+        var out = new SlowOutputStream();
+        var wrapper = new HttpServletResponseWrapper(response) {
+            @Override
+            public ServletOutputStream getOutputStream() {
+                return out;
+            }
+        };
+
+        asyncFileIo.send(request, wrapper, path, 1000, 150_000);
+        awaitCompletion();
+
+        assertThat(out.bytes.toByteArray()).isEqualTo(Arrays.copyOfRange(content, 1000, 151_000));
+    }
+
+    @Test
+    public void whenReceiveThenChunkIsWrittenAtOffset() throws Exception {
+        var content = content(150_000);
+        var path = Files.write(directory.resolve("upload.part"), new byte[200_000]);
+        var chunk = new UploadChunkDto("id", 1, path, 50_000, content.length, 1L);
+        var uploadService = mock(UploadService.class);
+
+        asyncFileIo.receive(wrap(content), response, uploadService, chunk);
+        awaitCompletion();
+
+        assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_NO_CONTENT);
+        assertThat(Arrays.copyOfRange(Files.readAllBytes(path), 50_000, 200_000)).isEqualTo(content);
+        verify(uploadService).endChunk(chunk, true);
+    }
+
+    @Test
+    public void whenBodyLongerThanChunkThenBadRequest() throws Exception {
+        var path = Files.write(directory.resolve("upload.part"), new byte[1000]);
+        var chunk = new UploadChunkDto("id", 0, path, 0, 1000, 1L);
+        var uploadService = mock(UploadService.class);
+
+        asyncFileIo.receive(wrap(content(1500)), response, uploadService, chunk);
+        awaitCompletion();
+
+        assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_BAD_REQUEST);
+        verify(uploadService).endChunk(chunk, false);
+    }
+
+    private HttpServletRequestWrapper wrap(byte[] body) {
+        var in = new SlowInputStream(body);
+        return new HttpServletRequestWrapper(request) {
+            @Override
+            public ServletInputStream getInputStream() {
+                return in;
+            }
+        };
+    }
+
+    private class SlowOutputStream extends ServletOutputStream {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private WriteListener listener;
+        private int calls;
+
+        @Override
+        public synchronized boolean isReady() {
+            calls++;
+            if (calls % 3 == 0) {
+                container.submit(() -> {
+                    listener.onWritePossible();
+                    return null;
+                });
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            listener = writeListener;
+            container.submit(() -> {
+                listener.onWritePossible();
+                return null;
+            });
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            bytes.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            bytes.write(b, off, len);
+        }
+    }
+
+    private class SlowInputStream extends ServletInputStream {
+        private final byte[] body;
+        private ReadListener listener;
+        private int position;
+        private int calls;
+        private boolean allDataRead;
+
+        SlowInputStream(byte[] body) {
+            this.body = body;
+        }
+
+        @Override
+        public synchronized boolean isReady() {
+            if (position == body.length) {
+                if (!allDataRead) {
+                    allDataRead = true;
+                    container.submit(() -> {
+                        listener.onAllDataRead();
+                        return null;
+                    });
+                }
+                return false;
+            }
+            calls++;
+            if (calls % 3 == 0) {
+                container.submit(() -> {
+                    listener.onDataAvailable();
+                    return null;
+                });
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return position == body.length;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            listener = readListener;
+            container.submit(() -> {
+                listener.onDataAvailable();
+                return null;
+            });
+        }
+
+        @Override
+        public int read() {
+            return position < body.length ? body[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            if (position == body.length) {
+                return -1;
+            }
+            var count = Math.min(Math.min(len, 7000), body.length - position);
+            System.arraycopy(body, position, b, off, count);
+            position += count;
+            return count;
+        }
+    }
+}
@@ -6,16 +6,25 @@ import org.mockito.ArgumentCaptor;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.ui.ConcurrentModel;
 import org.springframework.web.multipart.MultipartFile;
-import ru.job4j.dreamjob.dto.FileDto;
+import ru.job4j.dreamjob.cache.RenderedFragmentCache;
+import ru.job4j.dreamjob.dto.FileStreamDto;
+import ru.job4j.dreamjob.dto.ListingFilterDto;
+import ru.job4j.dreamjob.dto.PageDto;
+import ru.job4j.dreamjob.dto.SearchPageDto;
 import ru.job4j.dreamjob.model.Candidate;
+import ru.job4j.dreamjob.model.CandidateSummary;
 import ru.job4j.dreamjob.model.City;
 import ru.job4j.dreamjob.service.CandidateService;
+import ru.job4j.dreamjob.model.File;
 import ru.job4j.dreamjob.service.CityService;
+import ru.job4j.dreamjob.service.FileService;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import static java.time.LocalDateTime.now;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.mockito.Mockito.*;
 
@@ -25,6 +34,10 @@ public class CandidateControllerTest {
 
     private CityService cityService;
 
+    private FileService fileService;
+
+    private FragmentRenderer fragmentRenderer;
+
     private CandidateController candidateController;
 
     private MultipartFile testFile;
@@ -33,23 +46,53 @@ public class CandidateControllerTest {
     public void initServices() {
         candidateService = mock(CandidateService.class);
         cityService = mock(CityService.class);
-        candidateController = new CandidateController(candidateService, cityService);
+        fileService = mock(FileService.class);
+        fragmentRenderer = mock(FragmentRenderer.class);
+        candidateController = new CandidateController(candidateService, cityService, fileService,
+                new RenderedFragmentCache(1024 * 1024, 60), fragmentRenderer);
         testFile = new MockMultipartFile("testFile.img", new byte[]{1, 2, 3});
     }
 
     @Test
     public void whenRequestCandidateListPageThenGetPageWithCandidates() {
-        var candidate1 = new Candidate(1, "test1", "desc1", 1, true, 2);
-        var candidate2 = new Candidate(2, "test2", "desc2", 3, false, 4);
+        var candidate1 = new CandidateSummary(1, "test1", now(), true);
+        var candidate2 = new CandidateSummary(2, "test2", now(), false);
         var expectedCandidates = List.of(candidate1, candidate2);
-        when(candidateService.findAll()).thenReturn(expectedCandidates);
+        var page = new PageDto<>(expectedCandidates, null, "next");
+        var filterCaptor = ArgumentCaptor.forClass(ListingFilterDto.class);
+        when(candidateService.findPage(filterCaptor.capture(), eq("after"), isNull())).thenReturn(page);
+        when(candidateService.countByCity(true)).thenReturn(Map.of(1, 5));
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<String, Object>> variablesCaptor = ArgumentCaptor.forClass(Map.class);
+        when(fragmentRenderer.render(eq("candidates/listing"), variablesCaptor.capture())).thenReturn("<table></table>");
 
         var model = new ConcurrentModel();
-        var view = candidateController.getAll(model);
-        var actualCandidates = model.getAttribute("candidates");
+        var view = candidateController.getAll(model, "after", null, 1, true);
+        candidateController.getAll(new ConcurrentModel(), "after", null, 1, true);
+        var variables = variablesCaptor.getValue();
 
         assertThat(view).isEqualTo("candidates/list");
-        assertThat(actualCandidates).isEqualTo(expectedCandidates);
+        assertThat(model.getAttribute("listing")).isEqualTo("<table></table>");
+        assertThat(variables.get("candidates")).isEqualTo(expectedCandidates);
+        assertThat(variables.get("page")).isEqualTo(page);
+        assertThat(variables.get("cityCounts")).isEqualTo(Map.of(1, 5));
+        assertThat(filterCaptor.getValue().getCityId()).isEqualTo(1);
+        assertThat(filterCaptor.getValue().getVisible()).isTrue();
+        verify(candidateService, times(1)).findPage(any(), any(), any());
+    }
+
+    @Test
+    public void whenSearchCandidateThenGetSearchPage() {
+        var expectedCandidates = List.of(new CandidateSummary(1, "test1", now(), true));
+        var page = new SearchPageDto<>(expectedCandidates, "test", null, 2);
+        when(candidateService.search("test", 1)).thenReturn(page);
+
+        var model = new ConcurrentModel();
+        var view = candidateController.search(model, "test", 1);
+
+        assertThat(view).isEqualTo("candidates/search");
+        assertThat(model.getAttribute("candidates")).isEqualTo(expectedCandidates);
+        assertThat(model.getAttribute("page")).isEqualTo(page);
     }
 
     @Test
@@ -70,9 +113,9 @@ public class CandidateControllerTest {
     @Test
     public void whenPostCandidateWithFileThenSameDataAndRedirectToCandidatesPage() throws Exception {
         var candidate = new Candidate(1, "test1", "desc1", 1, true, 2);
-        var fileDto = new FileDto(testFile.getOriginalFilename(), testFile.getBytes());
+        var fileDto = new FileStreamDto(testFile.getOriginalFilename(), testFile.getSize(), testFile);
         var candidateArgumentCaptor = ArgumentCaptor.forClass(Candidate.class);
-        var fileDtoArgumentCaptor = ArgumentCaptor.forClass(FileDto.class);
+        var fileDtoArgumentCaptor = ArgumentCaptor.forClass(FileStreamDto.class);
         when(candidateService.save(candidateArgumentCaptor.capture(),
                 fileDtoArgumentCaptor.capture())).thenReturn(candidate);
 
@@ -114,6 +157,18 @@ public class CandidateControllerTest {
         assertThat(city.getId()).isEqualTo(candidate.getCityId());
     }
 
+    @Test
+    public void whenGetByIdThenPageGetsContentHashOfImage() {
+        var candidate = new Candidate(1, "test1", "desc1", 1, true, 2);
+        when(candidateService.findById(1)).thenReturn(Optional.of(candidate));
+        when(fileService.findById(2)).thenReturn(Optional.of(new File("test", "test", "abc")));
+
+        var model = new ConcurrentModel();
+        candidateController.getById(model, candidate.getId());
+
+        assertThat(model.getAttribute("fileHash")).isEqualTo("abc");
+    }
+
     @Test
     public void whenSomeExceptionThrownThenFindById() {
         var expectedException = new RuntimeException("Кандидат с указанным идентификатором не найден");
@@ -130,9 +185,9 @@ public class CandidateControllerTest {
     @Test
     public void whenCandidateUpdateWithFileThenSameDataAndRedirectToCandidatesPage() throws IOException {
         var candidate = new Candidate(1, "test1", "desc1", 1, true, 2);
-        var fileDto = new FileDto(testFile.getOriginalFilename(), testFile.getBytes());
+        var fileDto = new FileStreamDto(testFile.getOriginalFilename(), testFile.getSize(), testFile);
         var candidateArgumentCaptor = ArgumentCaptor.forClass(Candidate.class);
-        var fileDtoArgumentCaptor = ArgumentCaptor.forClass(FileDto.class);
+        var fileDtoArgumentCaptor = ArgumentCaptor.forClass(FileStreamDto.class);
         when(candidateService.update(candidateArgumentCaptor.capture(),
                 fileDtoArgumentCaptor.capture())).thenReturn(true);
 
@@ -0,0 +1,123 @@
+package ru.job4j.dreamjob.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+import ru.job4j.dreamjob.model.Candidate;
+import ru.job4j.dreamjob.model.Vacancy;
+import ru.job4j.dreamjob.service.CandidateService;
+import ru.job4j.dreamjob.service.VacancyService;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+public class ExportControllerTest {
+
+    private VacancyService vacancyService;
+
+    private CandidateService candidateService;
+
+    private ExportController exportController;
+
+    @BeforeEach
+    public void initServices() {
+        vacancyService = mock(VacancyService.class);
+        candidateService = mock(CandidateService.class);
+        exportController = new ExportController(vacancyService, candidateService, 1, 60, 30);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void whenCsvThenFilteredRowsWritten() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<Vacancy> action = invocation.getArgument(1);
+            action.accept(new Vacancy(1, "Java, Senior", "d", true, 2, 0));
+            action.accept(new Vacancy(2, "Go", "d", true, 2, 5));
+            return null;
+        }).when(vacancyService).exportAll(any(), any());
+        var response = new MockHttpServletResponse();
+
+        exportController.exportVacancies("csv", false, 2, true, response);
+
+        verify(vacancyService).exportAll(argThat(filter -> filter.getCityId() == 2 && filter.getVisible()), any());
+        assertThat(response.getContentType()).isEqualTo("text/csv;charset=UTF-8");
+        assertThat(response.getHeader("Content-Disposition")).isEqualTo("attachment; filename=\"vacancies.csv\"");
+        var lines = response.getContentAsString(StandardCharsets.UTF_8).split("\r\n");
+        assertThat(lines).hasSize(3);
+        assertThat(lines[0]).isEqualTo("id,title,description,creationDate,cityId,visible,fileId");
+        assertThat(lines[1]).startsWith("1,\"Java, Senior\",d,").endsWith(",2,true,");
+        assertThat(lines[2]).endsWith(",2,true,5");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void whenGzipThenCompressedNdjson() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<Candidate> action = invocation.getArgument(1);
+            action.accept(new Candidate(1, "Иван", "d", 1, true, 0));
+            return null;
+        }).when(candidateService).exportAll(any(), any());
+        var response = new MockHttpServletResponse();
+
+        exportController.exportCandidates("ndjson", true, null, null, response);
+
+        assertThat(response.getContentType()).isEqualTo("application/gzip");
+        assertThat(response.getHeader("Content-Disposition")).contains("candidates.ndjson.gz");
+        try (var in = new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+            var text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            assertThat(text).startsWith("{\"id\":1,\"name\":\"Иван\"").endsWith("\"fileId\":null}\n");
+        }
+    }
+
+    @Test
+    public void whenUnknownFormatThenBadRequest() throws Exception {
+        var response = new MockHttpServletResponse();
+
+        exportController.exportVacancies("xml", false, null, null, response);
+
+        assertThat(response.getStatus()).isEqualTo(400);
+        verify(vacancyService, never()).exportAll(any(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void whenExportRunningThenNextGetsServiceUnavailable() throws Exception {
+        var second = new MockHttpServletResponse();
+        doAnswer(invocation -> {
+            exportController.exportCandidates("csv", false, null, null, second);
+            return null;
+        }).when(vacancyService).exportAll(any(), any());
+
+        exportController.exportVacancies("csv", false, null, null, new MockHttpServletResponse());
+
+        assertThat(second.getStatus()).isEqualTo(503);
+        assertThat(second.getHeader("Retry-After")).isEqualTo("30");
+        verify(candidateService, never()).exportAll(any(), any());
+        exportController.exportCandidates("csv", false, null, null, new MockHttpServletResponse());
+        verify(candidateService).exportAll(any(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void whenTimeoutPassedThenExportAbortedAndSlotReleased() throws Exception {
+        var timedOut = new ExportController(vacancyService, candidateService, 1, 0, 30);
+        doAnswer(invocation -> {
+            Consumer<Vacancy> action = invocation.getArgument(1);
+            action.accept(new Vacancy(1, "Java", "d", true, 1, 0));
+            return null;
+        }).when(vacancyService).exportAll(any(), any());
+
+        assertThatThrownBy(() -> timedOut.exportVacancies("csv", false, null, null, new MockHttpServletResponse()))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> timedOut.exportVacancies("csv", false, null, null, new MockHttpServletResponse()))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -2,33 +2,61 @@ package ru.job4j.dreamjob.controller;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import ru.job4j.dreamjob.dto.FileDto;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import ru.job4j.dreamjob.dto.FileResourceDto;
 import ru.job4j.dreamjob.service.FileService;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Optional;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.mockito.Mockito.*;
 
 public class FileControllerTest {
+    private static final long LAST_MODIFIED = 1_672_531_200_000L;
     private FileService fileService;
+    private AsyncFileIo asyncFileIo;
     private FileController fileController;
-    private FileDto fileDto;
+    private FileResourceDto fileResourceDto;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
 
     @BeforeEach
     public void initService() {
         fileService = mock(FileService.class);
-        fileController = new FileController(fileService);
-        fileDto = new FileDto("file", new byte[]{1, 2, 3});
+        asyncFileIo = mock(AsyncFileIo.class);
+        fileController = new FileController(fileService, asyncFileIo);
+        fileResourceDto = new FileResourceDto("file.png", MediaType.IMAGE_PNG, 3, LAST_MODIFIED, "abc",
+                new ByteArrayResource(new byte[]{1, 2, 3}));
+        request = new MockHttpServletRequest("GET", "/files/1");
+        response = new MockHttpServletResponse();
     }
 
     @Test
-    public void whenRequestGetFileByIdThenReturnResponseEntityStatusOk() {
-        when(fileService.getFileById(anyInt())).thenReturn(Optional.of(fileDto));
-        var expectedResponseEntity = ResponseEntity.ok(fileDto.getContent());
+    public void whenRequestGetFileByIdThenReturnResponseEntityStatusOk() throws Exception {
+        when(fileService.getFileResourceById(anyInt())).thenReturn(Optional.of(fileResourceDto));
+        var expectedResponseEntity = ResponseEntity.ok()
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .cacheControl(CacheControl.noCache())
+                .lastModified(LAST_MODIFIED)
+                .eTag("\"abc\"")
+                .contentType(MediaType.IMAGE_PNG)
+                .contentLength(3)
+                .body(fileResourceDto.getResource());
 
-        var actualResponseEntity = fileController.getById(anyInt());
+        var actualResponseEntity = fileController.getById(1, null, request, response);
 
         assertThat(actualResponseEntity)
                 .usingRecursiveComparison()
@@ -36,14 +64,307 @@ public class FileControllerTest {
     }
 
     @Test
-    public void whenRequestGetFileByIdThenReturnResponseEntityNotFound() {
-        when(fileService.getFileById(anyInt())).thenReturn(Optional.empty());
+    public void whenRequestGetFileByIdThenReturnResponseEntityNotFound() throws Exception {
+        when(fileService.getFileResourceById(anyInt())).thenReturn(Optional.empty());
         var expectedResponseEntity = ResponseEntity.notFound().build();
 
-        var actualResponseEntity = fileController.getById(anyInt());
+        var actualResponseEntity = fileController.getById(1, null, request, response);
 
         assertThat(actualResponseEntity)
                 .usingRecursiveComparison()
                 .isEqualTo(expectedResponseEntity);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void whenSendfileSupportedThenFileIsPassedToContainerWithoutBody() throws Exception {
+        var file = new File("big.png");
+        var bigFile = new FileResourceDto("big.png", MediaType.IMAGE_PNG, 1024 * 1024, LAST_MODIFIED, null,
+                new FileSystemResource(file));
+        when(fileService.getFileResourceById(anyInt())).thenReturn(Optional.of(bigFile));
+        request.setAttribute(FileController.SENDFILE_SUPPORT, true);
+
+        var actualResponseEntity = fileController.getById(1, null, request, response);
+
+        assertThat(actualResponseEntity.getBody()).isNull();
+        assertThat(actualResponseEntity.getHeaders().getContentLength()).isEqualTo(1024 * 1024);
+        assertThat(request.getAttribute(FileController.SENDFILE_FILENAME)).isEqualTo(file.getAbsolutePath());
+        assertThat(request.getAttribute(FileController.SENDFILE_START)).isEqualTo(0L);
+        assertThat(request.getAttribute(FileController.SENDFILE_END)).isEqualTo(1024L * 1024);
+    }
+
+    @Test
+    public void whenSendfileSupportedButFileIsSmallThenBodyIsStreamed() throws Exception {
+        var smallFile = new FileResourceDto("small.png", MediaType.IMAGE_PNG, 3, LAST_MODIFIED, null,
+                new FileSystemResource(new File("small.png")));
+        when(fileService.getFileResourceById(anyInt())).thenReturn(Optional.of(smallFile));
+        request.setAttribute(FileController.SENDFILE_SUPPORT, true);
+
+        var actualResponseEntity = fileController.getById(1, null, request, response);
+
+        assertThat(actualResponseEntity.getBody()).isEqualTo(smallFile.getResource());
+        assertThat(request.getAttribute(FileController.SENDFILE_FILENAME)).isNull();
+    }
+
+    @Test
+    public void whenSendfileUnsupportedThenLargeFileIsSentAsync() throws Exception {
+        var file = new File("big.png");
+        var bigFile = new FileResourceDto("big.png", MediaType.IMAGE_PNG, 1024 * 1024, LAST_MODIFIED, "abc",
+                new FileSystemResource(file));
+        when(fileService.getFileResourceById(anyInt())).thenReturn(Optional.of(bigFile));
+        when(asyncFileIo.canTransfer(request, 1024 * 1024)).thenReturn(true);
+
+        var actualResponseEntity = fileController.getById(1, null, request, response);
+
+        assertThat(actualResponseEntity).isNull();
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo("\"abc\"");
+        assertThat(response.getHeader(HttpHeaders.CONTENT_LENGTH)).isEqualTo(String.valueOf(1024 * 1024));
+        verify(asyncFileIo).send(request, response, file.toPath(), 0, 1024 * 1024);
+    }
+
+    @Test
+    public void whenRangeOfLargeFileThenPartIsSentAsync(@TempDir Path directory) throws Exception {
+        var file = Files.write(directory.resolve("big.png"), new byte[1024 * 1024]).toFile();
+        var bigFile = new FileResourceDto("big.png", MediaType.IMAGE_PNG, 1024 * 1024, LAST_MODIFIED, "abc",
+                new FileSystemResource(file));
+        when(fileService.getFileResourceById(anyInt())).thenReturn(Optional.of(bigFile));
+        when(asyncFileIo.canTransfer(request, 1024 * 1024 - 100)).thenReturn(true);
+        request.addHeader(HttpHeaders.RANGE, "bytes=100-");
+
+        var actualResponseEntity = fileController.getById(1, null, request, response);
+
+        assertThat(actualResponseEntity).isNull();
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.PARTIAL_CONTENT.value());
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 100-1048575/1048576");
+        verify(asyncFileIo).send(request, response, file.toPath(), 100, 1024 * 1024 - 100);
+    }
+
+    @Test
+    public void whenRequestSingleRangeThenWritePartialContent() throws Exception {
+        when(fileService.getFileResourceById(anyInt())).thenReturn(Optional.of(fileResourceDto));
+        request.addHeader(HttpHeaders.RANGE, "bytes=1-");
+
+        var actualResponseEntity = fileController.getById(1, null, request, response);
+
+        assertThat(actualResponseEntity).isNull();
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.PARTIAL_CONTENT.value());
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 1-2/3");
+        assertThat(response.getContentType()).isEqualTo(MediaType.IMAGE_PNG_VALUE);
+        assertThat(response.getContentAsByteArray()).isEqualTo(new byte[]{2, 3});
+    }
+
+    @Test
+    public void whenRequestSeveralRangesThenWriteMultipartByteranges() throws Exception {
+        var content = new byte[100];
+        var file = new FileResourceDto("file.png", MediaType.IMAGE_PNG, content.length, LAST_MODIFIED, null,
+                new ByteArrayResource(content));
+        when(fileService.getFileResourceById(anyInt())).thenReturn(Optional.of(file));
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-9,50-59");
+
+        fileController.getById(1, null, request, response);
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.PARTIAL_CONTENT.value());
+        assertThat(response.getContentType()).startsWith("multipart/byteranges");
+        assertThat(response.getContentAsString()).contains("Content-Range: bytes 0-9/100");
+        assertThat(response.getContentAsString()).contains("Content-Range: bytes 50-59/100");
+    }
+
+    @Test
+    public void whenRangeOutsideOfFileThenRequestedRangeNotSatisfiable() throws Exception {
+        when(fileService.getFileResourceById(anyInt())).thenReturn(Optional.of(fileResourceDto));
+        request.addHeader(HttpHeaders.RANGE, "bytes=10-20");
+        var expectedResponseEntity = ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                .header(HttpHeaders.CONTENT_RANGE, "bytes */3")
+                .build();
+
+        var actualResponseEntity = fileController.getById(1, null, request, response);
+
+        assertThat(actualResponseEntity)
+                .usingRecursiveComparison()
+                .isEqualTo(expectedResponseEntity);
+    }
+
+    @Test
+    public void whenIfRangeDoesNotMatchThenReturnWholeFile() throws Exception {
+        when(fileService.getFileResourceById(anyInt())).thenReturn(Optional.of(fileResourceDto));
+        request.addHeader(HttpHeaders.RANGE, "bytes=1-");
+        request.addHeader(HttpHeaders.IF_RANGE, "Sun, 01 Jan 2023 00:00:01 GMT");
+
+        var actualResponseEntity = fileController.getById(1, null, request, response);
+
+        assertThat(actualResponseEntity.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(actualResponseEntity.getBody()).isEqualTo(fileResourceDto.getResource());
+    }
+
+    @Test
+    public void whenIfRangeMatchesThenReturnPartialContent() throws Exception {
+        when(fileService.getFileResourceById(anyInt())).thenReturn(Optional.of(fileResourceDto));
+        request.addHeader(HttpHeaders.RANGE, "bytes=-1");
+        request.addHeader(HttpHeaders.IF_RANGE, "Sun, 01 Jan 2023 00:00:00 GMT");
+
+        fileController.getById(1, null, request, response);
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.PARTIAL_CONTENT.value());
+        assertThat(response.getContentAsByteArray()).isEqualTo(new byte[]{3});
+    }
+
+    @Test
+    public void whenSendfileSupportedThenOnlyRequestedWindowIsPassedToContainer() throws Exception {
+        var file = new File("big.png");
+        var bigFile = new FileResourceDto("big.png", MediaType.IMAGE_PNG, 1024 * 1024, LAST_MODIFIED, null,
+                new FileSystemResource(file) {
+                    @Override
+                    public long contentLength() {
+                        return 1024 * 1024;
+                    }
+                });
+        when(fileService.getFileResourceById(anyInt())).thenReturn(Optional.of(bigFile));
+        request.setAttribute(FileController.SENDFILE_SUPPORT, true);
+        request.addHeader(HttpHeaders.RANGE, "bytes=65536-");
+
+        var actualResponseEntity = fileController.getById(1, null, request, response);
+
+        assertThat(actualResponseEntity.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(actualResponseEntity.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE))
+                .isEqualTo("bytes 65536-1048575/1048576");
+        assertThat(request.getAttribute(FileController.SENDFILE_START)).isEqualTo(65536L);
+        assertThat(request.getAttribute(FileController.SENDFILE_END)).isEqualTo(1024L * 1024);
+    }
+
+    @Test
+    public void whenIfNoneMatchEqualsETagThenNotModifiedWithoutBody() throws Exception {
+        when(fileService.getFileResourceById(anyInt())).thenReturn(Optional.of(fileResourceDto));
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\", W/\"abc\"");
+
+        var actualResponseEntity = fileController.getById(1, null, request, response);
+
+        assertThat(actualResponseEntity.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(actualResponseEntity.getHeaders().getETag()).isEqualTo("\"abc\"");
+        assertThat(actualResponseEntity.getBody()).isNull();
+    }
+
+    @Test
+    public void whenIfNoneMatchDiffersThenReturnFile() throws Exception {
+        when(fileService.getFileResourceById(anyInt())).thenReturn(Optional.of(fileResourceDto));
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\"");
+
+        var actualResponseEntity = fileController.getById(1, null, request, response);
+
+        assertThat(actualResponseEntity.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(actualResponseEntity.getBody()).isEqualTo(fileResourceDto.getResource());
+    }
+
+    @Test
+    public void whenRequestFileByHashThenCachedAsImmutable() throws Exception {
+        when(fileService.getFileResourceByHash("abc")).thenReturn(Optional.of(fileResourceDto));
+
+        var actualResponseEntity = fileController.getByHash("abc", null, request, response);
+
+        assertThat(actualResponseEntity.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(actualResponseEntity.getHeaders().getCacheControl()).isEqualTo("max-age=31536000, immutable");
+        assertThat(actualResponseEntity.getHeaders().getETag()).isEqualTo("\"abc\"");
+    }
+
+    @Test
+    public void whenRequestReadyThumbnailByHashThenCachedAsImmutable() throws Exception {
+        var thumbnail = new FileResourceDto("file.png-w320.jpg", MediaType.IMAGE_JPEG, 2, LAST_MODIFIED,
+                "abc-w320", new ByteArrayResource(new byte[]{1, 2}), true);
+        when(fileService.getFileResourceByHash("abc", 320)).thenReturn(Optional.of(thumbnail));
+
+        var actualResponseEntity = fileController.getByHash("abc", 320, request, response);
+
+        assertThat(actualResponseEntity.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(actualResponseEntity.getHeaders().getCacheControl()).isEqualTo("max-age=31536000, immutable");
+        assertThat(actualResponseEntity.getHeaders().getETag()).isEqualTo("\"abc-w320\"");
+        assertThat(actualResponseEntity.getHeaders().getContentType()).isEqualTo(MediaType.IMAGE_JPEG);
+    }
+
+    @Test
+    public void whenThumbnailIsNotReadyThenOriginalMustBeRevalidated() throws Exception {
+        when(fileService.getFileResourceByHash("abc", 320)).thenReturn(Optional.of(fileResourceDto));
+
+        var actualResponseEntity = fileController.getByHash("abc", 320, request, response);
+
+        assertThat(actualResponseEntity.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(actualResponseEntity.getHeaders().getCacheControl()).isEqualTo("no-cache");
+        assertThat(actualResponseEntity.getBody()).isEqualTo(fileResourceDto.getResource());
+    }
+
+    @Test
+    public void whenRequestFileByIdWithSizeThenAskServiceForThumbnail() throws Exception {
+        when(fileService.getFileResourceById(1, 640)).thenReturn(Optional.of(fileResourceDto));
+
+        var actualResponseEntity = fileController.getById(1, 640, request, response);
+
+        assertThat(actualResponseEntity.getStatusCode()).isEqualTo(HttpStatus.OK);
+        verify(fileService, never()).getFileResourceById(1);
+    }
+
+    @Test
+    public void whenRequestFileByUnknownHashThenNotFound() throws Exception {
+        when(fileService.getFileResourceByHash(anyString())).thenReturn(Optional.empty());
+
+        var actualResponseEntity = fileController.getByHash("abc", null, request, response);
+
+        assertThat(actualResponseEntity.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    public void whenIfRangeEqualsETagThenReturnPartialContent() throws Exception {
+        when(fileService.getFileResourceById(anyInt())).thenReturn(Optional.of(fileResourceDto));
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-0");
+        request.addHeader(HttpHeaders.IF_RANGE, "\"abc\"");
+
+        fileController.getById(1, null, request, response);
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.PARTIAL_CONTENT.value());
+        assertThat(response.getContentAsByteArray()).isEqualTo(new byte[]{1});
+    }
+
+    @Test
+    public void whenIfRangeIsWeakETagThenReturnWholeFile() throws Exception {
+        when(fileService.getFileResourceById(anyInt())).thenReturn(Optional.of(fileResourceDto));
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-0");
+        request.addHeader(HttpHeaders.IF_RANGE, "W/\"abc\"");
+
+        var actualResponseEntity = fileController.getById(1, null, request, response);
+
+        assertThat(actualResponseEntity.getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    public void whenAcceptEncodingGzipThenReturnCompressedVariant() throws Exception {
+        var compressed = new FileResourceDto("resume.txt", MediaType.TEXT_PLAIN, 2, LAST_MODIFIED, "abc-gzip",
+                new ByteArrayResource(new byte[]{1, 2}), false, "gzip", true);
+        when(fileService.getFileResourceById(1, List.of("gzip", "deflate"))).thenReturn(Optional.of(compressed));
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+
+        var actualResponseEntity = fileController.getById(1, null, request, response);
+
+        assertThat(actualResponseEntity.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(actualResponseEntity.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(actualResponseEntity.getHeaders().getVary()).isEqualTo(List.of(HttpHeaders.ACCEPT_ENCODING));
+        assertThat(actualResponseEntity.getHeaders().getETag()).isEqualTo("\"abc-gzip\"");
+        assertThat(actualResponseEntity.getHeaders().getContentLength()).isEqualTo(2);
+        verify(fileService, never()).getFileResourceById(1);
+    }
+
+    @Test
+    public void whenFileHasVariantsThenOriginalVariesByAcceptEncoding() throws Exception {
+        var original = new FileResourceDto("resume.txt", MediaType.TEXT_PLAIN, 3, LAST_MODIFIED, "abc",
+                new ByteArrayResource(new byte[]{1, 2, 3}), false, null, true);
+        when(fileService.getFileResourceByHash("abc")).thenReturn(Optional.of(original));
+
+        var actualResponseEntity = fileController.getByHash("abc", null, request, response);
+
+        assertThat(actualResponseEntity.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)).isFalse();
+        assertThat(actualResponseEntity.getHeaders().getVary()).isEqualTo(List.of(HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    @Test
+    public void whenParseAcceptEncodingThenOrderedByWeightWithoutRejected() {
+        assertThat(FileController.getAcceptedEncodings("deflate;q=0.5, gzip, br;q=0, identity, *;q=0.1"))
+                .isEqualTo(List.of("gzip", "deflate", "*"));
+        assertThat(FileController.getAcceptedEncodings(null)).isEqualTo(List.of());
+    }
+}
@@ -0,0 +1,76 @@
+package ru.job4j.dreamjob.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import ru.job4j.dreamjob.dto.ImportReportDto;
+import ru.job4j.dreamjob.importer.RecordReader;
+import ru.job4j.dreamjob.service.CandidateService;
+import ru.job4j.dreamjob.service.VacancyService;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class ImportControllerTest {
+
+    private VacancyService vacancyService;
+
+    private CandidateService candidateService;
+
+    private ImportController importController;
+
+    @BeforeEach
+    public void initServices() {
+        vacancyService = mock(VacancyService.class);
+        candidateService = mock(CandidateService.class);
+        importController = new ImportController(vacancyService, candidateService);
+    }
+
+    @Test
+    public void whenCsvThenRecordsReadFromBody() throws Exception {
+        var request = new MockHttpServletRequest("POST", "/import/candidates");
+        request.setContentType("text/csv; charset=UTF-8");
+        request.setContent("name,cityId\nИван,1\n".getBytes(StandardCharsets.UTF_8));
+        var report = new ImportReportDto(1, 0, true, List.of());
+        when(candidateService.importAll(any())).thenAnswer(invocation -> {
+            RecordReader reader = invocation.getArgument(0);
+            assertThat(reader.next()).isEqualTo(Map.of("name", "Иван", "cityId", "1"));
+            return report;
+        });
+
+        var response = importController.importCandidates(request);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).isEqualTo(report);
+    }
+
+    @Test
+    public void whenUnknownContentTypeThenUnsupportedMediaType() throws Exception {
+        var request = new MockHttpServletRequest("POST", "/import/vacancies");
+        request.setContentType("application/json");
+        request.setContent("[]".getBytes(StandardCharsets.UTF_8));
+
+        var response = importController.importVacancies(request);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+        verify(vacancyService, never()).importAll(any());
+    }
+
+    @Test
+    public void whenUnknownCharsetThenUnsupportedMediaType() throws Exception {
+        var request = new MockHttpServletRequest("POST", "/import/vacancies");
+        request.setContentType("text/csv; charset=no-such-charset");
+        request.setContent("title\n".getBytes(StandardCharsets.UTF_8));
+
+        var response = importController.importVacancies(request);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+        verify(vacancyService, never()).importAll(any());
+    }
+}
@@ -0,0 +1,124 @@
+package ru.job4j.dreamjob.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import ru.job4j.dreamjob.dto.UploadChunkDto;
+import ru.job4j.dreamjob.dto.UploadStatusDto;
+import ru.job4j.dreamjob.model.File;
+import ru.job4j.dreamjob.service.CandidateService;
+import ru.job4j.dreamjob.service.UploadService;
+import ru.job4j.dreamjob.service.VacancyService;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class UploadControllerTest {
+
+    private UploadService uploadService;
+
+    private CandidateService candidateService;
+
+    private VacancyService vacancyService;
+
+    private AsyncFileIo asyncFileIo;
+
+    private UploadController uploadController;
+
+    @BeforeEach
+    public void initServices() {
+        uploadService = mock(UploadService.class);
+        candidateService = mock(CandidateService.class);
+        vacancyService = mock(VacancyService.class);
+        asyncFileIo = mock(AsyncFileIo.class);
+        uploadController = new UploadController(uploadService, candidateService, vacancyService, asyncFileIo);
+    }
+
+    @Test
+    public void whenCreateThenCreatedWithLocation() {
+        var status = new UploadStatusDto("id-1", "video.mp4", 10, 4, List.of());
+        when(uploadService.create("video.mp4", 10)).thenReturn(status);
+
+        var response = uploadController.create("video.mp4", 10);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(response.getHeaders().getLocation()).hasToString("/uploads/id-1");
+        assertThat(response.getBody()).isEqualTo(status);
+    }
+
+    @Test
+    public void whenPutChunkThenBodyLengthPassedToService() throws Exception {
+        var request = new MockHttpServletRequest("PUT", "/uploads/id-1/chunks/0");
+        request.setContent(new byte[]{1, 2, 3, 4});
+        when(uploadService.writeChunk(eq("id-1"), eq(0), eq(4L), any())).thenReturn(true);
+
+        var response = uploadController.putChunk("id-1", 0, request, new MockHttpServletResponse());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+    }
+
+    @Test
+    public void whenPutChunkOfUnknownSessionThenNotFound() throws Exception {
+        var request = new MockHttpServletRequest("PUT", "/uploads/id-1/chunks/0");
+        when(uploadService.writeChunk(any(), anyInt(), anyLong(), any())).thenReturn(false);
+
+        var response = uploadController.putChunk("id-1", 0, request, new MockHttpServletResponse());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    public void whenLargeChunkThenReceivedAsync() throws Exception {
+        var request = new MockHttpServletRequest("PUT", "/uploads/id-1/chunks/0");
+        request.setContent(new byte[1024]);
+        var response = new MockHttpServletResponse();
+        var chunk = new UploadChunkDto("id-1", 0, Path.of("id-1.part"), 0, 1024, 1L);
+        when(asyncFileIo.canTransfer(request, 1024)).thenReturn(true);
+        when(uploadService.beginChunk("id-1", 0, 1024)).thenReturn(Optional.of(chunk));
+
+        var actualResponse = uploadController.putChunk("id-1", 0, request, response);
+
+        assertThat(actualResponse).isNull();
+        verify(asyncFileIo).receive(request, response, uploadService, chunk);
+        verify(uploadService, never()).writeChunk(any(), anyInt(), anyLong(), any());
+    }
+
+    @Test
+    public void whenCommitThenFileLinkedToCandidate() {
+        var file = new File("video.mp4", "path", "hash");
+        file.setId(7);
+        when(uploadService.commit("id-1")).thenReturn(Optional.of(file));
+        when(candidateService.replaceFile(3, file)).thenReturn(true);
+
+        var response = uploadController.commit("id-1", 3, null);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).isEqualTo(Map.of("fileId", 7, "contentHash", "hash"));
+        verify(vacancyService, never()).replaceFile(anyInt(), any());
+    }
+
+    @Test
+    public void whenCommitIncompleteUploadThenConflict() {
+        when(uploadService.commit("id-1")).thenThrow(new IllegalStateException("Получено 1 частей из 3"));
+
+        var response = uploadController.commit("id-1", null, 5);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+    }
+
+    @Test
+    public void whenCommitWithoutTargetThenBadRequest() {
+        var response = uploadController.commit("id-1", null, null);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        verifyNoInteractions(uploadService);
+    }
+}
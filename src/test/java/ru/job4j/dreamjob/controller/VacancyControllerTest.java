@@ -6,16 +6,25 @@ import org.mockito.ArgumentCaptor;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.ui.ConcurrentModel;
 import org.springframework.web.multipart.MultipartFile;
-import ru.job4j.dreamjob.dto.FileDto;
+import ru.job4j.dreamjob.cache.RenderedFragmentCache;
+import ru.job4j.dreamjob.dto.FileStreamDto;
+import ru.job4j.dreamjob.dto.ListingFilterDto;
+import ru.job4j.dreamjob.dto.PageDto;
+import ru.job4j.dreamjob.dto.SearchPageDto;
 import ru.job4j.dreamjob.model.City;
+import ru.job4j.dreamjob.model.File;
 import ru.job4j.dreamjob.model.Vacancy;
+import ru.job4j.dreamjob.model.VacancySummary;
 import ru.job4j.dreamjob.service.CityService;
+import ru.job4j.dreamjob.service.FileService;
 import ru.job4j.dreamjob.service.VacancyService;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import static java.time.LocalDateTime.now;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.mockito.Mockito.*;
 
@@ -25,6 +34,10 @@ public class VacancyControllerTest {
 
     private CityService cityService;
 
+    private FileService fileService;
+
+    private FragmentRenderer fragmentRenderer;
+
     private VacancyController vacancyController;
 
     private MultipartFile testFile;
@@ -41,7 +54,10 @@ public class VacancyControllerTest {
     public void initServices() {
         vacancyService = mock(VacancyService.class);
         cityService = mock(CityService.class);
-        vacancyController = new VacancyController(vacancyService, cityService);
+        fileService = mock(FileService.class);
+        fragmentRenderer = mock(FragmentRenderer.class);
+        vacancyController = new VacancyController(vacancyService, cityService, fileService,
+                new RenderedFragmentCache(1024 * 1024, 60), fragmentRenderer);
         testFile = new MockMultipartFile("testFile.img", new byte[]{1, 2, 3});
     }
 
@@ -57,17 +73,44 @@ public class VacancyControllerTest {
      */
     @Test
     public void whenRequestVacancyListPageThenGetPageWithVacancies() {
-        var vacancy1 = new Vacancy(1, "test1", "desc1", true, 1, 2);
-        var vacancy2 = new Vacancy(2, "test2", "desc2", false, 3, 4);
+        var vacancy1 = new VacancySummary(1, "test1", now(), true);
+        var vacancy2 = new VacancySummary(2, "test2", now(), false);
         var expectedVacancies = List.of(vacancy1, vacancy2);
-        when(vacancyService.findAll()).thenReturn(expectedVacancies);
+        var page = new PageDto<>(expectedVacancies, null, "next");
+        var filterCaptor = ArgumentCaptor.forClass(ListingFilterDto.class);
+        when(vacancyService.findPage(filterCaptor.capture(), eq("after"), isNull())).thenReturn(page);
+        when(vacancyService.countByCity(true)).thenReturn(Map.of(1, 5));
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<String, Object>> variablesCaptor = ArgumentCaptor.forClass(Map.class);
+        when(fragmentRenderer.render(eq("vacancies/listing"), variablesCaptor.capture())).thenReturn("<table></table>");
 
         var model = new ConcurrentModel();
-        var view = vacancyController.getAll(model);
-        var actualVacancies = model.getAttribute("vacancies");
+        var view = vacancyController.getAll(model, "after", null, 1, true);
+        vacancyController.getAll(new ConcurrentModel(), "after", null, 1, true);
+        var variables = variablesCaptor.getValue();
 
         assertThat(view).isEqualTo("vacancies/list");
-        assertThat(actualVacancies).isEqualTo(expectedVacancies);
+        assertThat(model.getAttribute("listing")).isEqualTo("<table></table>");
+        assertThat(variables.get("vacancies")).isEqualTo(expectedVacancies);
+        assertThat(variables.get("page")).isEqualTo(page);
+        assertThat(variables.get("cityCounts")).isEqualTo(Map.of(1, 5));
+        assertThat(filterCaptor.getValue().getCityId()).isEqualTo(1);
+        assertThat(filterCaptor.getValue().getVisible()).isTrue();
+        verify(vacancyService, times(1)).findPage(any(), any(), any());
+    }
+
+    @Test
+    public void whenSearchVacancyThenGetSearchPage() {
+        var expectedVacancies = List.of(new VacancySummary(1, "test1", now(), true));
+        var page = new SearchPageDto<>(expectedVacancies, "test", null, 2);
+        when(vacancyService.search("test", 1)).thenReturn(page);
+
+        var model = new ConcurrentModel();
+        var view = vacancyController.search(model, "test", 1);
+
+        assertThat(view).isEqualTo("vacancies/search");
+        assertThat(model.getAttribute("vacancies")).isEqualTo(expectedVacancies);
+        assertThat(model.getAttribute("page")).isEqualTo(page);
     }
 
     /**
@@ -94,7 +137,7 @@ public class VacancyControllerTest {
      * Этот класс позволяет "захватить" аргумент,
      * который передается в метод.
      * Он удобен при тестировании методов, аргументы
-     * которых вычисляются как, например, при создании FileDto.
+     * которых вычисляются как, например, при создании FileStreamDto.
      * Но мы не можем получить их как возвращаемые значения.
      * <br>В месте вызова метода нам нужно вызывать метод capture().
      * <br>Для получения переловленного значения нужно вызвать метод getValue().
@@ -104,9 +147,9 @@ public class VacancyControllerTest {
     @Test
     public void whenPostVacancyWithFileThenSameDataAndRedirectToVacanciesPage() throws Exception {
         var vacancy = new Vacancy(1, "test1", "desc1", true, 1, 2);
-        var fileDto = new FileDto(testFile.getOriginalFilename(), testFile.getBytes());
+        var fileDto = new FileStreamDto(testFile.getOriginalFilename(), testFile.getSize(), testFile);
         var vacancyArgumentCaptor = ArgumentCaptor.forClass(Vacancy.class);
-        var fileDtoArgumentCaptor = ArgumentCaptor.forClass(FileDto.class);
+        var fileDtoArgumentCaptor = ArgumentCaptor.forClass(FileStreamDto.class);
         when(vacancyService.save(vacancyArgumentCaptor.capture(), fileDtoArgumentCaptor.capture())).thenReturn(vacancy);
 
         var model = new ConcurrentModel();
@@ -151,6 +194,18 @@ public class VacancyControllerTest {
         assertThat(city.getId()).isEqualTo(vacancy.getCityId());
     }
 
+    @Test
+    public void whenGetByIdThenPageGetsContentHashOfImage() {
+        var vacancy = new Vacancy(1, "test1", "desc1", true, 1, 2);
+        when(vacancyService.findById(1)).thenReturn(Optional.of(vacancy));
+        when(fileService.findById(2)).thenReturn(Optional.of(new File("test", "test", "abc")));
+
+        var model = new ConcurrentModel();
+        vacancyController.getById(model, vacancy.getId());
+
+        assertThat(model.getAttribute("fileHash")).isEqualTo("abc");
+    }
+
     @Test
     public void whenSomeExceptionThrownThenFindById() {
         var expectedException = new RuntimeException("Вакансия с указанным идентификатором не найдена");
@@ -167,9 +222,9 @@ public class VacancyControllerTest {
     @Test
     public void whenVacancyUpdateWithFileThenSameDataAndRedirectToVacanciesPage() throws IOException {
         var vacancy = new Vacancy(1, "test1", "desc1", true, 1, 2);
-        var fileDto = new FileDto(testFile.getOriginalFilename(), testFile.getBytes());
+        var fileDto = new FileStreamDto(testFile.getOriginalFilename(), testFile.getSize(), testFile);
         var vacancyArgumentCaptor = ArgumentCaptor.forClass(Vacancy.class);
-        var fileDtoArgumentCaptor = ArgumentCaptor.forClass(FileDto.class);
+        var fileDtoArgumentCaptor = ArgumentCaptor.forClass(FileStreamDto.class);
         when(vacancyService.update(vacancyArgumentCaptor.capture(),
                 fileDtoArgumentCaptor.capture())).thenReturn(true);
 
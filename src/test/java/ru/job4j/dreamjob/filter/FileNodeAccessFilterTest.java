@@ -0,0 +1,39 @@
+package ru.job4j.dreamjob.filter;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileNodeAccessFilterTest {
+
+    private MockFilterChain filter(boolean idAccess, String uri) throws Exception {
+        var chain = new MockFilterChain();
+        new FileNodeAccessFilter(idAccess).doFilter(new MockHttpServletRequest("GET", uri),
+                new MockHttpServletResponse(), chain);
+        return chain;
+    }
+
+    @Test
+    public void whenHashThenPassed() throws Exception {
+        assertThat(filter(false, "/files/hash/98ea6e4f").getRequest()).isNotNull();
+    }
+
+    @Test
+    public void whenIdAndNoOptInThenNotFound() throws Exception {
+        var response = new MockHttpServletResponse();
+        var chain = new MockFilterChain();
+
+        new FileNodeAccessFilter(false).doFilter(new MockHttpServletRequest("GET", "/files/1"), response, chain);
+
+        assertThat(response.getStatus()).isEqualTo(404);
+        assertThat(chain.getRequest()).isNull();
+    }
+
+    @Test
+    public void whenIdAndOptInThenPassed() throws Exception {
+        assertThat(filter(true, "/files/1").getRequest()).isNotNull();
+    }
+}
@@ -0,0 +1,81 @@
+package ru.job4j.dreamjob.filter;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UploadAdmissionFilterTest {
+    private final UploadAdmissionFilter filter = new UploadAdmissionFilter(1000, 0, 5, DataSize.ofBytes(800));
+
+    private MockHttpServletRequest upload(int length) {
+        var request = new MockHttpServletRequest("POST", "/vacancies/create");
+        request.setContentType("multipart/form-data; boundary=x");
+        request.setContent(new byte[length]);
+        return request;
+    }
+
+    @Test
+    public void whenBudgetIsAvailableThenUploadPassesAndReleasesBudget() throws Exception {
+        var response = new MockHttpServletResponse();
+        var inFlight = new AtomicInteger();
+        var chain = new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) {
+                inFlight.set(filter.getInFlightBytes());
+            }
+        });
+
+        filter.doFilter(upload(600), response, chain);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(inFlight.get()).isEqualTo(600);
+        assertThat(filter.getInFlightBytes()).isZero();
+    }
+
+    @Test
+    public void whenBudgetIsUsedUpThenUploadRejectedWithRetryAfter() throws Exception {
+        var nestedResponse = new MockHttpServletResponse();
+        var chain = new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                try {
+                    filter.doFilter(upload(600), nestedResponse, new MockFilterChain());
+                } catch (ServletException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+
+        filter.doFilter(upload(600), new MockHttpServletResponse(), chain);
+
+        assertThat(nestedResponse.getStatus()).isEqualTo(503);
+        assertThat(nestedResponse.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("5");
+        assertThat(filter.getRejectedCount()).isEqualTo(1);
+        assertThat(filter.getInFlightBytes()).isZero();
+    }
+
+    @Test
+    public void whenRequestIsNotMultipartThenBudgetIsNotUsed() throws Exception {
+        var request = new MockHttpServletRequest("POST", "/users/login");
+        request.setContentType("application/x-www-form-urlencoded");
+        request.setContent(new byte[5000]);
+        var response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, new MockFilterChain());
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(filter.getRejectedCount()).isZero();
+    }
+}
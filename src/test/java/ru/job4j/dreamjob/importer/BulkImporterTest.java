@@ -0,0 +1,92 @@
+package ru.job4j.dreamjob.importer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BulkImporterTest {
+
+    private final List<List<String>> batches = new ArrayList<>();
+
+    private int write(List<String> batch) {
+        batches.add(List.copyOf(batch));
+        return batch.size();
+    }
+
+    private static String title(Map<String, String> record) {
+        return RecordFields.required(record, "title");
+    }
+
+    @Test
+    public void whenRecordsValidThenWrittenInBatches() {
+        var csv = "title\na\nb\nc\nd\ne\n";
+        var report = BulkImporter.run(ImportFormat.CSV.open(new StringReader(csv)), 2,
+                BulkImporterTest::title, this::write);
+
+        assertThat(report.getImported()).isEqualTo(5);
+        assertThat(report.getRejected()).isEqualTo(0);
+        assertThat(report.isCompleted()).isTrue();
+        assertThat(batches).containsExactly(List.of("a", "b"), List.of("c", "d"), List.of("e"));
+    }
+
+    @Test
+    public void whenNdjsonLinesBrokenThenOnlyThoseRejected() {
+        var ndjson = "{\"title\": \"a\"}\n{broken\n\n{\"title\": \" \"}\n[1]\n{\"title\": \"b\", \"visible\": true}\n";
+        var report = BulkImporter.run(ImportFormat.NDJSON.open(new StringReader(ndjson)), 10,
+                BulkImporterTest::title, this::write);
+
+        assertThat(report.getImported()).isEqualTo(2);
+        assertThat(report.getRejected()).isEqualTo(3);
+        assertThat(report.getErrors()).hasSize(3);
+        assertThat(report.getErrors().get(0)).startsWith("строка 2: Некорректный JSON");
+        assertThat(report.getErrors().get(1)).isEqualTo("строка 4: Не заполнено поле title");
+        assertThat(report.getErrors().get(2)).isEqualTo("строка 5: Ожидался объект JSON");
+        assertThat(batches).containsExactly(List.of("a", "b"));
+    }
+
+    @Test
+    public void whenBatchWriteFailsThenWholeBatchRejectedAndNextWritten() {
+        var csv = "title\na\nfail\nc\n";
+        var report = BulkImporter.run(ImportFormat.CSV.open(new StringReader(csv)), 2,
+                BulkImporterTest::title, batch -> {
+                    if (batch.contains("fail")) {
+                        throw new IllegalStateException("constraint violated");
+                    }
+                    return write(batch);
+                });
+
+        assertThat(report.getImported()).isEqualTo(1);
+        assertThat(report.getRejected()).isEqualTo(2);
+        assertThat(report.getErrors()).containsExactly("строка 2: пачка до строки 3 не сохранена: constraint violated");
+        assertThat(batches).containsExactly(List.of("c"));
+    }
+
+    @Test
+    public void whenCsvBrokenThenCollectedBatchWrittenAndImportStopped() {
+        var csv = "title\na\n\"unclosed\nb\n";
+        var report = BulkImporter.run(ImportFormat.CSV.open(new StringReader(csv)), 10,
+                BulkImporterTest::title, this::write);
+
+        assertThat(report.getImported()).isEqualTo(1);
+        assertThat(report.isCompleted()).isFalse();
+        assertThat(report.getErrors()).containsExactly("строка 3: Не закрыта кавычка");
+    }
+
+    @Test
+    public void whenManyErrorsThenReportLimited() {
+        var csv = new StringBuilder("title\n");
+        for (int i = 0; i < BulkImporter.MAX_ERRORS * 2; i++) {
+            csv.append(" \n");
+        }
+        var report = BulkImporter.run(ImportFormat.CSV.open(new StringReader(csv.toString())), 10,
+                BulkImporterTest::title, this::write);
+
+        assertThat(report.getRejected()).isEqualTo(BulkImporter.MAX_ERRORS * 2);
+        assertThat(report.getErrors()).hasSize(BulkImporter.MAX_ERRORS);
+    }
+}
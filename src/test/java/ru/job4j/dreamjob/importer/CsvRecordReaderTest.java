@@ -0,0 +1,44 @@
+package ru.job4j.dreamjob.importer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CsvRecordReaderTest {
+
+    @Test
+    public void whenQuotedFieldsThenCommasQuotesAndLineBreaksKept() {
+        var reader = new CsvRecordReader(new StringReader(
+                "title,description\r\nJava,\"one, two\"\r\n\"Say \"\"hi\"\"\",\"first\nsecond\"\r\n\nlast,\n"));
+
+        assertThat(reader.next()).isEqualTo(Map.of("title", "Java", "description", "one, two"));
+        assertThat(reader.getLine()).isEqualTo(2);
+        assertThat(reader.next()).isEqualTo(Map.of("title", "Say \"hi\"", "description", "first\nsecond"));
+        assertThat(reader.getLine()).isEqualTo(3);
+        assertThat(reader.next()).isEqualTo(Map.of("title", "last", "description", ""));
+        assertThat(reader.getLine()).isEqualTo(6);
+        assertThat(reader.next()).isNull();
+    }
+
+    @Test
+    public void whenWrongFieldCountThenRecordRejected() {
+        var reader = new CsvRecordReader(new StringReader("title,description\nonly title\n"));
+
+        assertThatThrownBy(reader::next).isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Ожидалось полей: 2");
+    }
+
+    @Test
+    public void whenQuoteNotClosedThenReadingStops() {
+        var reader = new CsvRecordReader(new StringReader("title\n\"unclosed\nmore"));
+
+        assertThatThrownBy(reader::next).isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Не закрыта кавычка");
+        assertThat(reader.canSkipBrokenRecord()).isFalse();
+        assertThat(reader.next()).isNull();
+    }
+}
@@ -0,0 +1,51 @@
+package ru.job4j.dreamjob.importer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Записанное в каждом формате читается обратно тем же форматом импорта.
+ */
+public class RecordWriterTest {
+
+    private static final List<String> COLUMNS = List.of("id", "title", "creationDate", "visible", "fileId");
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2024, 5, 1, 10, 30);
+
+    private static Map<String, String> roundTrip(ImportFormat format, String expected) {
+        var out = new StringWriter();
+        var writer = format.create(out, COLUMNS);
+        writer.write(1, "Say \"hi\", please\nnow", DATE, true, null);
+        writer.flush();
+        assertThat(out.toString()).isEqualTo(expected);
+        var reader = format.open(new StringReader(out.toString()));
+        var record = reader.next();
+        assertThat(reader.next()).isNull();
+        return record;
+    }
+
+    @Test
+    public void whenCsvThenOnlySpecialFieldsQuoted() {
+        var record = roundTrip(ImportFormat.CSV, "id,title,creationDate,visible,fileId\r\n"
+                + "1,\"Say \"\"hi\"\", please\nnow\",2024-05-01T10:30,true,\r\n");
+
+        assertThat(record).containsEntry("title", "Say \"hi\", please\nnow")
+                .containsEntry("visible", "true").containsEntry("fileId", "");
+    }
+
+    @Test
+    public void whenNdjsonThenTypedValuesOnOneLine() {
+        var record = roundTrip(ImportFormat.NDJSON, "{\"id\":1,\"title\":\"Say \\\"hi\\\", please\\nnow\","
+                + "\"creationDate\":\"2024-05-01T10:30\",\"visible\":true,\"fileId\":null}\n");
+
+        assertThat(record).containsEntry("id", "1").containsEntry("title", "Say \"hi\", please\nnow")
+                .containsEntry("fileId", null);
+    }
+}
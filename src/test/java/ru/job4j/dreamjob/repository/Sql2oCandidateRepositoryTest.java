@@ -5,13 +5,18 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import ru.job4j.dreamjob.configuration.DatasourceConfiguration;
+import ru.job4j.dreamjob.dto.ListingFilterDto;
 import ru.job4j.dreamjob.model.Candidate;
+import ru.job4j.dreamjob.model.CandidateSummary;
 import ru.job4j.dreamjob.model.File;
 
 import java.lang.reflect.Field;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Properties;
+import java.util.stream.Collectors;
 
 import static java.time.LocalDateTime.now;
 import static java.util.Collections.emptyList;
@@ -130,4 +135,134 @@ class Sql2oCandidateRepositoryTest {
         var isUpdated = sql2oCandidateRepository.update(candidate);
         assertThat(isUpdated).isFalse();
     }
+
+    /**
+     * Даты создания в тесте урезаны до минут и обычно совпадают,
+     * поэтому порядок внутри одной даты задает id.
+     */
+    @Test
+    public void whenFindPagesThenNewestFirstWithoutGaps() throws NoSuchFieldException, IllegalAccessException {
+        var candidates = new ArrayList<Candidate>();
+        for (int i = 0; i < 5; i++) {
+            candidates.add(sql2oCandidateRepository.save(candidateBuilderAndCreationDateSetter(
+                    0, "name" + i, "description", 1, true, file.getId())));
+        }
+        var first = sql2oCandidateRepository.findFirstPage(ListingFilterDto.none(), 2);
+        var second = sql2oCandidateRepository.findOlderThan(ListingFilterDto.none(),
+                first.get(1).getCreationDate(), first.get(1).getId(), 2);
+        var last = sql2oCandidateRepository.findOlderThan(ListingFilterDto.none(),
+                second.get(1).getCreationDate(), second.get(1).getId(), 2);
+        var back = sql2oCandidateRepository.findNewerThan(ListingFilterDto.none(),
+                second.get(0).getCreationDate(), second.get(0).getId(), 2);
+        assertThat(ids(first)).isEqualTo(List.of(candidates.get(4).getId(), candidates.get(3).getId()));
+        assertThat(ids(second)).isEqualTo(List.of(candidates.get(2).getId(), candidates.get(1).getId()));
+        assertThat(ids(last)).isEqualTo(List.of(candidates.get(0).getId()));
+        assertThat(ids(back)).isEqualTo(ids(first));
+        assertThat(first.get(0)).usingRecursiveComparison().isEqualTo(new CandidateSummary(candidates.get(4).getId(),
+                candidates.get(4).getName(), candidates.get(4).getCreationDate(), candidates.get(4).getVisible()));
+    }
+
+    @Test
+    public void whenSearchThenAllWordsMatchAndNameMatchesFirst() throws NoSuchFieldException, IllegalAccessException {
+        var inDescription = sql2oCandidateRepository.save(candidateBuilderAndCreationDateSetter(
+                0, "Петр", "Java разработчик, Иван рекомендует", 1, true, file.getId()));
+        var inName = sql2oCandidateRepository.save(candidateBuilderAndCreationDateSetter(
+                0, "Иван", "Java разработчик", 1, true, file.getId()));
+        sql2oCandidateRepository.save(candidateBuilderAndCreationDateSetter(
+                0, "Иван", "Тестировщик", 1, true, file.getId()));
+        var result = sql2oCandidateRepository.search("иван java", 10, 0);
+        assertThat(ids(result)).isEqualTo(List.of(inName.getId(), inDescription.getId()));
+    }
+
+    @Test
+    public void whenFilterPagesThenOnlyMatchingCityAndVisibility() throws NoSuchFieldException, IllegalAccessException {
+        var matching = new ArrayList<Candidate>();
+        for (int i = 0; i < 3; i++) {
+            matching.add(sql2oCandidateRepository.save(candidateBuilderAndCreationDateSetter(
+                    0, "name" + i, "description", 2, true, file.getId())));
+            sql2oCandidateRepository.save(candidateBuilderAndCreationDateSetter(
+                    0, "hidden" + i, "description", 2, false, file.getId()));
+            sql2oCandidateRepository.save(candidateBuilderAndCreationDateSetter(
+                    0, "other city" + i, "description", 1, true, file.getId()));
+        }
+        var filter = new ListingFilterDto(2, true);
+        var first = sql2oCandidateRepository.findFirstPage(filter, 2);
+        var last = sql2oCandidateRepository.findOlderThan(filter, first.get(1).getCreationDate(), first.get(1).getId(), 2);
+        var back = sql2oCandidateRepository.findNewerThan(filter, last.get(0).getCreationDate(), last.get(0).getId(), 2);
+        assertThat(ids(first)).isEqualTo(List.of(matching.get(2).getId(), matching.get(1).getId()));
+        assertThat(ids(last)).isEqualTo(List.of(matching.get(0).getId()));
+        assertThat(ids(back)).isEqualTo(ids(first));
+        assertThat(sql2oCandidateRepository.findFirstPage(new ListingFilterDto(null, false), 10).size()).isEqualTo(3);
+    }
+
+    /**
+     * Курсор с порцией меньше числа записей отдает их все по возрастанию id.
+     */
+    @Test
+    public void whenForEachThenMatchingInIdOrder() throws NoSuchFieldException, IllegalAccessException {
+        var first = sql2oCandidateRepository.save(candidateBuilderAndCreationDateSetter(0, "first", "description", 2, true, file.getId()));
+        sql2oCandidateRepository.save(candidateBuilderAndCreationDateSetter(0, "hidden", "description", 2, false, file.getId()));
+        var second = sql2oCandidateRepository.save(candidateBuilderAndCreationDateSetter(0, "second", "description", 2, true, file.getId()));
+        var ids = new ArrayList<Integer>();
+        sql2oCandidateRepository.forEach(new ListingFilterDto(null, true), 1, candidate -> ids.add(candidate.getId()));
+        var all = new ArrayList<Integer>();
+        sql2oCandidateRepository.forEach(ListingFilterDto.none(), 1, candidate -> all.add(candidate.getId()));
+        assertThat(ids).isEqualTo(List.of(first.getId(), second.getId()));
+        assertThat(all.size()).isEqualTo(3);
+    }
+
+    /**
+     * Пачка сохраняется целиком, записи без файла получают пустую ссылку,
+     * а счетчики сдвигаются так же, как после сохранения по одной.
+     */
+    @Test
+    public void whenSaveAllThenAllSavedAndCityCountsFollow() throws NoSuchFieldException, IllegalAccessException {
+        var all = sql2oCandidateRepository.countByCity(null);
+        var visible = sql2oCandidateRepository.countByCity(true);
+        var saved = sql2oCandidateRepository.saveAll(List.of(
+                candidateBuilderAndCreationDateSetter(0, "imported, \"quoted\"", "description", 1, true, 0),
+                candidateBuilderAndCreationDateSetter(0, "hidden", "description", 1, false, 0),
+                candidateBuilderAndCreationDateSetter(0, "with file", "description", 2, true, file.getId())));
+        var candidates = new ArrayList<>(sql2oCandidateRepository.findAll());
+        candidates.sort(Comparator.comparingInt(Candidate::getId));
+        assertThat(saved).isEqualTo(3);
+        assertThat(candidates.stream().map(Candidate::getName).collect(Collectors.toList()))
+                .isEqualTo(List.of("imported, \"quoted\"", "hidden", "with file"));
+        assertThat(candidates.get(0).getFileId()).isEqualTo(0);
+        assertThat(candidates.get(2).getFileId()).isEqualTo(file.getId());
+        assertThat(sql2oCandidateRepository.countByCity(null).get(1)).isEqualTo(all.getOrDefault(1, 0) + 2);
+        assertThat(sql2oCandidateRepository.countByCity(true).get(1)).isEqualTo(visible.getOrDefault(1, 0) + 1);
+        assertThat(sql2oCandidateRepository.countByCity(true).get(2)).isEqualTo(visible.getOrDefault(2, 0) + 1);
+    }
+
+    /**
+     * Счетчики меняются вместе с записями: после переноса в другой город,
+     * смены видимости и удаления они сдвигаются ровно на измененные записи.
+     */
+    @Test
+    public void whenSaveUpdateDeleteThenCityCountsFollow() throws NoSuchFieldException, IllegalAccessException {
+        var all = sql2oCandidateRepository.countByCity(null);
+        var visible = sql2oCandidateRepository.countByCity(true);
+        var hidden = sql2oCandidateRepository.countByCity(false);
+        var moved = sql2oCandidateRepository.save(candidateBuilderAndCreationDateSetter(
+                0, "moved", "description", 1, true, file.getId()));
+        var deleted = sql2oCandidateRepository.save(candidateBuilderAndCreationDateSetter(
+                0, "deleted", "description", 1, true, file.getId()));
+        sql2oCandidateRepository.save(candidateBuilderAndCreationDateSetter(
+                0, "hidden", "description", 1, false, file.getId()));
+        assertThat(sql2oCandidateRepository.countByCity(null).get(1)).isEqualTo(all.getOrDefault(1, 0) + 3);
+        assertThat(sql2oCandidateRepository.countByCity(true).get(1)).isEqualTo(visible.getOrDefault(1, 0) + 2);
+
+        sql2oCandidateRepository.update(candidateBuilderAndCreationDateSetter(
+                moved.getId(), "moved", "description", 2, false, file.getId()));
+        sql2oCandidateRepository.deleteById(deleted.getId());
+        assertThat(sql2oCandidateRepository.countByCity(true).getOrDefault(1, 0)).isEqualTo(visible.getOrDefault(1, 0));
+        assertThat(sql2oCandidateRepository.countByCity(false).get(1)).isEqualTo(hidden.getOrDefault(1, 0) + 1);
+        assertThat(sql2oCandidateRepository.countByCity(false).get(2)).isEqualTo(hidden.getOrDefault(2, 0) + 1);
+        assertThat(sql2oCandidateRepository.countByCity(null).getOrDefault(3, 0)).isEqualTo(all.getOrDefault(3, 0));
+    }
+
+    private static List<Integer> ids(List<CandidateSummary> candidates) {
+        return candidates.stream().map(CandidateSummary::getId).collect(Collectors.toList());
+    }
 }
\ No newline at end of file
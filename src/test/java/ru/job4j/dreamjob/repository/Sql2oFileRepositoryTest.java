@@ -0,0 +1,248 @@
+package ru.job4j.dreamjob.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.sql2o.Sql2o;
+import ru.job4j.dreamjob.configuration.DatasourceConfiguration;
+import ru.job4j.dreamjob.model.File;
+import ru.job4j.dreamjob.model.FileDeletion;
+import ru.job4j.dreamjob.model.Vacancy;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Properties;
+
+import static java.util.Optional.empty;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class Sql2oFileRepositoryTest {
+    private static Sql2oFileRepository sql2oFileRepository;
+    private static Sql2o sql2o;
+
+    @BeforeAll
+    public static void initRepositories() throws Exception {
+        var properties = new Properties();
+        try (var inputStream = Sql2oFileRepositoryTest.class.getClassLoader()
+                .getResourceAsStream("connection.properties")) {
+            properties.load(inputStream);
+        }
+        var url = properties.getProperty("datasource.url");
+        var username = properties.getProperty("datasource.username");
+        var password = properties.getProperty("datasource.password");
+        var configuration = new DatasourceConfiguration();
+        var datasource = configuration.connectionPool(url, username, password);
+        sql2o = configuration.databaseClient(datasource);
+        sql2oFileRepository = new Sql2oFileRepository(sql2o);
+    }
+
+    @AfterEach
+    public void clearFiles() {
+        try (var connection = sql2o.open()) {
+            connection.createQuery("DELETE FROM vacancies WHERE title = 'file-repository-test'").executeUpdate();
+            connection.createQuery("DELETE FROM file_deletions").executeUpdate();
+            connection.createQuery("DELETE FROM files WHERE path LIKE 'file-repository-test%'").executeUpdate();
+        }
+    }
+
+    @Test
+    public void whenSaveThenGetSame() {
+        var file = sql2oFileRepository.save(new File("name", "file-repository-test-1", "hash1"));
+        var fileFromBD = sql2oFileRepository.findById(file.getId()).get();
+        assertThat(fileFromBD).usingRecursiveComparison().isEqualTo(file);
+    }
+
+    @Test
+    public void whenFindByContentHashThenGetFirstSavedFile() {
+        var file1 = sql2oFileRepository.save(new File("name1", "file-repository-test-1", "hash1"));
+        sql2oFileRepository.save(new File("name2", "file-repository-test-2", "hash1"));
+        sql2oFileRepository.save(new File("name3", "file-repository-test-3", "hash3"));
+        var fileFromBD = sql2oFileRepository.findByContentHash("hash1").get();
+        assertThat(fileFromBD).usingRecursiveComparison().isEqualTo(file1);
+    }
+
+    @Test
+    public void whenFindByUnknownContentHashThenEmpty() {
+        assertThat(sql2oFileRepository.findByContentHash("unknown")).isEqualTo(empty());
+    }
+
+    @Test
+    public void whenIncrementRefCountThenCountGrows() {
+        var file = sql2oFileRepository.save(new File("name", "file-repository-test-1", "hash1"));
+        var isIncremented = sql2oFileRepository.incrementRefCount(file.getId());
+        assertThat(isIncremented).isTrue();
+        assertThat(sql2oFileRepository.findById(file.getId()).get().getRefCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void whenDecrementRefCountThenLastReferenceIsKept() {
+        var file = sql2oFileRepository.save(new File("name", "file-repository-test-1", "hash1"));
+        sql2oFileRepository.incrementRefCount(file.getId());
+        assertThat(sql2oFileRepository.decrementRefCount(file.getId())).isTrue();
+        assertThat(sql2oFileRepository.decrementRefCount(file.getId())).isFalse();
+        assertThat(sql2oFileRepository.findById(file.getId()).get().getRefCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void whenIncrementRefCountOfUnknownFileThenFalse() {
+        assertThat(sql2oFileRepository.incrementRefCount(0)).isFalse();
+    }
+
+    @Test
+    public void whenFindByPathNotLikeThenOnlyFlatFilesAfterIdInOrder() {
+        var flat1 = sql2oFileRepository.save(new File("name1", "file-repository-test/a1", "hash1"));
+        sql2oFileRepository.save(new File("name2", "file-repository-test/ab/cd/a2", "hash2"));
+        var flat3 = sql2oFileRepository.save(new File("name3", "file-repository-test/a3", "hash3"));
+        var flat4 = sql2oFileRepository.save(new File("name4", "file-repository-test/a4", "hash4"));
+        var all = sql2oFileRepository.findByPathNotLike("file-repository-test/__/__/%", flat1.getId() - 1, 10);
+        var afterFirst = sql2oFileRepository.findByPathNotLike("file-repository-test/__/__/%", flat1.getId(), 2);
+        assertThat(all.stream().filter(file -> file.getPath().startsWith("file-repository-test")).toList())
+                .isEqualTo(List.of(flat1, flat3, flat4));
+        assertThat(afterFirst).isEqualTo(List.of(flat3, flat4));
+    }
+
+    @Test
+    public void whenUpdatePathWithActualOldPathThenUpdated() {
+        var file = sql2oFileRepository.save(new File("name", "file-repository-test-1", "hash1"));
+        assertThat(sql2oFileRepository.updatePath(file.getId(), "file-repository-test-2", "file-repository-test-3"))
+                .isFalse();
+        assertThat(sql2oFileRepository.updatePath(file.getId(), "file-repository-test-1", "file-repository-test-3"))
+                .isTrue();
+        assertThat(sql2oFileRepository.findById(file.getId()).get().getPath()).isEqualTo("file-repository-test-3");
+    }
+
+    @Test
+    public void whenFindPageThenFilesAfterIdInOrder() {
+        var file1 = sql2oFileRepository.save(new File("name1", "file-repository-test-1", "hash1"));
+        var file2 = sql2oFileRepository.save(new File("name2", "file-repository-test-2", "hash2"));
+        var file3 = sql2oFileRepository.save(new File("name3", "file-repository-test-3", "hash3"));
+        assertThat(sql2oFileRepository.findPage(file1.getId(), 2)).isEqualTo(List.of(file2, file3));
+        assertThat(sql2oFileRepository.findPage(file3.getId(), 2)).isEmpty();
+    }
+
+    @Test
+    public void whenFindUnreferencedThenOnlyOldFilesWithoutVacanciesAndCandidates() {
+        var old = new File("name1", "file-repository-test-1", "hash1");
+        old.setCreationDate(LocalDateTime.now().minusDays(1).truncatedTo(ChronoUnit.SECONDS));
+        sql2oFileRepository.save(old);
+        var referenced = new File("name2", "file-repository-test-2", "hash2");
+        referenced.setCreationDate(old.getCreationDate());
+        sql2oFileRepository.save(referenced);
+        var fresh = sql2oFileRepository.save(new File("name3", "file-repository-test-3", "hash3"));
+        new Sql2oVacancyRepository(sql2o).save(
+                new Vacancy(0, "file-repository-test", "description", true, 1, referenced.getId()));
+
+        var unreferenced = sql2oFileRepository.findUnreferenced(old.getId() - 1, LocalDateTime.now().minusHours(1), 10);
+
+        assertThat(unreferenced).isEqualTo(List.of(old));
+        assertThat(unreferenced).doesNotContain(fresh);
+    }
+
+    @Test
+    public void whenFindExistingPathsThenOnlyPathsFromTable() {
+        sql2oFileRepository.save(new File("name1", "file-repository-test-1", "hash1"));
+        sql2oFileRepository.save(new File("name2", "file-repository-test-2", "hash2"));
+        var paths = List.of("file-repository-test-1", "file-repository-test-2", "file-repository-test-3");
+        assertThat(sql2oFileRepository.findExistingPaths(paths))
+                .containsExactlyInAnyOrder("file-repository-test-1", "file-repository-test-2");
+        assertThat(sql2oFileRepository.findExistingPaths(List.of())).isEmpty();
+    }
+
+    @Test
+    public void whenFindByIdsThenOnlyExistingFiles() {
+        var file1 = sql2oFileRepository.save(new File("name1", "file-repository-test-1", "hash1"));
+        var file2 = sql2oFileRepository.save(new File("name2", "file-repository-test-2", "hash2"));
+        assertThat(sql2oFileRepository.findByIds(List.of(file1.getId(), file2.getId(), file2.getId() + 1)))
+                .containsExactlyInAnyOrder(file1, file2);
+        assertThat(sql2oFileRepository.findByIds(List.of())).isEmpty();
+    }
+
+    @Test
+    public void whenDeleteReleasedThenLastReferenceDeletesFileAndQueueIsDrained() {
+        var shared = new File("name1", "file-repository-test-1", "hash1");
+        shared.setRefCount(3);
+        sql2oFileRepository.save(shared);
+        var single = sql2oFileRepository.save(new File("name2", "file-repository-test-2", "hash2"));
+        sql2oFileRepository.addDeletion(shared.getId());
+        sql2oFileRepository.addDeletion(single.getId());
+        sql2oFileRepository.addDeletion(shared.getId());
+        var deletions = sql2oFileRepository.findDeletions(10);
+
+        var released = sql2oFileRepository.deleteReleased(deletions);
+
+        assertThat(deletions).hasSize(3);
+        assertThat(released).isEqualTo(List.of(single));
+        assertThat(sql2oFileRepository.findById(single.getId())).isEmpty();
+        assertThat(sql2oFileRepository.findById(shared.getId()).get().getRefCount()).isEqualTo(1);
+        assertThat(sql2oFileRepository.findDeletions(10)).isEmpty();
+    }
+
+    @Test
+    public void whenFindDeletionsThenInQueueOrderUpToLimit() {
+        sql2oFileRepository.addDeletion(1);
+        sql2oFileRepository.addDeletion(2);
+        sql2oFileRepository.addDeletion(3);
+
+        var deletions = sql2oFileRepository.findDeletions(2);
+
+        assertThat(deletions).extracting(FileDeletion::getFileId).containsExactly(1, 2);
+    }
+
+    private File packed(String path, int segment, long offset, long length) {
+        var file = new File("name", path, path);
+        file.setPackSegment(segment);
+        file.setPackOffset(offset);
+        file.setPackLength(length);
+        return sql2oFileRepository.save(file);
+    }
+
+    @Test
+    public void whenSavePackedFileThenLocationIsStored() {
+        var file = packed("file-repository-test-1", 7, 100, 50);
+        var savedFile = sql2oFileRepository.findById(file.getId()).get();
+        assertThat(savedFile.getPackSegment()).isEqualTo(7);
+        assertThat(savedFile.getPackOffset()).isEqualTo(100);
+        assertThat(savedFile.getPackLength()).isEqualTo(50);
+        assertThat(sql2oFileRepository.findByPathNotLike("nothing", 0, 10)).doesNotContain(file);
+    }
+
+    @Test
+    public void whenFindPackUsageThenLiveBytesBySegment() {
+        packed("file-repository-test-1", 7, 0, 50);
+        var second = packed("file-repository-test-2", 7, 50, 30);
+        var third = packed("file-repository-test-3", 8, 0, 20);
+        sql2oFileRepository.save(new File("name", "file-repository-test-4"));
+
+        var usage = sql2oFileRepository.findPackUsage();
+
+        assertThat(usage.get(7)).isEqualTo(80);
+        assertThat(usage.get(8)).isEqualTo(20);
+        assertThat(sql2oFileRepository.findSegmentEnd(7)).isEqualTo(80);
+        assertThat(sql2oFileRepository.findSegmentEnd(9)).isEqualTo(0);
+        assertThat(sql2oFileRepository.findBySegment(7, 0, 10)).hasSize(2);
+        assertThat(sql2oFileRepository.findBySegment(7, second.getId() - 1, 10)).isEqualTo(List.of(second));
+        assertThat(sql2oFileRepository.findBySegment(8, 0, 10)).isEqualTo(List.of(third));
+    }
+
+    @Test
+    public void whenUpdatePackLocationThenOnlyIfPathIsUnchanged() {
+        var file = packed("file-repository-test-1", 7, 0, 50);
+        assertThat(sql2oFileRepository.updatePackLocation(file.getId(), "other", "file-repository-test-2", 8, 10))
+                .isFalse();
+        assertThat(sql2oFileRepository.updatePackLocation(file.getId(), "file-repository-test-1",
+                "file-repository-test-2", 8, 10)).isTrue();
+        var moved = sql2oFileRepository.findById(file.getId()).get();
+        assertThat(moved.getPath()).isEqualTo("file-repository-test-2");
+        assertThat(moved.getPackSegment()).isEqualTo(8);
+        assertThat(moved.getPackOffset()).isEqualTo(10);
+    }
+
+    @Test
+    public void whenDeleteThenGetEmptyOptional() {
+        var file = sql2oFileRepository.save(new File("name", "file-repository-test-1", "hash1"));
+        var isDeleted = sql2oFileRepository.deleteById(file.getId());
+        assertThat(isDeleted).isTrue();
+        assertThat(sql2oFileRepository.findById(file.getId())).isEqualTo(empty());
+    }
+}
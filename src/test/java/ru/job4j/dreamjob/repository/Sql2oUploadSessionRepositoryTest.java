@@ -0,0 +1,85 @@
+package ru.job4j.dreamjob.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.sql2o.Sql2o;
+import ru.job4j.dreamjob.configuration.DatasourceConfiguration;
+import ru.job4j.dreamjob.model.UploadSession;
+
+import java.time.LocalDateTime;
+import java.util.Properties;
+
+import static java.util.Optional.empty;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class Sql2oUploadSessionRepositoryTest {
+    private static Sql2oUploadSessionRepository sql2oUploadSessionRepository;
+    private static Sql2o sql2o;
+
+    @BeforeAll
+    public static void initRepositories() throws Exception {
+        var properties = new Properties();
+        try (var inputStream = Sql2oUploadSessionRepositoryTest.class.getClassLoader()
+                .getResourceAsStream("connection.properties")) {
+            properties.load(inputStream);
+        }
+        var url = properties.getProperty("datasource.url");
+        var username = properties.getProperty("datasource.username");
+        var password = properties.getProperty("datasource.password");
+        var configuration = new DatasourceConfiguration();
+        var datasource = configuration.connectionPool(url, username, password);
+        sql2o = configuration.databaseClient(datasource);
+        sql2oUploadSessionRepository = new Sql2oUploadSessionRepository(sql2o);
+    }
+
+    @AfterEach
+    public void clearSessions() {
+        try (var connection = sql2o.open()) {
+            connection.createQuery("DELETE FROM upload_sessions").executeUpdate();
+        }
+    }
+
+    @Test
+    public void whenSaveThenGetSame() {
+        var session = sql2oUploadSessionRepository.save(new UploadSession("id-1", "video.mp4", 10, 4));
+        var sessionFromDb = sql2oUploadSessionRepository.findById("id-1").get();
+        assertThat(sessionFromDb).usingRecursiveComparison().isEqualTo(session);
+    }
+
+    @Test
+    public void whenAddChunkAgainThenStoredOnce() {
+        sql2oUploadSessionRepository.save(new UploadSession("id-1", "video.mp4", 10, 4));
+        sql2oUploadSessionRepository.save(new UploadSession("id-2", "video.mp4", 10, 4));
+        sql2oUploadSessionRepository.addChunk("id-1", 2);
+        sql2oUploadSessionRepository.addChunk("id-1", 0);
+        sql2oUploadSessionRepository.addChunk("id-1", 2);
+        sql2oUploadSessionRepository.addChunk("id-2", 1);
+        assertThat(sql2oUploadSessionRepository.findChunks("id-1")).containsExactlyInAnyOrder(0, 2);
+        try (var connection = sql2o.open()) {
+            var rows = connection.createQuery("SELECT COUNT(*) FROM upload_chunks WHERE session_id = 'id-1'")
+                    .executeScalar(Integer.class);
+            assertThat(rows).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void whenDeleteThenChunksDeletedToo() {
+        sql2oUploadSessionRepository.save(new UploadSession("id-1", "video.mp4", 10, 4));
+        sql2oUploadSessionRepository.addChunk("id-1", 0);
+        assertThat(sql2oUploadSessionRepository.deleteById("id-1")).isTrue();
+        assertThat(sql2oUploadSessionRepository.deleteById("id-1")).isFalse();
+        assertThat(sql2oUploadSessionRepository.findById("id-1")).isEqualTo(empty());
+        assertThat(sql2oUploadSessionRepository.findChunks("id-1")).isEmpty();
+    }
+
+    @Test
+    public void whenFindCreatedBeforeThenOnlyOldSessions() {
+        var old = new UploadSession("old", "video.mp4", 10, 4);
+        old.setCreationDate(LocalDateTime.now().minusDays(2).withNano(0));
+        sql2oUploadSessionRepository.save(old);
+        sql2oUploadSessionRepository.save(new UploadSession("new", "video.mp4", 10, 4));
+        var sessions = sql2oUploadSessionRepository.findCreatedBefore(LocalDateTime.now().minusDays(1), 10);
+        assertThat(sessions).containsExactly(old);
+    }
+}
@@ -4,14 +4,23 @@ import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.sql2o.Sql2o;
 import ru.job4j.dreamjob.configuration.DatasourceConfiguration;
+import ru.job4j.dreamjob.dto.ListingFilterDto;
 import ru.job4j.dreamjob.model.File;
 import ru.job4j.dreamjob.model.Vacancy;
+import ru.job4j.dreamjob.model.VacancySummary;
 
 import java.lang.reflect.Field;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import static java.time.LocalDateTime.now;
 import static java.util.Collections.emptyList;
@@ -26,6 +35,8 @@ public class Sql2oVacancyRepositoryTest {
      * поэтому создаем один экземпляр на весь тестовый класс,
      * т.е. делаем статическим.
      */
+    private static Sql2o sql2o;
+
     private static Sql2oVacancyRepository sql2oVacancyRepository;
 
     /**
@@ -68,7 +79,7 @@ public class Sql2oVacancyRepositoryTest {
          */
         var configuration = new DatasourceConfiguration();
         var datasource = configuration.connectionPool(url, username, password);
-        var sql2o = configuration.databaseClient(datasource);
+        sql2o = configuration.databaseClient(datasource);
         /**
          * Клиент БД настроили.
          * Теперь можно на основе него создать репозитории.
@@ -197,4 +208,178 @@ public class Sql2oVacancyRepositoryTest {
         var isUpdated = sql2oVacancyRepository.update(vacancy);
         assertThat(isUpdated).isFalse();
     }
+
+    /**
+     * Даты создания в тесте урезаны до минут и обычно совпадают,
+     * поэтому порядок внутри одной даты задает id.
+     */
+    @Test
+    public void whenFindPagesThenNewestFirstWithoutGaps() throws NoSuchFieldException, IllegalAccessException {
+        var vacancies = new ArrayList<Vacancy>();
+        for (int i = 0; i < 5; i++) {
+            vacancies.add(sql2oVacancyRepository.save(vacancyBuilderAndCreationDateSetter(
+                    0, "title" + i, "description", true, 1, file.getId())));
+        }
+        var first = sql2oVacancyRepository.findFirstPage(ListingFilterDto.none(), 2);
+        var second = sql2oVacancyRepository.findOlderThan(ListingFilterDto.none(),
+                first.get(1).getCreationDate(), first.get(1).getId(), 2);
+        var last = sql2oVacancyRepository.findOlderThan(ListingFilterDto.none(),
+                second.get(1).getCreationDate(), second.get(1).getId(), 2);
+        var back = sql2oVacancyRepository.findNewerThan(ListingFilterDto.none(),
+                second.get(0).getCreationDate(), second.get(0).getId(), 2);
+        assertThat(ids(first)).isEqualTo(List.of(vacancies.get(4).getId(), vacancies.get(3).getId()));
+        assertThat(ids(second)).isEqualTo(List.of(vacancies.get(2).getId(), vacancies.get(1).getId()));
+        assertThat(ids(last)).isEqualTo(List.of(vacancies.get(0).getId()));
+        assertThat(ids(back)).isEqualTo(ids(first));
+        assertThat(first.get(0)).usingRecursiveComparison().isEqualTo(new VacancySummary(vacancies.get(4).getId(),
+                vacancies.get(4).getTitle(), vacancies.get(4).getCreationDate(), vacancies.get(4).getVisible()));
+    }
+
+    /**
+     * Тестовая база H2, поэтому проверяется запасной путь поиска через ILIKE:
+     * находятся только записи со всеми словами запроса, совпадение в заголовке весит больше.
+     */
+    @Test
+    public void whenSearchThenAllWordsMatchAndTitleMatchesFirst() throws NoSuchFieldException, IllegalAccessException {
+        var inDescription = sql2oVacancyRepository.save(vacancyBuilderAndCreationDateSetter(
+                0, "Developer", "Нужен Java разработчик", true, 1, file.getId()));
+        var inTitle = sql2oVacancyRepository.save(vacancyBuilderAndCreationDateSetter(
+                0, "Java Developer", "Описание", true, 1, file.getId()));
+        sql2oVacancyRepository.save(vacancyBuilderAndCreationDateSetter(
+                0, "Java Tester", "Описание", true, 1, file.getId()));
+        var result = sql2oVacancyRepository.search("java, DEVELOPER", 10, 0);
+        assertThat(ids(result)).isEqualTo(List.of(inTitle.getId(), inDescription.getId()));
+        assertThat(ids(sql2oVacancyRepository.search("java developer", 10, 1))).isEqualTo(List.of(inDescription.getId()));
+    }
+
+    @Test
+    public void whenSearchWithoutWordsThenNothingFound() throws NoSuchFieldException, IllegalAccessException {
+        sql2oVacancyRepository.save(vacancyBuilderAndCreationDateSetter(
+                0, "title_%", "description", true, 1, file.getId()));
+        assertThat(sql2oVacancyRepository.search("%_", 10, 0)).isEqualTo(emptyList());
+    }
+
+    @Test
+    public void whenFilterPagesThenOnlyMatchingCityAndVisibility() throws NoSuchFieldException, IllegalAccessException {
+        var matching = new ArrayList<Vacancy>();
+        for (int i = 0; i < 3; i++) {
+            matching.add(sql2oVacancyRepository.save(vacancyBuilderAndCreationDateSetter(
+                    0, "title" + i, "description", true, 2, file.getId())));
+            sql2oVacancyRepository.save(vacancyBuilderAndCreationDateSetter(
+                    0, "hidden" + i, "description", false, 2, file.getId()));
+            sql2oVacancyRepository.save(vacancyBuilderAndCreationDateSetter(
+                    0, "other city" + i, "description", true, 1, file.getId()));
+        }
+        var filter = new ListingFilterDto(2, true);
+        var first = sql2oVacancyRepository.findFirstPage(filter, 2);
+        var last = sql2oVacancyRepository.findOlderThan(filter, first.get(1).getCreationDate(), first.get(1).getId(), 2);
+        var back = sql2oVacancyRepository.findNewerThan(filter, last.get(0).getCreationDate(), last.get(0).getId(), 2);
+        assertThat(ids(first)).isEqualTo(List.of(matching.get(2).getId(), matching.get(1).getId()));
+        assertThat(ids(last)).isEqualTo(List.of(matching.get(0).getId()));
+        assertThat(ids(back)).isEqualTo(ids(first));
+        assertThat(sql2oVacancyRepository.findFirstPage(new ListingFilterDto(null, false), 10).size()).isEqualTo(3);
+    }
+
+    /**
+     * Курсор с порцией меньше числа записей отдает их все по возрастанию id.
+     */
+    @Test
+    public void whenForEachThenMatchingInIdOrder() throws NoSuchFieldException, IllegalAccessException {
+        var first = sql2oVacancyRepository.save(vacancyBuilderAndCreationDateSetter(0, "first", "description", true, 2, file.getId()));
+        sql2oVacancyRepository.save(vacancyBuilderAndCreationDateSetter(0, "hidden", "description", false, 2, file.getId()));
+        var second = sql2oVacancyRepository.save(vacancyBuilderAndCreationDateSetter(0, "second", "description", true, 2, file.getId()));
+        var ids = new ArrayList<Integer>();
+        sql2oVacancyRepository.forEach(new ListingFilterDto(null, true), 1, vacancy -> ids.add(vacancy.getId()));
+        var all = new ArrayList<Integer>();
+        sql2oVacancyRepository.forEach(ListingFilterDto.none(), 1, vacancy -> all.add(vacancy.getId()));
+        assertThat(ids).isEqualTo(List.of(first.getId(), second.getId()));
+        assertThat(all.size()).isEqualTo(3);
+    }
+
+    /**
+     * Пачка сохраняется целиком, записи без файла получают пустую ссылку,
+     * а счетчики сдвигаются так же, как после сохранения по одной.
+     */
+    @Test
+    public void whenSaveAllThenAllSavedAndCityCountsFollow() throws NoSuchFieldException, IllegalAccessException {
+        var all = sql2oVacancyRepository.countByCity(null);
+        var visible = sql2oVacancyRepository.countByCity(true);
+        var saved = sql2oVacancyRepository.saveAll(List.of(
+                vacancyBuilderAndCreationDateSetter(0, "imported, \"quoted\"", "description", true, 1, 0),
+                vacancyBuilderAndCreationDateSetter(0, "hidden", "description", false, 1, 0),
+                vacancyBuilderAndCreationDateSetter(0, "with file", "description", true, 2, file.getId())));
+        var vacancys = new ArrayList<>(sql2oVacancyRepository.findAll());
+        vacancys.sort(Comparator.comparingInt(Vacancy::getId));
+        assertThat(saved).isEqualTo(3);
+        assertThat(vacancys.stream().map(Vacancy::getTitle).collect(Collectors.toList()))
+                .isEqualTo(List.of("imported, \"quoted\"", "hidden", "with file"));
+        assertThat(vacancys.get(0).getFileId()).isEqualTo(0);
+        assertThat(vacancys.get(2).getFileId()).isEqualTo(file.getId());
+        assertThat(sql2oVacancyRepository.countByCity(null).get(1)).isEqualTo(all.getOrDefault(1, 0) + 2);
+        assertThat(sql2oVacancyRepository.countByCity(true).get(1)).isEqualTo(visible.getOrDefault(1, 0) + 1);
+        assertThat(sql2oVacancyRepository.countByCity(true).get(2)).isEqualTo(visible.getOrDefault(2, 0) + 1);
+    }
+
+    /**
+     * Счетчики меняются вместе с записями: после переноса в другой город,
+     * смены видимости и удаления они сдвигаются ровно на измененные записи.
+     */
+    @Test
+    public void whenSaveUpdateDeleteThenCityCountsFollow() throws NoSuchFieldException, IllegalAccessException {
+        var all = sql2oVacancyRepository.countByCity(null);
+        var visible = sql2oVacancyRepository.countByCity(true);
+        var hidden = sql2oVacancyRepository.countByCity(false);
+        var moved = sql2oVacancyRepository.save(vacancyBuilderAndCreationDateSetter(
+                0, "moved", "description", true, 1, file.getId()));
+        var deleted = sql2oVacancyRepository.save(vacancyBuilderAndCreationDateSetter(
+                0, "deleted", "description", true, 1, file.getId()));
+        sql2oVacancyRepository.save(vacancyBuilderAndCreationDateSetter(
+                0, "hidden", "description", false, 1, file.getId()));
+        assertThat(sql2oVacancyRepository.countByCity(null).get(1)).isEqualTo(all.getOrDefault(1, 0) + 3);
+        assertThat(sql2oVacancyRepository.countByCity(true).get(1)).isEqualTo(visible.getOrDefault(1, 0) + 2);
+
+        sql2oVacancyRepository.update(vacancyBuilderAndCreationDateSetter(
+                moved.getId(), "moved", "description", false, 2, file.getId()));
+        sql2oVacancyRepository.deleteById(deleted.getId());
+        assertThat(sql2oVacancyRepository.countByCity(true).getOrDefault(1, 0)).isEqualTo(visible.getOrDefault(1, 0));
+        assertThat(sql2oVacancyRepository.countByCity(false).get(1)).isEqualTo(hidden.getOrDefault(1, 0) + 1);
+        assertThat(sql2oVacancyRepository.countByCity(false).get(2)).isEqualTo(hidden.getOrDefault(2, 0) + 1);
+        assertThat(sql2oVacancyRepository.countByCity(null).getOrDefault(3, 0)).isEqualTo(all.getOrDefault(3, 0));
+    }
+
+    /**
+     * Если строки счетчика для города нет, одновременные первые вставки
+     * не падают на первичном ключе и обе попадают в счетчик.
+     */
+    @Test
+    public void whenConcurrentFirstSavesInCityWithoutCountsThenAllCounted() throws Exception {
+        try (var connection = sql2o.open()) {
+            connection.createQuery("DELETE FROM vacancy_city_counts WHERE city_id = 3").executeUpdate();
+        }
+        var threads = 4;
+        var pool = Executors.newFixedThreadPool(threads);
+        var start = new CountDownLatch(1);
+        try {
+            var saves = new ArrayList<Future<Vacancy>>();
+            for (int i = 0; i < threads; i++) {
+                saves.add(pool.submit(() -> {
+                    start.await();
+                    return sql2oVacancyRepository.save(vacancyBuilderAndCreationDateSetter(
+                            0, "concurrent", "description", true, 3, file.getId()));
+                }));
+            }
+            start.countDown();
+            for (var save : saves) {
+                save.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertThat(sql2oVacancyRepository.countByCity(true).get(3)).isEqualTo(threads);
+    }
+
+    private static List<Integer> ids(List<VacancySummary> vacancies) {
+        return vacancies.stream().map(VacancySummary::getId).collect(Collectors.toList());
+    }
 }
\ No newline at end of file
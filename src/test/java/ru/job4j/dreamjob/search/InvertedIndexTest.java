@@ -0,0 +1,116 @@
+package ru.job4j.dreamjob.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InvertedIndexTest {
+
+    @Test
+    public void whenWordFormsDifferThenSameTerm() {
+        assertThat(TextAnalyzer.terms("Разработчики, разработчиков; Ёлка developers DEVELOPER java17"))
+                .containsExactly("разработчик", "разработчик", "елк", "developer", "developer", "java17");
+    }
+
+    @Test
+    public void whenSearchThenAllTermsMatchAndTitleRanksHigher() {
+        var index = new InvertedIndex<String>();
+        index.put(1, "Тестировщик", "Ищем java разработчика", "description match");
+        index.put(2, "Java разработчик", "Описание", "title match");
+        index.put(3, "Java тестировщик", "Описание", "one term only");
+
+        assertThat(index.search("разработчики Java", 10, 0)).containsExactly("title match", "description match");
+        assertThat(index.search("python", 10, 0)).isEmpty();
+        assertThat(index.search("?!", 10, 0)).isEmpty();
+    }
+
+    @Test
+    public void whenEqualScoresThenNewestIdFirstAndPagesByOffset() {
+        var index = new InvertedIndex<Integer>();
+        for (int id = 1; id <= 5; id++) {
+            index.put(id, "Java", "", id);
+        }
+
+        assertThat(index.search("java", 2, 0)).containsExactly(5, 4);
+        assertThat(index.search("java", 2, 2)).containsExactly(3, 2);
+        assertThat(index.search("java", 2, 4)).containsExactly(1);
+        assertThat(index.search("java", 2, 6)).isEmpty();
+    }
+
+    @Test
+    public void whenReplaceAndRemoveThenOnlyCurrentVersionsFound() {
+        var index = new InvertedIndex<String>();
+        index.put(1, "Java", "", "old");
+        index.put(1, "Kotlin", "", "new");
+        index.put(2, "Java", "", "removed");
+        index.remove(2);
+
+        assertThat(index.search("java", 10, 0)).isEmpty();
+        assertThat(index.search("kotlin", 10, 0)).containsExactly("new");
+        assertThat(index.size()).isEqualTo(1);
+        assertThat(index.remove(2)).isFalse();
+        assertThat(index.putIfAbsent(1, "Scala", "", "ignored")).isFalse();
+    }
+
+    /**
+     * Три тысячи замен одного документа оставляют мертвые номера,
+     * индекс несколько раз пересобирается без них.
+     */
+    @Test
+    public void whenManyReplacementsThenCompactedIndexStillFinds() {
+        var index = new InvertedIndex<String>();
+        index.put(1, "Java", "", "java");
+        for (int i = 0; i < 3000; i++) {
+            index.put(2, "Kotlin", "version " + i, "kotlin " + i);
+        }
+
+        assertThat(index.search("kotlin", 10, 0)).containsExactly("kotlin 2999");
+        assertThat(index.search("java", 10, 0)).containsExactly("java");
+        assertThat(index.size()).isEqualTo(2);
+    }
+
+    /**
+     * Пока один поток меняет и удаляет документы, другой ищет без замков:
+     * поиск не падает и всегда находит документы, которые не трогают.
+     */
+    @Test
+    public void whenSearchDuringWritesThenStableDocumentsAlwaysFound() throws InterruptedException {
+        var index = new InvertedIndex<Integer>();
+        for (int id = 1; id <= 10; id++) {
+            index.put(id, "Stable java", "", id);
+        }
+        var stop = new AtomicBoolean();
+        var failure = new AtomicReference<Throwable>();
+        var reader = new Thread(() -> {
+            try {
+                while (!stop.get()) {
+                    var found = new ArrayList<>(index.search("stable java", 100, 0));
+                    if (!found.containsAll(List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10))) {
+                        throw new AssertionError("Missing stable documents: " + found);
+                    }
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 20000; i++) {
+            var id = 100 + i % 50;
+            if (i % 3 == 0) {
+                index.remove(id);
+            } else {
+                index.put(id, "Java", "stable " + i, id);
+            }
+        }
+        stop.set(true);
+        reader.join();
+
+        assertThat(failure.get()).isNull();
+        assertThat(index.search("stable java", 100, 0)).hasSizeGreaterThanOrEqualTo(10);
+    }
+}
@@ -0,0 +1,70 @@
+package ru.job4j.dreamjob.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RebuildableIndexTest {
+
+    private static RebuildableIndex<Map.Entry<Integer, String>, String> index(boolean enabled) {
+        return new RebuildableIndex<>("строк", enabled, 2, Map.Entry::getKey, Map.Entry::getValue,
+                entry -> "", Map.Entry::getValue);
+    }
+
+    private static RebuildableIndex.BatchLoader<Map.Entry<Integer, String>> loader(TreeMap<Integer, String> rows) {
+        return (id, limit) -> rows.tailMap(id, false).entrySet().stream()
+                .limit(limit)
+                .map(entry -> Map.entry(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void whenNotRebuiltThenSearchIsEmpty() {
+        var index = index(true);
+        index.put(Map.entry(1, "java"));
+
+        assertThat(index.search("java", 10, 0)).isEmpty();
+    }
+
+    @Test
+    public void whenRebuiltThenAllBatchesIndexedAndChangesApplied() {
+        var rows = new TreeMap<>(Map.of(1, "java один", 2, "java два", 3, "java три", 4, "python"));
+        var index = index(true);
+        index.rebuild(loader(rows));
+
+        index.put(Map.entry(5, "java пять"));
+        index.remove(2);
+
+        assertThat(index.search("java", 10, 0)).contains(List.of("java пять", "java три", "java один"));
+    }
+
+    @Test
+    public void whenRemovedDuringRebuildThenNotReturnedByLaterBatch() {
+        var rows = new TreeMap<>(Map.of(1, "java один", 2, "java два", 3, "java три"));
+        var index = index(true);
+        var rowsLoader = loader(rows);
+        index.rebuild((id, limit) -> {
+            var batch = rowsLoader.findAfterId(id, limit);
+            if (id == 0) {
+                index.remove(3);
+                index.put(Map.entry(1, "java новый"));
+            }
+            return batch;
+        });
+
+        assertThat(index.search("java", 10, 0)).contains(List.of("java два", "java новый"));
+    }
+
+    @Test
+    public void whenDisabledThenNeverBuilt() {
+        var index = index(false);
+        index.rebuild(loader(new TreeMap<>(Map.of(1, "java"))));
+
+        assertThat(index.search("java", 10, 0)).isEmpty();
+    }
+}
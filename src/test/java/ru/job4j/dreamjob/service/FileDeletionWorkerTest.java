@@ -0,0 +1,59 @@
+package ru.job4j.dreamjob.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.job4j.dreamjob.cache.OffHeapFileCache;
+import ru.job4j.dreamjob.dto.FileDto;
+import ru.job4j.dreamjob.repository.MemoryFileRepository;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileDeletionWorkerTest {
+    @TempDir
+    Path directory;
+    private MemoryFileRepository fileRepository;
+    private SimpleFileService fileService;
+    private FileDeletionWorker worker;
+
+    @BeforeEach
+    public void initWorker() {
+        fileRepository = new MemoryFileRepository();
+        fileService = new SimpleFileService(fileRepository, new SimpleThumbnailService(),
+                new SimpleCompressionService(false, 0), new OffHeapFileCache(0, 0),
+                new PackFileStore(fileRepository, directory.toString(), false, 0, 0, false), directory.toString());
+        worker = new FileDeletionWorker(fileService, 2);
+    }
+
+    @Test
+    public void whenScheduleDeleteThenFileKeptUntilDrained() {
+        var file = fileService.save(new FileDto("resume.txt", new byte[]{1, 2, 3}));
+
+        fileService.scheduleDeleteById(file.getId());
+
+        assertThat(Files.exists(Path.of(file.getPath()))).isTrue();
+        assertThat(worker.drain()).isEqualTo(1);
+        assertThat(Files.exists(Path.of(file.getPath()))).isFalse();
+        assertThat(fileService.findById(file.getId())).isEmpty();
+    }
+
+    @Test
+    public void whenSharedFileLosesOneReferenceThenFileKept() {
+        var first = fileService.save(new FileDto("photo.png", new byte[]{1, 2, 3}));
+        fileService.save(new FileDto("photo.png", new byte[]{1, 2, 3}));
+        var other = fileService.save(new FileDto("other.png", new byte[]{4, 5, 6}));
+
+        fileService.scheduleDeleteById(first.getId());
+        fileService.scheduleDeleteById(other.getId());
+        fileService.scheduleDeleteById(other.getId() + 1);
+
+        assertThat(worker.drain()).isEqualTo(3);
+        assertThat(Files.exists(Path.of(first.getPath()))).isTrue();
+        assertThat(fileService.findById(first.getId())).isPresent();
+        assertThat(Files.exists(Path.of(other.getPath()))).isFalse();
+        assertThat(fileRepository.findDeletions(10)).isEmpty();
+    }
+}
@@ -0,0 +1,118 @@
+package ru.job4j.dreamjob.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.job4j.dreamjob.cache.OffHeapFileCache;
+import ru.job4j.dreamjob.model.File;
+import ru.job4j.dreamjob.repository.MemoryFileRepository;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileStorageMigrationTest {
+    @TempDir
+    Path directory;
+    private MemoryFileRepository fileRepository;
+    private FileStorageMigration migration;
+
+    @BeforeEach
+    public void initMigration() {
+        fileRepository = new MemoryFileRepository();
+        migration = new FileStorageMigration(fileRepository, new OffHeapFileCache(0, 0), new SimpleThumbnailService(),
+                new SimpleCompressionService(true, 0), directory.toString(), 2);
+    }
+
+    private File saveFlatFile(String fileName) throws Exception {
+        var path = Files.writeString(directory.resolve(fileName), fileName);
+        return fileRepository.save(new File("photo.png", path.toString()));
+    }
+
+    @Test
+    public void whenMigrateThenFilesMovedToShardsInBatches() throws Exception {
+        var first = saveFlatFile("0a1b-first");
+        saveFlatFile("ffee-second");
+        var third = saveFlatFile("photo.png");
+
+        assertThat(migration.migrateBatch()).isEqualTo(2);
+        assertThat(migration.migrateBatch()).isEqualTo(1);
+        assertThat(migration.migrateBatch()).isEqualTo(0);
+
+        var firstPath = directory.resolve("0a").resolve("1b").resolve("0a1b-first");
+        assertThat(fileRepository.findById(first.getId()).get().getPath()).isEqualTo(firstPath.toString());
+        assertThat(Files.readString(firstPath)).isEqualTo("0a1b-first");
+        assertThat(Files.exists(directory.resolve("ff").resolve("ee").resolve("ffee-second"))).isTrue();
+        var thirdPath = Path.of(fileRepository.findById(third.getId()).get().getPath());
+        assertThat(thirdPath).isEqualTo(FileStorageLayout.resolve(directory.toString(), "photo.png"));
+        assertThat(Files.exists(thirdPath)).isTrue();
+        assertThat(Files.exists(directory.resolve("0a1b-first"))).isFalse();
+        assertThat(Files.exists(directory.resolve("photo.png"))).isFalse();
+    }
+
+    @Test
+    public void whenMigrateThenOldFileKeptUntilNextBatch() throws Exception {
+        saveFlatFile("0a1b-first");
+
+        migration.migrateBatch();
+
+        assertThat(Files.exists(directory.resolve("0a1b-first"))).isTrue();
+        migration.migrateBatch();
+        assertThat(Files.exists(directory.resolve("0a1b-first"))).isFalse();
+    }
+
+    @Test
+    public void whenMigrateThenThumbnailsMovedWithOriginal() throws Exception {
+        saveFlatFile("0a1b-first");
+        Files.writeString(directory.resolve("0a1b-first-w320.jpg"), "thumbnail");
+
+        migration.migrateBatch();
+        migration.migrateBatch();
+
+        assertThat(Files.readString(directory.resolve("0a").resolve("1b").resolve("0a1b-first-w320.jpg")))
+                .isEqualTo("thumbnail");
+        assertThat(Files.exists(directory.resolve("0a1b-first-w320.jpg"))).isFalse();
+    }
+
+    /**
+     * Символы шаблона в старом имени не захватывают чужие файлы:
+     * файл a[b]-w320.jpg не копия a[b], хотя шаблон a[b]{-w*,.gz} его бы выбрал.
+     */
+    @Test
+    public void whenNameHasGlobCharactersThenOnlyOwnVariantsMoved() throws Exception {
+        saveFlatFile("ab");
+        Files.writeString(directory.resolve("ab-w320.jpg"), "other thumbnail");
+        saveFlatFile("a[b]");
+        var star = saveFlatFile("c*");
+        Files.writeString(directory.resolve("c*.gz"), "own variant");
+
+        migration.migrateBatch();
+        migration.migrateBatch();
+        migration.migrateBatch();
+
+        var ownVariant = Path.of(fileRepository.findById(star.getId()).get().getPath() + ".gz");
+        assertThat(Files.readString(ownVariant)).isEqualTo("own variant");
+        assertThat(Files.readString(FileStorageLayout.resolve(directory.toString(), "ab").resolveSibling("ab-w320.jpg")))
+                .isEqualTo("other thumbnail");
+        assertThat(Files.exists(FileStorageLayout.resolve(directory.toString(), "a[b]").resolveSibling("ab-w320.jpg")))
+                .isFalse();
+    }
+
+    /**
+     * Старая загрузка с именем как у сжатого варианта переносится по своей записи
+     * и не удаляется вместе с оригиналом.
+     */
+    @Test
+    public void whenVariantPathHasOwnRowThenMovedSeparately() throws Exception {
+        saveFlatFile("0a1b-resume.json");
+        var archive = saveFlatFile("0a1b-resume.json.gz");
+
+        migration.migrateBatch();
+        migration.migrateBatch();
+
+        var archivePath = Path.of(fileRepository.findById(archive.getId()).get().getPath());
+        assertThat(archivePath).isEqualTo(FileStorageLayout.resolve(directory.toString(), "0a1b-resume.json.gz"));
+        assertThat(Files.readString(archivePath)).isEqualTo("0a1b-resume.json.gz");
+    }
+}
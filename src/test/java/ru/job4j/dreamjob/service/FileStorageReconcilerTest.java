@@ -0,0 +1,170 @@
+package ru.job4j.dreamjob.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.job4j.dreamjob.cache.OffHeapFileCache;
+import ru.job4j.dreamjob.model.File;
+import ru.job4j.dreamjob.repository.MemoryFileRepository;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileStorageReconcilerTest {
+    @TempDir
+    Path directory;
+    private MemoryFileRepository fileRepository;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void initRepository() {
+        fileRepository = new MemoryFileRepository();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    private FileStorageReconciler reconciler(boolean delete) {
+        var thumbnailService = new SimpleThumbnailService();
+        var compressionService = new SimpleCompressionService(true, 0);
+        var fileService = new SimpleFileService(fileRepository, thumbnailService, compressionService,
+                new OffHeapFileCache(0, 0), new PackFileStore(fileRepository, directory.toString(), false, 0, 0, false),
+                directory.toString());
+        return new FileStorageReconciler(fileRepository, fileService, thumbnailService, compressionService,
+                meterRegistry, directory.toString(), 100, 60, delete);
+    }
+
+    private Path write(String first, String... more) throws Exception {
+        var path = directory.resolve(Path.of(first, more));
+        Files.createDirectories(path.getParent());
+        return Files.writeString(path, "content");
+    }
+
+    @Test
+    public void whenFileHasNoRowThenDeletedOnNextBatch() throws Exception {
+        var kept = write("ab", "cd", "abcd1");
+        fileRepository.save(new File("kept.png", kept.toString()));
+        var orphan = write("ef", "01", "ef012");
+        var orphanThumbnail = write("ef", "01", "ef012-w320.jpg");
+        var orphanVariant = write("ef", "01", "ef012.gz");
+        var reconciler = reconciler(true);
+
+        reconciler.reconcileBatch();
+        assertThat(Files.exists(orphan)).isTrue();
+        reconciler.reconcileBatch();
+
+        assertThat(Files.exists(kept)).isTrue();
+        assertThat(Files.exists(orphan)).isFalse();
+        assertThat(Files.exists(orphanThumbnail)).isFalse();
+        assertThat(Files.exists(orphanVariant)).isFalse();
+        assertThat(meterRegistry.counter("dreamjob.file.reconciler.orphans", "kind", "file").count())
+                .isEqualTo(1);
+    }
+
+    /**
+     * Старые загрузки названы по имени пользователя и могут выглядеть как копии.
+     * Оригинала, выведенного из имени, нет, поэтому файл сверяется сам по себе.
+     */
+    @Test
+    public void whenStoredFileNamedLikeVariantThenKept() throws Exception {
+        var archive = write("1f2e-x.json.gz");
+        fileRepository.save(new File("x.json.gz", archive.toString()));
+        var photo = write("3c4d-photo-w320.jpg");
+        fileRepository.save(new File("photo-w320.jpg", photo.toString()));
+        var reconciler = reconciler(true);
+
+        reconciler.reconcileBatch();
+        reconciler.reconcileBatch();
+
+        assertThat(Files.exists(archive)).isTrue();
+        assertThat(Files.exists(photo)).isTrue();
+        assertThat(meterRegistry.counter("dreamjob.file.reconciler.orphans", "kind", "file").count())
+                .isZero();
+    }
+
+    /**
+     * Оригинал без записи удаляется, а файл с именем его сжатого варианта
+     * остается: на него есть своя запись в files.
+     */
+    @Test
+    public void whenOrphanVariantPathHasRowThenOnlyOrphanDeleted() throws Exception {
+        var orphan = write("5e6f-x.json");
+        var archive = write("5e6f-x.json.gz");
+        fileRepository.save(new File("x.json.gz", archive.toString()));
+        var reconciler = reconciler(true);
+
+        reconciler.reconcileBatch();
+        reconciler.reconcileBatch();
+
+        assertThat(Files.exists(orphan)).isFalse();
+        assertThat(Files.exists(archive)).isTrue();
+    }
+
+    /**
+     * Копия, оригинала которой нет ни в files, ни на диске, удаляется сама.
+     */
+    @Test
+    public void whenVariantLostItsOriginalThenDeleted() throws Exception {
+        var variant = write("ef", "01", "ef012.gz");
+        var reconciler = reconciler(true);
+
+        reconciler.reconcileBatch();
+        reconciler.reconcileBatch();
+
+        assertThat(Files.exists(variant)).isFalse();
+    }
+
+    @Test
+    public void whenRowAppearsBeforeNextBatchThenFileKept() throws Exception {
+        var file = write("ab", "cd", "abcd1");
+        var reconciler = reconciler(true);
+
+        reconciler.reconcileBatch();
+        fileRepository.save(new File("file.png", file.toString()));
+        reconciler.reconcileBatch();
+
+        assertThat(Files.exists(file)).isTrue();
+    }
+
+    @Test
+    public void whenDeleteDisabledThenOrphanOnlyReported() throws Exception {
+        var orphan = write("ef", "01", "ef012");
+        var reconciler = reconciler(false);
+
+        reconciler.reconcileBatch();
+        reconciler.reconcileBatch();
+
+        assertThat(Files.exists(orphan)).isTrue();
+        assertThat(meterRegistry.counter("dreamjob.file.reconciler.orphans", "kind", "file").count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    public void whenTemporaryFileIsStaleThenDeleted() throws Exception {
+        var stale = write("upload-1.tmp");
+        Files.setLastModifiedTime(stale, FileTime.from(Instant.now().minus(2, ChronoUnit.HOURS)));
+        var fresh = write("upload-2.tmp");
+
+        reconciler(true).reconcileBatch();
+
+        assertThat(Files.exists(stale)).isFalse();
+        assertThat(Files.exists(fresh)).isTrue();
+    }
+
+    @Test
+    public void whenRowHasNoFileThenReported() throws Exception {
+        fileRepository.save(new File("missing.png", directory.resolve("missing").toString()));
+        var reconciler = reconciler(true);
+
+        reconciler.reconcileBatch();
+        reconciler.reconcileBatch();
+
+        assertThat(meterRegistry.counter("dreamjob.file.reconciler.orphans", "kind", "missing-file").count())
+                .isEqualTo(1);
+        assertThat(fileRepository.findPage(0, 10)).hasSize(1);
+    }
+}
@@ -0,0 +1,130 @@
+package ru.job4j.dreamjob.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.job4j.dreamjob.cache.OffHeapFileCache;
+import ru.job4j.dreamjob.dto.FileDto;
+import ru.job4j.dreamjob.repository.MemoryFileRepository;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PackFileCompactionTest {
+    private static final int SEGMENT_BYTES = 1000;
+    @TempDir
+    Path directory;
+    private MemoryFileRepository fileRepository;
+    private PackFileStore packStore;
+    private SimpleFileService fileService;
+
+    @BeforeEach
+    public void initService() {
+        fileRepository = new MemoryFileRepository();
+        packStore = new PackFileStore(fileRepository, directory.toString(), true, 300, SEGMENT_BYTES, false);
+        fileService = new SimpleFileService(fileRepository, new SimpleThumbnailService(),
+                new SimpleCompressionService(false, 0), new OffHeapFileCache(0, 0), packStore, directory.toString());
+    }
+
+    private byte[] content(int value, int length) {
+        var content = new byte[length];
+        Arrays.fill(content, (byte) value);
+        return content;
+    }
+
+    @Test
+    public void whenSaveSmallImageThenAppendedToSegmentAndReadBack() throws Exception {
+        var first = fileService.save(new FileDto("first.png", content(1, 200)));
+        var second = fileService.save(new FileDto("second.jpg", content(2, 300)));
+        var large = fileService.save(new FileDto("large.png", content(3, 400)));
+        var text = fileService.save(new FileDto("resume.txt", content(4, 100)));
+
+        assertThat(first.getPackSegment()).isEqualTo(1);
+        assertThat(second.getPackOffset()).isEqualTo(200);
+        assertThat(large.isPacked()).isFalse();
+        assertThat(text.isPacked()).isFalse();
+        assertThat(fileService.getFileById(second.getId()).get().getContent()).isEqualTo(content(2, 300));
+        var resource = fileService.getFileResourceById(first.getId()).get();
+        assertThat(resource.getContentLength()).isEqualTo(200);
+        try (var in = resource.getResource().getInputStream()) {
+            assertThat(in.readAllBytes()).isEqualTo(content(1, 200));
+        }
+        assertThat(fileService.getFileResourceById(first.getId(), 320).get().isThumbnail()).isTrue();
+    }
+
+    /**
+     * Узел FileNode читает сегменты, записанные основным приложением,
+     * и не создает и не дописывает их сам.
+     */
+    @Test
+    public void whenReadOnlyThenExistingSegmentsReadAndNothingWritten() throws Exception {
+        var first = fileService.save(new FileDto("first.png", content(1, 200)));
+        var readOnly = new PackFileStore(fileRepository, directory.toString(), true, 300, SEGMENT_BYTES, true);
+        var emptyDirectory = Files.createDirectory(directory.resolve("node"));
+        var empty = new PackFileStore(fileRepository, emptyDirectory.toString(), true, 300, SEGMENT_BYTES, true);
+
+        var read = readOnly.read(fileRepository.findById(first.getId()).get());
+        var bytes = new byte[read.remaining()];
+        read.get(bytes);
+
+        assertThat(bytes).isEqualTo(content(1, 200));
+        assertThat(readOnly.accepts("second.png", 100)).isFalse();
+        assertThat(empty.findSegments()).isEmpty();
+        assertThat(emptyDirectory.toFile().list()).isEmpty();
+        assertThatThrownBy(() -> readOnly.append("second.png", ByteBuffer.wrap(content(2, 100)), "hash"))
+                .isInstanceOf(IllegalStateException.class);
+        readOnly.close();
+    }
+
+    @Test
+    public void whenSegmentIsFullThenNextSegmentCreated() {
+        for (var i = 0; i < 4; i++) {
+            fileService.save(new FileDto("photo.png", content(i, 300)));
+        }
+        var last = fileService.save(new FileDto("photo.png", content(9, 300)));
+
+        assertThat(last.getPackSegment()).isEqualTo(2);
+        assertThat(packStore.findSegments()).containsExactly(1, 2);
+        assertThat(Files.exists(PackFileStore.getSegmentPath(directory.toString(), 1))).isTrue();
+    }
+
+    @Test
+    public void whenStoreIsReopenedThenAppendContinuesAfterLastFile() {
+        fileService.save(new FileDto("photo.png", content(1, 250)));
+
+        var reopened = new PackFileStore(fileRepository, directory.toString(), true, 300, SEGMENT_BYTES, false);
+        var next = reopened.append("next.png", ByteBuffer.wrap(content(2, 10)), "hash");
+
+        assertThat(next.getPackSegment()).isEqualTo(1);
+        assertThat(next.getPackOffset()).isEqualTo(250);
+    }
+
+    @Test
+    public void whenMostOfSegmentIsDeletedThenLiveFilesMovedAndSegmentDeleted() {
+        var files = new int[3];
+        for (var i = 0; i < files.length; i++) {
+            files[i] = fileService.save(new FileDto("photo.png", content(i, 300))).getId();
+        }
+        var live = fileService.save(new FileDto("live.png", content(7, 100)));
+        fileService.save(new FileDto("next.png", content(8, 300)));
+        fileService.deleteById(files[0]);
+        fileService.deleteById(files[1]);
+        fileService.deleteById(files[2]);
+        var compaction = new PackFileCompaction(fileRepository, packStore, 0.5, 1);
+
+        assertThat(compaction.compact()).isEqualTo(1);
+        var moved = fileService.findById(live.getId()).get();
+        assertThat(moved.getPackSegment()).isEqualTo(2);
+        assertThat(fileService.getFileById(live.getId()).get().getContent()).isEqualTo(content(7, 100));
+        assertThat(Files.exists(PackFileStore.getSegmentPath(directory.toString(), 1))).isTrue();
+
+        compaction.compact();
+
+        assertThat(packStore.findSegments()).containsExactly(2);
+    }
+}
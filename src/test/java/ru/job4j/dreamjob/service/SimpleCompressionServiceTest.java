@@ -0,0 +1,83 @@
+package ru.job4j.dreamjob.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.job4j.dreamjob.model.File;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SimpleCompressionServiceTest {
+    @TempDir
+    Path directory;
+
+    private final SimpleCompressionService compressionService = new SimpleCompressionService(true, 1024);
+
+    private File write(String name, byte[] content) throws Exception {
+        var path = directory.resolve(name.replace('.', '-'));
+        Files.write(path, content);
+        return new File(name, path.toString());
+    }
+
+    @Test
+    public void whenCompressTextThenVariantHasSameContent() throws Exception {
+        var content = "Опыт работы: Java, Spring, SQL. ".repeat(200).getBytes();
+        var file = write("resume.txt", content);
+
+        compressionService.compress(file);
+
+        var variant = compressionService.findVariant(file, "gzip");
+        assertThat(variant).isPresent();
+        assertThat(Files.size(variant.get())).isLessThan(content.length / 2);
+        assertThat(compressionService.hasVariants(file)).isTrue();
+        assertThat(compressionService.getOriginalPath(variant.get())).contains(Path.of(file.getPath()));
+        var out = new ByteArrayOutputStream();
+        try (var in = new GZIPInputStream(Files.newInputStream(variant.get()))) {
+            in.transferTo(out);
+        }
+        assertThat(out.toByteArray()).isEqualTo(content);
+    }
+
+    @Test
+    public void whenCompressImageOrSmallFileThenNoVariant() throws Exception {
+        var image = write("photo.png", "a".repeat(4096).getBytes());
+        var small = write("small.json", "{}".getBytes());
+
+        compressionService.compress(image);
+        compressionService.compress(small);
+
+        assertThat(compressionService.hasVariants(image)).isFalse();
+        assertThat(compressionService.hasVariants(small)).isFalse();
+        assertThat(compressionService.findVariant(image, "br")).isEmpty();
+    }
+
+    @Test
+    public void whenCompressedIsNotSmallerThenVariantDiscarded() throws Exception {
+        var content = new byte[8192];
+        new Random(1).nextBytes(content);
+        var file = write("random.txt", content);
+
+        compressionService.compress(file);
+
+        assertThat(compressionService.hasVariants(file)).isFalse();
+        try (var files = Files.list(directory)) {
+            assertThat(files.count()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void whenDeleteVariantsThenVariantRemoved() throws Exception {
+        var file = write("data.json", "{\"key\": \"value\"}".repeat(100).getBytes());
+        compressionService.compress(file);
+
+        compressionService.deleteVariants(file);
+
+        assertThat(compressionService.hasVariants(file)).isFalse();
+        assertThat(Files.exists(Path.of(file.getPath()))).isTrue();
+    }
+}
@@ -0,0 +1,146 @@
+package ru.job4j.dreamjob.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ByteArrayResource;
+import ru.job4j.dreamjob.cache.OffHeapFileCache;
+import ru.job4j.dreamjob.repository.MemoryFileRepository;
+import ru.job4j.dreamjob.repository.MemoryUploadSessionRepository;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SimpleUploadServiceTest {
+    @TempDir
+    Path directory;
+    private MemoryUploadSessionRepository uploadSessionRepository;
+    private SimpleFileService fileService;
+    private SimpleUploadService uploadService;
+
+    @BeforeEach
+    public void initServices() {
+        var fileRepository = new MemoryFileRepository();
+        uploadSessionRepository = new MemoryUploadSessionRepository();
+        fileService = new SimpleFileService(fileRepository, new SimpleThumbnailService(),
+                new SimpleCompressionService(false, 0), new OffHeapFileCache(0, 0),
+                new PackFileStore(fileRepository, directory.toString(), false, 0, 0, false), directory.toString());
+        uploadService = new SimpleUploadService(uploadSessionRepository, fileService, directory.toString(),
+                4, 100, 60);
+    }
+
+    private static byte[] content(int size) {
+        var content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) i;
+        }
+        return content;
+    }
+
+    private void write(String id, int number, byte[] content) {
+        var chunk = Arrays.copyOfRange(content, number * 4, Math.min(content.length, number * 4 + 4));
+        uploadService.writeChunk(id, number, chunk.length, new ByteArrayResource(chunk));
+    }
+
+    @Test
+    public void whenChunksArriveInAnyOrderThenCommittedFileIsAssembled() throws Exception {
+        var content = content(10);
+        var id = uploadService.create("resume.pdf", content.length).getId();
+        write(id, 2, content);
+        write(id, 0, content);
+        write(id, 1, content);
+
+        var file = uploadService.commit(id).get();
+
+        assertThat(Files.readAllBytes(Path.of(file.getPath()))).isEqualTo(content);
+        var digest = MessageDigest.getInstance("SHA-256");
+        assertThat(file.getContentHash()).isEqualTo(HexFormat.of().formatHex(digest.digest(content)));
+        assertThat(uploadService.findById(id)).isEmpty();
+        assertThat(directory.resolve(SimpleUploadService.DIRECTORY)).isEmptyDirectory();
+    }
+
+    @Test
+    public void whenStatusRequestedThenReceivedOffsetsSorted() {
+        var content = content(10);
+        var id = uploadService.create("resume.pdf", content.length).getId();
+        write(id, 2, content);
+        write(id, 0, content);
+        write(id, 0, content);
+
+        var status = uploadService.findById(id).get();
+
+        assertThat(status.getReceivedOffsets()).isEqualTo(List.of(0L, 8L));
+        assertThat(status.isComplete()).isFalse();
+    }
+
+    @Test
+    public void whenNotAllChunksReceivedThenCommitFailsAndUploadCanContinue() {
+        var content = content(10);
+        var id = uploadService.create("resume.pdf", content.length).getId();
+        write(id, 0, content);
+
+        assertThatThrownBy(() -> uploadService.commit(id)).isInstanceOf(IllegalStateException.class);
+        write(id, 1, content);
+        write(id, 2, content);
+
+        assertThat(uploadService.commit(id)).isPresent();
+    }
+
+    @Test
+    public void whenChunkHasWrongLengthThenRejected() {
+        var id = uploadService.create("resume.pdf", 10).getId();
+
+        assertThatThrownBy(() -> uploadService.writeChunk(id, 0, 3, new ByteArrayResource(new byte[3])))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> uploadService.writeChunk(id, 0, -1, new ByteArrayResource(new byte[5])))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> uploadService.writeChunk(id, 3, 4, new ByteArrayResource(new byte[4])))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(uploadService.findById(id).get().getReceivedOffsets()).isEmpty();
+    }
+
+    @Test
+    public void whenSizeOverLimitThenSessionNotCreated() {
+        assertThatThrownBy(() -> uploadService.create("video.mp4", 101))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(uploadService.writeChunk("missing", 0, 4, new ByteArrayResource(new byte[4]))).isFalse();
+    }
+
+    @Test
+    public void whenSessionExpiredThenDeletedWithPartFile() {
+        var id = uploadService.create("resume.pdf", 10).getId();
+        uploadSessionRepository.findById(id).get().setCreationDate(LocalDateTime.now().minusHours(2));
+
+        assertThat(uploadService.deleteExpired()).isEqualTo(1);
+        assertThat(uploadService.findById(id)).isEmpty();
+        assertThat(directory.resolve(SimpleUploadService.DIRECTORY)).isEmptyDirectory();
+    }
+
+    /**
+     * Сбой при сохранении не оставляет сессию без файла: удаляются и сессия, и собранный файл.
+     */
+    @Test
+    public void whenSaveFailsThenSessionAndPartFileDeleted() {
+        var failingFileService = mock(FileService.class);
+        when(failingFileService.save(any(String.class), any(Path.class))).thenThrow(new IllegalStateException("disk"));
+        var failingUploadService = new SimpleUploadService(uploadSessionRepository, failingFileService,
+                directory.toString(), 4, 100, 60);
+        var id = failingUploadService.create("resume.pdf", 4).getId();
+        failingUploadService.writeChunk(id, 0, 4, new ByteArrayResource(content(4)));
+
+        assertThatThrownBy(() -> failingUploadService.commit(id)).isInstanceOf(IllegalStateException.class);
+        assertThat(failingUploadService.findById(id)).isEmpty();
+        assertThat(directory.resolve(SimpleUploadService.DIRECTORY)).isEmptyDirectory();
+    }
+}
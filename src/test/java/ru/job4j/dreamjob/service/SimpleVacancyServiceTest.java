@@ -0,0 +1,184 @@
+package ru.job4j.dreamjob.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.job4j.dreamjob.cache.EntityCache;
+import ru.job4j.dreamjob.dto.FileStreamDto;
+import ru.job4j.dreamjob.dto.ListingFilterDto;
+import ru.job4j.dreamjob.model.File;
+import ru.job4j.dreamjob.model.Vacancy;
+import ru.job4j.dreamjob.model.VacancySummary;
+import ru.job4j.dreamjob.importer.ImportFormat;
+import ru.job4j.dreamjob.repository.MemoryCityRepository;
+import ru.job4j.dreamjob.repository.MemoryVacancyRepository;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * В MemoryVacancyRepository заранее сохранены шесть вакансий с id от 1 до 6,
+ * при размере страницы 2 список от новых к старым делится на страницы [6, 5], [4, 3], [2, 1].
+ */
+public class SimpleVacancyServiceTest {
+
+    private MemoryVacancyRepository vacancyRepository;
+
+    private FileService fileService;
+
+    private SimpleVacancyService vacancyService;
+
+    @BeforeEach
+    public void initService() {
+        vacancyRepository = new MemoryVacancyRepository();
+        fileService = mock(FileService.class);
+        vacancyService = new SimpleVacancyService(vacancyRepository,
+                new EntityCache<>("vacancies", 1024 * 1024, 60, vacancy -> 100),
+                new SimpleCityService(new MemoryCityRepository()), fileService, 2, 2, 2);
+    }
+
+    private static List<Integer> ids(List<VacancySummary> vacancies) {
+        return vacancies.stream().map(VacancySummary::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void whenWalkForwardThenPagesFollowWithoutGaps() {
+        var first = vacancyService.findPage(ListingFilterDto.none(), null, null);
+        var second = vacancyService.findPage(ListingFilterDto.none(), first.getNext(), null);
+        var third = vacancyService.findPage(ListingFilterDto.none(), second.getNext(), null);
+
+        assertThat(ids(first.getItems())).containsExactly(6, 5);
+        assertThat(first.getPrevious()).isNull();
+        assertThat(ids(second.getItems())).containsExactly(4, 3);
+        assertThat(ids(third.getItems())).containsExactly(2, 1);
+        assertThat(third.getPrevious()).isNotNull();
+        assertThat(third.getNext()).isNull();
+    }
+
+    @Test
+    public void whenWalkBackThenSamePagesAsForward() {
+        var second = vacancyService.findPage(ListingFilterDto.none(), vacancyService.findPage(ListingFilterDto.none(), null, null).getNext(), null);
+        var third = vacancyService.findPage(ListingFilterDto.none(), second.getNext(), null);
+
+        var backToSecond = vacancyService.findPage(ListingFilterDto.none(), null, third.getPrevious());
+        var backToFirst = vacancyService.findPage(ListingFilterDto.none(), null, backToSecond.getPrevious());
+
+        assertThat(ids(backToSecond.getItems())).containsExactly(4, 3);
+        assertThat(backToSecond.getNext()).isEqualTo(second.getNext());
+        assertThat(ids(backToFirst.getItems())).containsExactly(6, 5);
+        assertThat(backToFirst.getPrevious()).isNull();
+    }
+
+    @Test
+    public void whenCursorBrokenThenFirstPage() {
+        var page = vacancyService.findPage(ListingFilterDto.none(), "not-a-cursor", null);
+
+        assertThat(ids(page.getItems())).containsExactly(6, 5);
+        assertThat(page.getPrevious()).isNull();
+    }
+
+    @Test
+    public void whenUpdateThenCachedVacancyReplaced() {
+        var cached = vacancyService.findById(1).get();
+        var changed = new Vacancy(1, "Lead Java Developer", cached.getDescription(), true, 1, 0);
+        vacancyService.update(changed, new FileStreamDto("", 0, null));
+
+        assertThat(vacancyService.findById(1).get().getTitle()).isEqualTo("Lead Java Developer");
+        assertThat(vacancyService.findAll()).extracting(Vacancy::getTitle).contains("Lead Java Developer");
+        vacancyService.deleteById(1);
+        assertThat(vacancyService.findById(1)).isEmpty();
+    }
+
+    /**
+     * Вакансию уже удалил параллельный запрос, но она еще видна через кеш:
+     * ссылка на ее файл снимается только тем запросом, который действительно удалил запись.
+     */
+    @Test
+    public void whenDeleteFailsThenFileNotReleased() {
+        var vacancy = vacancyService.findById(1).get();
+        vacancyRepository.deleteById(1);
+
+        assertThat(vacancyService.deleteById(1)).isFalse();
+        verify(fileService, never()).scheduleDeleteById(vacancy.getFileId());
+    }
+
+    /**
+     * Записи нет, поэтому снимается ссылка на только что сохраненный файл, а не на старый.
+     */
+    @Test
+    public void whenUpdateFailsThenNewFileReleasedInsteadOfOld() {
+        var newFile = new File("new.png", "new");
+        newFile.setId(7);
+        when(fileService.save(any(FileStreamDto.class))).thenReturn(newFile);
+        var missing = new Vacancy(99, "Missing", "description", true, 1, 3);
+
+        assertThat(vacancyService.update(missing, new FileStreamDto("new.png", 1, null))).isFalse();
+        verify(fileService).scheduleDeleteById(7);
+        verify(fileService, never()).scheduleDeleteById(3);
+    }
+
+    /**
+     * Вакансии 1 и 4 из первого города, остальные из второго и третьего:
+     * отфильтрованный список помещается на одну страницу.
+     */
+    @Test
+    public void whenFilterByCityThenOnlyCityVacancies() {
+        var page = vacancyService.findPage(new ListingFilterDto(1, null), null, null);
+
+        assertThat(ids(page.getItems())).containsExactly(4, 1);
+        assertThat(page.getNext()).isNull();
+        assertThat(ids(vacancyService.findPage(new ListingFilterDto(1, false), null, null).getItems())).isEmpty();
+        assertThat(vacancyService.countByCity(null)).containsEntry(1, 2).containsEntry(2, 2).containsEntry(3, 2);
+    }
+
+    /**
+     * Слово Junior есть в заголовках вакансий 2 и 3, слово Java во всех шести.
+     */
+    @Test
+    public void whenSearchThenPagesByNumber() {
+        var first = vacancyService.search("java", 1);
+        var second = vacancyService.search("java", first.getNext());
+        var junior = vacancyService.search("junior java", 1);
+
+        assertThat(ids(first.getItems())).containsExactly(6, 5);
+        assertThat(first.getPrevious()).isNull();
+        assertThat(ids(second.getItems())).containsExactly(4, 3);
+        assertThat(second.getPrevious()).isEqualTo(1);
+        assertThat(ids(junior.getItems())).containsExactly(3, 2);
+        assertThat(junior.getNext()).isNull();
+        assertThat(vacancyService.search(" ", 1).getItems()).isEmpty();
+    }
+
+    /**
+     * Из пяти строк две отклонены: неизвестный город и неверная видимость.
+     * Остальные сохранены пачками по две и сразу видны в списке, мимо кеша.
+     */
+    @Test
+    public void whenImportThenValidSavedAndInvalidReported() {
+        var cached = vacancyService.findAll().size();
+        var csv = """
+                title,description,cityId,visible
+                Imported one,"Remote, full time",1,
+                Unknown city,d,42,true
+                Imported two,d,2,false
+                Bad visibility,d,1,maybe
+                Imported three,d,3,1
+                """;
+        var report = vacancyService.importAll(ImportFormat.CSV.open(new StringReader(csv)));
+
+        assertThat(report.getImported()).isEqualTo(3);
+        assertThat(report.getRejected()).isEqualTo(2);
+        assertThat(report.getErrors()).containsExactly("строка 3: Неизвестный город в поле cityId: 42",
+                "строка 5: Поле visible должно быть true или false: maybe");
+        assertThat(vacancyService.findAll()).hasSize(cached + 3)
+                .extracting(Vacancy::getTitle).contains("Imported one", "Imported two", "Imported three");
+        assertThat(vacancyService.countByCity(false)).containsEntry(2, 1);
+    }
+}